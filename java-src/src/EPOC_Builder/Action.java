@@ -33,12 +33,14 @@ public class Action extends EPOCObject<Action> {
 
     private int acttype = 1;
     private ArrayList<Timestep> timesteps = new ArrayList();
+    // Index of timesteps for the birthday last asked for
+    private transient TimestepIndex timestepIndex = null;
     private int datasetUID, transformUID;
     private Attribute dataset = null;
     private Action transform = null;
     private ArrayList<Integer> relatedUIDs = new ArrayList();
     private ArrayList<Element> relatedElements = new ArrayList();
-    private String code = "";
+    private LazyText code = LazyText.EMPTY;
 
     // lists to hold timesteps requiring storage deletion on save
     private ArrayList<Timestep> deleteTimestepList = new ArrayList();
@@ -58,31 +60,63 @@ public class Action extends EPOCObject<Action> {
         storage.load(this);
     }
 
-    public void addTimestep(Timestep ts) { timesteps.add(ts); }
+    public void addTimestep(Timestep ts) {
+        timesteps.add(ts);
+        timestepIndex = null;
+        markModified();
+    }
+
+    public boolean removeTimestep(Timestep ts) {
+        timestepIndex = null;
+        markModified();
+        ts.unjournal();
 
-    public void addRelatedUID(int ruid) { relatedUIDs.add(ruid); }
+        return timesteps.remove(ts);
+    }
 
-    public void addRelatedElement(Element ele) { relatedElements.add(ele); }
+    public void addRelatedUID(int ruid) {
+        relatedUIDs.add(ruid);
+        markModified();
+    }
+
+    public void addRelatedElement(Element ele) {
+        relatedElements.add(ele);
+        markModified();
+    }
 
     public void addDeleteList(Timestep obj) { deleteTimestepList.add(obj); }
 
-    public void setActType(int type) { acttype = type; }
+    public void setActType(int type) {
+        acttype = type;
+        markModified();
+    }
 
-    public void setDatasetUID(int ds) { datasetUID = ds; }
+    public void setDatasetUID(int ds) {
+        datasetUID = ds;
+        markModified();
+    }
 
     public void setDataset(Attribute ds) {
         dataset = ds;
         datasetUID = 0;
+        markModified();
     }
 
-    public void setTransformUID(int tr) { transformUID = tr; }
+    public void setTransformUID(int tr) {
+        transformUID = tr;
+        markModified();
+    }
 
     public void setTransform(Action tr) {
         transform = tr;
         transformUID = 0;
+        markModified();
     }
 
-    public void setRelatedElements(ArrayList rel) { relatedElements = rel; }
+    public void setRelatedElements(ArrayList rel) {
+        relatedElements = rel;
+        markModified();
+    }
 
     public void setRelatedUIDsFromString(String ruids) {
         relatedUIDs.clear();
@@ -122,7 +156,7 @@ public class Action extends EPOCObject<Action> {
      *
      * @param eleList
      */
-    public void setRelatedElementsFromList(ArrayList<Element> eleList) {
+    public void setRelatedElementsFromList(List<Element> eleList) {
         relatedElements.clear();
         for (Integer ruid : getRelatedUIDs()) {
             if (ruid > 0) {
@@ -138,7 +172,10 @@ public class Action extends EPOCObject<Action> {
         }
     }
 
-    public void setTimesteps(ArrayList<Timestep> tsteps) { timesteps = tsteps; }
+    public void setTimesteps(ArrayList<Timestep> tsteps) {
+        timesteps = tsteps;
+        markModified();
+    }
 
     public void setTimestepDatasetsFromList(ArrayList<Attribute> attList) {
         for (Timestep ts : getTimesteps()) {
@@ -174,6 +211,19 @@ public class Action extends EPOCObject<Action> {
         }
     }
 
+    /**
+     * Set modified state of action and, if recurse, its timesteps
+     * @param mod
+     * @param recurse
+     */
+    @Override
+    public void setObjectModified(boolean mod, boolean recurse) {
+        setObjectModified(mod);
+        if (recurse) {
+            for (Timestep ts : timesteps) ts.setObjectModified(mod);
+        }
+    }
+
     /**
      * Recursively add self to templates object listings
      * @param recurse
@@ -213,7 +263,35 @@ public class Action extends EPOCObject<Action> {
 
     public void clearRelated() { relatedElements.clear(); }
 
-    public void setCode(String cd) { code = cd; }
+    public void setCode(String cd) {
+        code = LazyText.of(cd);
+        markModified();
+    }
+
+    /**
+     * Set code from storage, to be loaded when first asked for
+     * @param text
+     */
+    void setCodeText(LazyText text) {
+        code = text;
+    }
+
+    /**
+     * Return code handle, so storage can tell if code is unchanged
+     * @return
+     */
+    LazyText getCodeText() { return code; }
+
+    @Override
+    protected void unjournal() {
+        super.unjournal();
+        for (Timestep ts : timesteps) ts.unjournal();
+    }
+
+    @Override
+    protected void rebindText() {
+        code = code.boundTo(uid);
+    }
 
     public boolean isSetup() { return (acttype == ACT_SET); }
 
@@ -259,7 +337,7 @@ public class Action extends EPOCObject<Action> {
 
     public ArrayList<Element> getRelatedElements() { return relatedElements; }
 
-    public String getCode() { return code; }
+    public String getCode() { return code.get(); }
 
     /*
      * If the passed dates overlap with an existing timestep then return it
@@ -267,71 +345,28 @@ public class Action extends EPOCObject<Action> {
      */
     public Timestep getOverlappingTimestep(int stDay, int stMth, int enDay, int enMth,
                                                                     int bDay, int bMth) {
-        //Timestep[] tsps = getTimestepArray(false);
-
-        for (Timestep tsp : timesteps) {
-
-            int stDay2 = tsp.getStartDay();
-            int stMth2 = tsp.getStartMonth();
-            int enDay2 = tsp.getEndDay();
-            int enMth2 = tsp.getEndMonth();
-
-            // replace birth days
-            if (stDay == 99) stDay = bDay;
-            if (stMth == 99) stMth = bMth;
-            if (enDay == 99) enDay = bDay;
-            if (enMth == 99) enMth = bMth;
-            if (stDay2 == 99) stDay2 = bDay;
-            if (stMth2 == 99) stMth2 = bMth;
-            if (enDay2 == 99) enDay2 = bDay;
-            if (enMth2 == 99) enMth2 = bMth;
-
-            // check if dates cross Dec 31
-            if (enMth < stMth || (enMth == stMth && enDay < stDay)) enMth += 12;
-            if (enMth2 < stMth2 || (enMth2 == stMth2 && enDay2 < stDay2)) enMth2 += 12;
-
-            // if start date falls on or between next timestep dates
-            //           |--
-            //         |------|
-            if (dateCompare(stDay, stMth, stDay2, stMth2) >= 0
-                    && dateCompare(stDay, stMth, enDay2, enMth2) <= 0) {
-                return tsp;
-            }
-            // if end date falls on or between next timestep dates
-            //          --|
-            //         |------|
-            if (dateCompare(enDay, enMth, stDay2, stMth2) >= 0
-                    && dateCompare(enDay, enMth, enDay2, enMth2) <= 0) {
-                return tsp;
-            }
-            // if start and end of date span next timestep dates
-            //       |---------|
-            //         |------|
-            if (dateCompare(stDay, stMth, stDay2, stMth2) <= 0
-                    && dateCompare(enDay, enMth, enDay2, enMth2) >= 0) {
-                return tsp;
-            }
-            // if ONE of the end dates crosses Dec 31 (>12) then check if it is greater
-            // than other start date
-            // J-----------D----------D
-            //  |---| |------|
-            if (enMth > 12 ^ enMth2 > 12) {
-                if (enMth > 12 && dateCompare(stDay2, stMth2, enDay, enMth-12) <= 0) return tsp;
-                if (enMth2 > 12 && dateCompare(stDay, stMth, enDay2, enMth2-12) <= 0) return tsp;
-            }
-        }
-
-        return null;
+        return getOverlappingTimestep(stDay, stMth, enDay, enMth, bDay, bMth, null);
     }
 
     /*
-     * return <0 if date1 < date2
-     * return >0 if date1 > date2
-     * return 0 if equal
+     * As above but ignoring timestep exclude, such as the one being edited
+     */
+    public Timestep getOverlappingTimestep(int stDay, int stMth, int enDay, int enMth,
+                                                    int bDay, int bMth, Timestep exclude) {
+        return getTimestepIndex(bDay, bMth).getOverlapping(stDay, stMth, enDay, enMth, exclude);
+    }
+
+    /**
+     * Return index of timesteps with birthday placeholders replaced by the
+     * birthday passed, building it only if timesteps have changed
+     * @param bDay
+     * @param bMth
+     * @return
      */
-    private int dateCompare(int day1, int mth1, int day2, int mth2) {
-        if (mth1 == mth2) return day1 - day2;
-        return mth1 - mth2;
+    public TimestepIndex getTimestepIndex(int bDay, int bMth) {
+        timestepIndex = TimestepIndex.of(timestepIndex, timesteps, bDay, bMth);
+
+        return timestepIndex;
     }
 
     /*
@@ -368,26 +403,7 @@ public class Action extends EPOCObject<Action> {
      * and have birthday/month placeholders(99) replaced with actual figures passed
      */
     public Timestep[] getTimestepArrayClone(int bDay, int bMth) {
-        Timestep[] tList = new Timestep[timesteps.size()];
-        int i = 0;
-
-        for (Timestep ts : timesteps) {
-            Timestep newTS = ts.clone(EPOC_CLN, null);
-
-            int sd = (newTS.getStartDay() == 99) ? bDay : newTS.getStartDay();
-            int sm = (newTS.getStartMonth() == 99) ? bMth : newTS.getStartMonth();
-            int ed = (newTS.getEndDay() == 99) ? bDay : newTS.getEndDay();
-            int em = (newTS.getEndMonth() == 99) ? bMth : newTS.getEndMonth();
-            newTS.setSteps(sd, sm, ed, em);
-
-            tList[i] = newTS;
-            i++;
-        }
-
-        // Sort list
-        Arrays.sort(tList);
-
-        return tList;
+        return getTimestepIndex(bDay, bMth).getTimestepClones();
     }
 
     /**
@@ -423,10 +439,13 @@ public class Action extends EPOCObject<Action> {
             return false;
         }
 
+        // deletes and save are written in a single transaction
+        storage.beginTransaction();
+
         // check delete list for any timesteps needing deletion
-        if (!doDeletes()) return false;
+        boolean retVal = (doDeletes() && super.saveToStorage());
 
-        if (!super.saveToStorage()) return false;
+        if (!storage.endTransaction(retVal)) return false;
 
         return true;
     }
@@ -436,41 +455,45 @@ public class Action extends EPOCObject<Action> {
      */
     public boolean doDeletes() {
 
-        for (Timestep ts : deleteTimestepList) {
-            if (!storage.delete(ts)) return false;
-        }
-        // reset delete action list
-        deleteTimestepList.clear();
+        if (storage.delete(deleteTimestepList, true) < 0) return false;
+        // reset delete action list once the deletes are committed
+        clearAfterCommit(storage, deleteTimestepList);
 
         return true;
     }
 
     /*
-     * Write self as text, in the form of an R assignment, to FileWriter
+     * Write self as text, in the form of an R assignment, to file under dirPath
      */
     public void writeAsR(String dirPath, String elementEPOCClass) {
+        REmitter emitter = new REmitter();
+        writeAsR(dirPath, elementEPOCClass, emitter);
+        emitter.finish();
+    }
+
+    /*
+     * Write self as text, in the form of an R assignment, through emitter.
+     * Nothing is written if the file is current in the emitter's manifest.
+     */
+    public void writeAsR(String dirPath, String elementEPOCClass, REmitter emitter) {
         File outputFile = new File(dirPath + File.separator + "code" + File.separator + getDisplayName() + ".R");
+        long stamp = GenerationManifest.stamp(GenerationManifest.stamp(0, this), elementEPOCClass);
+        if (emitter.isCurrent(outputFile, this, stamp)) return;
         Date dt = new Date();
 
-        try {
-            outputFile.createNewFile();
-            FileWriter out = new FileWriter(outputFile);
+        StringBuilder out = emitter.getBuilder();
 
-            out.write("########################################################\n");
-            out.write("# ACTION - " + shortname + " (" + revision + ")\n");
-            out.write("# Description: " + super.prependEachLine(description, "#              ") + "\n");
-            out.write("#\n");
-            out.write("# Generated by EPOC Builder\n");
-            out.write("# Date: " + dt.toString() + "\n");
-            out.write("########################################################\n\n");
+        out.append("########################################################\n");
+        out.append("# ACTION - " + shortname + " (" + revision + ")\n");
+        out.append("# Description: " + super.prependEachLine(description, "#              ") + "\n");
+        out.append("#\n");
+        out.append("# Generated by EPOC Builder\n");
+        out.append("# Date: " + dt.toString() + "\n");
+        out.append("########################################################\n\n");
 
-            out.write(getSetMethodStr(elementEPOCClass));
+        out.append(getSetMethodStr(elementEPOCClass));
 
-            out.close();
-        }
-        catch (Exception ex) {
-            ex.printStackTrace();
-        }
+        emitter.emit(outputFile, out, this, stamp);
     }
 
     public String getSetMethodStr(String elementEPOCClass) {
@@ -535,7 +558,7 @@ public class Action extends EPOCObject<Action> {
             setMethod += "\t{\n";
         }
 
-        setMethod += "\t\t" + prependEachLine(code, "\t\t") + "\n";
+        setMethod += "\t\t" + prependEachLine(getCode(), "\t\t") + "\n";
         if (isSetup()) setMethod += "\t\treturn(ptSA)\n";
         setMethod += "\t}\n";
         setMethod += ")";
@@ -544,11 +567,23 @@ public class Action extends EPOCObject<Action> {
     }
 
     public boolean validate(Element ele, Universe uni) {
+        boolean passed = validateStructure(ele, uni);
+        if (!validateCode()) passed = false;
+
+        return passed;
+    }
+
+    /**
+     * Java side checks of linked timesteps, datasets, transforms and related
+     * elements.  Does not use the R engine so may be called from any thread.
+     * @param ele parent element
+     * @param uni
+     * @return
+     */
+    public boolean validateStructure(Element ele, Universe uni) {
         boolean passed = true;
         ArrayList<Attribute> attList = ele.getAttributes();
 
-        rex.clear();
-
         if (isAction()) {
             boolean found = false, hasTS = false;
 
@@ -581,6 +616,16 @@ public class Action extends EPOCObject<Action> {
                 passed = false;
             }
 
+            // Check that no timesteps overlap
+            TimestepIndex tsIndex = getTimestepIndex(ele.getBirthDay(), ele.getBirthMonth());
+            for (int i = 0 ; i < tsIndex.size() ; i++) {
+                if (tsIndex.getOverlapping(tsIndex.getSpan(i).getTimestep()) != null) {
+                    Messages.addErrMsg("Action contains overlapping timesteps!");
+                    passed = false;
+                    break;
+                }
+            }
+
             // Check for presence of transform action
             if (this.getTransform() != null) {
                 found = false;
@@ -645,16 +690,19 @@ public class Action extends EPOCObject<Action> {
             }
         }
 
-        if (rex.hasEngine()) {
-            if (!rex.parse(getCode())) passed = false;
-        } else {
-            Messages.addErrMsg("No JRI Engine found!\nUnable to parse R code!");
-            passed = false;
-        }
-
         return passed;
     }
 
+    /**
+     * Parse code as R code.  May use the R engine so should only be called
+     * from the thread which owns it, unless RSyntaxChecker has already found
+     * code to be valid.
+     * @return
+     */
+    public boolean validateCode() {
+        return parseR(getCode());
+    }
+
     /**
      * Copy all data members into this object effectively updating this
      * object with any changes from a copy.  This does not update any child
@@ -673,7 +721,7 @@ public class Action extends EPOCObject<Action> {
         transform = act.getTransform();
         relatedUIDs = act.relatedUIDs;
         relatedElements = act.getRelatedElements();
-        code = act.getCode();
+        code = act.code.boundTo(uid);
 
         deleteTimestepList = act.deleteTimestepList;
     }
@@ -731,11 +779,37 @@ public class Action extends EPOCObject<Action> {
         }
         */
         // The code
-        if (!act.getCode().equals(code)) return false;
+        if (act.code != code && !act.getCode().equals(getCode())) return false;
 
         return true;
     }
 
+    @Override
+    protected long foldOwnMembers(long fp) {
+        return Fingerprint.fold(super.foldOwnMembers(fp), acttype);
+    }
+
+    /*
+     * Fold in timesteps and linked objects in the order compare() looks at
+     * them.  Code is left out so that it need not be loaded.
+     */
+    @Override
+    public long getFingerprint(boolean superficial) {
+        if (isBroken()) return Fingerprint.NONE;
+
+        long fp = getOwnFingerprint(superficial);
+        fp = Fingerprint.fold(fp, timesteps.size());
+        for (Timestep ts : timesteps) fp = Fingerprint.fold(fp, ts, superficial);
+        fp = Fingerprint.fold(fp, getTransform(), superficial);
+        fp = Fingerprint.fold(fp, getDataset(), superficial);
+        fp = Fingerprint.fold(fp, getRelatedElements().size());
+        for (Element ele : getRelatedElements()) {
+            fp = Fingerprint.foldChild(fp, ele.getFingerprint(superficial, false));
+        }
+
+        return Fingerprint.finish(fp);
+    }
+
     /**
      * Flag all linked objects as broken links.  This method does not clone
      * objects before breaking the links.  If you want to retain the original
@@ -793,14 +867,17 @@ public class Action extends EPOCObject<Action> {
         if (linkObj.getClass() == replObj.getClass()) {
             if (linkObj instanceof Action && transform != null && linkObj.equals(transform)) {
                 transform = (Action)replObj;
+                markModified();
             }
 
             if (linkObj instanceof Attribute && dataset != null && linkObj.equals(dataset)) {
                 dataset = (Attribute)replObj;
+                markModified();
             }
 
             if (linkObj instanceof Element && relatedElements.indexOf(linkObj) >= 0) {
                 relatedElements.set(relatedElements.indexOf(linkObj), (Element)replObj);
+                markModified();
             }
 
             for (Timestep ts : timesteps) ts.replaceLinkWith(linkObj, replObj);
@@ -973,6 +1050,7 @@ public class Action extends EPOCObject<Action> {
 
         // Hollow out clone
         act.timesteps = new ArrayList();
+        act.timestepIndex = null;
         act.transformUID = 0;
         act.transform = null;
         act.relatedUIDs = new ArrayList();
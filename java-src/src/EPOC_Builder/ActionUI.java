@@ -225,7 +225,7 @@ public class ActionUI extends OpposingPanelUI {
 
         // Add both universe member elements and templated ones
         if (element != null) {
-            availList = universe.getElements(OBJ_ELE);
+            availList = new ArrayList(universe.getElements(OBJ_ELE));
             // Dont show this actions parent element as a choice
             availList.remove(element);
         }
@@ -257,10 +257,12 @@ public class ActionUI extends OpposingPanelUI {
     
     private void loadTimesteps() {
         Timestep[] list = action.getTimestepArray(true);
+        TimestepIndex tsIndex = action.getTimestepIndex((element != null ? element.getBirthDay() : 0),
+                                                        (element != null ? element.getBirthMonth() : 0));
         
         jListTimesteps.setListData(list);
         //create Renderer and display
-        jListTimesteps.setCellRenderer(new TimestepCellRenderer());
+        jListTimesteps.setCellRenderer(new TimestepCellRenderer(tsIndex));
     }
 
     public void updateFormLayout() {
@@ -1017,8 +1019,8 @@ public class ActionUI extends OpposingPanelUI {
         //that selected dates do not overlap with existing dates
         Timestep overlap = action.getOverlappingTimestep(stDay, stMth, enDay, enMth,
                                                          (element != null ? element.getBirthDay() : 0),
-                                                         (element != null ? element.getBirthMonth() : 0));
-        if (overlap != null && overlap != selTS) {
+                                                         (element != null ? element.getBirthMonth() : 0), selTS);
+        if (overlap != null) {
             JOptionPane.showMessageDialog(this, "Timestep overlaps with an existing Timestep!");
             return;
         }
@@ -1120,7 +1122,7 @@ public class ActionUI extends OpposingPanelUI {
             action.addDeleteList(ts);
         }
         
-        action.getTimesteps().remove((Timestep)jListTimesteps.getSelectedValue());
+        action.removeTimestep((Timestep)jListTimesteps.getSelectedValue());
         
         loadTimesteps();
         setModified(true);
@@ -30,7 +30,7 @@ import java.io.FileWriter;
  ******************************************************************************/
 public class Attribute extends EPOCObject<Attribute> {
 
-    private String value = "";
+    private LazyText value = LazyText.EMPTY;
     
     /** Creates a new instance of Attribute */
     public Attribute() {
@@ -48,11 +48,31 @@ public class Attribute extends EPOCObject<Attribute> {
     }
   
     public void setValue(String attrVal) {
-        value = attrVal;
+        value = LazyText.of(attrVal);
+        markModified();
+    }
+
+    /**
+     * Set value from storage, to be loaded when first asked for
+     * @param text
+     */
+    void setValueText(LazyText text) {
+        value = text;
+    }
+
+    /**
+     * Return value handle, so storage can tell if value is unchanged
+     * @return
+     */
+    LazyText getValueText() { return value; }
+
+    @Override
+    protected void rebindText() {
+        value = value.boundTo(uid);
     }
     
     public String getValue() {
-        return value;
+        return value.get();
     }
     
     /*
@@ -75,11 +95,22 @@ public class Attribute extends EPOCObject<Attribute> {
     }
 
     public boolean validate(Element ele) {
+        boolean passed = validateStructure(ele);
+        if (!validateCode()) passed = false;
+
+        return passed;
+    }
+
+    /**
+     * Java side checks of value against element.  Does not use the R engine
+     * so may be called from any thread.
+     * @param ele parent element
+     * @return
+     */
+    public boolean validateStructure(Element ele) {
         boolean passed = true;
         int next = 0, starting = 0;
 
-        rex.clear();
-
         // check all attributes used in value exist
         while ((next = getValue().indexOf(EPOC_ELESTR, starting)) != -1) {
 
@@ -111,17 +142,19 @@ public class Attribute extends EPOCObject<Attribute> {
             starting = starting + attstr.length();
         }
 
-        // parse code using JRI
-        if (rex.hasEngine()) {
-            if (!rex.parse(getValue())) passed = false;
-        } else {
-            Messages.addErrMsg("No JRI Engine found!\nUnable to parse R code!");
-            passed = false;
-        }
-
         return passed;
     }
 
+    /**
+     * Parse value as R code.  May use the R engine so should only be called
+     * from the thread which owns it, unless RSyntaxChecker has already found
+     * value to be valid.
+     * @return
+     */
+    public boolean validateCode() {
+        return parseR(getValue());
+    }
+
     /**
      * Copy all data members into this object effectively updating this
      * object with any changes from a copy.  This does not update any child
@@ -132,7 +165,7 @@ public class Attribute extends EPOCObject<Attribute> {
     public void updateDataMembersFrom(Attribute att) {
         super.updateDataMembersFrom(att);
 
-        value = att.getValue();
+        value = att.value.boundTo(uid);
     }
 
     /*
@@ -148,26 +181,22 @@ public class Attribute extends EPOCObject<Attribute> {
         
         if (!super.compare(att, superficial)) return false;
         
-        if (!att.getValue().equals(value)) return false;
+        if (att.value != value && !att.getValue().equals(getValue())) return false;
         
         return true;
     }
     
     /*
-     * Write self as text, in the form of an R assignment, to FileWriter
+     * Write self as text, in the form of an R assignment, to StringBuilder
      */
-    public void writeAsR(FileWriter out, String varName) {
-        try {
-            out.write("### " + shortname + " (" + revision + ")\n");
-            out.write("# Description: " + super.prependEachLine(description, "#             ") + "\n");
-            if (!value.equals("")) {
-                String val = value.replaceAll(EPOC_ELESTR, varName);
-                val = super.prependEachLine(val, "\t\t\t\t\t\t");
-                out.write(varName + "$" + shortname + "         <- " + val + "\n\n");
-            }
-        }
-        catch (Exception ex) {
-            ex.printStackTrace();
+    public void writeAsR(StringBuilder out, String varName) {
+        out.append("### " + shortname + " (" + revision + ")\n");
+        out.append("# Description: " + super.prependEachLine(description, "#             ") + "\n");
+        String val = getValue();
+        if (!val.equals("")) {
+            val = val.replace(EPOC_ELESTR, varName);
+            val = super.prependEachLine(val, "\t\t\t\t\t\t");
+            out.append(varName + "$" + shortname + "         <- " + val + "\n\n");
         }
     }
 
@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * BackupManager.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.*;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*******************************************************************************
+ * Incremental online backups of a Derby database, kept as chains in a
+ * directory beside it, and restore of any point in those chains into a new
+ * database.
+ *
+ * A chain starts with a full backup taken with Derby log archiving enabled,
+ * so that Derby keeps every log file written after it.  Each incremental
+ * backup then copies only the log files written since the last, completed
+ * files into the chain's shared log directory and the log file still being
+ * written into a directory of its own for that restore point.  Restoring a
+ * point copies the full backup, lays the chain's log files up to that point
+ * over its log, and leaves Derby's recovery to replay them when the restored
+ * database is first opened, as rollForwardRecoveryFrom does for the live log.
+ *
+ *   <database>.backups/chain-<time>/base/<database>   full backup
+ *   <database>.backups/chain-<time>/log/log<n>.dat    completed log files
+ *   <database>.backups/chain-<time>/points/<time>/    active log file at each point
+ *
+ * Backups are taken on a connection of their own, so may be run on a
+ * background thread while work carries on through the storage connection.
+ * A new chain is started when none exists, when the last has had
+ * EPOC_BACKUP_INCREMENTS increments, or when log files it needs are missing,
+ * and only the newest EPOC_BACKUP_CHAINS chains are kept.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public class BackupManager {
+
+    private static final String CHAIN_PREFIX = "chain-";
+    private static final String BASE_DIR = "base";
+    private static final String LOG_DIR = "log";
+    private static final String POINTS_DIR = "points";
+    private static final String TIME_FORMAT = "yyyyMMdd-HHmmss-SSS";
+    private static final Pattern LOG_FILE = Pattern.compile("log(\\d+)\\.dat");
+
+    /**
+     * A time the database may be restored to
+     */
+    public static class RestorePoint {
+        private File chain;
+        private File point;
+        private java.util.Date time;
+        private long activeLog;
+
+        RestorePoint(File chain, File point, java.util.Date time, long activeLog) {
+            this.chain = chain;
+            this.point = point;
+            this.time = time;
+            this.activeLog = activeLog;
+        }
+
+        public java.util.Date getTime() {
+            return time;
+        }
+
+        /**
+         * Return true if this is the full backup starting a chain
+         */
+        public boolean isFull() {
+            return point == null;
+        }
+
+        @Override
+        public String toString() {
+            return new SimpleDateFormat("dd/MM/yyyy HH:mm:ss").format(time) + (isFull() ? " (full)" : " (incremental)");
+        }
+    }
+
+    private File dbDir;
+    private String protocol;
+    private Properties props;
+    private File root;
+
+    /**
+     * @param dbDir directory of the live database
+     * @param protocol JDBC protocol prefix of database urls
+     * @param props connection properties
+     */
+    BackupManager(File dbDir, String protocol, Properties props) {
+        this.dbDir = dbDir;
+        this.protocol = protocol;
+        this.props = props;
+        root = new File(dbDir.getParentFile(), dbDir.getName() + ".backups");
+    }
+
+    public File getBackupDir() {
+        return root;
+    }
+
+    /**
+     * Return directory of database dbName as Derby finds it, relative names
+     * being under derby.system.home or else the working directory
+     * @param dbName
+     * @return
+     */
+    static File getDatabaseDir(String dbName) {
+        File dir = new File(dbName);
+        if (dir.isAbsolute()) return dir;
+
+        return new File(System.getProperty("derby.system.home", System.getProperty("user.dir")), dbName);
+    }
+
+    /**
+     * Back up the database, as an increment of the last chain if possible
+     * @param full start a new chain with a full backup regardless
+     * @return restore point of backup, or null on failure
+     */
+    public synchronized RestorePoint backup(boolean full) {
+        try {
+            File chain = getLastChain();
+            if (!full && chain != null && isArchiving() && points(chain).size() < EPOC_BACKUP_INCREMENTS) {
+                RestorePoint rp = increment(chain);
+                if (rp != null) return rp;
+            }
+
+            return startChain();
+        } catch (SQLException se) {
+            for (SQLException e = se ; e != null ; e = e.getNextException()) Messages.addErrMsg(e.toString());
+        } catch (IOException ioe) {
+            Messages.addErrMsg("Backup failed: " + ioe.toString());
+        }
+
+        return null;
+    }
+
+    /*
+     * Take a full backup into a new chain, enabling log archiving so later
+     * increments find every log file since, and drop the oldest chains
+     */
+    private RestorePoint startChain() throws SQLException, IOException {
+        java.util.Date now = new java.util.Date();
+        File chain = new File(root, CHAIN_PREFIX + new SimpleDateFormat(TIME_FORMAT).format(now));
+        File base = new File(chain, BASE_DIR);
+        Files.createDirectories(base.toPath());
+
+        Connection bc = DriverManager.getConnection(protocol + dbDir.getPath(), props);
+        try {
+            // archived log files older than this backup are no longer needed
+            PreparedStatement ps = bc.prepareStatement(
+                    "CALL SYSCS_UTIL.SYSCS_BACKUP_DATABASE_AND_ENABLE_LOG_ARCHIVE_MODE(?, 1)");
+            ps.setString(1, base.getPath());
+            ps.execute();
+            ps.close();
+        } catch (SQLException se) {
+            delete(chain);
+            throw se;
+        } finally {
+            bc.close();
+        }
+        Files.createDirectories(new File(chain, LOG_DIR).toPath());
+        Files.createDirectories(new File(chain, POINTS_DIR).toPath());
+
+        List<File> chains = getChains();
+        for (int i = 0 ; i < chains.size() - EPOC_BACKUP_CHAINS ; i++) {
+            try {
+                delete(chains.get(i));
+            } catch (IOException ioe) {
+                // tried again after the next full backup
+                if (EPOC_DBG) System.out.println("Could not remove old backup " + chains.get(i) + ": " + ioe);
+            }
+        }
+        if (EPOC_DBG) System.out.println("Full backup of " + dbDir + " to " + base);
+
+        return new RestorePoint(chain, null, now, baseLog(chain));
+    }
+
+    /*
+     * Copy log files written since the last increment of chain, returning
+     * null if any the chain needs have already gone
+     */
+    private RestorePoint increment(File chain) throws IOException {
+        TreeMap<Long, File> live = logFiles(new File(dbDir, LOG_DIR));
+        File chainLog = new File(chain, LOG_DIR);
+        TreeMap<Long, File> copied = logFiles(chainLog);
+        long first = baseLog(chain);
+        if (live.isEmpty() || first < 0) return null;
+
+        long active = live.lastKey();
+        for (long n = first ; n < active ; n++) {
+            if (!live.containsKey(n) && !copied.containsKey(n)) return null;
+        }
+
+        // completed log files never change again so are only copied once
+        for (Map.Entry<Long, File> log : live.subMap(first, active).entrySet()) {
+            File copy = copied.get(log.getKey());
+            if (copy == null || copy.length() != log.getValue().length()) {
+                Files.copy(log.getValue().toPath(), new File(chainLog, log.getValue().getName()).toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        // the active log file is copied as far as it has been written, which
+        // recovery treats as it would the log of a crashed database
+        java.util.Date now = new java.util.Date();
+        File point = new File(chain, POINTS_DIR + File.separator + new SimpleDateFormat(TIME_FORMAT).format(now));
+        Files.createDirectories(point.toPath());
+        File activeFile = live.get(active);
+        Files.copy(activeFile.toPath(), new File(point, activeFile.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (EPOC_DBG) System.out.println("Incremental backup of " + dbDir + " to " + point + ", log " + first + " to " + active);
+
+        return new RestorePoint(chain, point, now, active);
+    }
+
+    /**
+     * Return every restore point of every chain, oldest first
+     * @return
+     */
+    public synchronized ArrayList<RestorePoint> getRestorePoints() {
+        ArrayList<RestorePoint> rps = new ArrayList();
+
+        for (File chain : getChains()) {
+            java.util.Date time = parseTime(chain.getName().substring(CHAIN_PREFIX.length()));
+            if (time == null || !new File(chain, BASE_DIR + File.separator + dbDir.getName()).isDirectory()) continue;
+            rps.add(new RestorePoint(chain, null, time, baseLog(chain)));
+
+            for (File point : points(chain)) {
+                TreeMap<Long, File> logs = logFiles(point);
+                time = parseTime(point.getName());
+                if (time != null && !logs.isEmpty()) rps.add(new RestorePoint(chain, point, time, logs.lastKey()));
+            }
+        }
+
+        return rps;
+    }
+
+    /**
+     * Restore rp into a new database named dbName, leaving the live database
+     * open.  The restored database is brought up to rp when it is first
+     * opened.
+     * @param rp
+     * @param dbName
+     * @return false on failure
+     */
+    public synchronized boolean restore(RestorePoint rp, String dbName) {
+        File dest = getDatabaseDir(dbName);
+        if (dest.exists()) {
+            Messages.addErrMsg("Database " + dbName + " already exists.");
+            return false;
+        }
+
+        try {
+            copyTree(new File(rp.chain, BASE_DIR + File.separator + dbDir.getName()).toPath(), dest.toPath());
+
+            if (!rp.isFull()) {
+                File destLog = new File(dest, LOG_DIR);
+                for (File log : logFiles(new File(rp.chain, LOG_DIR)).headMap(rp.activeLog).values()) {
+                    Files.copy(log.toPath(), new File(destLog, log.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                for (File log : logFiles(rp.point).values()) {
+                    Files.copy(log.toPath(), new File(destLog, log.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (IOException ioe) {
+            Messages.addErrMsg("Restore failed: " + ioe.toString());
+            try {
+                delete(dest);
+            } catch (IOException e) {
+                // leave what was copied
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /*
+     * Return true if log archiving is still enabled for the live database
+     */
+    private boolean isArchiving() {
+        Properties sp = new Properties();
+        try {
+            InputStream in = new FileInputStream(new File(dbDir, "service.properties"));
+            try {
+                sp.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ioe) {
+            return false;
+        }
+
+        return Boolean.parseBoolean(sp.getProperty("derby.storage.logArchiveMode"));
+    }
+
+    /*
+     * Return number of the log file being written when chain's full backup
+     * was taken, from which increments of the chain must copy
+     */
+    private long baseLog(File chain) {
+        TreeMap<Long, File> logs = logFiles(new File(chain, BASE_DIR + File.separator + dbDir.getName() + File.separator + LOG_DIR));
+
+        return (logs.isEmpty() ? -1 : logs.lastKey());
+    }
+
+    private List<File> getChains() {
+        ArrayList<File> chains = new ArrayList();
+        File[] dirs = root.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.isDirectory() && dir.getName().startsWith(CHAIN_PREFIX)) chains.add(dir);
+            }
+        }
+        // names sort by time
+        Collections.sort(chains);
+
+        return chains;
+    }
+
+    private File getLastChain() {
+        List<File> chains = getChains();
+
+        return (chains.isEmpty() ? null : chains.get(chains.size() - 1));
+    }
+
+    private List<File> points(File chain) {
+        ArrayList<File> points = new ArrayList();
+        File[] dirs = new File(chain, POINTS_DIR).listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.isDirectory()) points.add(dir);
+            }
+        }
+        Collections.sort(points);
+
+        return points;
+    }
+
+    /*
+     * Return Derby log files in dir by their number
+     */
+    private static TreeMap<Long, File> logFiles(File dir) {
+        TreeMap<Long, File> logs = new TreeMap();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher m = LOG_FILE.matcher(file.getName());
+                if (file.isFile() && m.matches()) logs.put(Long.parseLong(m.group(1)), file);
+            }
+        }
+
+        return logs;
+    }
+
+    private static java.util.Date parseTime(String stamp) {
+        try {
+            return new SimpleDateFormat(TIME_FORMAT).parse(stamp);
+        } catch (ParseException pe) {
+            return null;
+        }
+    }
+
+    private static void copyTree(final Path from, final Path to) throws IOException {
+        Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(to.resolve(from.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, to.resolve(from.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void delete(File dir) throws IOException {
+        if (!dir.exists()) return;
+
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException ioe) throws IOException {
+                if (ioe != null) throw ioe;
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
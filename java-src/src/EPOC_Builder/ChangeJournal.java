@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * ChangeJournal.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import java.util.*;
+
+/*******************************************************************************
+ * Journal of EPOC objects modified since they were last loaded from or saved
+ * to storage.  One journal is held by each Templates object and so covers
+ * the universe and templates sharing it.
+ *
+ * Objects record themselves as they are mutated and are removed once storage
+ * has loaded or saved them, or once they are deleted or removed from their
+ * parent, so whether anything is outstanding can be answered without
+ * reloading and comparing against storage.  Copies made by clone() are not
+ * recorded until storage has loaded or saved them.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public class ChangeJournal {
+
+    private IdentityHashMap<EPOCObject, Entry> entries = new IdentityHashMap();
+    private int templateEntries = 0;
+    private long mutations = 0;
+
+    /**
+     * Record a mutation of obj
+     * @param obj
+     */
+    void record(EPOCObject obj) {
+        Entry entry = entries.get(obj);
+
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(obj, entry);
+        } else if (entry.template) {
+            templateEntries--;
+        }
+        entry.template = obj.isTemplate();
+        if (entry.template) templateEntries++;
+        entry.mutations++;
+        mutations++;
+    }
+
+    /**
+     * Remove obj from journal as it now matches storage
+     * @param obj
+     */
+    void remove(EPOCObject obj) {
+        Entry entry = entries.remove(obj);
+        if (entry != null && entry.template) templateEntries--;
+    }
+
+    /**
+     * Remove all objects from journal
+     */
+    public void clear() {
+        entries.clear();
+        templateEntries = 0;
+    }
+
+    /**
+     * Are there any objects with outstanding changes
+     * @return
+     */
+    public boolean isEmpty() { return entries.isEmpty(); }
+
+    /**
+     * Are there any template objects with outstanding changes
+     * @return
+     */
+    public boolean hasTemplateChanges() { return (templateEntries > 0); }
+
+    /**
+     * Are there any non-template (universe member) objects with outstanding changes
+     * @return
+     */
+    public boolean hasMemberChanges() { return (entries.size() > templateEntries); }
+
+    /**
+     * Is obj recorded as having outstanding changes
+     * @param obj
+     * @return
+     */
+    public boolean contains(EPOCObject obj) { return entries.containsKey(obj); }
+
+    /**
+     * Number of objects with outstanding changes
+     * @return
+     */
+    public int size() { return entries.size(); }
+
+    /**
+     * Number of mutations recorded against obj since it was last loaded or saved
+     * @param obj
+     * @return
+     */
+    public int getMutationCount(EPOCObject obj) {
+        Entry entry = entries.get(obj);
+        return (entry != null ? entry.mutations : 0);
+    }
+
+    /**
+     * Total number of mutations recorded over the life of the journal
+     * @return
+     */
+    public long getMutationCount() { return mutations; }
+
+    /**
+     * Return list of objects with outstanding changes
+     * @return
+     */
+    public ArrayList<EPOCObject> getModifiedObjects() {
+        return new ArrayList(entries.keySet());
+    }
+
+    @Override
+    public String toString() {
+        return "Change journal: " + entries.size() + " modified objects (" + templateEntries
+                + " templates), " + mutations + " mutations";
+    }
+
+    private static class Entry {
+        boolean template = false;
+        int mutations = 0;
+    }
+}
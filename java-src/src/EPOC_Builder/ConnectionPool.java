@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * ConnectionPool.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+import java.sql.*;
+import java.util.*;
+
+/*******************************************************************************
+ * Pool of read only connections to the open database, each with its own
+ * statement cache, so that loads and queries on different threads can run
+ * in parallel with each other and with writes on the write connection.
+ *
+ * Connections are opened as first needed, up to the pool size, after which
+ * acquire() waits for one to be released.  Each read runs at read committed
+ * isolation so sees only committed work, and is committed on release to
+ * drop any locks it holds.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+class ConnectionPool {
+
+    private String url;
+    private Properties props;
+    private int size;
+    private LinkedList<StatementCache> idle = new LinkedList();
+    private ArrayList<StatementCache> opened = new ArrayList();
+    private boolean closed = false;
+    private long acquired = 0, waited = 0;
+
+    ConnectionPool(String url, Properties props, int size) {
+        this.url = url;
+        this.props = props;
+        this.size = Math.max(1, size);
+    }
+
+    /**
+     * Return statements of an idle connection, opening one if the pool is not
+     * yet full or else waiting for one to be released
+     * @return
+     * @throws SQLException if the pool is closed or a connection can't be opened
+     */
+    synchronized StatementCache acquire() throws SQLException {
+        boolean interrupted = false;
+
+        try {
+            while (idle.isEmpty()) {
+                if (closed) throw new SQLException("Read connection pool closed");
+                if (opened.size() < size) {
+                    StatementCache sc = open();
+                    opened.add(sc);
+                    acquired++;
+                    return sc;
+                }
+                waited++;
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        acquired++;
+
+        return idle.removeFirst();
+    }
+
+    /**
+     * Return connection of sc to the pool, ending its read
+     * @param sc
+     */
+    void release(StatementCache sc) {
+        boolean ok = true;
+        try {
+            sc.getConnection().commit();
+        } catch (SQLException se) {
+            ok = false;
+        }
+
+        synchronized (this) {
+            if (closed || !ok) {
+                // broken or no longer wanted
+                opened.remove(sc);
+                close(sc);
+            } else {
+                idle.addFirst(sc);
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Close all idle connections, those in use being closed when released
+     */
+    synchronized void close() {
+        closed = true;
+        for (StatementCache sc : idle) {
+            opened.remove(sc);
+            close(sc);
+        }
+        idle.clear();
+        notifyAll();
+    }
+
+    private StatementCache open() throws SQLException {
+        if (EPOC_DBG) System.out.println("Opening read connection " + (opened.size() + 1) + " to " + url);
+        Connection rc = DriverManager.getConnection(url, props);
+        rc.setAutoCommit(false);
+        rc.setReadOnly(true);
+        rc.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+
+        return new StatementCache(rc);
+    }
+
+    private void close(StatementCache sc) {
+        sc.close();
+        try {
+            sc.getConnection().close();
+        } catch (SQLException se) {
+            // already gone
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Read connections: " + opened.size() + "/" + size + " open, " + idle.size() + " idle, "
+                + acquired + " acquired, " + waited + " waits";
+    }
+}
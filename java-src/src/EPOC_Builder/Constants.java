@@ -83,7 +83,7 @@ public class Constants {
 
     //*** Setting defaults ***//ivot
     // Current version number - must change if DB schema changes
-    public static final String EPOC_VER = "0.4.1";
+    public static final String EPOC_VER = "0.4.3";
     // Default DB name
     public static final String DB_NAME = "EpocDB";
     public static final String DB_USR = "epoc";
@@ -92,6 +92,24 @@ public class Constants {
     public static String EPOC_DBVER = EPOC_VER;
     // Debug flag
     public static boolean EPOC_DBG = false;
+    // Check change journal against storage in isModified() (slow, debug only)
+    public static boolean EPOC_DBG_JOURNAL = false;
+    // Characters of code/value text loaded on demand to keep cached
+    public static int EPOC_TEXT_CACHE_CHARS = 4 * 1024 * 1024;
+    // Keep code/value text evicted from cache softly reachable
+    public static boolean EPOC_TEXT_CACHE_SOFT = true;
+    // Number of objects whose loaded storage results are cached
+    public static int EPOC_OBJECT_CACHE_SIZE = 5000;
+    // Number of read only connections pooled for loads on concurrent threads
+    public static int EPOC_READ_CONNECTIONS = 4;
+    // Backup chains, each a full backup and its incremental backups, kept per database
+    public static int EPOC_BACKUP_CHAINS = 3;
+    // Incremental backups taken in a chain before a new full backup is taken
+    public static int EPOC_BACKUP_INCREMENTS = 24;
+    // Directories, separated by the path separator, searched for databases besides the database home
+    public static String EPOC_DB_ROOTS = "";
+    // Number of threads listing and measuring databases in the catalogue
+    public static int EPOC_CATALOGUE_THREADS = 4;
     // Code element name placeholder string
     public static String EPOC_ELESTR = "EPOC_ELE";
     // Missing object name placeholder string
@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * DatabaseCatalogue.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*******************************************************************************
+ * Catalogue of the Derby databases found in the database home directory, and
+ * in any further directories listed by EPOC_DB_ROOTS, with the size, EPOC
+ * schema version and last modified time of each found without opening it.
+ *
+ * Roots are listed and databases measured in parallel.  Results are cached
+ * until a WatchService reports a change to a root or to the directories of
+ * a database, so only changed entries are looked at again.  The schema
+ * version is read from a small properties file which DerbyStorage writes
+ * beside a database's Derby files whenever it opens it, and is left blank
+ * for databases not opened since.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public class DatabaseCatalogue {
+
+    private static final String VERSION_FILE = "epoc.properties";
+    private static final String VERSION_KEY = "Version";
+    private static final String[] WATCHED_DIRS = {"seg0", "log"};
+
+    /**
+     * A database found by the catalogue
+     */
+    public static class DatabaseInfo {
+        private String name;
+        private File dir;
+        private long size;
+        private String version;
+        private long modified;
+
+        DatabaseInfo(String name, File dir, long size, String version, long modified) {
+            this.name = name;
+            this.dir = dir;
+            this.size = size;
+            this.version = version;
+            this.modified = modified;
+        }
+
+        /**
+         * Return name by which to open the database, a path if it is not
+         * in the database home directory
+         */
+        public String getName() {
+            return name;
+        }
+
+        public File getDirectory() {
+            return dir;
+        }
+
+        /**
+         * Return total size in bytes of the database's files
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Return EPOC schema version, blank if not known
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Return time of the most recent change to any of the database's files
+         */
+        public java.util.Date getModified() {
+            return new java.util.Date(modified);
+        }
+
+        @Override
+        public String toString() {
+            return name + "  (" + (version.equals("") ? "version unknown" : "v" + version) + ", "
+                    + formatSize(size) + ", modified "
+                    + new SimpleDateFormat("dd/MM/yyyy HH:mm").format(getModified()) + ")";
+        }
+    }
+
+    private static DatabaseCatalogue _instance = null;
+
+    private ExecutorService executor;
+    private WatchService watcher = null;
+    // Owner of each watched directory, a root or a database directory
+    private HashMap<WatchKey, Path> watched = new HashMap();
+    private HashSet<Path> roots = new HashSet();
+    // Database directories found in each root
+    private HashMap<Path, List<Path>> listings = new HashMap();
+    private HashMap<Path, DatabaseInfo> infos = new HashMap();
+
+    private DatabaseCatalogue() {
+        executor = Executors.newFixedThreadPool(EPOC_CATALOGUE_THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "EPOC catalogue scan");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    watch();
+                }
+            }, "EPOC catalogue watcher");
+            t.setDaemon(true);
+            t.start();
+        } catch (Exception e) {
+            // without change notification nothing is cached
+            if (EPOC_DBG) e.printStackTrace();
+            watcher = null;
+        }
+    }
+
+    public static synchronized DatabaseCatalogue getInstance() {
+        if (_instance == null) {
+            _instance = new DatabaseCatalogue();
+        }
+
+        return _instance;
+    }
+
+    /**
+     * Return true if dir holds a Derby database
+     * @param dir
+     * @return
+     */
+    public static boolean isDatabase(Path dir) {
+        return Files.isRegularFile(dir.resolve("service.properties")) && Files.isDirectory(dir.resolve("seg0"));
+    }
+
+    /**
+     * Return the databases found in all roots, ordered by name
+     * @return
+     */
+    public synchronized List<DatabaseInfo> getDatabases() {
+        if (watcher == null) {
+            listings.clear();
+            infos.clear();
+        }
+
+        Path home = getHome();
+        LinkedHashSet<Path> current = new LinkedHashSet();
+        current.add(home);
+        for (String root : EPOC_DB_ROOTS.split(File.pathSeparator)) {
+            if (!root.trim().equals("")) current.add(Paths.get(root.trim()).toAbsolutePath().normalize());
+        }
+        roots.retainAll(current);
+        roots.addAll(current);
+        listings.keySet().retainAll(current);
+
+        // list each root not already listed, checking all their entries at once
+        HashMap<Path, List<Path>> dirs = new HashMap();
+        HashMap<Path, Future<Boolean>> checks = new HashMap();
+        for (Path root : current) {
+            if (listings.containsKey(root)) continue;
+            try {
+                dirs.put(root, listRoot(root, checks));
+            } catch (IOException e) {
+                if (EPOC_DBG) e.printStackTrace();
+            }
+        }
+        for (Path root : dirs.keySet()) {
+            ArrayList<Path> dbs = new ArrayList();
+            for (Path dir : dirs.get(root)) {
+                if (Boolean.TRUE.equals(get(checks.get(dir)))) dbs.add(dir);
+            }
+            listings.put(root, dbs);
+        }
+
+        // measure each database not already known
+        HashMap<Path, Future<DatabaseInfo>> measured = new HashMap();
+        HashSet<Path> found = new HashSet();
+        for (Path root : current) {
+            if (!listings.containsKey(root)) continue;
+            for (final Path dir : listings.get(root)) {
+                found.add(dir);
+                if (infos.containsKey(dir)) continue;
+                final String name = (root.equals(home) ? dir.getFileName().toString() : dir.toString());
+                measured.put(dir, executor.submit(new Callable<DatabaseInfo>() {
+                    public DatabaseInfo call() throws Exception {
+                        return describe(name, dir);
+                    }
+                }));
+            }
+        }
+        for (Map.Entry<Path, Future<DatabaseInfo>> info : measured.entrySet()) {
+            DatabaseInfo di = (DatabaseInfo)get(info.getValue());
+            if (di != null) infos.put(info.getKey(), di);
+        }
+        infos.keySet().retainAll(found);
+
+        ArrayList<DatabaseInfo> dbs = new ArrayList(infos.values());
+        Collections.sort(dbs, new Comparator<DatabaseInfo>() {
+            public int compare(DatabaseInfo d1, DatabaseInfo d2) {
+                return d1.getName().compareToIgnoreCase(d2.getName());
+            }
+        });
+
+        return dbs;
+    }
+
+    /**
+     * Forget anything known of database dbName and the root it is in, so they
+     * are looked at again by the next getDatabases()
+     * @param dbName
+     */
+    public synchronized void invalidate(String dbName) {
+        Path dir = BackupManager.getDatabaseDir(dbName).toPath().toAbsolutePath().normalize();
+        infos.remove(dir);
+        listings.remove(dir.getParent());
+    }
+
+    /**
+     * Record EPOC schema version of database dbName beside its Derby files
+     * @param dbName
+     * @param version
+     */
+    public void setVersion(String dbName, String version) {
+        File dir = BackupManager.getDatabaseDir(dbName);
+        Properties props = new Properties();
+        props.setProperty(VERSION_KEY, version);
+
+        try {
+            OutputStream out = new FileOutputStream(new File(dir, VERSION_FILE));
+            try {
+                props.store(out, "EPOC Builder database");
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            // only the catalogue's report of version is lost
+            if (EPOC_DBG) e.printStackTrace();
+        }
+        invalidate(dbName);
+    }
+
+    private static Path getHome() {
+        return BackupManager.getDatabaseDir("").toPath().toAbsolutePath().normalize();
+    }
+
+    /*
+     * Return subdirectories of root, adding to checks a task for each finding
+     * whether it holds a database
+     */
+    private List<Path> listRoot(Path root, HashMap checks) throws IOException {
+        ArrayList<Path> dirs = new ArrayList();
+        if (!Files.isDirectory(root)) return dirs;
+
+        register(root, root);
+        DirectoryStream<Path> stream = Files.newDirectoryStream(root, new DirectoryStream.Filter<Path>() {
+            public boolean accept(Path entry) {
+                return Files.isDirectory(entry);
+            }
+        });
+        try {
+            for (final Path dir : stream) {
+                dirs.add(dir);
+                checks.put(dir, executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        return isDatabase(dir);
+                    }
+                }));
+            }
+        } finally {
+            stream.close();
+        }
+
+        return dirs;
+    }
+
+    /*
+     * Return size, version and last modified time of database in dir, watching
+     * it for changes first so none made while measuring are missed
+     */
+    private DatabaseInfo describe(String name, Path dir) throws IOException {
+        register(dir, dir);
+        for (String sub : WATCHED_DIRS) {
+            if (Files.isDirectory(dir.resolve(sub))) register(dir.resolve(sub), dir);
+        }
+
+        final long[] totals = new long[2];
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                totals[0] += attrs.size();
+                totals[1] = Math.max(totals[1], attrs.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // files of an open database may come and go
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        String version = "";
+        Path verFile = dir.resolve(VERSION_FILE);
+        if (Files.isRegularFile(verFile)) {
+            Properties props = new Properties();
+            InputStream in = Files.newInputStream(verFile);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+            version = props.getProperty(VERSION_KEY, "");
+        }
+
+        return new DatabaseInfo(name, dir.toFile(), totals[0], version, totals[1]);
+    }
+
+    private void register(Path dir, Path owner) throws IOException {
+        if (watcher == null) return;
+
+        WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        synchronized (watched) {
+            watched.put(key, owner);
+        }
+    }
+
+    /*
+     * Drop cached entries as changes are reported, until the application ends
+     */
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path owner;
+            synchronized (watched) {
+                owner = watched.get(key);
+            }
+            List<WatchEvent<?>> events = key.pollEvents();
+            boolean valid = key.reset();
+
+            synchronized (this) {
+                if (!valid) {
+                    synchronized (watched) {
+                        watched.remove(key);
+                    }
+                }
+                if (owner == null) continue;
+
+                for (WatchEvent<?> event : events) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        listings.clear();
+                        infos.clear();
+                    } else if (roots.contains(owner) && owner.equals(key.watchable())) {
+                        // database directories added or removed from root
+                        listings.remove(owner);
+                        infos.remove(owner.resolve((Path)event.context()));
+                    } else {
+                        infos.remove(owner);
+                    }
+                }
+                if (!valid) {
+                    listings.remove(owner);
+                    infos.remove(owner);
+                }
+            }
+        }
+    }
+
+    /*
+     * Return result of task, or null if it failed
+     */
+    private static Object get(Future task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (EPOC_DBG) e.getCause().printStackTrace();
+        }
+
+        return null;
+    }
+
+    static String formatSize(long size) {
+        if (size < 1024) return size + " B";
+        if (size < 1024 * 1024) return String.format("%.1f KB", size / 1024.0);
+        if (size < 1024L * 1024 * 1024) return String.format("%.1f MB", size / (1024.0 * 1024));
+
+        return String.format("%.1f GB", size / (1024.0 * 1024 * 1024));
+    }
+}
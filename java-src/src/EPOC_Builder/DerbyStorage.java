@@ -20,12 +20,15 @@ import static au.gov.aad.erm.EPOC_Builder.Constants.*;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.*;
 import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /*******************************************************************************
  * Backend implementation of Storage interface using Derby Database
@@ -47,6 +50,55 @@ public class DerbyStorage implements Storage {
     static String pwd = DB_PWD;
     
     private static Connection conn;
+    // pre-compiled statements for conn, keyed by storage operation
+    private static StatementCache stmts;
+    // state of transaction begun by beginTransaction()
+    private static int txDepth = 0;
+    private static volatile Thread txOwner = null;
+    private static boolean txFailed = false;
+    private static int rowsWritten = 0;
+    private static Set<PreparedStatement> batched = new LinkedHashSet();
+    private static Set<EPOCObject> savedObjects = Collections.newSetFromMap(new IdentityHashMap());
+    private static Set<EPOCObject> insertedObjects = Collections.newSetFromMap(new IdentityHashMap());
+    private static ArrayList<Runnable> commitTasks = new ArrayList();
+    // Parents, keyed as type << 32 | uid, whose child lists were written
+    private static Set<Long> writtenParents = new LinkedHashSet();
+    // Results objects were loaded from, replayed when loading them again
+    private static ObjectCache objects = new ObjectCache(EPOC_OBJECT_CACHE_SIZE);
+    // Read only connections for loads outside the write transaction, and the
+    // one in use by each thread
+    private static ConnectionPool readers = null;
+    private static ThreadLocal<ReadState> readState = new ThreadLocal<ReadState>() {
+        @Override
+        protected ReadState initialValue() {
+            return new ReadState();
+        }
+    };
+    // Write-behind queue for writes made off the event thread
+    private static StorageWriter writer = null;
+    // Incremental backups of the open database
+    private static BackupManager backups = null;
+
+    // Tables holding revisioned objects, with their index name prefix
+    private static final String[][] REVKEY_TABLES = {{"universe", "uni"}, {"eclass", "ecl"}, {"spatial", "spa"},
+            {"report", "rep"}, {"trial", "tri"}, {"element", "ele"}, {"action", "act"}, {"attribute", "att"}};
+    // Most uids bound into a single set based delete
+    private static final int IN_CHUNK = 512;
+    // Integrity checks run by checkIntegrity(), each {name, sql, detail format}
+    private static ArrayList<String[]> integrityChecks = null;
+    // Columns read when loading objects, leaving their LONG VARCHAR code and
+    // value text for loadText() to fetch if and when it is asked for
+    private static final String ACTION_COLS = "uid, parent_uid, shortname, version, created, modified, "
+            + "description, acttype, dataset, transform, related, locked, position";
+    private static final String ATTRIBUTE_COLS = "uid, parent_uid, shortname, version, created, modified, "
+            + "description, locked, position";
+    private static final String ECLASS_COLS = "uid, parent_uid, modtype, shortname, version, created, modified, "
+            + "description, locked, position";
+    // EPOC class method columns, in the order they are saved, and their bodies
+    private static final String[] ECLASS_TEXT_COLS = { "initclass", "inittrial", "inittransition",
+            "printstate", "updatestate" };
+    private static final int[] ECLASS_TEXT_BODIES = { LazyText.CLS_INITCLASS, LazyText.CLS_INITTRIAL,
+            LazyText.CLS_INITTRANSITION, LazyText.CLS_PRINTSTATE, LazyText.CLS_UPDATESTATE };
     private String errMsg = "";
     
     /**
@@ -64,6 +116,11 @@ public class DerbyStorage implements Storage {
             Class.forName(driver).newInstance();
             //System.out.println("Loaded the appropriate driver.");
                
+            if (readers != null) readers.close();
+            readers = null;
+            backups = null;
+            if (stmts != null) stmts.close();
+            stmts = null;
             if (conn != null && !conn.isClosed()) {
                 conn.close();
             }
@@ -91,10 +148,13 @@ public class DerbyStorage implements Storage {
 
             //System.out.println("Connected to and created database derbyDB");
             conn.setAutoCommit(false);
+            stmts = new StatementCache(conn);
             
             if (!createSchema(conn)) {
                 throw new Exception("Failed to instantiate Derby database storage.");
             }
+            DatabaseCatalogue.getInstance().setVersion(database, EPOC_VER);
+            readers = new ConnectionPool(protocol + database, props, EPOC_READ_CONNECTIONS);
            
             
         } catch (Throwable e) {
@@ -122,24 +182,54 @@ public class DerbyStorage implements Storage {
     /*
      * Return a Singleton instance of class with a connection to the passed DB
      */
-    public static synchronized DerbyStorage getInstance(String dbName) { //throws Exception {
-        if (_instance == null || !database.equals(dbName)) {
-            if (_instance != null) shutdownDB();
-            _instance = new DerbyStorage(dbName, null);
+    public static DerbyStorage getInstance(String dbName) { //throws Exception {
+        flushWriter();
+        synchronized (DerbyStorage.class) {
+            if (_instance == null || !database.equals(dbName)) {
+                if (_instance != null) closeDB();
+                _instance = new DerbyStorage(dbName, null);
+            }
+
+            return _instance;
         }
-        
-        return _instance;
     }
     
     /*
      * Import database from path passed, shutdown existing DB and then
      * Return a Singleton instance of class with a connection to that DB
      */
-    public static synchronized DerbyStorage getImportedInstance(String path) { //throws Exception {
-        shutdownDB();
-        _instance = new DerbyStorage(null, ";restoreFrom=" + path);
-        
-        return _instance;
+    public static DerbyStorage getImportedInstance(String path) { //throws Exception {
+        flushWriter();
+        synchronized (DerbyStorage.class) {
+            closeDB();
+            _instance = new DerbyStorage(null, ";restoreFrom=" + path);
+
+            return _instance;
+        }
+    }
+
+    /*
+     * Return write-behind queue for writes to this database
+     */
+    public StorageWriter getWriter() {
+        synchronized (DerbyStorage.class) {
+            if (writer == null) writer = new StorageWriter(this);
+
+            return writer;
+        }
+    }
+
+    /*
+     * Wait for queued writes to be written.  Must not hold the class lock as
+     * writes may create objects, which get their storage from getInstance().
+     */
+    private static boolean flushWriter() {
+        StorageWriter w;
+        synchronized (DerbyStorage.class) {
+            w = writer;
+        }
+
+        return (w == null || w.flush());
     }
     
     /**
@@ -172,18 +262,18 @@ public class DerbyStorage implements Storage {
                 // create all tables
                 s.execute("CREATE TABLE universe(uid INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY, " +
                         "parent_uid INT, name VARCHAR(100), shortname VARCHAR(50), classname VARCHAR(50), " +
-                        "morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), created TIMESTAMP, " +
+                        "morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), revkey VARCHAR(100), created TIMESTAMP, " +
                         "modified TIMESTAMP, description VARCHAR(512), creator VARCHAR(50), " +
                         "controller VARCHAR(100), bparent VARCHAR(50), " +
                         "locked SMALLINT, position SMALLINT)");
                 s.execute("CREATE TABLE spatial(uid INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY, " +
                         "parent_uid INT, name VARCHAR(100), shortname VARCHAR(50), " +
-                        "classname VARCHAR(50), morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), " +
+                        "classname VARCHAR(50), morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), revkey VARCHAR(100), " +
                         "created TIMESTAMP, modified TIMESTAMP, description VARCHAR(512), " +
-                        "polygons LONG VARCHAR, polyoverlaps LONG VARCHAR, bparent VARCHAR(50), locked SMALLINT)");
+                        "polygons LONG VARCHAR, polyoverlaps LONG VARCHAR, polydata BLOB, bparent VARCHAR(50), locked SMALLINT)");
                 s.execute("CREATE TABLE report(uid INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY, " +
                         "parent_uid INT, name VARCHAR(100), shortname VARCHAR(50), " +
-                        "classname VARCHAR(50), morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), " +
+                        "classname VARCHAR(50), morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), revkey VARCHAR(100), " +
                         "created TIMESTAMP, modified TIMESTAMP, " +
                         "description VARCHAR(512), logprint SMALLINT, logfilename VARCHAR(100), " +
                         "calendarprint SMALLINT, calendarfilename VARCHAR(100), debug SMALLINT, " +
@@ -191,31 +281,31 @@ public class DerbyStorage implements Storage {
                         "headline4 VARCHAR(100), bparent VARCHAR(50), locked SMALLINT)");
                 s.execute("CREATE TABLE trial(uid INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY, " +
                         "parent_uid INT, name VARCHAR(100), shortname VARCHAR(50), " +
-                        "classname VARCHAR(50), morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), " +
+                        "classname VARCHAR(50), morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), revkey VARCHAR(100), " +
                         "created TIMESTAMP, modified TIMESTAMP, " +
                         "description VARCHAR(512), yearstart VARCHAR(4), yearend VARCHAR(4), " +
                         "firstfishingyear VARCHAR(4), lastfishingyear VARCHAR(4), trialdir VARCHAR(100), " +
                         "bparent VARCHAR(50), locked SMALLINT, position SMALLINT)");
                 s.execute("CREATE TABLE eclass(uid INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY, " +
-                        "parent_uid INT, modtype SMALLINT, name VARCHAR(100), shortname VARCHAR(50), version VARCHAR(50), " +
+                        "parent_uid INT, modtype SMALLINT, name VARCHAR(100), shortname VARCHAR(50), version VARCHAR(50), revkey VARCHAR(100), " +
                         "created TIMESTAMP, modified TIMESTAMP, " +
                         "description VARCHAR(512), initmethod LONG VARCHAR, inittrial LONG VARCHAR, " +
                         "initTransition LONG VARCHAR, printstate LONG VARCHAR, updatestate LONG VARCHAR, " +
                         "bparent VARCHAR(50), locked SMALLINT, position SMALLINT)");
                 s.execute("CREATE TABLE element(uid INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY, " +
                         "parent_uid INT, modtype SMALLINT, name VARCHAR(100), shortname VARCHAR(50), eclass_uid INT, " +
-                        "classname VARCHAR(50), morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), " +
+                        "classname VARCHAR(50), morph VARCHAR(20), epocid VARCHAR(10), version VARCHAR(50), revkey VARCHAR(100), " +
                         "created TIMESTAMP, modified TIMESTAMP, description VARCHAR(512), creator VARCHAR(50), " +
                         "birthday SMALLINT, birthmonth SMALLINT, polygons LONG VARCHAR, bparent VARCHAR(50), " +
                         "locked SMALLINT, position SMALLINT)");
                 s.execute("CREATE TABLE action(uid INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY, " +
-                        "parent_uid INT, name VARCHAR(100), shortname VARCHAR(50), version VARCHAR(50), " +
+                        "parent_uid INT, name VARCHAR(100), shortname VARCHAR(50), version VARCHAR(50), revkey VARCHAR(100), " +
                         "created TIMESTAMP, modified TIMESTAMP, " +
                         "description VARCHAR(512), acttype SMALLINT, dataset INT, transform INT, " +
                         "related VARCHAR(100), code LONG VARCHAR, bparent VARCHAR(50), " +
                         "locked SMALLINT, position SMALLINT)");
                 s.execute("CREATE TABLE attribute(uid INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY, " +
-                        "parent_uid INT, name VARCHAR(100), shortname VARCHAR(50), version VARCHAR(50), " +
+                        "parent_uid INT, name VARCHAR(100), shortname VARCHAR(50), version VARCHAR(50), revkey VARCHAR(100), " +
                         "created TIMESTAMP, modified TIMESTAMP, " +
                         "description VARCHAR(512), value LONG VARCHAR, bparent VARCHAR(50), " +
                         "locked SMALLINT, position SMALLINT)");
@@ -242,6 +332,11 @@ public class DerbyStorage implements Storage {
                 s.execute("CREATE INDEX act_ver_idx ON action(version)");
                 s.execute("CREATE INDEX att_ver_idx ON attribute(version)");
 
+                // add indexes for the sortable revision keys
+                for (String[] tbl : REVKEY_TABLES) {
+                    s.execute("CREATE INDEX " + tbl[1] + "_rev_idx ON " + tbl[0] + "(revkey)");
+                }
+
                 // add indexes for the foreign parent_uid columns
                 s.execute("CREATE INDEX uni_pid_idx ON universe(parent_uid)");
                 s.execute("CREATE INDEX ele_pid_idx ON element(parent_uid)");
@@ -300,7 +395,7 @@ public class DerbyStorage implements Storage {
     /*
      * Place a backup of the database in the passed location
      */
-    public boolean exportDB(String path) {
+    public synchronized boolean exportDB(String path) {
         String sql;
         
         sql = "CALL SYSCS_UTIL.SYSCS_BACKUP_DATABASE('" + path + "')";
@@ -320,68 +415,80 @@ public class DerbyStorage implements Storage {
         }
     }
     
+    /*
+     * Return incremental backups of the open database
+     */
+    public synchronized BackupManager getBackupManager() {
+        if (backups == null) {
+            Properties props = new Properties();
+            props.put("user", user);
+            props.put("password", pwd);
+            backups = new BackupManager(BackupManager.getDatabaseDir(database), protocol, props);
+        }
+
+        return backups;
+    }
+
     /*
      * Delete database folder from filesystem if found
      */
-    public boolean deleteDB(String dbName) {
-        File dbDir = new File(System.getProperty("user.dir") + "\\" + dbName);
+    public synchronized boolean deleteDB(String dbName) {
+        Path dbDir = BackupManager.getDatabaseDir(dbName).toPath();
         
         // DO not delete if it is current database
         if (database.equals(dbName)) return false;
         
-        if (dbDir.exists() && dbDir.isDirectory()) {
-            
-            File subSP = new File(dbDir.getPath() + "\\service.properties");
-            File subSeg0 = new File(dbDir.getPath() + "\\seg0");
+        // assume it is db if contains service.properties and seg0 subdirectory
+        if (Files.isDirectory(dbDir) && DatabaseCatalogue.isDatabase(dbDir)) {
+            boolean deleted = delDirectory(dbDir);
+            DatabaseCatalogue.getInstance().invalidate(dbName);
 
-            // assume it is db if contains this file and subdirectory
-            if (subSP.exists() && subSeg0.exists()) {
-                 return delDirectory(dbDir);
-            }
+            return deleted;
         }
         
         return false;
     }
     
     /*
-     * Recursive function used to delete passed directory and all subdirectories
-     * and files
+     * Delete passed directory and all subdirectories and files
      */
-    private boolean delDirectory(File dir) {
-        if (dir.exists() && dir.isDirectory()) {
-        
-            String[] subdirs = dir.list();
-            for (int i = 0; subdirs != null && i < subdirs.length; i++) {
-                if (!subdirs[i].equals(".")) {
-                    
-                    File file = new File(dir.getPath() + "\\" + subdirs[i]);
-                    if (file.isFile()) {
-                        System.out.println(file.getPath());
-                        if (!file.delete()) return false;
-                    } else if (file.isDirectory()) {
-                        if (!delDirectory(file)) return false;
-                    }
+    private boolean delDirectory(Path dir) {
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (EPOC_DBG) System.out.println(file);
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
                 }
-            }
-            System.out.println(dir.getPath());
-            return dir.delete();
-            //return true;
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                    if (e != null) throw e;
+                    if (EPOC_DBG) System.out.println(d);
+                    Files.delete(d);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            Messages.addErrMsg("Failed to delete " + dir + ": " + e.getMessage());
+            return false;
         }
         
-        return false;
+        return true;
     }
     
     /*
      * Return name of current database
      */
-    public String getDBName() {
+    public synchronized String getDBName() {
         return database;
     }
     
     /*
      * @return boolean true if a connection exists to DB
      */
-    public boolean isConnected() {
+    public synchronized boolean isConnected() {
         return conn != null;
     }
     
@@ -389,34 +496,27 @@ public class DerbyStorage implements Storage {
      * Return an array of database names available
      * If excludeCurrent is true then except current database
      */
-    public ArrayList getDBAvailableList(boolean excludeCurrent) {
+    public synchronized ArrayList getDBAvailableList(boolean excludeCurrent) {
         ArrayList dbs = new ArrayList(); 
-        File dir = new File(System.getProperty("user.dir"));
-        
-        // Do not return any files that start with '.'.
-        FilenameFilter filter = new FilenameFilter() {
-            public boolean accept(File dir, String name) {
-                File sub = new File(dir.getPath() + "\\" + name);
-                return sub.isDirectory();
-            }
-        };
-        String[] subdirs = dir.list(filter);
- 
-        if (subdirs != null) {
-            for (int i = 0; i < subdirs.length; i++) {
-                if (excludeCurrent && (subdirs[i].compareToIgnoreCase(database) == 0)) {
-                    continue;
-                }
-                File sub = new File(dir.getPath() + "\\" + subdirs[i]);
-                File subSP = new File(sub.getPath() + "\\service.properties");
-                File subSeg0 = new File(sub.getPath() + "\\seg0");
-                
-                // assume it is db if contains this file and subdirectory
-                if (subSP.exists() && subSeg0.exists()) {
-                    String[] db = {dir.getPath() + "\\" + subdirs[i], subdirs[i]};
-                    dbs.add(db);
-                }
-            }
+
+        for (DatabaseCatalogue.DatabaseInfo db : getDBCatalogue(excludeCurrent)) {
+            String[] dbArr = {db.getDirectory().getPath(), db.getName()};
+            dbs.add(dbArr);
+        }
+
+        return dbs;
+    }
+    
+    /*
+     * Return details of databases available, found without opening them
+     * If excludeCurrent is true then except current database
+     */
+    public synchronized ArrayList<DatabaseCatalogue.DatabaseInfo> getDBCatalogue(boolean excludeCurrent) {
+        ArrayList<DatabaseCatalogue.DatabaseInfo> dbs = new ArrayList();
+
+        for (DatabaseCatalogue.DatabaseInfo db : DatabaseCatalogue.getInstance().getDatabases()) {
+            if (excludeCurrent && db.getName().equalsIgnoreCase(database)) continue;
+            dbs.add(db);
         }
 
         return dbs;
@@ -433,44 +533,34 @@ public class DerbyStorage implements Storage {
     public String getNextVersion(int objType, String currVer) {
         String sql;
         String tbl = getTableName(objType);
-        int highest=0;
+        String prefix = RevisionKey.descendantPrefix(currVer);
+        int highest = 0;
         
+        beginRead();
         try {
-            // get all records beginning with same revision
-            Statement s = conn.createStatement();
-            sql ="SELECT version FROM " + tbl; 
-            if (!currVer.equals("")) {
-                sql += " WHERE version LIKE '" + currVer + ".%'";
-            }
+            // the highest key among the descendants holds the highest next
+            // component, found by a single probe of the revision key index
+            sql = "SELECT MAX(revkey) FROM " + tbl + " WHERE revkey > ? AND revkey < ?";
+            PreparedStatement ps = reads().prepare("getNextVersion." + tbl, sql);
+            ps.setString(1, prefix);
+            ps.setString(2, RevisionKey.numericUpperBound(prefix));
             outputSQL(sql);
-            ResultSet rs = s.executeQuery(sql);
-            
-            String[] verBits;
-            while (rs.next()) {
-                
-                if (currVer.equals("")) {
-                    // find record with highest major revision
-                    verBits = rs.getString("version").split("\\.");
-     
-                } else {
-                    // find record with highest next minor revision
-                    verBits = rs.getString("version").replaceFirst(currVer + ".", "").split("\\.");
-                    
-                }
-                if (verBits.length > 0 && Integer.parseInt(verBits[0]) > highest) {
-                    highest = Integer.parseInt(verBits[0]);
-                }
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                highest = Math.max(0, RevisionKey.component(rs.getString(1), prefix.length()));
             }
-            
-            s.close();
+
+            rs.close();
         } catch (SQLException se) {
             printSQLError(se);
+        } finally {
+            endRead();
         }
         
         // return one higher
         return (currVer.equals("") ? "" : currVer + ".") + String.valueOf(++highest);
     }
-    
+
     /*
      * Return a 2D list of target object uid and shortname/version in the form 'name (revision)'
      * which does not include the exempt uid
@@ -482,24 +572,27 @@ public class DerbyStorage implements Storage {
         String tbl = getTableName(objType);
       
         sql = "SELECT uid, shortname, version " +
-              "FROM " + tbl + " WHERE uid != " + exemptUID + " " +
+              "FROM " + tbl + " WHERE uid != ? " +
               "ORDER BY uid";
         outputSQL(sql);
 
+        beginRead();
         try {
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery(sql);
+            PreparedStatement ps = reads().prepare("getNegList." + tbl, sql);
+            ps.setInt(1, exemptUID);
+            ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 item = new String[2];
                 item[0] = rs.getString("uid");
                 item[1] = rs.getString("shortname") + " (" + rs.getString("version") + ")";
                 lst.add(item);
             }
-            
+
             rs.close();
-            s.close();
         } catch (SQLException se) {
             printSQLError(se);
+        } finally {
+            endRead();
         }
         
         return lst;
@@ -527,33 +620,273 @@ public class DerbyStorage implements Storage {
             lst.addAll(getOrphanedList(OBJ_TS));
         } else {
             String tbl = getTableName(objType);
-            String tblpar = getParentTableName(objType);
 
-            sql = "SELECT uid, shortname, version FROM " + tbl + " " +
-                  "WHERE parent_uid <> 0 AND parent_uid NOT IN (SELECT uid FROM " + tblpar + ") " +
-                  "ORDER BY uid";
+            sql = orphanSQL(objType);
             outputSQL(sql);
 
+            beginRead();
             try {
-                Statement s = conn.createStatement();
-                ResultSet rs = s.executeQuery(sql);
+                PreparedStatement ps = reads().prepare("getOrphanedList." + tbl, sql);
+                ResultSet rs = ps.executeQuery();
                 while (rs.next()) {
                     item = new String[2];
                     item[0] = rs.getString("uid");
-                    item[1] = rs.getString("shortname") + " (" + rs.getString("version") + ")";
+                    item[1] = displayName(rs);
                     lst.add(item);
                 }
 
                 rs.close();
-                s.close();
             } catch (SQLException se) {
                 printSQLError(se);
+            } finally {
+                endRead();
             }
         }
 
         return lst;
     }
 
+    /**
+     * Return names of the integrity checks run by checkIntegrity(), in the
+     * order they are numbered
+     * @return
+     */
+    public String[] getIntegrityChecks() {
+        ArrayList<String[]> checks = getIntegrityCheckList();
+        String[] names = new String[checks.size()];
+        for (int i = 0 ; i < names.length ; i++) names[i] = checks.get(i)[0];
+
+        return names;
+    }
+
+    /**
+     * Run integrity check number check, passing each problem found to listener
+     * as it is read, and stopping early if the listener returns false.  Reads
+     * on a pooled read connection, so may be run from any thread alongside
+     * writes.
+     * @param check
+     * @param listener
+     * @return number of problems found, or -1 on failure
+     */
+    public int checkIntegrity(int check, IntegrityChecker.Listener listener) {
+        ArrayList<String[]> checks = getIntegrityCheckList();
+        int found = 0;
+
+        if (stmts == null || check < 0 || check >= checks.size()) return -1;
+
+        String[] chk = checks.get(check);
+        outputSQL(chk[1]);
+
+        beginRead();
+        try {
+            PreparedStatement ps = reads().prepare("checkIntegrity." + check, chk[1]);
+            ResultSet rs = ps.executeQuery();
+            try {
+                while (rs.next()) {
+                    found++;
+                    IntegrityChecker.Issue issue = new IntegrityChecker.Issue(chk[0], rs.getInt("uid"),
+                            displayName(rs), String.format(chk[2], rs.getInt("ref")));
+                    if (!listener.found(issue)) break;
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException se) {
+            printSQLError(se);
+            found = -1;
+        } finally {
+            endRead();
+        }
+
+        return found;
+    }
+
+    /*
+     * Return the integrity checks, building them on first use.  Each query
+     * selects uid, shortname and version of the offending row along with the
+     * uid it refers to but which could not be found, as ref.  All are NOT
+     * EXISTS anti-joins probing the primary key index of the referred table.
+     */
+    private ArrayList<String[]> getIntegrityCheckList() {
+        if (integrityChecks != null) return integrityChecks;
+
+        ArrayList<String[]> checks = new ArrayList();
+        int[] types = {OBJ_CLS, OBJ_SPA, OBJ_REP, OBJ_TRI, OBJ_ELE, OBJ_ACT, OBJ_ATT, OBJ_TS};
+
+        // objects whose parent has gone
+        for (int objType : types) {
+            checks.add(new String[] {"Orphaned " + getTableName(objType) + " objects", orphanSQL(objType),
+                                     "parent " + getParentTableName(objType) + " %d not found"});
+        }
+
+        // template links to or from objects which have gone
+        for (int objType : types) {
+            String tbl = getTableName(objType);
+            checks.add(new String[] {"Template links to missing " + tbl + " objects",
+                    "SELECT l.uid, 'Template link' AS shortname, CAST(NULL AS VARCHAR(50)) AS version, " +
+                    "l.parent_uid AS ref FROM template l " +
+                    "WHERE l.objecttype IN (" + templateTypes(objType) + ") " +
+                    "AND NOT EXISTS (SELECT 1 FROM " + tbl + " t WHERE t.uid = l.uid) " +
+                    "ORDER BY l.uid",
+                    tbl + " object not found, linked from parent %d"});
+            checks.add(new String[] {"Template links from missing " + getParentTableName(objType) + " parents",
+                    "SELECT t.uid, " + nameColumns(objType) + ", l.parent_uid AS ref " +
+                    "FROM template l JOIN " + tbl + " t ON t.uid = l.uid " +
+                    "WHERE l.objecttype IN (" + templateTypes(objType) + ") " +
+                    "AND NOT EXISTS (SELECT 1 FROM " + getParentTableName(objType) + " p WHERE p.uid = l.parent_uid) " +
+                    "ORDER BY t.uid",
+                    "linked as template of " + getParentTableName(objType) + " %d which was not found"});
+        }
+
+        // references between objects to uids which have gone
+        checks.add(referenceCheck("Actions with missing dataset", OBJ_ACT, "dataset", OBJ_ATT));
+        checks.add(referenceCheck("Actions with missing transform", OBJ_ACT, "transform", OBJ_ACT));
+        checks.add(referenceCheck("Timesteps with missing dataset", OBJ_TS, "dataset", OBJ_ATT));
+        checks.add(referenceCheck("Elements with missing EPOC class", OBJ_ELE, "eclass_uid", OBJ_CLS));
+
+        // references saved as -1, marking a link already known broken when saved
+        checks.add(brokenLinkCheck("Actions with broken dataset link", OBJ_ACT, "dataset"));
+        checks.add(brokenLinkCheck("Actions with broken transform link", OBJ_ACT, "transform"));
+        checks.add(brokenLinkCheck("Timesteps with broken dataset link", OBJ_TS, "dataset"));
+        checks.add(brokenLinkCheck("Elements with broken EPOC class link", OBJ_ELE, "eclass_uid"));
+
+        integrityChecks = checks;
+
+        return checks;
+    }
+
+    /*
+     * Return integrity check of rows of objType whose col refers to a uid
+     * missing from the table of refType
+     */
+    private String[] referenceCheck(String name, int objType, String col, int refType) {
+        String refTbl = getTableName(refType);
+
+        return new String[] {name,
+                "SELECT t.uid, " + nameColumns(objType) + ", t." + col + " AS ref " +
+                "FROM " + getTableName(objType) + " t " +
+                "WHERE t." + col + " > 0 " +
+                "AND NOT EXISTS (SELECT 1 FROM " + refTbl + " r WHERE r.uid = t." + col + ") " +
+                "ORDER BY t.uid",
+                col + " " + refTbl + " %d not found"};
+    }
+
+    /*
+     * Return integrity check of rows of objType whose col holds a negative
+     * uid, saved for a link which was already broken
+     */
+    private String[] brokenLinkCheck(String name, int objType, String col) {
+        return new String[] {name,
+                "SELECT t.uid, " + nameColumns(objType) + ", t." + col + " AS ref " +
+                "FROM " + getTableName(objType) + " t " +
+                "WHERE t." + col + " < 0 " +
+                "ORDER BY t.uid",
+                col + " link broken (%d)"};
+    }
+
+    /*
+     * Return query selecting uid, name columns and missing parent uid as ref
+     * of each object of objType whose parent no longer exists.  The NOT EXISTS
+     * anti-join probes the parent primary key for each row, where Derby would
+     * evaluate NOT IN against the whole parent table.
+     */
+    private String orphanSQL(int objType) {
+        String tblpar = getParentTableName(objType);
+
+        return "SELECT t.uid, " + nameColumns(objType) + ", t.parent_uid AS ref " +
+               "FROM " + getTableName(objType) + " t " +
+               "WHERE t.parent_uid <> 0 " +
+               "AND NOT EXISTS (SELECT 1 FROM " + tblpar + " p WHERE p.uid = t.parent_uid) " +
+               "ORDER BY t.uid";
+    }
+
+    /*
+     * Return shortname and version columns of table alias t holding objType,
+     * timesteps having neither
+     */
+    private String nameColumns(int objType) {
+        if (objType == OBJ_TS) return "'Timestep' AS shortname, CAST(NULL AS VARCHAR(50)) AS version";
+
+        return "t.shortname, t.version";
+    }
+
+    /*
+     * Return list of template objecttype values stored in table of objType
+     */
+    private String templateTypes(int objType) {
+        if (getTableName(objType).equals("element")) {
+            return OBJ_ELE + ", " + OBJ_BIO + ", " + OBJ_ENV + ", " + OBJ_ATY + ", " + OBJ_MAN + ", " + OBJ_OUT;
+        }
+
+        return String.valueOf(objType);
+    }
+
+    private String displayName(ResultSet rs) throws SQLException {
+        String version = rs.getString("version");
+
+        return rs.getString("shortname") + (version != null ? " (" + version + ")" : "");
+    }
+
+    /*
+     * Return a large text body of object uid, left unloaded when the object
+     * was loaded, or null on failure.  May be called from any thread.
+     */
+    public String loadText(int body, int uid) {
+        String tbl, col;
+        String text = null;
+
+        switch (body) {
+            case LazyText.ACT_CODE:             tbl = "action";    col = "code";           break;
+            case LazyText.ATT_VALUE:            tbl = "attribute"; col = "value";          break;
+            case LazyText.CLS_INITCLASS:        tbl = "eclass";    col = "initclass";      break;
+            case LazyText.CLS_INITTRIAL:        tbl = "eclass";    col = "inittrial";      break;
+            case LazyText.CLS_INITTRANSITION:   tbl = "eclass";    col = "inittransition"; break;
+            case LazyText.CLS_UPDATESTATE:      tbl = "eclass";    col = "updatestate";    break;
+            case LazyText.CLS_PRINTSTATE:       tbl = "eclass";    col = "printstate";     break;
+            default:
+                return null;
+        }
+
+        if (stmts == null) return null;
+
+        String sql = "SELECT " + col + " FROM " + tbl + " WHERE uid = ?";
+        beginRead();
+        try {
+            PreparedStatement ps = reads().prepare("loadText." + tbl + "." + col, sql);
+            ps.setInt(1, uid);
+            outputSQL(sql);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                text = rs.getString(1);
+                if (text == null) text = "";
+            }
+            rs.close();
+        } catch (SQLException se) {
+            printSQLError(se);
+        } finally {
+            endRead();
+        }
+
+        return text;
+    }
+
+    /*
+     * Return text body to write for object uid, or null if it is still left
+     * in storage as body of uid and so unchanged.  Throws if the body has to
+     * be written but can not be read, so the save fails rather than writing
+     * over the body with nothing.
+     */
+    private String textToWrite(LazyText text, int body, int uid) throws SQLException {
+        if (uid > 0 && text.isStoredAs(body, uid)) return null;
+
+        String str = text.load();
+        if (str == null) {
+            throw new SQLException("Unable to read text body " + body + " for object (uid: " + uid + ") to save it");
+        }
+
+        return str;
+    }
+
     /*
      * Return a list of objects of the type passed which are templates
      * ie they have parent_uid = 0, and are not already a child of the
@@ -570,18 +903,26 @@ public class DerbyStorage implements Storage {
         String tbl = getTableName(objType);
         
         sql = "SELECT uid FROM " + tbl + " WHERE parent_uid = 0 ";
-        
+
         // check if templates already linked to a parent need excluding
         if (excludeUID != 0) {
-            sql += "AND uid NOT IN (SELECT uid FROM template WHERE parent_uid = " + excludeUID + " ";
-            sql += "AND objecttype = " + objType + ") ";
+            sql += "AND uid NOT IN (SELECT uid FROM template WHERE parent_uid = ? ";
+            sql += "AND objecttype = ?) ";
         }
         sql += "ORDER BY uid";
         outputSQL(sql);
 
+        beginRead();
         try {
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery(sql);
+            PreparedStatement ps;
+            if (excludeUID != 0) {
+                ps = reads().prepare("loadTemplates.exclude." + tbl, sql);
+                ps.setInt(1, excludeUID);
+                ps.setInt(2, objType);
+            } else {
+                ps = reads().prepare("loadTemplates." + tbl, sql);
+            }
+            ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 // if its not already in templates list then instantiate it which will
                 // cause it to be placed into list
@@ -591,10 +932,11 @@ public class DerbyStorage implements Storage {
                 }
             }
             rs.close();
-            s.close();
         } catch (SQLException se) {
             printSQLError(se);
             retVal = false;
+        } finally {
+            endRead();
         }
         
         return retVal;
@@ -643,28 +985,35 @@ public class DerbyStorage implements Storage {
      * @param obj
      * @return
      */
-    public boolean linkTemplate(int parentUID, EPOCObject obj) {
+    public synchronized boolean linkTemplate(int parentUID, EPOCObject obj) {
         String sql;
         boolean retVal = true;
         
+        beginTransaction();
         if (parentUID > 0 && obj.getUID() > 0 && obj.getObjType() > 0 && obj.getObjType() != OBJ_UNI) {
+            invalidateCachedParent(obj.getObjType(), parentUID);
 
             try {
-                Statement s = conn.createStatement();
-                if (templateLinkCount(parentUID, obj.getUID(), obj.getObjType()) == 0) {
+                // try updating an existing link first, saves counting links beforehand
+                sql = "UPDATE template set position = ? " +
+                      "WHERE parent_uid = ? AND uid = ? AND objecttype = ?";
+                PreparedStatement ps = stmts.prepare("linkTemplate.update", sql);
+                ps.setInt(1, obj.getPosition());
+                ps.setInt(2, parentUID);
+                ps.setInt(3, obj.getUID());
+                ps.setInt(4, obj.getObjType());
+                outputSQL(sql);
+                if (executeWrite(ps) == 0) {
                     sql ="INSERT INTO template (template_uid, parent_uid, uid, objecttype, position) " +
-                         "VALUES(DEFAULT, " + parentUID + ", " + obj.getUID() + ", " + obj.getObjType() +
-                         ", " + obj.getPosition() + ")";
-                    
-                } else {
-                    sql = "UPDATE template set position = " + obj.getPosition() + " " +
-                          "WHERE parent_uid = " + parentUID + " AND uid = " + obj.getUID() + " " +
-                          "AND objecttype = " + obj.getObjType();
+                         "VALUES(DEFAULT, ?, ?, ?, ?)";
+                    ps = stmts.prepare("linkTemplate.insert", sql);
+                    ps.setInt(1, parentUID);
+                    ps.setInt(2, obj.getUID());
+                    ps.setInt(3, obj.getObjType());
+                    ps.setInt(4, obj.getPosition());
+                    outputSQL(sql);
+                    executeWrite(ps);
                 }
-                outputSQL(sql);
-                s.executeUpdate(sql);
-                s.close();
-                conn.commit();
 
             } catch (SQLException se) {
                 retVal = false;
@@ -672,7 +1021,7 @@ public class DerbyStorage implements Storage {
             }
         }
         
-        return retVal;
+        return endTransaction(retVal);
     }
     
     /*
@@ -683,27 +1032,28 @@ public class DerbyStorage implements Storage {
      * @param objType
      * @return
      */
-    public boolean unlinkTemplate(int parentUID, int uid, int objType) {
+    public synchronized boolean unlinkTemplate(int parentUID, int uid, int objType) {
         String sql;
         boolean retVal = true;
         
+        beginTransaction();
         if (parentUID > 0 && uid > 0 && objType > 0 && objType != OBJ_UNI) {
+            invalidateCachedParent(objType, parentUID);
             try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM template WHERE parent_uid = " + parentUID + " " +
-                     "AND uid = " + uid + " " +
-                     "AND objecttype = " + objType;
+                sql ="DELETE FROM template WHERE parent_uid = ? AND uid = ? AND objecttype = ?";
+                PreparedStatement ps = stmts.prepare("unlinkTemplate", sql);
+                ps.setInt(1, parentUID);
+                ps.setInt(2, uid);
+                ps.setInt(3, objType);
                 outputSQL(sql);
-                s.executeUpdate(sql);
-                s.close();
-                conn.commit();
+                executeWrite(ps);
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
             }
         }
         
-        return retVal;
+        return endTransaction(retVal);
     }
     
     /*
@@ -718,20 +1068,26 @@ public class DerbyStorage implements Storage {
         boolean retVal = true;
         String sql;
         
+        beginRead();
         try {
-            Statement s = conn.createStatement();
             sql = "SELECT Count(*) AS cnt FROM template " +
-                  "WHERE parent_uid != " + excludePID + " AND uid = " + uid + 
-                  " AND objecttype = " + objType;
+                  "WHERE parent_uid != ? AND uid = ? AND objecttype = ?";
+            PreparedStatement ps = reads().prepare("templateUsedByOther", sql);
+            ps.setInt(1, excludePID);
+            ps.setInt(2, uid);
+            ps.setInt(3, objType);
             outputSQL(sql);
-            ResultSet rs = s.executeQuery(sql);
+            ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
                 if (rs.getInt("cnt") == 0) retVal = false;
             }
+            rs.close();
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
+        } finally {
+            endRead();
         }
         
         return retVal;
@@ -743,11 +1099,13 @@ public class DerbyStorage implements Storage {
      * If all are 0 then return count of all links
      */
     public int templateLinkCount(int pid, int uid, int objType) {
-        String sql, where = "";
+        String sql, where = "", key = "templateLinkCount";
         int retVal = 0;
-        
+
+        // statement is keyed by which of the filters are in use
         if (pid > 0) {
-            where += "WHERE parent_uid = " + pid;
+            where += "WHERE parent_uid = ?";
+            key += ".pid";
         }
         if (uid > 0) {
             if (where.equals("")) {
@@ -755,7 +1113,8 @@ public class DerbyStorage implements Storage {
             } else {
                 where += " AND ";
             }
-            where += "uid = " + uid;
+            where += "uid = ?";
+            key += ".uid";
         }
         if (objType > 0) {
             if (where.equals("")) {
@@ -763,22 +1122,29 @@ public class DerbyStorage implements Storage {
             } else {
                 where += " AND ";
             }
-            where += "objecttype = " + objType;
+            where += "objecttype = ?";
+            key += ".type";
         }
-        
+
+        beginRead();
         try {
-            Statement s = conn.createStatement();
             sql = "SELECT COUNT(*) As cnt FROM template " + where;
+            PreparedStatement ps = reads().prepare(key, sql);
+            int p = 1;
+            if (pid > 0) ps.setInt(p++, pid);
+            if (uid > 0) ps.setInt(p++, uid);
+            if (objType > 0) ps.setInt(p++, objType);
             outputSQL(sql);
-            ResultSet rs = s.executeQuery(sql);
+            ResultSet rs = ps.executeQuery();
             if (rs.next()) {
                 retVal = rs.getInt("cnt");
             }
-            
+
             rs.close();
-            s.close();
         } catch (SQLException se) {
                 printSQLError(se);
+        } finally {
+            endRead();
         }
         
         return retVal;
@@ -799,28 +1165,44 @@ public class DerbyStorage implements Storage {
      * @return  boolean true on success
      */
     public boolean load(EPOCObject obj, boolean loadChildren) {
-        
-        if (obj instanceof Universe) {
-            return loadUniverse((Universe)obj, loadChildren);
-        } else if (obj instanceof Spatial) {
-            return loadSpatial((Spatial)obj);
-        } else if (obj instanceof Report) {
-            return loadReport((Report)obj);
-        } else if (obj instanceof Trial) {
-            return loadTrial((Trial)obj);
-        } else if (obj instanceof EClass) {
-            return loadEClass((EClass)obj);
-        } else if (obj instanceof Element) {
-            return loadElement((Element)obj, loadChildren);
-        } else if (obj instanceof Action) {
-            return loadAction((Action)obj);    
-        } else if (obj instanceof Attribute) {
-            return loadAttribute((Attribute)obj);
-        } else if (obj instanceof Timestep) {
-            return loadTimestep((Timestep)obj);
+        boolean retVal = false;
+        ReadState state = readState.get();
+
+        // Cached results are checked against storage by the outermost load
+        // only, those nested within it can trust them as every write drops
+        // the results it affects
+        beginRead();
+        if (state.loadDepth == 0) validateCached(obj);
+        state.loadDepth++;
+        try {
+            if (obj instanceof Universe) {
+                retVal = loadUniverse((Universe)obj, loadChildren);
+            } else if (obj instanceof Spatial) {
+                retVal = loadSpatial((Spatial)obj);
+            } else if (obj instanceof Report) {
+                retVal = loadReport((Report)obj);
+            } else if (obj instanceof Trial) {
+                retVal = loadTrial((Trial)obj);
+            } else if (obj instanceof EClass) {
+                retVal = loadEClass((EClass)obj);
+            } else if (obj instanceof Element) {
+                retVal = loadElement((Element)obj, loadChildren);
+            } else if (obj instanceof Action) {
+                retVal = loadAction((Action)obj);
+            } else if (obj instanceof Attribute) {
+                retVal = loadAttribute((Attribute)obj);
+            } else if (obj instanceof Timestep) {
+                retVal = loadTimestep((Timestep)obj);
+            }
+        } finally {
+            state.loadDepth--;
+            endRead();
         }
+
+        // freshly loaded so matches storage
+        if (retVal) obj.setObjectModified(false, loadChildren);
         
-        return false;
+        return retVal;
     }
     
     /**
@@ -828,7 +1210,7 @@ public class DerbyStorage implements Storage {
      * Save all child objects
      * @return  boolean true on success
      */
-    public boolean save(EPOCObject obj) {
+    public synchronized boolean save(EPOCObject obj) {
         return save(obj, true);
     }
     
@@ -837,29 +1219,31 @@ public class DerbyStorage implements Storage {
      * Save all child objects if saveChildren
      * @return  boolean true on success
      */
-    public boolean save(EPOCObject obj, boolean saveChildren) {
-        
+    public synchronized boolean save(EPOCObject obj, boolean saveChildren) {
+        boolean retVal = false;
+
+        beginTransaction();
         if (obj instanceof Universe) {
-            return saveUniverse((Universe)obj, saveChildren);
+            retVal = saveUniverse((Universe)obj, saveChildren);
         } else if (obj instanceof Spatial) {
-            return saveSpatial((Spatial)obj);
+            retVal = saveSpatial((Spatial)obj);
         } else if (obj instanceof Report) {
-            return saveReport((Report)obj);
+            retVal = saveReport((Report)obj);
         } else if (obj instanceof Trial) {
-            return saveTrial((Trial)obj);
+            retVal = saveTrial((Trial)obj);
         } else if (obj instanceof EClass) {
-            return saveEClass((EClass)obj);
+            retVal = saveEClass((EClass)obj);
         } else if (obj instanceof Element) {
-            return saveElement((Element)obj, saveChildren);
+            retVal = saveElement((Element)obj, saveChildren);
         } else if (obj instanceof Action) {
-            return saveAction((Action)obj);    
+            retVal = saveAction((Action)obj);    
         } else if (obj instanceof Attribute) {
-            return saveAttribute((Attribute)obj);
+            retVal = saveAttribute((Attribute)obj);
         } else if (obj instanceof Timestep) {
-            return saveTimestep((Timestep)obj);
+            retVal = saveTimestep((Timestep)obj);
         }
         
-        return false;
+        return endTransaction(retVal);
     }
     
     /**
@@ -867,7 +1251,7 @@ public class DerbyStorage implements Storage {
      * Delete all child objects
      * @return  boolean true on success
      */
-    public boolean delete(EPOCObject obj) {
+    public synchronized boolean delete(EPOCObject obj) {
         return delete(obj, true);
     }
     
@@ -876,60 +1260,465 @@ public class DerbyStorage implements Storage {
      * Delete all child objects if delChildren
      * @return  boolean true on success
      */
-    public boolean delete(EPOCObject obj, boolean delChildren) {
-        
-        if (obj instanceof Universe) {
-            return deleteUniverse(obj.getUID(), delChildren);
+    public synchronized boolean delete(EPOCObject obj, boolean delChildren) {
+        boolean retVal = false;
+
+        objects.invalidate(obj.getObjType(), obj.getUID());
+        beginTransaction();
+        invalidateCachedParents(obj);
+        if (obj instanceof Universe || obj instanceof Element || obj instanceof Action) {
+            retVal = (deleteTree(obj.getObjType(), Collections.singletonList(obj.getUID()), delChildren) >= 0);
         } else if (obj instanceof Spatial) {
-            return deleteSpatial(obj.getUID());
+            retVal = deleteSpatial(obj.getUID());
         } else if (obj instanceof Report) {
-            return deleteReport(obj.getUID());
+            retVal = deleteReport(obj.getUID());
         } else if (obj instanceof Trial) {
-            return deleteTrial(obj.getUID());
+            retVal = deleteTrial(obj.getUID());
         } else if (obj instanceof EClass) {
-            return deleteEClass(obj.getUID());
-        } else if (obj instanceof Element) {
-            return deleteElement(obj.getUID(), delChildren);
-        } else if (obj instanceof Action) {
-            return deleteAction(obj.getUID());
+            retVal = deleteEClass(obj.getUID());
         } else if (obj instanceof Attribute) {
-            return deleteAttribute(obj.getUID());
+            retVal = deleteAttribute(obj.getUID());
         } else if (obj instanceof Timestep) {
-            return deleteTimestep(obj.getUID());
+            retVal = deleteTimestep(obj.getUID());
         }
         
-        return false;
+        return endTransaction(retVal);
     }
-    
+
     /**
-     * Attempt to load universe data members from storage given object's uid
-     * @return  boolean true on success
+     * Delete objs, and their children if delChildren, within a single
+     * transaction.  Objects are grouped by type and each group removed with a
+     * handful of set based deletes, however many objects it holds.
+     * @param objs
+     * @param delChildren
+     * @return number of rows deleted, or -1 on failure
      */
-    private boolean loadUniverse(Universe uni, boolean loadChildren) {
-        int uid = uni.getUID();
+    public synchronized int delete(Collection<? extends EPOCObject> objs, boolean delChildren) {
+        LinkedHashMap<Integer, ArrayList<Integer>> byType = new LinkedHashMap();
+        int rows = 0;
         boolean retVal = true;
-        String sql;
-        
-        if (uid > 0) {
-            try {
-                Statement s = conn.createStatement();
-                sql ="SELECT * FROM universe WHERE uid = " + uid;
-                outputSQL(sql);
-                ResultSet rs = s.executeQuery(sql);
-        
-                if (rs.next()) {
-                    uni.setParentUID(rs.getInt("parent_uid"));
-                    uni.setName(rs.getString("name"));
-                    uni.setShortName(rs.getString("shortname"));
-                    uni.setEPOCClassName(rs.getString("classname"));
-                    uni.setMorph(rs.getString("morph"));
-                    uni.setEPOCID(rs.getString("epocid"));
-                    uni.setRevision(rs.getString("version"));
-                    uni.setDescription(rs.getString("description"));
-                    uni.setAuthor(rs.getString("creator"));
-                    uni.setCreated(new java.util.Date(rs.getTimestamp("created").getTime()));
-                    uni.setModified(new java.util.Date(rs.getTimestamp("modified").getTime()));
-                    uni.setController(rs.getString("controller"));
+
+        for (EPOCObject obj : objs) {
+            if (obj.getUID() <= 0) continue;
+            ArrayList<Integer> uids = byType.get(obj.getObjType());
+            if (uids == null) byType.put(obj.getObjType(), uids = new ArrayList());
+            uids.add(obj.getUID());
+        }
+        if (byType.isEmpty()) return 0;
+
+        beginTransaction();
+        for (EPOCObject obj : objs) {
+            if (obj.getUID() > 0) invalidateCachedParents(obj);
+        }
+        for (Map.Entry<Integer, ArrayList<Integer>> me : byType.entrySet()) {
+            int cnt = deleteTree(me.getKey(), me.getValue(), delChildren);
+            if (cnt < 0) {
+                retVal = false;
+                break;
+            }
+            rows += cnt;
+        }
+
+        return (endTransaction(retVal) ? rows : -1);
+    }
+
+    /**
+     * Remove template links between parent and each of objs, within a single
+     * transaction
+     * @param parentUID
+     * @param objs
+     * @return number of links removed, or -1 on failure
+     */
+    public synchronized int unlinkTemplates(int parentUID, Collection<? extends EPOCObject> objs) {
+        LinkedHashMap<Integer, ArrayList<Integer>> byType = new LinkedHashMap();
+        int rows = 0;
+        boolean retVal = true;
+
+        if (parentUID <= 0) return 0;
+        for (EPOCObject obj : objs) {
+            if (obj.getUID() <= 0 || obj.getObjType() <= 0 || obj.getObjType() == OBJ_UNI) continue;
+            ArrayList<Integer> uids = byType.get(obj.getObjType());
+            if (uids == null) byType.put(obj.getObjType(), uids = new ArrayList());
+            uids.add(obj.getUID());
+        }
+        if (byType.isEmpty()) return 0;
+
+        beginTransaction();
+        try {
+            for (Map.Entry<Integer, ArrayList<Integer>> me : byType.entrySet()) {
+                List<Integer> uids = me.getValue();
+                invalidateCachedParent(me.getKey(), parentUID);
+                for (int from = 0 ; from < uids.size() ; from += IN_CHUNK) {
+                    List<Integer> chunk = uids.subList(from, Math.min(from + IN_CHUNK, uids.size()));
+                    rows += deleteIn("unlinkTemplates", "DELETE FROM template WHERE uid IN ", chunk,
+                                     " AND parent_uid = ? AND objecttype = ?", parentUID, me.getKey());
+                }
+            }
+        } catch (SQLException se) {
+            retVal = false;
+            printSQLError(se);
+        }
+
+        return (endTransaction(retVal) ? rows : -1);
+    }
+
+    /**
+     * Begin a storage transaction.  Transactions may be nested, only the
+     * outermost endTransaction() will commit or roll back.  A transaction
+     * belongs to the thread beginning it, other threads beginning one wait
+     * until it has ended.
+     */
+    public synchronized void beginTransaction() {
+        boolean interrupted = false;
+        while (txDepth > 0 && txOwner != Thread.currentThread()) {
+            try {
+                wait();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        if (txDepth == 0) {
+            txOwner = Thread.currentThread();
+            txFailed = false;
+            rowsWritten = 0;
+        }
+        txDepth++;
+    }
+
+    /**
+     * End a storage transaction.  When ending the outermost transaction any
+     * batched updates are executed and all work committed, unless this or any
+     * nested transaction failed in which case all work is rolled back.
+     * @param success
+     * @return boolean true on success
+     */
+    public synchronized boolean endTransaction(boolean success) {
+        if (!success) txFailed = true;
+        if (--txDepth > 0) return success;
+
+        boolean retVal = !txFailed;
+        try {
+            if (retVal) {
+                for (PreparedStatement ps : batched) {
+                    int[] cnts = ps.executeBatch();
+                    for (int cnt : cnts) {
+                        rowsWritten += (cnt == Statement.SUCCESS_NO_INFO ? 1 : Math.max(cnt, 0));
+                    }
+                }
+                conn.commit();
+                for (EPOCObject obj : savedObjects) {
+                    obj.setObjectModified(false);
+                    // a reader may have cached the old row since it was written
+                    objects.invalidate(obj.getObjType(), obj.getUID());
+                }
+                for (long key : writtenParents) objects.invalidate((int)(key >>> 32), (int)key);
+                for (Runnable task : commitTasks) task.run();
+            }
+        } catch (SQLException se) {
+            retVal = false;
+            printSQLError(se);
+        }
+
+        if (!retVal) {
+            try {
+                for (PreparedStatement ps : batched) ps.clearBatch();
+                conn.rollback();
+            } catch (SQLException ser) {
+                printSQLError(ser);
+            }
+            // inserted rows are gone so objects need inserting again next time
+            for (EPOCObject obj : insertedObjects) obj.setUID(0);
+            // results read during the transaction may have seen its writes
+            objects.clear();
+            rowsWritten = 0;
+        }
+        if (EPOC_DBG) System.out.println("Transaction " + (retVal ? "committed, " : "rolled back, ")
+                                         + rowsWritten + " rows written");
+
+        batched.clear();
+        savedObjects.clear();
+        insertedObjects.clear();
+        commitTasks.clear();
+        writtenParents.clear();
+        txFailed = false;
+        txOwner = null;
+        notifyAll();
+
+        return retVal;
+    }
+
+    /**
+     * Run task once the current outermost transaction has been committed, or
+     * drop it if the transaction is rolled back.  If no transaction is open
+     * task is run at once.
+     * @param task
+     */
+    public synchronized void afterCommit(Runnable task) {
+        if (txDepth > 0 && txOwner == Thread.currentThread()) {
+            commitTasks.add(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Return the number of rows written by the current or last completed transaction
+     * @return
+     */
+    public synchronized int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * Commit work unless within a transaction begun by beginTransaction(), in
+     * which case it is left for the outermost endTransaction()
+     */
+    private void commit() throws SQLException {
+        if (txDepth == 0) conn.commit();
+    }
+
+    /**
+     * Begin a read, taking a pooled read connection for the current thread
+     * unless it already has one.  A thread within its own transaction reads
+     * through the write connection so as to see its uncommitted work.
+     */
+    private void beginRead() {
+        ReadState state = readState.get();
+
+        if (state.depth++ > 0) return;
+        state.stmts = null;
+        if (txOwner != Thread.currentThread() && readers != null) {
+            try {
+                state.stmts = readers.acquire();
+            } catch (SQLException se) {
+                printSQLError(se);
+            }
+        }
+    }
+
+    /**
+     * End a read begun by beginRead(), returning any read connection taken
+     * when the outermost read ends
+     */
+    private void endRead() {
+        ReadState state = readState.get();
+
+        if (--state.depth > 0) return;
+        if (state.stmts != null && readers != null) readers.release(state.stmts);
+        state.stmts = null;
+    }
+
+    /**
+     * Return statements to read with: those of the current thread's read
+     * connection, else of the write connection
+     * @return
+     */
+    private StatementCache reads() {
+        StatementCache sc = readState.get().stmts;
+
+        return (sc != null ? sc : stmts);
+    }
+
+    /**
+     * Roll back work, or if within a transaction begun by beginTransaction()
+     * mark it as failed so the outermost endTransaction() rolls it back
+     */
+    private void rollback() {
+        if (txDepth > 0) {
+            txFailed = true;
+        } else {
+            objects.clear();
+            try {
+                conn.rollback();
+            } catch (SQLException ser) {
+                printSQLError(ser);
+            }
+        }
+    }
+
+    /**
+     * Does obj need its row written to storage during current transaction?
+     * True if it has never been stored, or has been modified and not already
+     * written.
+     * @param obj
+     * @return
+     */
+    private boolean needsWrite(EPOCObject obj) {
+        return (obj.getUID() == 0 || (obj.isObjectModified() && !savedObjects.contains(obj)));
+    }
+
+    /**
+     * Write the row bound in ps for obj.  Inserts are executed immediately so
+     * the new uid can be set in obj, updates are batched until the end of the
+     * transaction.
+     * @param obj
+     * @param ps
+     * @throws SQLException
+     */
+    private void writeRow(EPOCObject obj, PreparedStatement ps) throws SQLException {
+        objects.invalidate(obj.getObjType(), obj.getUID());
+        invalidateCachedParents(obj);
+        if (obj.getUID() == 0) {
+            executeWrite(ps);
+            obj.setUID(getLastInsertUID());
+            insertedObjects.add(obj);
+        } else if (txDepth > 0) {
+            ps.addBatch();
+            batched.add(ps);
+        } else {
+            executeWrite(ps);
+        }
+        savedObjects.add(obj);
+    }
+
+    /**
+     * Execute insert, update or delete statement ps adding to count of rows written
+     * @param ps
+     * @return number of rows affected
+     * @throws SQLException
+     */
+    private int executeWrite(PreparedStatement ps) throws SQLException {
+        int cnt = ps.executeUpdate();
+        rowsWritten += cnt;
+        return cnt;
+    }
+    
+    /**
+     * Return result of query ps, which loads object uid of objType, replaying
+     * the result cached under key by an earlier load if there is one.
+     * Otherwise ps is executed and its result cached, stamped with the value
+     * of stampColumn if given.
+     * @param objType
+     * @param uid
+     * @param key
+     * @param ps
+     * @param stampColumn
+     * @return
+     * @throws SQLException
+     */
+    private ResultSet cachedQuery(int objType, int uid, String key, PreparedStatement ps, String stampColumn)
+            throws SQLException {
+        ResultSet rs = objects.getResult(objType, uid, key);
+        if (rs != null) return rs;
+
+        rs = ps.executeQuery();
+        try {
+            return objects.putResult(objType, uid, key, rs, stampColumn);
+        } finally {
+            rs.close();
+        }
+    }
+
+    /**
+     * Drop cached results for obj if its modified time in storage differs
+     * from the one they were read with
+     * @param obj
+     */
+    private void validateCached(EPOCObject obj) {
+        int objType = obj.getObjType();
+        int uid = obj.getUID();
+        if (uid <= 0 || objType == OBJ_TS || objType == OBJ_UNI || !objects.contains(objType, uid)) return;
+
+        String tbl = getTableName(objType);
+        String sql = "SELECT modified FROM " + tbl + " WHERE uid = ?";
+        long stamp = ObjectCache.NO_STAMP;
+        try {
+            PreparedStatement ps = reads().prepare("validateCached." + tbl, sql);
+            ps.setInt(1, uid);
+            outputSQL(sql);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next() && rs.getTimestamp(1) != null) stamp = rs.getTimestamp(1).getTime();
+            rs.close();
+        } catch (SQLException se) {
+            printSQLError(se);
+        }
+
+        objects.validate(objType, uid, stamp);
+    }
+
+    /**
+     * Drop cached results of the parents whose child lists a write of obj may
+     * change, being its parent and, if it has been relinked, the parent it was
+     * last stored under
+     * @param obj
+     */
+    private void invalidateCachedParents(EPOCObject obj) {
+        invalidateCachedParent(obj.getObjType(), obj.getParentUID());
+        if (obj.getStoredParentUID() != obj.getParentUID()) {
+            invalidateCachedParent(obj.getObjType(), obj.getStoredParentUID());
+        }
+    }
+
+    /**
+     * Drop cached results of parentUID, whose list of children of childType
+     * is being written.  Within a transaction they are dropped again on commit,
+     * as a reader may have listed the children again before then.
+     * @param childType
+     * @param parentUID
+     */
+    private void invalidateCachedParent(int childType, int parentUID) {
+        int parentType;
+        if (childType == OBJ_ATT || childType == OBJ_ACT) {
+            parentType = OBJ_ELE;
+        } else if (childType == OBJ_TS) {
+            parentType = OBJ_ACT;
+        } else {
+            return;     // only elements and actions have their child lists cached
+        }
+        if (parentUID <= 0) return;
+
+        objects.invalidate(parentType, parentUID);
+        if (txDepth > 0) writtenParents.add(((long)parentType << 32) | parentUID);
+    }
+
+    /**
+     * Return object cache statistics
+     * @return
+     */
+    public synchronized String getCacheStats() {
+        return objects.toString() + "\n" + LazyText.getCacheStats() + "\n" + stmts + "\n" + readers;
+    }
+
+    /**
+     * Set the number of objects whose results are cached
+     * @param size
+     */
+    public synchronized void setCacheSize(int size) {
+        objects.setCapacity(size);
+    }
+
+    /**
+     * Attempt to load universe data members from storage given object's uid
+     * @return  boolean true on success
+     */
+    private boolean loadUniverse(Universe uni, boolean loadChildren) {
+        int uid = uni.getUID();
+        boolean retVal = true;
+        String sql;
+        
+        if (uid > 0) {
+            try {
+                sql ="SELECT * FROM universe WHERE uid = ?";
+                PreparedStatement ps = reads().prepare("loadUniverse", sql);
+                ps.setInt(1, uid);
+                outputSQL(sql);
+                ResultSet rs = ps.executeQuery();
+
+                if (rs.next()) {
+                    uni.setParentUID(rs.getInt("parent_uid"));
+                    uni.setName(rs.getString("name"));
+                    uni.setShortName(rs.getString("shortname"));
+                    uni.setEPOCClassName(rs.getString("classname"));
+                    uni.setMorph(rs.getString("morph"));
+                    uni.setEPOCID(rs.getString("epocid"));
+                    uni.setRevision(rs.getString("version"));
+                    uni.setDescription(rs.getString("description"));
+                    uni.setAuthor(rs.getString("creator"));
+                    uni.setCreated(new java.util.Date(rs.getTimestamp("created").getTime()));
+                    uni.setModified(new java.util.Date(rs.getTimestamp("modified").getTime()));
+                    uni.setController(rs.getString("controller"));
                     uni.setLocked(rs.getBoolean("locked"));
                     uni.setPosition(rs.getInt("position"));
                     
@@ -940,13 +1729,17 @@ public class DerbyStorage implements Storage {
 
                     // load spatial
                     Spatial spa;
-                    sql = "SELECT uid, 'uniq' as type FROM spatial WHERE parent_uid = " + uid + " " +
+                    sql = "SELECT uid, 'uniq' as type FROM spatial WHERE parent_uid = ? " +
                           "UNION " +
-                          "SELECT uid, 'tmpl' as type FROM template WHERE parent_uid = " + uid + " " +
-                          "AND objecttype = " + OBJ_SPA + " " +
+                          "SELECT uid, 'tmpl' as type FROM template WHERE parent_uid = ? " +
+                          "AND objecttype = ? " +
                           "ORDER BY uid";
+                    ps = reads().prepare("loadUniverse.spatial", sql);
+                    ps.setInt(1, uid);
+                    ps.setInt(2, uid);
+                    ps.setInt(3, OBJ_SPA);
                     outputSQL(sql);
-                    rs = s.executeQuery(sql);
+                    rs = ps.executeQuery();
                     while (rs.next()) {
                         if (rs.getString("type").equals("uniq") || uni.getTemplates() == null) {
                             spa = new Spatial(rs.getInt("uid"), uni.getTemplates());    // causes it to be loaded
@@ -960,13 +1753,17 @@ public class DerbyStorage implements Storage {
 
                     // load report
                     Report rep;
-                    sql = "SELECT uid, 'uniq' as type FROM report WHERE parent_uid = " + uid + " " +
+                    sql = "SELECT uid, 'uniq' as type FROM report WHERE parent_uid = ? " +
                           "UNION " +
-                          "SELECT uid, 'tmpl' as type FROM template WHERE parent_uid = " + uid + " " +
-                          "AND objecttype = " + OBJ_REP + " " +
+                          "SELECT uid, 'tmpl' as type FROM template WHERE parent_uid = ? " +
+                          "AND objecttype = ? " +
                           "ORDER BY uid";
+                    ps = reads().prepare("loadUniverse.report", sql);
+                    ps.setInt(1, uid);
+                    ps.setInt(2, uid);
+                    ps.setInt(3, OBJ_REP);
                     outputSQL(sql);
-                    rs = s.executeQuery(sql);
+                    rs = ps.executeQuery();
                     while (rs.next()) {
                         if (rs.getString("type").equals("uniq") || uni.getTemplates() == null) {
                             rep = new Report(rs.getInt("uid"), uni.getTemplates());    // causes it to be loaded
@@ -980,13 +1777,17 @@ public class DerbyStorage implements Storage {
 
                     // load trial
                     Trial tri;
-                    sql = "SELECT uid, position, 'uniq' as type FROM trial WHERE parent_uid = " + uid + " " +
+                    sql = "SELECT uid, position, 'uniq' as type FROM trial WHERE parent_uid = ? " +
                           "UNION " +
-                          "SELECT uid, position, 'tmpl' as type FROM template WHERE parent_uid = " + uid + " " +
-                          "AND objecttype = " + OBJ_TRI + " " +
+                          "SELECT uid, position, 'tmpl' as type FROM template WHERE parent_uid = ? " +
+                          "AND objecttype = ? " +
                           "ORDER BY position";
+                    ps = reads().prepare("loadUniverse.trial", sql);
+                    ps.setInt(1, uid);
+                    ps.setInt(2, uid);
+                    ps.setInt(3, OBJ_TRI);
                     outputSQL(sql);
-                    rs = s.executeQuery(sql);
+                    rs = ps.executeQuery();
                     while (rs.next()) {
                         if (rs.getString("type").equals("uniq") || uni.getTemplates() == null) {
                             tri = new Trial(rs.getInt("uid"), uni.getTemplates());    // causes it to be loaded
@@ -999,33 +1800,14 @@ public class DerbyStorage implements Storage {
                     }
                     rs.close();
 
-                    if (loadChildren) {
-                        Element ele;
-                        sql = "SELECT uid, position, 'uniq' as type FROM element WHERE parent_uid = " + uid + " " +
-                              "UNION " +
-                              "SELECT uid, position, 'tmpl' as type FROM template WHERE parent_uid = " + uid + " " +
-                              "AND objecttype = " + OBJ_ELE + " " +
-                              "ORDER BY position";
-                        outputSQL(sql);
-                        rs = s.executeQuery(sql);
-                        while (rs.next()) {
-                            if (rs.getString("type").equals("uniq") || uni.getTemplates() == null) {
-                                ele = new Element(rs.getInt("uid"), uni.getTemplates()); // causes it to be loaded
-                            }else {
-                                ele = (Element)uni.getTemplates().getFromTemplateList(OBJ_ELE, rs.getInt("uid"));
-                                ele.setTemplates(uni.getTemplates());
-                            }
-                            if (rs.getString("type").equals("tmpl")) ele.setPosition(rs.getInt("position"));
-                            uni.addElement(ele);
-                        }
-                    }
+                    // load elements and all their children in one pass
+                    if (loadChildren && !bulkLoadElements(uni)) retVal = false;
                 } else {
                     retVal = false;
                 }
-                
+
                 rs.close();
-                s.close();
-            
+
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
@@ -1038,6 +1820,213 @@ public class DerbyStorage implements Storage {
         return retVal;
     }
     
+    /**
+     * Load all elements of the passed universe together with their attributes,
+     * actions and timesteps using a single query per table rather than letting
+     * each object load itself.  The object graph is assembled in memory and any
+     * template links are resolved from one pass over the template table.
+     * Result is the same as calling new Element(uid, templates) for each element.
+     * @return  boolean true on success
+     */
+    private boolean bulkLoadElements(Universe uni) throws SQLException {
+        int uid = uni.getUID();
+        Templates templates = uni.getTemplates();
+        String sql;
+        PreparedStatement ps;
+        ResultSet rs;
+
+        ArrayList<LoadedChild> eleList = new ArrayList();
+        HashMap<Integer, Element> eleMap = new HashMap();
+        HashMap<Integer, Action> actMap = new HashMap();
+        HashMap<Integer, ArrayList<LoadedChild>> attChildren = new HashMap();
+        HashMap<Integer, ArrayList<LoadedChild>> actChildren = new HashMap();
+        HashMap<Integer, ArrayList<LoadedChild>> tsChildren = new HashMap();
+
+        // elements
+        sql = "SELECT * FROM element WHERE parent_uid = ?";
+        ps = reads().prepare("bulkLoad.element", sql);
+        ps.setInt(1, uid);
+        outputSQL(sql);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+            Element ele = new Element(rs.getString("version"));
+            ele.setUID(rs.getInt("uid"));
+            ele.setTemplates(templates);
+            readElement(ele, rs);
+            eleMap.put(ele.getUID(), ele);
+            eleList.add(new LoadedChild(ele.getPosition(), ele));
+        }
+        rs.close();
+
+        // attributes of those elements
+        sql = "SELECT " + ATTRIBUTE_COLS + " FROM attribute WHERE parent_uid IN " +
+              "(SELECT uid FROM element WHERE parent_uid = ?)";
+        ps = reads().prepare("bulkLoad.attribute", sql);
+        ps.setInt(1, uid);
+        outputSQL(sql);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+            Attribute att = new Attribute(rs.getString("version"));
+            att.setUID(rs.getInt("uid"));
+            att.setTemplates(templates);
+            readAttribute(att, rs);
+            addLoadedChild(attChildren, att.getParentUID(), att.getPosition(), att);
+        }
+        rs.close();
+
+        // actions of those elements
+        sql = "SELECT " + ACTION_COLS + " FROM action WHERE parent_uid IN " +
+              "(SELECT uid FROM element WHERE parent_uid = ?)";
+        ps = reads().prepare("bulkLoad.action", sql);
+        ps.setInt(1, uid);
+        outputSQL(sql);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+            Action act = new Action(rs.getString("version"));
+            act.setUID(rs.getInt("uid"));
+            act.setTemplates(templates);
+            readAction(act, rs);
+            actMap.put(act.getUID(), act);
+            addLoadedChild(actChildren, act.getParentUID(), act.getPosition(), act);
+        }
+        rs.close();
+
+        // timesteps of those actions
+        sql = "SELECT * FROM timestep WHERE parent_uid IN " +
+              "(SELECT a.uid FROM action a, element e WHERE a.parent_uid = e.uid AND e.parent_uid = ?)";
+        ps = reads().prepare("bulkLoad.timestep", sql);
+        ps.setInt(1, uid);
+        outputSQL(sql);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+            Timestep ts = new Timestep();
+            ts.setUID(rs.getInt("uid"));
+            ts.setTemplates(templates);
+            readTimestep(ts, rs);
+            addLoadedChild(tsChildren, ts.getParentUID(), ts.getUID(), ts);
+        }
+        rs.close();
+
+        // template links held by universe, its elements and their actions
+        sql = "SELECT parent_uid, uid, objecttype, position FROM template " +
+              "WHERE (objecttype = ? AND parent_uid = ?) " +
+              "OR (objecttype IN (?, ?) AND parent_uid IN (SELECT uid FROM element WHERE parent_uid = ?)) " +
+              "OR (objecttype = ? AND parent_uid IN " +
+              "(SELECT a.uid FROM action a, element e WHERE a.parent_uid = e.uid AND e.parent_uid = ?))";
+        ps = reads().prepare("bulkLoad.template", sql);
+        ps.setInt(1, OBJ_ELE);
+        ps.setInt(2, uid);
+        ps.setInt(3, OBJ_ATT);
+        ps.setInt(4, OBJ_ACT);
+        ps.setInt(5, uid);
+        ps.setInt(6, OBJ_TS);
+        ps.setInt(7, uid);
+        outputSQL(sql);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+            int objType = rs.getInt("objecttype");
+            int puid = rs.getInt("parent_uid");
+            EPOCObject tmpl = null;
+
+            if (templates != null) tmpl = templates.getFromTemplateList(objType, rs.getInt("uid"));
+            if (tmpl == null) tmpl = instantiateObject(objType, rs.getInt("uid"), templates);
+            tmpl.setTemplates(templates);
+            tmpl.setPosition(rs.getInt("position"));
+
+            switch (objType) {
+                case OBJ_ELE:
+                    eleList.add(new LoadedChild(tmpl.getPosition(), tmpl));
+                    break;
+                case OBJ_ATT:
+                    addLoadedChild(attChildren, puid, tmpl.getPosition(), tmpl);
+                    break;
+                case OBJ_ACT:
+                    addLoadedChild(actChildren, puid, tmpl.getPosition(), tmpl);
+                    break;
+                case OBJ_TS:
+                    addLoadedChild(tsChildren, puid, tmpl.getUID(), tmpl);
+                    break;
+            }
+        }
+        rs.close();
+
+        // assemble graph
+        for (Action act : actMap.values()) {
+            for (EPOCObject ts : sortLoadedChildren(tsChildren.get(act.getUID()))) {
+                act.addTimestep((Timestep)ts);
+            }
+        }
+        for (Element ele : eleMap.values()) {
+            for (EPOCObject att : sortLoadedChildren(attChildren.get(ele.getUID()))) {
+                ele.addAttribute((Attribute)att);
+            }
+            for (EPOCObject act : sortLoadedChildren(actChildren.get(ele.getUID()))) {
+                ele.addAction((Action)act);
+            }
+            ele.setEClassObject();
+            ele.setActionLinkedObjects();
+        }
+        for (EPOCObject ele : sortLoadedChildren(eleList)) {
+            uni.addElement((Element)ele);
+        }
+
+        return true;
+    }
+
+    /**
+     * Add obj to the list of loaded children held against puid in map
+     */
+    private void addLoadedChild(HashMap<Integer, ArrayList<LoadedChild>> map, int puid, int order, EPOCObject obj) {
+        ArrayList<LoadedChild> lst = map.get(puid);
+        if (lst == null) {
+            lst = new ArrayList();
+            map.put(puid, lst);
+        }
+        lst.add(new LoadedChild(order, obj));
+    }
+
+    /**
+     * Return the objects held in the passed list in load order
+     */
+    private ArrayList<EPOCObject> sortLoadedChildren(ArrayList<LoadedChild> lst) {
+        ArrayList<EPOCObject> objs = new ArrayList();
+
+        if (lst != null) {
+            Collections.sort(lst);
+            for (LoadedChild lc : lst) objs.add(lc.obj);
+        }
+
+        return objs;
+    }
+
+    /**
+     * Object loaded by bulkLoadElements() along with the position (or uid) it
+     * should be ordered by within its parent
+     */
+    private static class LoadedChild implements Comparable<LoadedChild> {
+        int order;
+        EPOCObject obj;
+
+        LoadedChild(int order, EPOCObject obj) {
+            this.order = order;
+            this.obj = obj;
+        }
+
+        public int compareTo(LoadedChild lc) {
+            return order - lc.order;
+        }
+    }
+
+    /**
+     * Reads in progress on a thread: how deeply reads and loads are nested
+     * and the statements of the read connection taken by the outermost
+     */
+    private static class ReadState {
+        int depth = 0;
+        int loadDepth = 0;
+        StatementCache stmts = null;
+    }
+
     /**
      * Attempt to load Universe Spatial object from storage given object's uid
      * @return  boolean true on success
@@ -1049,10 +2038,11 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="SELECT * FROM spatial WHERE uid = " + uid;
+                sql ="SELECT * FROM spatial WHERE uid = ?";
+                PreparedStatement ps = reads().prepare("loadSpatial", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                ResultSet rs = s.executeQuery(sql);
+                ResultSet rs = cachedQuery(OBJ_SPA, uid, "loadSpatial", ps, "modified");
 
                 if (rs.next()) {
                     spa.setParentUID(rs.getInt("parent_uid"));
@@ -1065,8 +2055,12 @@ public class DerbyStorage implements Storage {
                     spa.setCreated(new java.util.Date(rs.getTimestamp("created").getTime()));
                     spa.setModified(new java.util.Date(rs.getTimestamp("modified").getTime()));
                     spa.setDescription(rs.getString("description"));
-                    spa.setPolygonsString(rs.getString("polygons"));
-                    spa.setOverlapsString(rs.getString("polyoverlaps"));
+                    // polygons saved before 0.4.3 are only held as text
+                    byte[] polyData = rs.getBytes("polydata");
+                    if (polyData == null || !spa.setPolygonData(polyData)) {
+                        spa.setPolygonsString(rs.getString("polygons"));
+                        spa.setOverlapsString(rs.getString("polyoverlaps"));
+                    }
                     spa.setLocked(rs.getBoolean("locked"));
 
                     // Add self to templates if it is a templates
@@ -1079,7 +2073,6 @@ public class DerbyStorage implements Storage {
                 }
 
                 rs.close();
-                s.close();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
@@ -1103,10 +2096,11 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="SELECT * FROM report WHERE uid = " + uid;
+                sql ="SELECT * FROM report WHERE uid = ?";
+                PreparedStatement ps = reads().prepare("loadReport", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                ResultSet rs = s.executeQuery(sql);
+                ResultSet rs = cachedQuery(OBJ_REP, uid, "loadReport", ps, "modified");
 
                 if (rs.next()) {
                     rep.setParentUID(rs.getInt("parent_uid"));
@@ -1140,7 +2134,6 @@ public class DerbyStorage implements Storage {
                 }
 
                 rs.close();
-                s.close();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
@@ -1164,10 +2157,11 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="SELECT * FROM trial WHERE uid = " + uid;
+                sql ="SELECT * FROM trial WHERE uid = ?";
+                PreparedStatement ps = reads().prepare("loadTrial", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                ResultSet rs = s.executeQuery(sql);
+                ResultSet rs = cachedQuery(OBJ_TRI, uid, "loadTrial", ps, "modified");
 
                 if (rs.next()) {
                     tri.setParentUID(rs.getInt("parent_uid"));
@@ -1198,7 +2192,6 @@ public class DerbyStorage implements Storage {
                 }
 
                 rs.close();
-                s.close();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
@@ -1222,10 +2215,11 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="SELECT * FROM eclass WHERE uid = " + uid;
+                sql ="SELECT " + ECLASS_COLS + " FROM eclass WHERE uid = ?";
+                PreparedStatement ps = reads().prepare("loadEClass", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                ResultSet rs = s.executeQuery(sql);
+                ResultSet rs = cachedQuery(OBJ_CLS, uid, "loadEClass", ps, "modified");
 
                 if (rs.next()) {
                     ec.setParentUID(rs.getInt("parent_uid"));
@@ -1237,11 +2231,7 @@ public class DerbyStorage implements Storage {
                     ec.setDescription(rs.getString("description"));
                     ec.setLocked(rs.getBoolean("locked"));
                     ec.setPosition(rs.getInt("position"));
-                    ec.setInitClass(rs.getString("initclass"));
-                    ec.setInitTrial(rs.getString("inittrial"));
-                    ec.setInitTransition(rs.getString("inittransition"));
-                    ec.setPrintState(rs.getString("printstate"));
-                    ec.setUpdateState(rs.getString("updatestate"));
+                    ec.setStoredText(this);
 
                     // Add self to templates if it is a templates
                     if (ec.getParentUID() == 0 && ec.getTemplates() != null
@@ -1254,7 +2244,6 @@ public class DerbyStorage implements Storage {
                 }
 
                 rs.close();
-                s.close();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
@@ -1278,29 +2267,14 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="SELECT * FROM element WHERE uid = " + uid;
+                sql ="SELECT * FROM element WHERE uid = ?";
+                PreparedStatement ps = reads().prepare("loadElement", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                ResultSet rs = s.executeQuery(sql);
+                ResultSet rs = cachedQuery(OBJ_ELE, uid, "loadElement", ps, "modified");
 
                 if (rs.next()) {
-                    ele.setParentUID(rs.getInt("parent_uid"));
-                    ele.setModType(rs.getInt("modtype"));
-                    ele.setName(rs.getString("name"));
-                    ele.setShortName(rs.getString("shortname"));
-                    ele.setEClassUID(rs.getInt("eclass_uid"));
-                    ele.setEPOCClassName(rs.getString("classname"));
-                    ele.setMorph(rs.getString("morph"));
-                    ele.setEPOCID(rs.getString("epocid"));
-                    ele.setRevision(rs.getString("version"));
-                    ele.setCreated(new java.util.Date(rs.getTimestamp("created").getTime()));
-                    ele.setModified(new java.util.Date(rs.getTimestamp("modified").getTime()));
-                    ele.setDescription(rs.getString("description"));
-                    ele.setAuthor(rs.getString("creator"));
-                    ele.setBirthDate(rs.getInt("birthday"), rs.getInt("birthmonth"));
-                    ele.setPolygonsString(rs.getString("polygons"));
-                    ele.setLocked(rs.getBoolean("locked"));
-                    ele.setPosition(rs.getInt("position"));
+                    readElement(ele, rs);
 
                     // Add self to templates if it is a template
                     if (ele.getParentUID() == 0 && ele.getTemplates() != null
@@ -1313,13 +2287,17 @@ public class DerbyStorage implements Storage {
 
                         // load attributes
                         Attribute att;
-                        sql = "SELECT uid, position, 'uniq' as type FROM attribute WHERE parent_uid = " + uid + " " +
+                        sql = "SELECT uid, position, 'uniq' as type FROM attribute WHERE parent_uid = ? " +
                               "UNION " +
-                              "SELECT uid, position, 'tmpl' as type FROM template WHERE parent_uid = " + uid + " " +
-                              "AND objecttype = " + OBJ_ATT + " " +
+                              "SELECT uid, position, 'tmpl' as type FROM template WHERE parent_uid = ? " +
+                              "AND objecttype = ? " +
                               "ORDER BY position";
+                        ps = reads().prepare("loadElement.attribute", sql);
+                        ps.setInt(1, uid);
+                        ps.setInt(2, uid);
+                        ps.setInt(3, OBJ_ATT);
                         outputSQL(sql);
-                        rs = s.executeQuery(sql);
+                        rs = cachedQuery(OBJ_ELE, uid, "loadElement.attribute", ps, null);
                         while (rs.next()) {
                             if (rs.getString("type").equals("uniq") || ele.getTemplates() == null) {
                                 att = new Attribute(rs.getInt("uid"), ele.getTemplates());    // causes it to be loaded
@@ -1333,13 +2311,17 @@ public class DerbyStorage implements Storage {
 
                         // load actions
                         Action act;
-                        sql = "SELECT uid, position, 'uniq' as type FROM action WHERE parent_uid = " + uid + " " +
+                        sql = "SELECT uid, position, 'uniq' as type FROM action WHERE parent_uid = ? " +
                               "UNION " +
-                              "SELECT uid, position, 'tmpl' as type FROM template WHERE parent_uid = " + uid + " " +
-                              "AND objecttype = " + OBJ_ACT + " " +
+                              "SELECT uid, position, 'tmpl' as type FROM template WHERE parent_uid = ? " +
+                              "AND objecttype = ? " +
                               "ORDER BY position";
+                        ps = reads().prepare("loadElement.action", sql);
+                        ps.setInt(1, uid);
+                        ps.setInt(2, uid);
+                        ps.setInt(3, OBJ_ACT);
                         outputSQL(sql);
-                        rs = s.executeQuery(sql);
+                        rs = cachedQuery(OBJ_ELE, uid, "loadElement.action", ps, null);
                         while (rs.next()) {
                             if (rs.getString("type").equals("uniq") || ele.getTemplates() == null) {
                                 act = new Action(rs.getInt("uid"), ele.getTemplates());    // causes it to be loaded
@@ -1355,7 +2337,6 @@ public class DerbyStorage implements Storage {
                 }
 
                 rs.close();
-                s.close();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
@@ -1379,25 +2360,14 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="SELECT * FROM action WHERE uid = " + uid;
+                sql ="SELECT " + ACTION_COLS + " FROM action WHERE uid = ?";
+                PreparedStatement ps = reads().prepare("loadAction", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                ResultSet rs = s.executeQuery(sql);
+                ResultSet rs = cachedQuery(OBJ_ACT, uid, "loadAction", ps, "modified");
 
                 if (rs.next()) {
-                    act.setParentUID(rs.getInt("parent_uid"));
-                    act.setShortName(rs.getString("shortname"));
-                    act.setRevision(rs.getString("version"));
-                    act.setCreated(new java.util.Date(rs.getTimestamp("created").getTime()));
-                    act.setModified(new java.util.Date(rs.getTimestamp("modified").getTime()));
-                    act.setDescription(rs.getString("description"));
-                    act.setActType(rs.getInt("acttype"));
-                    act.setDatasetUID(rs.getInt("dataset"));
-                    act.setTransformUID(rs.getInt("transform"));
-                    act.setRelatedUIDsFromString(rs.getString("related"));
-                    act.setCode(rs.getString("code"));
-                    act.setLocked(rs.getBoolean("locked"));
-                    act.setPosition(rs.getInt("position"));
+                    readAction(act, rs);
 
                     // Add self to templates if it is a template
                     if (act.getParentUID() == 0
@@ -1405,15 +2375,21 @@ public class DerbyStorage implements Storage {
                         act.getTemplates().addTemplateList(act);
                     }
 
+                    rs.close();
+
                     // load timesteps
                     Timestep ts;
-                    sql = "SELECT uid, 'used' as type FROM timestep WHERE parent_uid = " + uid + " " +
+                    sql = "SELECT uid, 'used' as type FROM timestep WHERE parent_uid = ? " +
                           "UNION " +
-                          "SELECT uid, 'tmpl' as type FROM template WHERE parent_uid = " + uid + " " +
-                          "AND objecttype = " + OBJ_TS + " " +
+                          "SELECT uid, 'tmpl' as type FROM template WHERE parent_uid = ? " +
+                          "AND objecttype = ? " +
                           "ORDER BY uid";
+                    ps = reads().prepare("loadAction.timestep", sql);
+                    ps.setInt(1, uid);
+                    ps.setInt(2, uid);
+                    ps.setInt(3, OBJ_TS);
                     outputSQL(sql);
-                    rs = s.executeQuery(sql);
+                    rs = cachedQuery(OBJ_ACT, uid, "loadAction.timestep", ps, null);
                     while (rs.next()) {
                         if (rs.getString("type").equals("used") || act.getTemplates() == null) {
                             ts = new Timestep(rs.getInt("uid"), act.getTemplates());   // causes it to be loaded
@@ -1430,7 +2406,6 @@ public class DerbyStorage implements Storage {
                 }
 
                 rs.close();
-                s.close();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
@@ -1454,21 +2429,14 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="SELECT * FROM attribute WHERE uid = " + uid;
+                sql ="SELECT " + ATTRIBUTE_COLS + " FROM attribute WHERE uid = ?";
+                PreparedStatement ps = reads().prepare("loadAttribute", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                ResultSet rs = s.executeQuery(sql);
+                ResultSet rs = cachedQuery(OBJ_ATT, uid, "loadAttribute", ps, "modified");
 
                 if (rs.next()) {
-                    att.setParentUID(rs.getInt("parent_uid"));
-                    att.setShortName(rs.getString("shortname"));
-                    att.setRevision(rs.getString("version"));
-                    att.setCreated(new java.util.Date(rs.getTimestamp("created").getTime()));
-                    att.setModified(new java.util.Date(rs.getTimestamp("modified").getTime()));
-                    att.setDescription(rs.getString("description"));
-                    att.setValue(rs.getString("value"));
-                    att.setLocked(rs.getBoolean("locked"));
-                    att.setPosition(rs.getInt("position"));
+                    readAttribute(att, rs);
 
                     // Add self to templates if it is a templates
                     if (att.getParentUID() == 0
@@ -1481,7 +2449,6 @@ public class DerbyStorage implements Storage {
                 }
 
                 rs.close();
-                s.close();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
@@ -1505,18 +2472,14 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="SELECT * FROM timestep WHERE uid = " + uid;
+                sql ="SELECT * FROM timestep WHERE uid = ?";
+                PreparedStatement ps = reads().prepare("loadTimestep", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                ResultSet rs = s.executeQuery(sql);
+                ResultSet rs = cachedQuery(OBJ_TS, uid, "loadTimestep", ps, null);
                 
                 while (rs.next()) {
-                    ts.setParentUID(rs.getInt("parent_uid"));
-                    ts.setSteps(rs.getInt("startday"), rs.getInt("startmonth"),
-                                rs.getInt("endday"), rs.getInt("endmonth"));
-                    ts.setStepType(rs.getInt("steptype"));
-                    ts.setStepTiming(rs.getInt("steptiming"));
-                    ts.setDatasetUID(rs.getInt("dataset"));
+                    readTimestep(ts, rs);
 
                     // Add self to templates if it is a templates
                     if (ts.getParentUID() == 0
@@ -1526,7 +2489,6 @@ public class DerbyStorage implements Storage {
                 }
                 
                 rs.close();
-                s.close();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
@@ -1539,6 +2501,75 @@ public class DerbyStorage implements Storage {
         return retVal;
     }
     
+    /**
+     * Set Element data members from the current row of the passed result set
+     */
+    private void readElement(Element ele, ResultSet rs) throws SQLException {
+        ele.setParentUID(rs.getInt("parent_uid"));
+        ele.setModType(rs.getInt("modtype"));
+        ele.setName(rs.getString("name"));
+        ele.setShortName(rs.getString("shortname"));
+        ele.setEClassUID(rs.getInt("eclass_uid"));
+        ele.setEPOCClassName(rs.getString("classname"));
+        ele.setMorph(rs.getString("morph"));
+        ele.setEPOCID(rs.getString("epocid"));
+        ele.setRevision(rs.getString("version"));
+        ele.setCreated(new java.util.Date(rs.getTimestamp("created").getTime()));
+        ele.setModified(new java.util.Date(rs.getTimestamp("modified").getTime()));
+        ele.setDescription(rs.getString("description"));
+        ele.setAuthor(rs.getString("creator"));
+        ele.setBirthDate(rs.getInt("birthday"), rs.getInt("birthmonth"));
+        ele.setPolygonsString(rs.getString("polygons"));
+        ele.setLocked(rs.getBoolean("locked"));
+        ele.setPosition(rs.getInt("position"));
+    }
+
+    /**
+     * Set Action data members from the current row of the passed result set
+     */
+    private void readAction(Action act, ResultSet rs) throws SQLException {
+        act.setParentUID(rs.getInt("parent_uid"));
+        act.setShortName(rs.getString("shortname"));
+        act.setRevision(rs.getString("version"));
+        act.setCreated(new java.util.Date(rs.getTimestamp("created").getTime()));
+        act.setModified(new java.util.Date(rs.getTimestamp("modified").getTime()));
+        act.setDescription(rs.getString("description"));
+        act.setActType(rs.getInt("acttype"));
+        act.setDatasetUID(rs.getInt("dataset"));
+        act.setTransformUID(rs.getInt("transform"));
+        act.setRelatedUIDsFromString(rs.getString("related"));
+        act.setCodeText(LazyText.stored(this, LazyText.ACT_CODE, act.getUID()));
+        act.setLocked(rs.getBoolean("locked"));
+        act.setPosition(rs.getInt("position"));
+    }
+
+    /**
+     * Set Attribute data members from the current row of the passed result set
+     */
+    private void readAttribute(Attribute att, ResultSet rs) throws SQLException {
+        att.setParentUID(rs.getInt("parent_uid"));
+        att.setShortName(rs.getString("shortname"));
+        att.setRevision(rs.getString("version"));
+        att.setCreated(new java.util.Date(rs.getTimestamp("created").getTime()));
+        att.setModified(new java.util.Date(rs.getTimestamp("modified").getTime()));
+        att.setDescription(rs.getString("description"));
+        att.setValueText(LazyText.stored(this, LazyText.ATT_VALUE, att.getUID()));
+        att.setLocked(rs.getBoolean("locked"));
+        att.setPosition(rs.getInt("position"));
+    }
+
+    /**
+     * Set Timestep data members from the current row of the passed result set
+     */
+    private void readTimestep(Timestep ts, ResultSet rs) throws SQLException {
+        ts.setParentUID(rs.getInt("parent_uid"));
+        ts.setSteps(rs.getInt("startday"), rs.getInt("startmonth"),
+                    rs.getInt("endday"), rs.getInt("endmonth"));
+        ts.setStepType(rs.getInt("steptype"));
+        ts.setStepTiming(rs.getInt("steptiming"));
+        ts.setDatasetUID(rs.getInt("dataset"));
+    }
+
     /*
      * Save the passed Universe object to storage.
      * If saveChildren indicated then save universe Element objects etc.
@@ -1555,43 +2586,41 @@ public class DerbyStorage implements Storage {
             if (uni.isTemplate()) uni.setParentUID(0);
 
             // First save Universe data
-            Statement s = conn.createStatement();
-
-            if (uid == 0) {
-                 // else insert data
-                sql = "INSERT INTO universe (parent_uid, name, shortname, classname, morph, epocid, version, " +
-                          "description, creator, created, modified, controller, locked) " +
-                          "VALUES(0, '" + escStr(uni.getName()) + "', '" +
-                          escStr(uni.getShortName()) + "', '" + escStr(uni.getEPOCClassName()) + "', '" +
-                          escStr(uni.getMorph()) + "', '" + uni.getEPOCID() + "', '" +
-                          uni.getRevision() + "', '" + escStr(uni.getDescription()) + "', '" +
-                          escStr(uni.getAuthor()) + "', '" + new Timestamp(uni.getCreated().getTime()) + "', '" +
-                          new Timestamp(uni.getModified().getTime()) + "', '" +
-                          escStr(uni.getController()) + "', " + (uni.isLocked() ? 1 : 0) + ")";
-                outputSQL(sql);
-                s.execute(sql);
-
-                // find new uid and add it to object
-                uni.setUID(getLastInsertUID());
-            } else if (uid > 0) {
-                // then update data
-                sql = "UPDATE universe SET name = '" + escStr(uni.getName()) + "', " +
-                                "shortname = '" + escStr(uni.getShortName()) + "', " +
-                                "classname = '" + escStr(uni.getEPOCClassName()) + "', " +
-                                "morph = '" + escStr(uni.getMorph()) + "', " +
-                                "epocid = '" + uni.getEPOCID() + "', " +
-                                "version = '" + uni.getRevision() + "', " +
-                                "description = '" + escStr(uni.getDescription()) + "', " +
-                                "creator = '" + escStr(uni.getAuthor()) + "', " +
-                                "created = '" + new Timestamp(uni.getCreated().getTime()) + "', " +
-                                "modified = '" + new Timestamp(uni.getModified().getTime()) + "', " +
-                                "controller = '" + escStr(uni.getController()) + "', " +
-                                "locked = " + (uni.isLocked() ? 1 : 0) + " " +
-                                "WHERE uid = " + uid;
+            boolean modified = needsWrite(uni);
+            if (modified) {
+                PreparedStatement ps;
+
+                if (uid == 0) {
+                     // else insert data
+                    sql = "INSERT INTO universe (parent_uid, name, shortname, classname, morph, epocid, version, " +
+                              "description, creator, created, modified, controller, locked, revkey) " +
+                              "VALUES(0, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    ps = stmts.prepare("saveUniverse.insert", sql);
+                } else {
+                    // then update data
+                    sql = "UPDATE universe SET name = ?, shortname = ?, classname = ?, morph = ?, " +
+                                    "epocid = ?, version = ?, description = ?, creator = ?, " +
+                                    "created = ?, modified = ?, controller = ?, locked = ?, revkey = ? " +
+                                    "WHERE uid = ?";
+                    ps = stmts.prepare("saveUniverse.update", sql);
+                    ps.setInt(14, uid);
+                }
+                ps.setString(1, uni.getName());
+                ps.setString(2, uni.getShortName());
+                ps.setString(3, uni.getEPOCClassName());
+                ps.setString(4, uni.getMorph());
+                ps.setString(5, uni.getEPOCID());
+                ps.setString(6, uni.getRevision());
+                ps.setString(7, uni.getDescription());
+                ps.setString(8, uni.getAuthor());
+                ps.setTimestamp(9, new Timestamp(uni.getCreated().getTime()));
+                ps.setTimestamp(10, new Timestamp(uni.getModified().getTime()));
+                ps.setString(11, uni.getController());
+                ps.setInt(12, (uni.isLocked() ? 1 : 0));
+                ps.setString(13, uni.getParsedRevision().getKey());
                 outputSQL(sql);
-                s.executeUpdate(sql);                 
+                writeRow(uni, ps);
             }
-            s.close();
 
             // Save Universe config objects
             // Spatial
@@ -1599,9 +2628,11 @@ public class DerbyStorage implements Storage {
                 Spatial spa = uni.getSpatial();
                 // if neither is a template then make sure spatial has new pid
                 if (!uni.isTemplate() && !spa.isTemplate()) spa.setParentUID(uni.getUID());
+                // link only needs writing if parent or spatial has changed
+                boolean relink = (modified || spa.getUID() == 0 || spa.isObjectModified());
                 // call save spatial
                 if (!spa.saveToStorage()) retVal = false;
-                if (spa.isTemplate()) {
+                if (spa.isTemplate() && relink) {
                     // then also needs a link added
                     if (!linkTemplate(uni.getUID(), spa)) retVal = false;
                 }
@@ -1619,9 +2650,11 @@ public class DerbyStorage implements Storage {
                 Report rep = uni.getReport();
                 // if neither is a template then make sure report has new pid
                 if (!uni.isTemplate() && !rep.isTemplate()) rep.setParentUID(uni.getUID());
+                // link only needs writing if parent or report has changed
+                boolean relink = (modified || rep.getUID() == 0 || rep.isObjectModified());
                 // call save report
                 if (!rep.saveToStorage()) retVal = false;
-                if (rep.isTemplate()) {
+                if (rep.isTemplate() && relink) {
                     // then also needs a link added
                     if (!linkTemplate(uni.getUID(), rep)) retVal = false;
                 }
@@ -1642,9 +2675,11 @@ public class DerbyStorage implements Storage {
 
                 // if neither is a template then make sure trial has new pid
                 if (!uni.isTemplate() && !tri.isTemplate()) tri.setParentUID(uni.getUID());
+                // link only needs writing if parent or trial has changed
+                boolean relink = (modified || tri.getUID() == 0 || tri.isObjectModified());
                 // call save trial
                 if (!tri.saveToStorage()) retVal = false;
-                if (tri.isTemplate()) {
+                if (tri.isTemplate() && relink) {
                     // then also needs a link added
                     if (!linkTemplate(uni.getUID(), tri)) retVal = false;
                 }
@@ -1660,7 +2695,7 @@ public class DerbyStorage implements Storage {
             */
             if (saveChildren) {
                 // Now save each element of each element type of universe
-                for (int eleType : new int[]{OBJ_ELE, OBJ_ENV, OBJ_ATY, OBJ_MAN, OBJ_OUT}) {
+                for (int eleType : new int[]{OBJ_BIO, OBJ_ENV, OBJ_ATY, OBJ_MAN, OBJ_OUT, OBJ_PRE}) {
                     i = 1;
                     for (Element ele : uni.getElements(eleType)) {
                         // rebuild position
@@ -1669,9 +2704,11 @@ public class DerbyStorage implements Storage {
                         // if neither is a template then make sure element has new pid
                         if (!uni.isTemplate() && !ele.isTemplate()) ele.setParentUID(uni.getUID());
 
+                        // link only needs writing if parent or element has changed
+                        boolean relink = (modified || ele.getUID() == 0 || ele.isObjectModified());
                         // call save element
                         if (!ele.saveToStorage()) retVal = false;
-                        if (ele.isTemplate()) {
+                        if (ele.isTemplate() && relink) {
                             // then also needs a link added
                             if (!linkTemplate(uni.getUID(), ele)) retVal = false;
                         }
@@ -1681,17 +2718,13 @@ public class DerbyStorage implements Storage {
             }
             
             if (retVal) {
-                conn.commit();
+                commit();
             }
             
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            rollback();
         }
         
         return retVal;
@@ -1711,57 +2744,48 @@ public class DerbyStorage implements Storage {
             if (spa.isTemplate()) spa.setParentUID(0);
 
             // Save element data
-            Statement s = conn.createStatement();
-
-            if (uid == 0) {
-                // else insert data
-                sql = "INSERT INTO spatial (parent_uid, name, shortname, classname, morph, epocid, " +
-                          "version, created, modified, description, polygons, polyoverlaps, locked) " +
-                          "VALUES(" + spa.getParentUID() + ", '" + escStr(spa.getName()) + "', '" +
-                          escStr(spa.getShortName()) + "', '" + escStr(spa.getEPOCClassName()) + "', '" +
-                          escStr(spa.getMorph()) + "', '" + spa.getEPOCID() + "', '" + spa.getRevision() + "', '" +
-                          new Timestamp(spa.getCreated().getTime()) + "', '" +
-                          new Timestamp(spa.getModified().getTime()) + "', '" +
-                          escStr(spa.getDescription()) + "', '" + escStr(spa.getPolygonsString()) + "', '" +
-                          escStr(spa.getOverlapsString()) + "', " + (spa.isLocked() ? 1 : 0) + ")";
-                outputSQL(sql);
-                s.execute(sql);
-
-                // find new uid and add it to object
-                spa.setUID(getLastInsertUID());
-            } else if (uid > 0) {
-                // then update data
-                sql = "UPDATE spatial SET " +
-                                "parent_uid = " + spa.getParentUID() + ", " +
-                                "name = '" + escStr(spa.getName()) + "', " +
-                                "shortname = '" + escStr(spa.getShortName()) + "', " +
-                                "classname = '" + escStr(spa.getEPOCClassName()) + "', " +
-                                "morph = '" + escStr(spa.getMorph()) + "', " +
-                                "epocid = '" + spa.getEPOCID() + "', " +
-                                "version = '" + spa.getRevision() + "', " +
-                                "created = '" + new Timestamp(spa.getCreated().getTime()) + "', " +
-                                "modified = '" + new Timestamp(spa.getModified().getTime()) + "', " +
-                                "description = '" + escStr(spa.getDescription()) + "', " +
-                                "polygons = '" + escStr(spa.getPolygonsString()) + "', " +
-                                "polyoverlaps = '" + escStr(spa.getOverlapsString()) + "', " +
-                                "locked = " + (spa.isLocked() ? 1 : 0) + " " +
-                                "WHERE uid = " + uid;
+            if (needsWrite(spa)) {
+                PreparedStatement ps;
+
+                if (uid == 0) {
+                    // else insert data
+                    sql = "INSERT INTO spatial (parent_uid, name, shortname, classname, morph, epocid, " +
+                              "version, created, modified, description, polydata, locked, revkey) " +
+                              "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    ps = stmts.prepare("saveSpatial.insert", sql);
+                } else {
+                    // then update data
+                    sql = "UPDATE spatial SET parent_uid = ?, name = ?, shortname = ?, classname = ?, " +
+                                    "morph = ?, epocid = ?, version = ?, created = ?, modified = ?, " +
+                                    "description = ?, polydata = ?, polygons = NULL, polyoverlaps = NULL, " +
+                                    "locked = ?, revkey = ? WHERE uid = ?";
+                    ps = stmts.prepare("saveSpatial.update", sql);
+                    ps.setInt(14, uid);
+                }
+                ps.setInt(1, spa.getParentUID());
+                ps.setString(2, spa.getName());
+                ps.setString(3, spa.getShortName());
+                ps.setString(4, spa.getEPOCClassName());
+                ps.setString(5, spa.getMorph());
+                ps.setString(6, spa.getEPOCID());
+                ps.setString(7, spa.getRevision());
+                ps.setTimestamp(8, new Timestamp(spa.getCreated().getTime()));
+                ps.setTimestamp(9, new Timestamp(spa.getModified().getTime()));
+                ps.setString(10, spa.getDescription());
+                ps.setBytes(11, spa.getPolygonData());
+                ps.setInt(12, (spa.isLocked() ? 1 : 0));
+                ps.setString(13, spa.getParsedRevision().getKey());
                 outputSQL(sql);
-                s.executeUpdate(sql);
+                writeRow(spa, ps);
             }
-            s.close();
 
             if (retVal) {
-                conn.commit();
+                commit();
             }
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            rollback();
         }
 
         return retVal;
@@ -1781,69 +2805,59 @@ public class DerbyStorage implements Storage {
             if (rep.isTemplate()) rep.setParentUID(0);
 
             // Save element data
-            Statement s = conn.createStatement();
-
-            if (uid == 0) {
-                // else insert data
-                sql = "INSERT INTO report (parent_uid, name, shortname, classname, morph, epocid, version, " +
-                          "created, modified, description, logprint, logfilename, calendarprint, " +
-                          "calendarfilename, debug, headline1, headline2, headline3, headline4, locked) " +
-                          "VALUES(" + rep.getParentUID() + ", '" +
-                          escStr(rep.getName()) + "', '" + escStr(rep.getShortName()) + "', '" + escStr(rep.getEPOCClassName()) + "', '" +
-                          escStr(rep.getMorph()) + "', '" + rep.getEPOCID() + "', '" +rep.getRevision() + "', '" +
-                          new Timestamp(rep.getCreated().getTime()) + "', '" +
-                          new Timestamp(rep.getModified().getTime()) + "', '" +
-                          escStr(rep.getDescription()) + "', " + (rep.getLogPrint() ? 1 : 0) + ", '" +
-                          escStr(rep.getLogFilename()) + "', " + (rep.getCalendarPrint() ? 1 : 0) + ", '" +
-                          escStr(rep.getCalendarFilename()) + "', " + (rep.getDebug() ? 1 : 0) + ", '" +
-                          escStr(rep.getHeadline(1)) + "', '" + escStr(rep.getHeadline(2)) + "', '" +
-                          escStr(rep.getHeadline(3)) + "', '" + escStr(rep.getHeadline(4)) + "', " +
-                          (rep.isLocked() ? 1 : 0) + ")";
-                outputSQL(sql);
-                s.execute(sql);
-
-                // find new uid and add it to object
-                rep.setUID(getLastInsertUID());
-            } else if (uid > 0) {
-                // then update data
-                sql = "UPDATE report SET " +
-                                "parent_uid = " + rep.getParentUID() + ", " +
-                                "name = '" + escStr(rep.getName()) + "', " +
-                                "shortname = '" + escStr(rep.getShortName()) + "', " +
-                                "classname = '" + escStr(rep.getEPOCClassName()) + "', " +
-                                "morph = '" + escStr(rep.getMorph()) + "', " +
-                                "epocid = '" + rep.getEPOCID() + "', " +
-                                "version = '" + rep.getRevision() + "', " +
-                                "created = '" + new Timestamp(rep.getCreated().getTime()) + "', " +
-                                "modified = '" + new Timestamp(rep.getModified().getTime()) + "', " +
-                                "description = '" + escStr(rep.getDescription()) + "', " +
-                                "logprint = " + (rep.getLogPrint() ? 1 : 0) + ", " +
-                                "logfilename = '" + escStr(rep.getLogFilename()) + "', " +
-                                "calendarprint = " + (rep.getCalendarPrint() ? 1 : 0) + ", " +
-                                "calendarfilename = '" + escStr(rep.getCalendarFilename()) + "', " +
-                                "debug = " + (rep.getDebug() ? 1 : 0) + ", " +
-                                "headline1 = '" + escStr(rep.getHeadline(1)) + "', " +
-                                "headline2 = '" + escStr(rep.getHeadline(2)) + "', " +
-                                "headline3 = '" + escStr(rep.getHeadline(3)) + "', " +
-                                "headline4 = '" + escStr(rep.getHeadline(4)) + "', " +
-                                "locked = " + (rep.isLocked() ? 1 : 0) + " " +
-                                "WHERE uid = " + uid;
+            if (needsWrite(rep)) {
+                PreparedStatement ps;
+
+                if (uid == 0) {
+                    // else insert data
+                    sql = "INSERT INTO report (parent_uid, name, shortname, classname, morph, epocid, version, " +
+                              "created, modified, description, logprint, logfilename, calendarprint, " +
+                              "calendarfilename, debug, headline1, headline2, headline3, headline4, locked, revkey) " +
+                              "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    ps = stmts.prepare("saveReport.insert", sql);
+                } else {
+                    // then update data
+                    sql = "UPDATE report SET parent_uid = ?, name = ?, shortname = ?, classname = ?, " +
+                                    "morph = ?, epocid = ?, version = ?, created = ?, modified = ?, " +
+                                    "description = ?, logprint = ?, logfilename = ?, calendarprint = ?, " +
+                                    "calendarfilename = ?, debug = ?, headline1 = ?, headline2 = ?, " +
+                                    "headline3 = ?, headline4 = ?, locked = ?, revkey = ? " +
+                                    "WHERE uid = ?";
+                    ps = stmts.prepare("saveReport.update", sql);
+                    ps.setInt(22, uid);
+                }
+                ps.setInt(1, rep.getParentUID());
+                ps.setString(2, rep.getName());
+                ps.setString(3, rep.getShortName());
+                ps.setString(4, rep.getEPOCClassName());
+                ps.setString(5, rep.getMorph());
+                ps.setString(6, rep.getEPOCID());
+                ps.setString(7, rep.getRevision());
+                ps.setTimestamp(8, new Timestamp(rep.getCreated().getTime()));
+                ps.setTimestamp(9, new Timestamp(rep.getModified().getTime()));
+                ps.setString(10, rep.getDescription());
+                ps.setInt(11, (rep.getLogPrint() ? 1 : 0));
+                ps.setString(12, rep.getLogFilename());
+                ps.setInt(13, (rep.getCalendarPrint() ? 1 : 0));
+                ps.setString(14, rep.getCalendarFilename());
+                ps.setInt(15, (rep.getDebug() ? 1 : 0));
+                ps.setString(16, rep.getHeadline(1));
+                ps.setString(17, rep.getHeadline(2));
+                ps.setString(18, rep.getHeadline(3));
+                ps.setString(19, rep.getHeadline(4));
+                ps.setInt(20, (rep.isLocked() ? 1 : 0));
+                ps.setString(21, rep.getParsedRevision().getKey());
                 outputSQL(sql);
-                s.executeUpdate(sql);
+                writeRow(rep, ps);
             }
-            s.close();
 
             if (retVal) {
-                conn.commit();
+                commit();
             }
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            rollback();
         }
 
         return retVal;
@@ -1863,64 +2877,55 @@ public class DerbyStorage implements Storage {
             if (tri.isTemplate()) tri.setParentUID(0);
 
             // Save element data
-            Statement s = conn.createStatement();
-
-            if (uid == 0) {
-                // else insert data
-                sql = "INSERT INTO trial (parent_uid, name, shortname, classname, morph, epocid, version, " +
-                          "created, modified, description, yearstart, yearend, firstfishingyear, lastfishingyear, " +
-                          "trialdir, locked, position) " +
-                          "VALUES(" + tri.getParentUID() + ", '" +
-                          escStr(tri.getName()) + "', '" + escStr(tri.getShortName()) + "', '" + escStr(tri.getEPOCClassName()) + "', '" +
-                          escStr(tri.getMorph()) + "', '" + tri.getEPOCID() + "', '" + tri.getRevision() + "', '" +
-                          new Timestamp(tri.getCreated().getTime()) + "', '" +
-                          new Timestamp(tri.getModified().getTime()) + "', '" +
-                          escStr(tri.getDescription()) + "', '" + tri.getYearStart() + "', '" +
-                          tri.getYearEnd() + "', '" + tri.getFishingStart() + "', '" +
-                          tri.getFishingEnd() + "', '" + escStr(tri.getTrialDir()) + "', " +
-                          (tri.isLocked() ? 1 : 0) + ", " + tri.getPosition() + ")";
-                outputSQL(sql);
-                s.execute(sql);
-
-                // find new uid and add it to object
-                tri.setUID(getLastInsertUID());
-            } else if (uid > 0) {
-                // then update data
-                sql = "UPDATE trial SET " +
-                                "parent_uid = " + tri.getParentUID() + ", " +
-                                "name = '" + escStr(tri.getName()) + "', " +
-                                "shortname = '" + escStr(tri.getShortName()) + "', " +
-                                "classname = '" + escStr(tri.getEPOCClassName()) + "', " +
-                                "morph = '" + escStr(tri.getMorph()) + "', " +
-                                "epocid = '" + tri.getEPOCID() + "', " +
-                                "version = '" + tri.getRevision() + "', " +
-                                "created = '" + new Timestamp(tri.getCreated().getTime()) + "', " +
-                                "modified = '" + new Timestamp(tri.getModified().getTime()) + "', " +
-                                "description = '" + escStr(tri.getDescription()) + "', " +
-                                "yearstart = '" + tri.getYearStart() + "', " +
-                                "yearend = '" + tri.getYearEnd() + "', " +
-                                "firstfishingyear = '" + tri.getFishingStart() + "', " +
-                                "lastfishingyear = '" + tri.getFishingEnd() + "', " +
-                                "trialdir = '" + escStr(tri.getTrialDir()) + "', " +
-                                "locked = " + (tri.isLocked() ? 1 : 0) + ", " +
-                                "position = " + tri.getPosition() + " " +
-                                "WHERE uid = " + uid;
+            if (needsWrite(tri)) {
+                PreparedStatement ps;
+
+                if (uid == 0) {
+                    // else insert data
+                    sql = "INSERT INTO trial (parent_uid, name, shortname, classname, morph, epocid, version, " +
+                              "created, modified, description, yearstart, yearend, firstfishingyear, lastfishingyear, " +
+                              "trialdir, locked, position, revkey) " +
+                              "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    ps = stmts.prepare("saveTrial.insert", sql);
+                } else {
+                    // then update data
+                    sql = "UPDATE trial SET parent_uid = ?, name = ?, shortname = ?, classname = ?, " +
+                                    "morph = ?, epocid = ?, version = ?, created = ?, modified = ?, " +
+                                    "description = ?, yearstart = ?, yearend = ?, firstfishingyear = ?, " +
+                                    "lastfishingyear = ?, trialdir = ?, locked = ?, position = ?, revkey = ? " +
+                                    "WHERE uid = ?";
+                    ps = stmts.prepare("saveTrial.update", sql);
+                    ps.setInt(19, uid);
+                }
+                ps.setInt(1, tri.getParentUID());
+                ps.setString(2, tri.getName());
+                ps.setString(3, tri.getShortName());
+                ps.setString(4, tri.getEPOCClassName());
+                ps.setString(5, tri.getMorph());
+                ps.setString(6, tri.getEPOCID());
+                ps.setString(7, tri.getRevision());
+                ps.setTimestamp(8, new Timestamp(tri.getCreated().getTime()));
+                ps.setTimestamp(9, new Timestamp(tri.getModified().getTime()));
+                ps.setString(10, tri.getDescription());
+                ps.setString(11, tri.getYearStart());
+                ps.setString(12, tri.getYearEnd());
+                ps.setString(13, tri.getFishingStart());
+                ps.setString(14, tri.getFishingEnd());
+                ps.setString(15, tri.getTrialDir());
+                ps.setInt(16, (tri.isLocked() ? 1 : 0));
+                ps.setInt(17, tri.getPosition());
+                ps.setString(18, tri.getParsedRevision().getKey());
                 outputSQL(sql);
-                s.executeUpdate(sql);
+                writeRow(tri, ps);
             }
-            s.close();
 
             if (retVal) {
-                conn.commit();
+                commit();
             }
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            rollback();
         }
 
         return retVal;
@@ -1940,61 +2945,64 @@ public class DerbyStorage implements Storage {
             if (ec.isTemplate()) ec.setParentUID(0);
 
             // Save element data
-            Statement s = conn.createStatement();
-
-            if (uid == 0) {
-                // else insert data
-                sql = "INSERT INTO eclass (parent_uid, modtype, name, shortname, " +
-                      "version, created, modified, description, initclass, inittrial, " +
-                      "inittransition, printstate, updatestate, locked, position) " +
-                      "VALUES(" + ec.getParentUID() + ", " + ec.getModType() + ", '" +
-                      escStr(ec.getName()) + "', '" + escStr(ec.getShortName()) + "', '" +
-                      ec.getRevision() + "', '" + new Timestamp(ec.getCreated().getTime()) + "', '" +
-                      new Timestamp(ec.getModified().getTime()) + "', '" + escStr(ec.getDescription()) + "', '" +
-                      escStr(ec.getInitClass()) + "', '" + escStr(ec.getInitTrial()) + "', '" +
-                      escStr(ec.getInitTransition()) + "', '" + escStr(ec.getPrintState()) + "', '" +
-                      escStr(ec.getUpdateState()) + "', " +
-                      (ec.isLocked() ? 1 : 0) + ", " + ec.getPosition() + ")";
-                outputSQL(sql);
-                s.execute(sql);
+            if (needsWrite(ec)) {
+                PreparedStatement ps;
+                String[] methods = new String[ECLASS_TEXT_COLS.length];
+                String methodCols = "";
+                String key = "";
+                for (int i = 0 ; i < methods.length ; i++) {
+                    methods[i] = textToWrite(ec.getStoredText(ECLASS_TEXT_BODIES[i]), ECLASS_TEXT_BODIES[i], uid);
+                    if (methods[i] != null) methodCols += ECLASS_TEXT_COLS[i] + " = ?, ";
+                    key += (methods[i] != null ? "1" : "0");
+                }
 
-                // find new uid and add it to object
-                ec.setUID(getLastInsertUID());
-            } else if (uid > 0) {
-                // then update data
-                sql = "UPDATE eclass SET " +
-                                "parent_uid = " + ec.getParentUID() + ", " +
-                                "modtype = " + ec.getModType() + ", " +
-                                "name = '" + escStr(ec.getName()) + "', " +
-                                "shortname = '" + escStr(ec.getShortName()) + "', " +
-                                "version = '" + ec.getRevision() + "', " +
-                                "created = '" + new Timestamp(ec.getCreated().getTime()) + "', " +
-                                "modified = '" + new Timestamp(ec.getModified().getTime()) + "', " +
-                                "description = '" + escStr(ec.getDescription()) + "', " +
-                                "initclass = '" + escStr(ec.getInitClass()) + "', " +
-                                "inittrial = '" + escStr(ec.getInitTrial()) + "', " +
-                                "inittransition = '" + escStr(ec.getInitTransition()) + "', " +
-                                "printstate = '" + escStr(ec.getPrintState()) + "', " +
-                                "updatestate = '" + escStr(ec.getUpdateState()) + "', " +
-                                "locked = " + (ec.isLocked() ? 1 : 0) + ", " +
-                                "position = " + ec.getPosition() + " " +
-                                "WHERE uid = " + uid;
+                if (uid == 0) {
+                    // else insert data
+                    sql = "INSERT INTO eclass (parent_uid, modtype, name, shortname, " +
+                          "version, created, modified, description, initclass, inittrial, " +
+                          "inittransition, printstate, updatestate, locked, position, revkey) " +
+                          "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    ps = stmts.prepare("saveEClass.insert", sql);
+                } else {
+                    // then update data, leaving unchanged methods alone
+                    sql = "UPDATE eclass SET parent_uid = ?, modtype = ?, name = ?, shortname = ?, " +
+                                    "version = ?, created = ?, modified = ?, description = ?, " +
+                                    methodCols + "locked = ?, position = ?, revkey = ? " +
+                                    "WHERE uid = ?";
+                    ps = stmts.prepare("saveEClass.update." + key, sql);
+                }
+                ps.setInt(1, ec.getParentUID());
+                ps.setInt(2, ec.getModType());
+                ps.setString(3, ec.getName());
+                ps.setString(4, ec.getShortName());
+                ps.setString(5, ec.getRevision());
+                ps.setTimestamp(6, new Timestamp(ec.getCreated().getTime()));
+                ps.setTimestamp(7, new Timestamp(ec.getModified().getTime()));
+                ps.setString(8, ec.getDescription());
+                int col = 9;
+                for (String method : methods) {
+                    if (method != null) ps.setString(col++, method);
+                }
+                ps.setInt(col++, (ec.isLocked() ? 1 : 0));
+                ps.setInt(col++, ec.getPosition());
+                ps.setString(col++, ec.getParsedRevision().getKey());
+                if (uid > 0) ps.setInt(col, uid);
                 outputSQL(sql);
-                s.executeUpdate(sql);
+                writeRow(ec, ps);
+                if (uid > 0) {
+                    for (int i = 0 ; i < methods.length ; i++) {
+                        if (methods[i] != null) LazyText.invalidate(ECLASS_TEXT_BODIES[i], uid);
+                    }
+                }
             }
-            s.close();
 
             if (retVal) {
-                conn.commit();
+                commit();
             }
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            rollback();
         }
 
         return retVal;
@@ -2015,60 +3023,55 @@ public class DerbyStorage implements Storage {
             if (uid < 0) return retVal;
             if (ele.isTemplate()) ele.setParentUID(0);
 
-            // Save element data
-            Statement s = conn.createStatement();
-
             // Check first that eclass object has been assigned
             // uid (been saved),
             if (ele.getEClass() != null && ele.getEClassUID() == 0) {
                 retVal = ele.getEClass().saveToStorage();
             }
 
-            if (uid == 0) {
-                // else insert data
-                sql = "INSERT INTO element (parent_uid, modtype, name, shortname, " +
-                      "eclass_uid, classname, morph, epocid, version, created, " +
-                      "modified, description, creator, birthday, " +
-                      "birthmonth, polygons, locked, position) " +
-                      "VALUES(" + ele.getParentUID() + ", " +
-                      ele.getModType() + ", '" + escStr(ele.getName()) + "', '" +
-                      escStr(ele.getShortName()) + "', " + (ele.getEClass() != null ? ele.getEClass().getUID() : 0) + ", '" +
-                      escStr(ele.getEPOCClassName()) + "', '" + escStr(ele.getMorph()) + "', '" + ele.getEPOCID() + "', '" +
-                      ele.getRevision() + "', '" + new Timestamp(ele.getCreated().getTime()) + "', '" +
-                      new Timestamp(ele.getModified().getTime()) + "', '" + escStr(ele.getDescription()) + "', '" +
-                      escStr(ele.getAuthor()) + "', " + ele.getBirthDay() + ", " + ele.getBirthMonth() + ", '" +
-                      escStr(ele.getPolygonsString()) + "', " + (ele.isLocked() ? 1 : 0) + ", "+ ele.getPosition() + ")";
-                outputSQL(sql);
-                s.execute(sql);
-
-                // find new uid and add it to object
-                ele.setUID(getLastInsertUID());
-            } else if (uid > 0) {
-                // then update data
-                sql = "UPDATE element SET " +
-                                "parent_uid = " + ele.getParentUID() + ", " +
-                                "modtype = " + ele.getModType() + ", " +
-                                "name = '" + escStr(ele.getName()) + "', " +
-                                "shortname = '" + escStr(ele.getShortName()) + "', " +
-                                "eclass_uid = " + (ele.getEClass() != null ? ele.getEClass().getUID() : 0) + ", " +
-                                "classname = '" + escStr(ele.getEPOCClassName()) + "', " +
-                                "morph = '" + escStr(ele.getMorph()) + "', " +
-                                "epocid = '" + ele.getEPOCID() + "', " +
-                                "version = '" + ele.getRevision() + "', " +
-                                "created = '" + new Timestamp(ele.getCreated().getTime()) + "', " +
-                                "modified = '" + new Timestamp(ele.getModified().getTime()) + "', " +
-                                "creator = '" + escStr(ele.getAuthor()) + "', " +
-                                "description = '" + escStr(ele.getDescription()) + "', " +
-                                "birthday = " + ele.getBirthDay() + ", " +
-                                "birthmonth = " + ele.getBirthMonth() + ", " +
-                                "polygons = '" + escStr(ele.getPolygonsString()) + "', " +
-                                "locked = " + (ele.isLocked() ? 1 : 0) + ", " +
-                                "position = " + ele.getPosition() + " " +
-                                "WHERE uid = " + uid;
+            boolean modified = needsWrite(ele);
+            if (modified) {
+                PreparedStatement ps;
+                if (uid == 0) {
+                    // else insert data
+                    sql = "INSERT INTO element (parent_uid, modtype, name, shortname, " +
+                          "eclass_uid, classname, morph, epocid, version, created, " +
+                          "modified, description, creator, birthday, " +
+                          "birthmonth, polygons, locked, position, revkey) " +
+                          "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    ps = stmts.prepare("saveElement.insert", sql);
+                } else {
+                    // then update data
+                    sql = "UPDATE element SET parent_uid = ?, modtype = ?, name = ?, shortname = ?, " +
+                                    "eclass_uid = ?, classname = ?, morph = ?, epocid = ?, version = ?, " +
+                                    "created = ?, modified = ?, description = ?, creator = ?, " +
+                                    "birthday = ?, birthmonth = ?, polygons = ?, locked = ?, position = ?, " +
+                                    "revkey = ? WHERE uid = ?";
+                    ps = stmts.prepare("saveElement.update", sql);
+                    ps.setInt(20, uid);
+                }
+                ps.setInt(1, ele.getParentUID());
+                ps.setInt(2, ele.getModType());
+                ps.setString(3, ele.getName());
+                ps.setString(4, ele.getShortName());
+                ps.setInt(5, (ele.getEClass() != null ? ele.getEClass().getUID() : 0));
+                ps.setString(6, ele.getEPOCClassName());
+                ps.setString(7, ele.getMorph());
+                ps.setString(8, ele.getEPOCID());
+                ps.setString(9, ele.getRevision());
+                ps.setTimestamp(10, new Timestamp(ele.getCreated().getTime()));
+                ps.setTimestamp(11, new Timestamp(ele.getModified().getTime()));
+                ps.setString(12, ele.getDescription());
+                ps.setString(13, ele.getAuthor());
+                ps.setInt(14, ele.getBirthDay());
+                ps.setInt(15, ele.getBirthMonth());
+                ps.setString(16, ele.getPolygonsString());
+                ps.setInt(17, (ele.isLocked() ? 1 : 0));
+                ps.setInt(18, ele.getPosition());
+                ps.setString(19, ele.getParsedRevision().getKey());
                 outputSQL(sql);
-                s.executeUpdate(sql);
+                writeRow(ele, ps);
             }
-            s.close();
 
             if (saveChildren) {
 
@@ -2081,9 +3084,11 @@ public class DerbyStorage implements Storage {
                     // if neither is a template then make sure attribute has new pid
                     //if (!ele.isTemplate() && !att.isTemplate()) att.setParentUID(ele.getUID());
                     if (!att.isTemplate()) att.setParentUID(ele.getUID());
+                    // link only needs writing if parent or attribute has changed
+                    boolean relink = (modified || att.getUID() == 0 || att.isObjectModified());
                     // call save attribute
                     if (!att.saveToStorage()) retVal = false;
-                    if (att.isTemplate()) {
+                    if (att.isTemplate() && relink) {
                         // then also needs a link added
                         if (!linkTemplate(ele.getUID(), att)) retVal = false;
                     }
@@ -2099,9 +3104,11 @@ public class DerbyStorage implements Storage {
                     // if neither is a template then make sure action has new pid
                     //if (!ele.isTemplate() && !act.isTemplate()) act.setParentUID(ele.getUID());
                     if (!act.isTemplate()) act.setParentUID(ele.getUID());
+                    // link only needs writing if parent or action has changed
+                    boolean relink = (modified || act.getUID() == 0 || act.isObjectModified());
                     // call save action
                     if (!act.saveToStorage()) retVal = false;
-                    if (act.isTemplate()) {
+                    if (act.isTemplate() && relink) {
                         // then also needs a link added
                         if (!linkTemplate(ele.getUID(), act)) retVal = false;
                     }
@@ -2110,17 +3117,13 @@ public class DerbyStorage implements Storage {
             }
 
             if (retVal) {
-                conn.commit();
+                commit();
             }
 
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            rollback();
         }
 
         return retVal;
@@ -2139,9 +3142,6 @@ public class DerbyStorage implements Storage {
             if (uid < 0) return retVal;
             if (act.isTemplate()) act.setParentUID(0);
 
-            // Save element data
-            Statement s = conn.createStatement();
-
             // Check first that dataset attribute, transform action and related elements have been assigned
             // uids (been saved),
             if (act.getDataset() != null && act.getDatasetUID() == 0) {
@@ -2159,42 +3159,43 @@ public class DerbyStorage implements Storage {
                 }
             }
 
-            if (uid == 0) {
-                // else insert data
-                sql = "INSERT INTO action (parent_uid, shortname, version, created, modified, " +
-                          "description, acttype, dataset, transform, related, code, locked, position) " +
-                          "VALUES(" + act.getParentUID() + ", '" +
-                          escStr(act.getShortName()) + "', '" + act.getRevision() + "', '" +
-                          new Timestamp(act.getCreated().getTime()) + "', '" +
-                          new Timestamp(act.getModified().getTime()) + "', '" +
-                          escStr(act.getDescription()) + "', " + act.getActType() + ", " +
-                          act.getDatasetUID() + ", " + act.getTransformUID() + ", '" +
-                          act.getRelatedUIDsString() + "', '" + escStr(act.getCode()) + "', " +
-                          (act.isLocked() ? 1 : 0) + ", " + act.getPosition() + ")";
-                outputSQL(sql);
-                s.execute(sql);
-
-                // find new uid and add it to object
-                act.setUID(getLastInsertUID());
-            } else if (uid > 0) {
-                // then update data
-                sql = "UPDATE action SET " +
-                                "parent_uid = " + act.getParentUID() + ", " +
-                                "shortname = '" + escStr(act.getShortName()) + "', " +
-                                "version = '" + act.getRevision() + "', " +
-                                "created = '" + new Timestamp(act.getCreated().getTime()) + "', " +
-                                "modified = '" + new Timestamp(act.getModified().getTime()) + "', " +
-                                "description = '" + escStr(act.getDescription()) + "', " +
-                                "acttype = " + act.getActType() + ", " +
-                                "dataset = " + act.getDatasetUID() + ", " +
-                                "transform = " + act.getTransformUID() + ", " +
-                                "related = '" + act.getRelatedUIDsString() + "', " +
-                                "code = '" + escStr(act.getCode()) + "', " +
-                                "locked = " + (act.isLocked() ? 1 : 0) + ", " +
-                                "position = " + act.getPosition() + " " +
-                                "WHERE uid = " + uid;
+            if (needsWrite(act)) {
+                PreparedStatement ps;
+                String code = textToWrite(act.getCodeText(), LazyText.ACT_CODE, uid);
+                if (uid == 0) {
+                    // else insert data
+                    sql = "INSERT INTO action (parent_uid, shortname, version, created, modified, " +
+                              "description, acttype, dataset, transform, related, code, locked, position, revkey) " +
+                              "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    ps = stmts.prepare("saveAction.insert", sql);
+                } else {
+                    // then update data, leaving unchanged code alone
+                    sql = "UPDATE action SET parent_uid = ?, shortname = ?, version = ?, created = ?, " +
+                                    "modified = ?, description = ?, acttype = ?, dataset = ?, transform = ?, " +
+                                    "related = ?, " + (code != null ? "code = ?, " : "") + "locked = ?, position = ?, " +
+                                    "revkey = ? " +
+                                    "WHERE uid = ?";
+                    ps = stmts.prepare("saveAction.update" + (code != null ? "" : ".keepcode"), sql);
+                }
+                ps.setInt(1, act.getParentUID());
+                ps.setString(2, act.getShortName());
+                ps.setString(3, act.getRevision());
+                ps.setTimestamp(4, new Timestamp(act.getCreated().getTime()));
+                ps.setTimestamp(5, new Timestamp(act.getModified().getTime()));
+                ps.setString(6, act.getDescription());
+                ps.setInt(7, act.getActType());
+                ps.setInt(8, act.getDatasetUID());
+                ps.setInt(9, act.getTransformUID());
+                ps.setString(10, act.getRelatedUIDsString());
+                int col = 11;
+                if (code != null) ps.setString(col++, code);
+                ps.setInt(col++, (act.isLocked() ? 1 : 0));
+                ps.setInt(col++, act.getPosition());
+                ps.setString(col++, act.getParsedRevision().getKey());
+                if (uid > 0) ps.setInt(col, uid);
                 outputSQL(sql);
-                s.executeUpdate(sql);                 
+                writeRow(act, ps);
+                if (uid > 0 && code != null) LazyText.invalidate(LazyText.ACT_CODE, uid);
             }
 
             if (!act.isSetup()) {
@@ -2204,19 +3205,14 @@ public class DerbyStorage implements Storage {
                     if (!ts.saveToStorage()) retVal = false;
                 }
             }
-            s.close();
             
             if (retVal) {
-                conn.commit();
+                commit();
             }
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            rollback();
         }
         
         return retVal;
@@ -2236,52 +3232,47 @@ public class DerbyStorage implements Storage {
             if (att.isTemplate()) att.setParentUID(0);
 
             // Save element data
-            Statement s = conn.createStatement();
-
-            if (uid == 0) {
-                // else insert data
-                sql = "INSERT INTO attribute (parent_uid, shortname, version, created, " +
-                          "modified, description, value, locked, position) " +
-                          "VALUES(" + att.getParentUID() + ", '" +
-                          escStr(att.getShortName()) + "', '" + att.getRevision() + "', '" +
-                          new Timestamp(att.getCreated().getTime()) + "', '" +
-                          new Timestamp(att.getModified().getTime()) + "', '" +
-                          escStr(att.getDescription()) + "', '" + escStr(att.getValue()) + "', " +
-                          (att.isLocked() ? 1 : 0) + ", " + att.getPosition() + ")";
-                outputSQL(sql);
-                s.execute(sql);
-
-                // find new uid and add it to object
-                att.setUID(getLastInsertUID());
-            } else if (uid > 0) {
-                // then update data
-                sql = "UPDATE attribute SET " +
-                                "parent_uid = " + att.getParentUID() + ", " +
-                                "shortname = '" + escStr(att.getShortName()) + "', " +
-                                "version = '" + att.getRevision() + "', " +
-                                "created = '" + new Timestamp(att.getCreated().getTime()) + "', " +
-                                "modified = '" + new Timestamp(att.getModified().getTime()) + "', " +
-                                "description = '" + escStr(att.getDescription()) + "', " +
-                                "value = '" + escStr(att.getValue()) + "', " +
-                                "locked = " + (att.isLocked() ? 1 : 0) + ", " +
-                                "position = " + att.getPosition() + " " +
-                                "WHERE uid = " + uid;
+            if (needsWrite(att)) {
+                PreparedStatement ps;
+                String value = textToWrite(att.getValueText(), LazyText.ATT_VALUE, uid);
+
+                if (uid == 0) {
+                    // else insert data
+                    sql = "INSERT INTO attribute (parent_uid, shortname, version, created, " +
+                              "modified, description, value, locked, position, revkey) " +
+                              "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    ps = stmts.prepare("saveAttribute.insert", sql);
+                } else {
+                    // then update data, leaving unchanged value alone
+                    sql = "UPDATE attribute SET parent_uid = ?, shortname = ?, version = ?, created = ?, " +
+                                    "modified = ?, description = ?, " + (value != null ? "value = ?, " : "") +
+                                    "locked = ?, position = ?, revkey = ? WHERE uid = ?";
+                    ps = stmts.prepare("saveAttribute.update" + (value != null ? "" : ".keepvalue"), sql);
+                }
+                ps.setInt(1, att.getParentUID());
+                ps.setString(2, att.getShortName());
+                ps.setString(3, att.getRevision());
+                ps.setTimestamp(4, new Timestamp(att.getCreated().getTime()));
+                ps.setTimestamp(5, new Timestamp(att.getModified().getTime()));
+                ps.setString(6, att.getDescription());
+                int col = 7;
+                if (value != null) ps.setString(col++, value);
+                ps.setInt(col++, (att.isLocked() ? 1 : 0));
+                ps.setInt(col++, att.getPosition());
+                ps.setString(col++, att.getParsedRevision().getKey());
+                if (uid > 0) ps.setInt(col, uid);
                 outputSQL(sql);
-                s.executeUpdate(sql);               
+                writeRow(att, ps);
+                if (uid > 0 && value != null) LazyText.invalidate(LazyText.ATT_VALUE, uid);
             }
-            s.close();
             
             if (retVal) {
-                conn.commit();
+                commit();
             }
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            rollback();
         }
         
         return retVal;
@@ -2300,9 +3291,6 @@ public class DerbyStorage implements Storage {
             if (uid < 0) return retVal;
             if (ts.isTemplate()) ts.setParentUID(0);
 
-            // Save element data
-            Statement s = conn.createStatement();
-
             // Check first that dataset attribute has been assigned
             // uid (been saved)
             int dsuid = 0;
@@ -2314,251 +3302,181 @@ public class DerbyStorage implements Storage {
                 dsuid = ts.getDatasetUID();
             }
 
-            if (uid == 0) {
-                // else insert data
-                sql = "INSERT INTO timestep (parent_uid, startday, startmonth, endday, endmonth, " +
-                      "steptype, steptiming, dataset) VALUES(" + ts.getParentUID() + ", " +
-                          ts.getStartDay() + ", " + ts.getStartMonth() + ", " +
-                          ts.getEndDay() + ", " + ts.getEndMonth() + ", " +
-                          ts.getStepType() + ", " + ts.getStepTiming() + ", " + dsuid + ")";
-                outputSQL(sql);
-                s.execute(sql);
-
-                // find new uid and add it to object
-                ts.setUID(getLastInsertUID());
-            } else if (uid > 0) {
-                // then update data
-                sql = "UPDATE timestep SET " +
-                                "parent_uid = " + ts.getParentUID() + ", " +
-                                "startday = " + ts.getStartDay() + ", " +
-                                "startmonth = " + ts.getStartMonth() + ", " +
-                                "endday = " + ts.getEndDay() + ", " +
-                                "endmonth = " + ts.getEndMonth() + ", " +
-                                "steptype = " + ts.getStepType() + ", " +
-                                "steptiming = " + ts.getStepTiming() + ", " +
-                                "dataset = " + dsuid + " " +
-                                "WHERE uid = " + uid;
+            if (needsWrite(ts)) {
+                PreparedStatement ps;
+                if (uid == 0) {
+                    // else insert data
+                    sql = "INSERT INTO timestep (parent_uid, startday, startmonth, endday, endmonth, " +
+                          "steptype, steptiming, dataset) VALUES(?, ?, ?, ?, ?, ?, ?, ?)";
+                    ps = stmts.prepare("saveTimestep.insert", sql);
+                } else {
+                    // then update data
+                    sql = "UPDATE timestep SET parent_uid = ?, startday = ?, startmonth = ?, endday = ?, " +
+                                    "endmonth = ?, steptype = ?, steptiming = ?, dataset = ? " +
+                                    "WHERE uid = ?";
+                    ps = stmts.prepare("saveTimestep.update", sql);
+                    ps.setInt(9, uid);
+                }
+                ps.setInt(1, ts.getParentUID());
+                ps.setInt(2, ts.getStartDay());
+                ps.setInt(3, ts.getStartMonth());
+                ps.setInt(4, ts.getEndDay());
+                ps.setInt(5, ts.getEndMonth());
+                ps.setInt(6, ts.getStepType());
+                ps.setInt(7, ts.getStepTiming());
+                ps.setInt(8, dsuid);
                 outputSQL(sql);
-                s.executeUpdate(sql);               
+                writeRow(ts, ps);
             }
-
-            s.close();
             
             if (retVal) {
-                conn.commit();
+                commit();
             }
         } catch (SQLException se) {
             retVal = false;
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            rollback();
         }
         
         return retVal;
     }
     
-     /**
-     * Attempt to delete universe data members from storage given object's uid
-     * @return  boolean true on success
+    /**
+     * Delete objects uids of objType with set based deletes, a statement per
+     * table for each chunk of uids rather than a statement per row.  With
+     * delChildren a universe takes its elements and their subtrees, and an
+     * element its actions, their timesteps, its attributes and its template
+     * links.  An action always takes its timesteps.
+     * @param objType
+     * @param uids
+     * @param delChildren
+     * @return number of rows deleted, or -1 on failure
      */
-    private boolean deleteUniverse(int uid, boolean delChildren) {
-        boolean retVal = true;
-        String sql;
-        
-        if (uid > 0) {
-            try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM universe WHERE uid = " + uid;
-                outputSQL(sql);
-                s.executeUpdate(sql);
-
+    private int deleteTree(int objType, List<Integer> uids, boolean delChildren) {
+        String tbl = getTableName(objType);
+        int rows = 0;
 
+        for (int uid : uids) {
+            objects.invalidate(objType, uid);
+            if (objType == OBJ_ACT) {
+                LazyText.invalidate(LazyText.ACT_CODE, uid);
+            } else if (objType == OBJ_ATT) {
+                LazyText.invalidate(LazyText.ATT_VALUE, uid);
+            } else if (objType == OBJ_CLS) {
+                for (int body : ECLASS_TEXT_BODIES) LazyText.invalidate(body, uid);
+            }
+        }
+        if (delChildren || objType == OBJ_ACT) {
+            objects.invalidateAll(OBJ_ATT);
+            objects.invalidateAll(OBJ_TS);
+        }
+        if (delChildren && (objType == OBJ_UNI || objType == OBJ_ELE)) {
+            // child rows are deleted without reading their uids
+            objects.invalidateAll(OBJ_ACT);
+            if (objType == OBJ_UNI) objects.invalidateAll(OBJ_ELE);
+        }
+        if (delChildren) {
+            // child actions and attributes are deleted without reading their uids
+            LazyText.invalidateAll(LazyText.ACT_CODE);
+            LazyText.invalidateAll(LazyText.ATT_VALUE);
+        }
 
-                if (delChildren) {
-                    Element ele;
-                    sql = "SELECT uid FROM element WHERE parent_uid = " + uid + " ORDER BY uid";
-                    ResultSet rs = s.executeQuery(sql);
-                    // call delete on each element of this universe
-                    while (rs.next()) {
-                        if (!deleteElement(rs.getInt("uid"), delChildren)) {
-                            retVal = false;
-                        }
-                    }
-                    rs.close();
-                    
-                    // Remove any template links to universe
-                    sql = "DELETE FROM template WHERE parent_uid = " + uid + " " +
-                          "AND objecttype = " + OBJ_ELE;
-                    outputSQL(sql);
-                    s.executeUpdate(sql);
-                    
-                }
-                s.close();
-                
-                if (retVal) {
-                    conn.commit();
-                }
-                
-            } catch (SQLException se) {
-                retVal = false;
-                printSQLError(se);
-                try {
-                    conn.rollback();
-                } catch (SQLException ser) {
-                    printSQLError(ser);
+        try {
+            for (int from = 0 ; from < uids.size() ; from += IN_CHUNK) {
+                List<Integer> chunk = uids.subList(from, Math.min(from + IN_CHUNK, uids.size()));
+
+                if (objType == OBJ_UNI && delChildren) {
+                    // elements of universes, then the universes' element template links
+                    rows += deleteElementChildren("uni", "(SELECT uid FROM element WHERE parent_uid IN ", chunk, ")");
+                    rows += deleteIn("deleteTree.uni.element", "DELETE FROM element WHERE parent_uid IN ", chunk, "");
+                    rows += deleteIn("deleteTree.uni.template", "DELETE FROM template WHERE objecttype = " + OBJ_ELE
+                                     + " AND parent_uid IN ", chunk, "");
+                } else if (objType == OBJ_ELE && delChildren) {
+                    rows += deleteElementChildren("ele", "", chunk, "");
+                } else if (objType == OBJ_ACT) {
+                    rows += deleteIn("deleteTree.act.timestep", "DELETE FROM timestep WHERE parent_uid IN ", chunk, "");
                 }
+
+                rows += deleteIn("deleteTree." + tbl, "DELETE FROM " + tbl + " WHERE uid IN ", chunk, "");
             }
+        } catch (SQLException se) {
+            printSQLError(se);
+            rollback();
+            return -1;
         }
-        
-        return retVal;
+        if (EPOC_DBG) System.out.println("Deleted " + uids.size() + " " + tbl + " trees, " + rows + " rows");
+
+        return rows;
     }
 
     /**
-     * Attempt to delete EPOCClass data members from storage given object's uid
-     * @return  boolean true on success
+     * Delete the actions, timesteps, attributes and template links of elements
+     * whose uids are selected by prefix + chunk + suffix
      */
-    private boolean deleteEClass(int uid) {
-        boolean retVal = true;
-        String sql;
-
-        if (uid > 0) {
-            try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM eclass WHERE uid = " + uid;
-                outputSQL(sql);
-                s.executeUpdate(sql);
-                s.close();
+    private int deleteElementChildren(String key, String prefix, List<Integer> chunk, String suffix) throws SQLException {
+        int rows = 0;
 
-                conn.commit();
-            } catch (SQLException se) {
-                retVal = false;
-                printSQLError(se);
-                try {
-                    conn.rollback();
-                } catch (SQLException ser) {
-                    printSQLError(ser);
-                }
-            }
-        }
+        rows += deleteIn("deleteTree." + key + ".timestep", "DELETE FROM timestep WHERE parent_uid IN "
+                         + "(SELECT uid FROM action WHERE parent_uid IN " + prefix, chunk, suffix + ")");
+        rows += deleteIn("deleteTree." + key + ".action", "DELETE FROM action WHERE parent_uid IN " + prefix, chunk, suffix);
+        rows += deleteIn("deleteTree." + key + ".attribute", "DELETE FROM attribute WHERE parent_uid IN " + prefix, chunk, suffix);
+        rows += deleteIn("deleteTree." + key + ".template", "DELETE FROM template WHERE objecttype IN ("
+                         + OBJ_ACT + ", " + OBJ_ATT + ") AND parent_uid IN " + prefix, chunk, suffix);
 
-        return retVal;
+        return rows;
     }
 
     /**
-     * Attempt to delete Element data members from storage given object's uid
-     * @return  boolean true on success
+     * Execute prefix + (?, ...) + suffix with uids bound to the list, and any
+     * params bound to parameters of suffix.  The list is padded, repeating the
+     * last uid, to one of a few sizes so that only a few statements are
+     * prepared for any number of uids.
+     * @return number of rows deleted
      */
-    private boolean deleteElement(int uid, boolean delChildren) {
-        boolean retVal = true;
-        String sql;
-        
-        if (uid > 0) {
-            try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM element WHERE uid = " + uid;
-                outputSQL(sql);
-                s.executeUpdate(sql);
-                
-                if (delChildren) {
-                    // Actions
-                    Action act;
-                    sql = "SELECT uid FROM action WHERE parent_uid = " + uid + " ORDER BY uid";
-                    ResultSet rs = s.executeQuery(sql);
-                    // call delete on each action of this element
-                    while (rs.next()) {
-                        if (!deleteAction(rs.getInt("uid"))) {
-                            retVal = false;
-                        }
-                    }
-                    
-                    // Remove any action template links to element
-                    sql = "DELETE FROM template WHERE parent_uid = " + uid + " " +
-                          "AND objecttype = " + OBJ_ACT;
-                    outputSQL(sql);
-                    s.executeUpdate(sql);
-                    
-                    // Attributes
-                    Attribute att;
-                    sql = "SELECT uid FROM attribute WHERE parent_uid = " + uid + " ORDER BY uid";
-                    rs = s.executeQuery(sql);
-                    // call delete on each attribute of this element
-                    while (rs.next()) {
-                        if (!deleteAttribute(rs.getInt("uid"))) {
-                            retVal = false;
-                        }
-                    }
-                    rs.close();
-                    // Remove any attribute template links to element
-                    sql = "DELETE FROM template WHERE parent_uid = " + uid + " " +
-                          "AND objecttype = " + OBJ_ATT;
-                    outputSQL(sql);
-                    s.executeUpdate(sql);
-                }
-                s.close();
-                if (retVal) {
-                    conn.commit();
-                }
-                
-            } catch (SQLException se) {
-                retVal = false;
-                printSQLError(se);
-                try {
-                    conn.rollback();
-                } catch (SQLException ser) {
-                    printSQLError(ser);
-                }
-            }
-        }
-        
-        return retVal;
+    private int deleteIn(String key, String prefix, List<Integer> uids, String suffix, int... params) throws SQLException {
+        int size = 1;
+        while (size < uids.size()) size *= 8;
+        size = Math.min(size, IN_CHUNK);
+
+        StringBuilder sql = new StringBuilder(prefix).append("(?");
+        for (int i = 1 ; i < size ; i++) sql.append(", ?");
+        sql.append(")").append(suffix);
+
+        PreparedStatement ps = stmts.prepare(key + "." + size, sql.toString());
+        for (int i = 0 ; i < size ; i++) ps.setInt(i + 1, uids.get(Math.min(i, uids.size() - 1)));
+        for (int i = 0 ; i < params.length ; i++) ps.setInt(size + i + 1, params[i]);
+        outputSQL(sql.toString());
+
+        return executeWrite(ps);
     }
-    
+
     /**
-     * Attempt to delete Action data members from storage given object's uid
+     * Attempt to delete EPOCClass data members from storage given object's uid
      * @return  boolean true on success
      */
-    private boolean deleteAction(int uid) {
+    private boolean deleteEClass(int uid) {
         boolean retVal = true;
         String sql;
-        
+
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM action WHERE uid = " + uid;
+                sql ="DELETE FROM eclass WHERE uid = ?";
+                PreparedStatement ps = stmts.prepare("deleteEClass", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                s.executeUpdate(sql);
-                
-                Timestep ts;
-                sql = "SELECT uid FROM timestep WHERE parent_uid = " + uid + " ORDER BY uid";
-                ResultSet rs = s.executeQuery(sql);
-                // call delete on each timestep of this action
-                while (rs.next()) {
-                    if (!deleteTimestep(rs.getInt("uid"))) {
-                        retVal = false;
-                    }
-                }
-                rs.close();
-                s.close();
-                if (retVal) {
-                    conn.commit();
-                }
+                executeWrite(ps);
+
+                commit();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
-                try {
-                    conn.rollback();
-                } catch (SQLException ser) {
-                    printSQLError(ser);
-                }
+                rollback();
             }
         }
-        
+
         return retVal;
     }
-    
+
     /**
      * Attempt to delete Attribute data members from storage given object's uid
      * @return  boolean true on success
@@ -2569,21 +3487,17 @@ public class DerbyStorage implements Storage {
         
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM attribute WHERE uid = " + uid;
+                sql ="DELETE FROM attribute WHERE uid = ?";
+                PreparedStatement ps = stmts.prepare("deleteAttribute", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                s.executeUpdate(sql);
-                s.close();
+                executeWrite(ps);
                
-                conn.commit();
+                commit();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
-                try {
-                    conn.rollback();
-                } catch (SQLException ser) {
-                    printSQLError(ser);
-                }
+                rollback();
             }
         }
         
@@ -2600,21 +3514,17 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM spatial WHERE uid = " + uid;
+                sql ="DELETE FROM spatial WHERE uid = ?";
+                PreparedStatement ps = stmts.prepare("deleteSpatial", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                s.executeUpdate(sql);
-                s.close();
+                executeWrite(ps);
 
-                conn.commit();
+                commit();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
-                try {
-                    conn.rollback();
-                } catch (SQLException ser) {
-                    printSQLError(ser);
-                }
+                rollback();
             }
         }
 
@@ -2631,21 +3541,17 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM report WHERE uid = " + uid;
+                sql ="DELETE FROM report WHERE uid = ?";
+                PreparedStatement ps = stmts.prepare("deleteReport", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                s.executeUpdate(sql);
-                s.close();
+                executeWrite(ps);
 
-                conn.commit();
+                commit();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
-                try {
-                    conn.rollback();
-                } catch (SQLException ser) {
-                    printSQLError(ser);
-                }
+                rollback();
             }
         }
 
@@ -2662,21 +3568,17 @@ public class DerbyStorage implements Storage {
 
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM trial WHERE uid = " + uid;
+                sql ="DELETE FROM trial WHERE uid = ?";
+                PreparedStatement ps = stmts.prepare("deleteTrial", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                s.executeUpdate(sql);
-                s.close();
+                executeWrite(ps);
 
-                conn.commit();
+                commit();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
-                try {
-                    conn.rollback();
-                } catch (SQLException ser) {
-                    printSQLError(ser);
-                }
+                rollback();
             }
         }
 
@@ -2693,21 +3595,17 @@ public class DerbyStorage implements Storage {
         
         if (uid > 0) {
             try {
-                Statement s = conn.createStatement();
-                sql ="DELETE FROM timestep WHERE uid = " + uid;
+                sql ="DELETE FROM timestep WHERE uid = ?";
+                PreparedStatement ps = stmts.prepare("deleteTimestep", sql);
+                ps.setInt(1, uid);
                 outputSQL(sql);
-                s.executeUpdate(sql);
-                s.close();
+                executeWrite(ps);
                 
-                conn.commit();
+                commit();
             } catch (SQLException se) {
                 retVal = false;
                 printSQLError(se);
-                try {
-                    conn.rollback();
-                } catch (SQLException ser) {
-                    printSQLError(ser);
-                }
+                rollback();
             }
         }
         
@@ -2720,18 +3618,21 @@ public class DerbyStorage implements Storage {
     public String getSetting(String setting) {
         String sql, value = "";
 
+        beginRead();
         try {
-            Statement s = conn.createStatement();
-            sql = "SELECT * FROM settings WHERE setting = '" + setting + "'";
-            ResultSet rs = s.executeQuery(sql);
+            sql = "SELECT * FROM settings WHERE setting = ?";
+            PreparedStatement ps = reads().prepare("getSetting", sql);
+            ps.setString(1, setting);
+            ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
                 value = rs.getString("value");
             }
-            s.close();
             rs.close();
         } catch (SQLException se) {
             printSQLError(se);
+        } finally {
+            endRead();
         }
 
         return value;
@@ -2744,47 +3645,50 @@ public class DerbyStorage implements Storage {
      * @param value
      * @param description
      */
-    public void setSetting(String setting, String value, String description) {
+    public synchronized void setSetting(String setting, String value, String description) {
         String sql;
+        boolean retVal = true;
 
+        beginTransaction();
         try {
-            Statement s = conn.createStatement();
-            sql = "SELECT * FROM settings WHERE setting = '" + setting + "'";
-            ResultSet rs = s.executeQuery(sql);
+            sql = "SELECT * FROM settings WHERE setting = ?";
+            PreparedStatement ps = stmts.prepare("getSetting", sql);
+            ps.setString(1, setting);
+            ResultSet rs = ps.executeQuery();
+            boolean exists = rs.next();
+            rs.close();
 
-            if (rs.next()) {
+            if (exists) {
 
                 // then update data
-                sql = "UPDATE settings SET value = '" + value + "', description = '" + escStr(description) + "' " +
-                                "WHERE setting = '" + setting + "'";
-                outputSQL(sql);
-                s.executeUpdate(sql);
+                sql = "UPDATE settings SET value = ?, description = ? WHERE setting = ?";
+                ps = stmts.prepare("setSetting.update", sql);
+                ps.setString(1, value);
+                ps.setString(2, description);
+                ps.setString(3, setting);
 
             } else {
 
                 // else insert data
-                sql = "INSERT INTO settings VALUES('" + setting + "', '" + value + "', " +
-                      "'" + escStr(description) + "')";
-                outputSQL(sql);
-                s.execute(sql);
+                sql = "INSERT INTO settings VALUES(?, ?, ?)";
+                ps = stmts.prepare("setSetting.insert", sql);
+                ps.setString(1, setting);
+                ps.setString(2, value);
+                ps.setString(3, description);
             }
-            s.close();
-
-            conn.commit();
+            outputSQL(sql);
+            rowsWritten += ps.executeUpdate();
         } catch (SQLException se) {
             printSQLError(se);
-            try {
-                conn.rollback();
-            } catch (SQLException ser) {
-                printSQLError(ser);
-            }
+            retVal = false;
         }
+        endTransaction(retVal);
     }
 
     /**
      * Save last visited Universe uid in settings table
      */
-    public void setLastVisited(int uid) {
+    public synchronized void setLastVisited(int uid) {
         setSetting("last_visited", String.valueOf(uid), "Last visited universe");
     }
     
@@ -2792,7 +3696,7 @@ public class DerbyStorage implements Storage {
       * Retrieve Universe object indicated as last visited in settings table
       * else return new Universe object
      */
-    public Universe getLastVisited() {
+    public synchronized Universe getLastVisited() {
         Universe uni = null;
         String sql, value = "";
 
@@ -2915,6 +3819,42 @@ public class DerbyStorage implements Storage {
                 s.close();
             }
 
+            // 0.4.2 adds indexed sortable revision keys
+            if (dbVer.compareTo("0.4.2") < 0) {
+                Statement s = conn.createStatement();
+
+                for (String[] tbl : REVKEY_TABLES) {
+                    s.execute("ALTER TABLE " + tbl[0] + " ADD COLUMN revkey VARCHAR(100)");
+                    s.execute("CREATE INDEX " + tbl[1] + "_rev_idx ON " + tbl[0] + "(revkey)");
+
+                    PreparedStatement ps = conn.prepareStatement("UPDATE " + tbl[0] + " SET revkey = ? WHERE uid = ?");
+                    ResultSet rs = s.executeQuery("SELECT uid, version FROM " + tbl[0]);
+                    while (rs.next()) {
+                        ps.setString(1, RevisionKey.encode(rs.getString("version")));
+                        ps.setInt(2, rs.getInt("uid"));
+                        ps.addBatch();
+                    }
+                    rs.close();
+                    ps.executeBatch();
+                    ps.close();
+                }
+
+                s.execute("UPDATE settings SET value = '" + EPOC_VER + "' WHERE setting = 'Version'");
+
+                s.close();
+            }
+
+            // 0.4.3 adds binary polygon data to spatial, text being read
+            // until each is next saved
+            if (dbVer.compareTo("0.4.3") < 0) {
+                Statement s = conn.createStatement();
+
+                s.execute("ALTER TABLE spatial ADD COLUMN polydata BLOB");
+                s.execute("UPDATE settings SET value = '" + EPOC_VER + "' WHERE setting = 'Version'");
+
+                s.close();
+            }
+
             /** 0.3.5
             // Add new eclass table
             CREATE TABLE eclass(uid INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
@@ -2959,6 +3899,20 @@ public class DerbyStorage implements Storage {
         return true;
     }
     
+    /**
+     * Return number of statement requests satisfied from the statement cache
+     */
+    public synchronized long getStatementCacheHits() {
+        return (stmts != null ? stmts.getHits() : 0);
+    }
+
+    /**
+     * Return number of statement requests which required a fresh compile
+     */
+    public synchronized long getStatementCacheMisses() {
+        return (stmts != null ? stmts.getMisses() : 0);
+    }
+
     /**
      * Return a string containing the db table name which holds elements of
      * type objType
@@ -3016,16 +3970,15 @@ public class DerbyStorage implements Storage {
         int lastUID = 0;
         
         try {
-            Statement s = conn.createStatement();
-            ResultSet rs = s.executeQuery("VALUES IDENTITY_VAL_LOCAL()");
-        
+            PreparedStatement ps = stmts.prepare("getLastInsertUID", "VALUES IDENTITY_VAL_LOCAL()");
+            ResultSet rs = ps.executeQuery();
+
             if (rs.next()) {
                 lastUID = rs.getInt(1);
                 //System.out.println("Last UID=" + lastUID);
             }
 
             rs.close();
-            s.close();
         } catch (SQLException se) {
             printSQLError(se);
         }
@@ -3033,10 +3986,6 @@ public class DerbyStorage implements Storage {
         return lastUID;
     }
 
-    private String escStr(String str) {
-        return str.replaceAll("'", "''");
-    }
-
     private void printSQLError(SQLException e) {
         while (e != null) {
             outputSQL(e.toString());
@@ -3060,24 +4009,48 @@ public class DerbyStorage implements Storage {
      * "" if none exists.
      * Reset error message to ""
      *
-    public String getErrMsg() {
+    public synchronized String getErrMsg() {
         String currMsg = errMsg;
         errMsg = "";
         return currMsg;
     }
 */
-    public void setErrMsg(String msg) {
+    public synchronized void setErrMsg(String msg) {
         Messages.addErrMsg(msg);
         //errMsg = msg + (!errMsg.equals("") ? "\n" + errMsg : "");
     }
 
     /*
-     * Attempt to shutdown any open database
+     * Attempt to shutdown any open database, first writing anything queued
+     * for writing
      */
-    public static synchronized void shutdownDB() {
+    public static void shutdownDB() {
+        flushWriter();
+        closeDB();
+    }
+
+    private static synchronized void closeDB() {
         boolean shutExCaught = false;
-        
+
+        if (writer != null) {
+            writer.shutdown();
+            writer = null;
+        }
+
+        LazyText.clearCache();
+        if (EPOC_DBG) System.out.println(objects);
+        objects.clear();
         try {
+            if (readers != null) {
+                if (EPOC_DBG) System.out.println(readers);
+                readers.close();
+                readers = null;
+            }
+            if (stmts != null) {
+                if (EPOC_DBG) System.out.println(stmts);
+                stmts.close();
+                stmts = null;
+            }
             conn.close();
             if (EPOC_DBG) System.out.println(protocol + ";shutdown=true");
             DriverManager.getConnection(protocol + ";shutdown=true");
@@ -3093,6 +4066,7 @@ public class DerbyStorage implements Storage {
         boolean shutExCaught = false;
         
         try {
+            if (stmts != null) stmts.close();
             conn.close();
 
             /*
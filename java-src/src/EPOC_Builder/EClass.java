@@ -32,11 +32,11 @@ import java.io.*;
 public class EClass extends EPOCObject<EClass> {
 
     private int modtype = 0;
-    private String initClass = "";
-    private String initTrial = "";
-    private String initTransition = "";
-    private String updateState = "";
-    private String printState = "";
+    private LazyText initClass = LazyText.EMPTY;
+    private LazyText initTrial = LazyText.EMPTY;
+    private LazyText initTransition = LazyText.EMPTY;
+    private LazyText updateState = LazyText.EMPTY;
+    private LazyText printState = LazyText.EMPTY;
 
     /** Creates a new instance of Attribute */
     public EClass() {
@@ -52,27 +52,82 @@ public class EClass extends EPOCObject<EClass> {
 
     public int getModType() { return modtype; }
 
-    public String getInitClass() { return initClass; }
+    public String getInitClass() { return initClass.get(); }
 
-    public String getInitTrial() { return initTrial; }
+    public String getInitTrial() { return initTrial.get(); }
 
-    public String getInitTransition() { return initTransition; }
+    public String getInitTransition() { return initTransition.get(); }
 
-    public String getUpdateState() { return updateState; }
+    public String getUpdateState() { return updateState.get(); }
 
-    public String getPrintState() { return printState; }
+    public String getPrintState() { return printState.get(); }
 
-    public void setModType(int mtype) { modtype = mtype; }
+    public void setModType(int mtype) {
+        modtype = mtype;
+        markModified();
+    }
 
-    public void setInitClass(String ic) { initClass = ic; }
+    public void setInitClass(String ic) {
+        initClass = LazyText.of(ic);
+        markModified();
+    }
 
-    public void setInitTrial(String it) { initTrial = it; }
+    public void setInitTrial(String it) {
+        initTrial = LazyText.of(it);
+        markModified();
+    }
 
-    public void setInitTransition(String it) { initTransition = it; }
+    public void setInitTransition(String it) {
+        initTransition = LazyText.of(it);
+        markModified();
+    }
 
-    public void setUpdateState(String us) { updateState = us; }
+    public void setUpdateState(String us) {
+        updateState = LazyText.of(us);
+        markModified();
+    }
 
-    public void setPrintState(String ps) { printState = ps; }
+    public void setPrintState(String ps) {
+        printState = LazyText.of(ps);
+        markModified();
+    }
+
+    /**
+     * Set method code bodies from storage, to be loaded when first asked for
+     * @param storage
+     */
+    void setStoredText(Storage storage) {
+        initClass = LazyText.stored(storage, LazyText.CLS_INITCLASS, uid);
+        initTrial = LazyText.stored(storage, LazyText.CLS_INITTRIAL, uid);
+        initTransition = LazyText.stored(storage, LazyText.CLS_INITTRANSITION, uid);
+        updateState = LazyText.stored(storage, LazyText.CLS_UPDATESTATE, uid);
+        printState = LazyText.stored(storage, LazyText.CLS_PRINTSTATE, uid);
+    }
+
+    /**
+     * Return handle on method body, so storage can tell if it is unchanged
+     * @param body one of LazyText.CLS_...
+     * @return
+     */
+    LazyText getStoredText(int body) {
+        switch (body) {
+            case LazyText.CLS_INITCLASS:        return initClass;
+            case LazyText.CLS_INITTRIAL:        return initTrial;
+            case LazyText.CLS_INITTRANSITION:   return initTransition;
+            case LazyText.CLS_UPDATESTATE:      return updateState;
+            case LazyText.CLS_PRINTSTATE:       return printState;
+        }
+        return LazyText.EMPTY;
+    }
+
+    @Override
+    protected void rebindText() {
+        initClass = initClass.boundTo(uid);
+        initTrial = initTrial.boundTo(uid);
+        initTransition = initTransition.boundTo(uid);
+        updateState = updateState.boundTo(uid);
+        printState = printState.boundTo(uid);
+    }
 
     /*
      * Attempt to save attribute to persistent storage
@@ -124,11 +179,11 @@ public class EClass extends EPOCObject<EClass> {
         super.updateDataMembersFrom(ec);
 
         modtype = ec.getModType();
-        initClass = ec.getInitClass();
-        initTrial = ec.getInitTrial();
-        initTransition = ec.getInitTransition();
-        updateState = ec.getUpdateState();
-        printState = ec.getPrintState();
+        initClass = ec.initClass.boundTo(uid);
+        initTrial = ec.initTrial.boundTo(uid);
+        initTransition = ec.initTransition.boundTo(uid);
+        updateState = ec.updateState.boundTo(uid);
+        printState = ec.printState.boundTo(uid);
     }
 
     /**
@@ -145,48 +200,54 @@ public class EClass extends EPOCObject<EClass> {
         if (!super.compare(tri, superficial)) return false;
         
         // Do any data member comparisons
-        if (!tri.getInitClass().equals(initClass)) return false;
-        if (!tri.getInitTrial().equals(initTrial)) return false;
-        if (!tri.getInitTransition().equals(initTransition)) return false;
-        if (!tri.getUpdateState().equals(updateState)) return false;
-        if (!tri.getPrintState().equals(printState)) return false;
+        if (tri.initClass != initClass && !tri.getInitClass().equals(getInitClass())) return false;
+        if (tri.initTrial != initTrial && !tri.getInitTrial().equals(getInitTrial())) return false;
+        if (tri.initTransition != initTransition && !tri.getInitTransition().equals(getInitTransition())) return false;
+        if (tri.updateState != updateState && !tri.getUpdateState().equals(getUpdateState())) return false;
+        if (tri.printState != printState && !tri.getPrintState().equals(getPrintState())) return false;
 
         return true;
     }
     
     /*
-     * Write self as text, in the form of an R assignment, to FileWriter
+     * Write self as text, in the form of an R assignment, to file under dirPath
      */
     public void writeAsR(String dirPath) {
+        REmitter emitter = new REmitter();
+        writeAsR(dirPath, emitter);
+        emitter.finish();
+    }
+
+    /*
+     * Write self as text, in the form of an R assignment, through emitter.
+     * Nothing is written if the file is current in the emitter's manifest.
+     */
+    public void writeAsR(String dirPath, REmitter emitter) {
         File outputFile = new File(dirPath + File.separator + "code" + File.separator + getDisplayName() + ".R");
+        long stamp = GenerationManifest.stamp(GenerationManifest.stamp(0, this), String.valueOf(modtype));
+        if (emitter.isCurrent(outputFile, this, stamp)) return;
         Date dt = new Date();
 
-        try {
-            outputFile.createNewFile();
-            FileWriter out = new FileWriter(outputFile);
+        StringBuilder out = emitter.getBuilder();
 
-            out.write("########################################################\n");
-            out.write("# EPOC CLASS - " + shortname + " (" + revision + ")\n");
-            out.write("# Description: " + super.prependEachLine(description, "#              ") + "\n");
-            out.write("#\n");
-            out.write("# Generated by EPOC Builder\n");
-            out.write("# Date: " + dt.toString() + "\n");
-            out.write("########################################################\n\n");
+        out.append("########################################################\n");
+        out.append("# EPOC CLASS - " + shortname + " (" + revision + ")\n");
+        out.append("# Description: " + super.prependEachLine(description, "#              ") + "\n");
+        out.append("#\n");
+        out.append("# Generated by EPOC Builder\n");
+        out.append("# Date: " + dt.toString() + "\n");
+        out.append("########################################################\n\n");
 
-            out.write("# Extend base class\n");
-            out.write("setClass(\"" + getDisplayName() + "\", contains=\"" + EPOCObject.getObjectTypeName(modtype) + "\")\n\n");
+        out.append("# Extend base class\n");
+        out.append("setClass(\"" + getDisplayName() + "\", contains=\"" + EPOCObject.getObjectTypeName(modtype) + "\")\n\n");
 
-            if (!getInitClass().trim().equals("")) out.write(getSetMethodStr("initialize", getInitClass()) + "\n\n");
-            if (!getInitTrial().trim().equals("")) out.write(getSetMethodStr("initialiseTrial", getInitTrial()) + "\n\n");
-            if (!getInitTransition().trim().equals("")) out.write(getSetMethodStr("initialiseTransition", getInitTransition()) + "\n\n");
-            if (!getUpdateState().trim().equals("")) out.write(getSetMethodStr("updateState", getUpdateState()) + "\n\n");
-            if (!getPrintState().trim().equals("")) out.write(getSetMethodStr("printState", getPrintState()));
+        if (!getInitClass().trim().equals("")) out.append(getSetMethodStr("initialize", getInitClass()) + "\n\n");
+        if (!getInitTrial().trim().equals("")) out.append(getSetMethodStr("initialiseTrial", getInitTrial()) + "\n\n");
+        if (!getInitTransition().trim().equals("")) out.append(getSetMethodStr("initialiseTransition", getInitTransition()) + "\n\n");
+        if (!getUpdateState().trim().equals("")) out.append(getSetMethodStr("updateState", getUpdateState()) + "\n\n");
+        if (!getPrintState().trim().equals("")) out.append(getSetMethodStr("printState", getPrintState()));
 
-            out.close();
-        }
-        catch (Exception ex) {
-            ex.printStackTrace();
-        }
+        emitter.emit(outputFile, out, this, stamp);
     }
 
     /**
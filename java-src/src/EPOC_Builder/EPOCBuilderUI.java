@@ -43,7 +43,6 @@ import java.awt.Cursor;
 public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionListener {
 
     private Universe universe;
-    private Universe storedUni;     // Unmodified copy of universe as loaded
 
     private TreePath currentTreePath;
     private DefaultMutableTreeNode currentTreeNode;
@@ -67,8 +66,6 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
         this.setSize(EPOC_FRAME_SIZE);
         
         universe = storage.getLastVisited();
-        //storedUni = universe.clone(EPOC_CLN, true);
-        storedUni = storage.getLastVisited();
 
         jTreeUniverse.setCellRenderer(new UniverseTreeCellRenderer());
         ToolTipManager.sharedInstance().registerComponent(jTreeUniverse);
@@ -103,6 +100,8 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
         jMenuItemDeleteDB = new javax.swing.JMenuItem();
         jMenuItemExportDB = new javax.swing.JMenuItem();
         jMenuItemImportDB = new javax.swing.JMenuItem();
+        jMenuItemBackupDB = new javax.swing.JMenuItem();
+        jMenuItemRestoreDB = new javax.swing.JMenuItem();
         jSeparatorExit = new javax.swing.JSeparator();
         jMenuItemExit = new javax.swing.JMenuItem();
         jMenuView = new javax.swing.JMenu();
@@ -241,6 +240,22 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
         });
         jMenuDB.add(jMenuItemImportDB);
 
+        jMenuItemBackupDB.setText("Backup");
+        jMenuItemBackupDB.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jMenuItemBackupDBActionPerformed(evt);
+            }
+        });
+        jMenuDB.add(jMenuItemBackupDB);
+
+        jMenuItemRestoreDB.setText("Restore");
+        jMenuItemRestoreDB.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jMenuItemRestoreDBActionPerformed(evt);
+            }
+        });
+        jMenuDB.add(jMenuItemRestoreDB);
+
         jMenuFile.add(jMenuDB);
         jMenuFile.add(jSeparatorExit);
 
@@ -418,6 +433,8 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
         if (!val.equals("")) EPOC_ELESTR = val;
         val = storage.getSetting("debug");
         if (!val.equals("")) EPOC_DBG = Boolean.valueOf(val);
+        val = storage.getSetting("debug_journal");
+        if (!val.equals("")) EPOC_DBG_JOURNAL = Boolean.valueOf(val);
         val = storage.getSetting("allow_templ_edit");
         if (!val.equals("")) EPOC_EDIT_TEMPL = Boolean.valueOf(val);
         val = storage.getSetting("template_linked_objects");
@@ -438,20 +455,41 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
         if (fs.getWidth() > 800 && fs.getHeight() > 600) EPOC_FRAME_SIZE = fs;
     }
 
+    /**
+     * Queue settings to be written by the storage writer
+     */
     private void saveSettings() {
-        storage.setSetting("version", EPOC_DBVER, "Current EPOC schema version");
-        storage.setSetting("r_element_str", EPOC_ELESTR, "R code dummmy string");
-        storage.setSetting("debug", String.valueOf(EPOC_DBG) , "Debug mode");
-        storage.setSetting("allow_templ_edit", String.valueOf(EPOC_EDIT_TEMPL) , "Allow edit of templates");
-        storage.setSetting("template_linked_objects", String.valueOf(EPOC_TMPL_LINK_OBJ) , "Template linked objects");
-        storage.setSetting("import_linked_objects", String.valueOf(EPOC_IMP_LINK_OBJ) , "Import linked objects");
-        storage.setSetting("match_member_objects", String.valueOf(EPOC_AUTO_MATCH_MEMBERS) , "Perform object matching on import and save as");
-        storage.setSetting("match_linked_objects", String.valueOf(EPOC_AUTO_MATCH_LINK_OBJ) , "Perform automatic broken linked object matching");
-        storage.setSetting("match_linked_templ_objects", String.valueOf(EPOC_AUTO_MATCH_LINK_TEMPL_OBJ) , "Perform automatic broken linked object matching to template list");
-        storage.setSetting("list_ordering", String.valueOf(EPOC_LIST_ORDERING), "Template list ordering strategy");
-        storage.setSetting("frame_size_width", String.valueOf((int)this.getWidth()), "Initial frame width");
-        storage.setSetting("frame_size_height", String.valueOf((int)this.getHeight()), "Initial frame height");
-        storage.setLastVisited(universe.getUID());
+        StorageWriter writer = storage.getWriter();
+
+        writer.setSetting("version", EPOC_DBVER, "Current EPOC schema version");
+        writer.setSetting("r_element_str", EPOC_ELESTR, "R code dummmy string");
+        writer.setSetting("debug", String.valueOf(EPOC_DBG) , "Debug mode");
+        writer.setSetting("debug_journal", String.valueOf(EPOC_DBG_JOURNAL) , "Check change journal against storage");
+        writer.setSetting("allow_templ_edit", String.valueOf(EPOC_EDIT_TEMPL) , "Allow edit of templates");
+        writer.setSetting("template_linked_objects", String.valueOf(EPOC_TMPL_LINK_OBJ) , "Template linked objects");
+        writer.setSetting("import_linked_objects", String.valueOf(EPOC_IMP_LINK_OBJ) , "Import linked objects");
+        writer.setSetting("match_member_objects", String.valueOf(EPOC_AUTO_MATCH_MEMBERS) , "Perform object matching on import and save as");
+        writer.setSetting("match_linked_objects", String.valueOf(EPOC_AUTO_MATCH_LINK_OBJ) , "Perform automatic broken linked object matching");
+        writer.setSetting("match_linked_templ_objects", String.valueOf(EPOC_AUTO_MATCH_LINK_TEMPL_OBJ) , "Perform automatic broken linked object matching to template list");
+        writer.setSetting("list_ordering", String.valueOf(EPOC_LIST_ORDERING), "Template list ordering strategy");
+        writer.setSetting("frame_size_width", String.valueOf((int)this.getWidth()), "Initial frame width");
+        writer.setSetting("frame_size_height", String.valueOf((int)this.getHeight()), "Initial frame height");
+        writer.setLastVisited(universe);
+    }
+
+    /**
+     * Queue uni, and any unused template objects, to be saved in a single
+     * transaction by the storage writer
+     * @param uni
+     * @return writer, to be flushed to wait for the save
+     */
+    private StorageWriter queueSave(final Universe uni) {
+        StorageWriter writer = storage.getWriter();
+
+        writer.save(uni, true);
+        writer.saveUnusedTemplates(uni);
+
+        return writer;
     }
 
     /**
@@ -483,59 +521,76 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
     }
 
     private void jMenuItemNewUniActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemNewUniActionPerformed
-        if (checkAndSave()) {
-            universe = new Universe();
+        checkAndSave(new Runnable() {
+            public void run() {
+                universe = new Universe();
 
-            loadForm(true);
-        }
+                loadForm(true);
+            }
+        });
 }//GEN-LAST:event_jMenuItemNewUniActionPerformed
 
     private void jMenuItemSaveUniActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemSaveUniActionPerformed
         if (!saveOpposingForm()) return;
 
         setProgress("Saving universe to database...");
-        if (!universe.saveToStorage() || !universe.saveUnusedTemplateObjects()) {
-            endProgress();
-            JOptionPane.showMessageDialog(this, Messages.getUnreadErrMsgs(), "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        saveSettings();
-        storedUni = new Universe(universe.getUID());
-        endProgress();
+        setEnabled(false);
+
+        // save in background, keeping the frame disabled until written
+        final StorageWriter writer = queueSave(universe);
+        new SwingWorker<Boolean, Void>() {
+            protected Boolean doInBackground() throws Exception {
+                return writer.flush();
+            }
 
-        JOptionPane.showMessageDialog(this, "Universe saved successfully.");
+            protected void done() {
+                boolean saved = false;
+                try {
+                    saved = get();
+                } catch(Exception e) {
+                    e.printStackTrace();
+                }
+                endProgress();
+
+                if (!saved) {
+                    JOptionPane.showMessageDialog(EPOCBuilderUI.this, Messages.getUnreadErrMsgs(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                saveSettings();
+
+                JOptionPane.showMessageDialog(EPOCBuilderUI.this, "Universe saved successfully (" + writer.getRowsWritten() + " rows written).");
+            }
+        }.execute();
 }//GEN-LAST:event_jMenuItemSaveUniActionPerformed
 
     private void jMenuItemOpenUniActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemOpenUniActionPerformed
-        ArrayList uniList;
-        String txt;
-
-        if (checkAndSave()) {
-            txt = "Select a Universe to open from the following list:";
-            // list all universes except this
-            uniList = universe.getNegStorageList();
-
-            ListSelectorUI selUI = new ListSelectorUI(txt, uniList);
-            final JOptionPane pane = new JOptionPane(selUI, JOptionPane.QUESTION_MESSAGE,
-                    JOptionPane.OK_CANCEL_OPTION);
-            JDialog dialog = pane.createDialog(this, "Open Universe");
-            dialog.setLocationRelativeTo(this);
-            dialog.pack();
-            dialog.setVisible(true);
-
-            // Make sure a valid response was returned
-            Object selVal = pane.getValue();
-            if (selVal == null || selVal == JOptionPane.UNINITIALIZED_VALUE) return;
-            if(selVal instanceof Integer && ((Integer)selVal).intValue() == JOptionPane.CANCEL_OPTION) return;
-            int choice = selUI.getSelectionIndex();
-            if (choice < 0) return;
-
-            setProgress("Loading " + ((String[])uniList.get(choice))[1] + "...");
-            universe = new Universe(Integer.parseInt(((String[])uniList.get(choice))[0]));
-            storedUni = new Universe(universe.getUID());
-            loadForm(true);
-            endProgress();
-        }
+        checkAndSave(new Runnable() {
+            public void run() {
+                String txt = "Select a Universe to open from the following list:";
+                // list all universes except this
+                ArrayList uniList = universe.getNegStorageList();
+
+                ListSelectorUI selUI = new ListSelectorUI(txt, uniList);
+                final JOptionPane pane = new JOptionPane(selUI, JOptionPane.QUESTION_MESSAGE,
+                        JOptionPane.OK_CANCEL_OPTION);
+                JDialog dialog = pane.createDialog(EPOCBuilderUI.this, "Open Universe");
+                dialog.setLocationRelativeTo(EPOCBuilderUI.this);
+                dialog.pack();
+                dialog.setVisible(true);
+
+                // Make sure a valid response was returned
+                Object selVal = pane.getValue();
+                if (selVal == null || selVal == JOptionPane.UNINITIALIZED_VALUE) return;
+                if(selVal instanceof Integer && ((Integer)selVal).intValue() == JOptionPane.CANCEL_OPTION) return;
+                int choice = selUI.getSelectionIndex();
+                if (choice < 0) return;
+
+                setProgress("Loading " + ((String[])uniList.get(choice))[1] + "...");
+                universe = new Universe(Integer.parseInt(((String[])uniList.get(choice))[0]));
+                loadForm(true);
+                endProgress();
+            }
+        });
 }//GEN-LAST:event_jMenuItemOpenUniActionPerformed
 
     private void jMenuItemSaveAsUniActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemSaveAsUniActionPerformed
@@ -545,26 +600,42 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
         if (newName == null || newName.equals("") || newName.equals(universe.getShortName())) return;
 
         setProgress("Saving universe as " + newName + "...");
-        Universe uni = (Universe)universe.replicate(universe);
+        final Universe uni = (Universe)universe.replicate(universe);
         // Rebuild internal structure
         uni.remakeLinks();
         // Try find alternative objects to broken links
         if (EPOC_AUTO_MATCH_LINK_OBJ) uni.repairBrokenLinks();
         uni.setShortName(newName);
 
-        // Save new universe
-        if (!uni.saveToStorage() || !uni.saveUnusedTemplateObjects()) {
-            endProgress();
-            JOptionPane.showMessageDialog(this, Messages.getUnreadErrMsgs(), "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        saveSettings();
+        // Save new universe in background, keeping the frame disabled until written
+        setEnabled(false);
+        final StorageWriter writer = queueSave(uni);
+        new SwingWorker<Boolean, Void>() {
+            protected Boolean doInBackground() throws Exception {
+                return writer.flush();
+            }
 
-        // load it into GUI
-        universe = uni;
-        storedUni = new Universe(universe.getUID());
-        loadForm(true);
-        endProgress();
+            protected void done() {
+                boolean saved = false;
+                try {
+                    saved = get();
+                } catch(Exception e) {
+                    e.printStackTrace();
+                }
+
+                if (!saved) {
+                    endProgress();
+                    JOptionPane.showMessageDialog(EPOCBuilderUI.this, Messages.getUnreadErrMsgs(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                saveSettings();
+
+                // load it into GUI
+                universe = uni;
+                loadForm(true);
+                endProgress();
+            }
+        }.execute();
 }//GEN-LAST:event_jMenuItemSaveAsUniActionPerformed
 
     private void jMenuItemDeleteUniActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemDeleteUniActionPerformed
@@ -588,7 +659,7 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
 }//GEN-LAST:event_jMenuItemDeleteUniActionPerformed
 
     private void jMenuItemNewDBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemNewDBActionPerformed
-        String nm = JOptionPane.showInputDialog(this, "Enter new database name.");
+        final String nm = JOptionPane.showInputDialog(this, "Enter new database name.");
         if (nm == null) return;
 
         if (nm.equals("")) {
@@ -610,51 +681,59 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
             }
         }
 
-        if (checkAndSave()) {
-            Storage oldStorage = storage;
-            try {
-                storage = DerbyStorage.getInstance(nm);
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(this, e.getMessage());
-                storage = oldStorage;
-            }
-            universe = storage.getLastVisited();
+        checkAndSave(new Runnable() {
+            public void run() {
+                Storage oldStorage = storage;
+                try {
+                    storage = DerbyStorage.getInstance(nm);
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(EPOCBuilderUI.this, e.getMessage());
+                    storage = oldStorage;
+                }
+                universe = storage.getLastVisited();
 
-            loadForm(true);
-        }
+                loadForm(true);
+            }
+        });
 }//GEN-LAST:event_jMenuItemNewDBActionPerformed
 
     private void jMenuItemOpenDBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemOpenDBActionPerformed
-        if (checkAndSave()) {
-            String txt = "Select a Database connection from the following list:";
-            // list all databases except this
-            ArrayList dbList = storage.getDBAvailableList(true);
+        checkAndSave(new Runnable() {
+            public void run() {
+                String txt = "Select a Database connection from the following list:";
+                // list all databases except this, with their size, version and modified time
+                ArrayList<DatabaseCatalogue.DatabaseInfo> dbs = storage.getDBCatalogue(true);
+                ArrayList dbList = new ArrayList();
+                for (DatabaseCatalogue.DatabaseInfo db : dbs) {
+                    dbList.add(new String[] {db.getName(), db.toString()});
+                }
 
-            ListSelectorUI selUI = new ListSelectorUI(txt, dbList);
-            final JOptionPane pane = new JOptionPane(selUI, JOptionPane.QUESTION_MESSAGE,
-                    JOptionPane.OK_CANCEL_OPTION);
-            JDialog dialog = pane.createDialog(this, "Database Connection");
+                ListSelectorUI selUI = new ListSelectorUI(txt, dbList);
+                final JOptionPane pane = new JOptionPane(selUI, JOptionPane.QUESTION_MESSAGE,
+                        JOptionPane.OK_CANCEL_OPTION);
+                JDialog dialog = pane.createDialog(EPOCBuilderUI.this, "Database Connection");
 
-            dialog.setLocationRelativeTo(this);
-            dialog.pack();
-            dialog.setVisible(true);
+                dialog.setLocationRelativeTo(EPOCBuilderUI.this);
+                dialog.pack();
+                dialog.setVisible(true);
 
-            String choice = (String)selUI.getSelectionObject();
+                String choice = (selUI.getSelectionIndex() >= 0 ? dbs.get(selUI.getSelectionIndex()).getName() : null);
 
-            if (choice != null && !choice.equals("")) {
-                Storage oldStorage = storage;
-                try {
-                    storage = DerbyStorage.getInstance(choice);
-                } catch (Exception e) {
-                    JOptionPane.showMessageDialog(this, e.getMessage());
-                    storage = oldStorage;
-                }
+                if (choice != null && !choice.equals("")) {
+                    Storage oldStorage = storage;
+                    try {
+                        storage = DerbyStorage.getInstance(choice);
+                    } catch (Exception e) {
+                        JOptionPane.showMessageDialog(EPOCBuilderUI.this, e.getMessage());
+                        storage = oldStorage;
+                    }
 
-                universe = storage.getLastVisited();
+                    universe = storage.getLastVisited();
 
-                loadForm(true);
+                    loadForm(true);
+                }
             }
-        }
+        });
 }//GEN-LAST:event_jMenuItemOpenDBActionPerformed
 
     private void jMenuItemDeleteDBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemDeleteDBActionPerformed
@@ -694,78 +773,190 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
 
     private void jMenuItemExportDBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemExportDBActionPerformed
         // first offer to save current universe if it needs it
-        if (checkAndSave()) {
-
-            JFileChooser fc = new JFileChooser();
+        checkAndSave(new Runnable() {
+            public void run() {
+                JFileChooser fc = new JFileChooser();
 
-            fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
-            fc.setDialogTitle("Select directory for database export.");
+                fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                fc.setDialogTitle("Select directory for database export.");
 
-            // Get users 'My Documents' path
-            File outputDir = new File(FileSystemView.getFileSystemView().getDefaultDirectory().getPath() + "\\.");
-            fc.setSelectedFile(outputDir);
+                // Get users 'My Documents' path
+                File outputDir = new File(FileSystemView.getFileSystemView().getDefaultDirectory(), ".");
+                fc.setSelectedFile(outputDir);
 
-            int returnVal = fc.showSaveDialog(this);
-            if (returnVal == JFileChooser.APPROVE_OPTION) {
-                outputDir = fc.getSelectedFile();
-                if (storage.exportDB(outputDir.getPath())) {
-                    JOptionPane.showMessageDialog(this, "Database exported successfully!");
+                int returnVal = fc.showSaveDialog(EPOCBuilderUI.this);
+                if (returnVal == JFileChooser.APPROVE_OPTION) {
+                    outputDir = fc.getSelectedFile();
+                    if (storage.exportDB(outputDir.getPath())) {
+                        JOptionPane.showMessageDialog(EPOCBuilderUI.this, "Database exported successfully!");
+                    }
                 }
             }
-        }
+        });
 }//GEN-LAST:event_jMenuItemExportDBActionPerformed
 
     private void jMenuItemImportDBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemImportDBActionPerformed
         // first offer to save current universe if it needs it
-        if (checkAndSave()) {
-
-            JFileChooser fc = new JFileChooser();
-
-            fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
-            fc.setDialogTitle("Select database directory for import.");
-
-            // Get users 'My Documents' path
-            File inputDir = new File(FileSystemView.getFileSystemView().getDefaultDirectory().getPath() + "\\.");
-            fc.setSelectedFile(inputDir);
-
-            int returnVal = fc.showOpenDialog(this);
-            if (returnVal == JFileChooser.APPROVE_OPTION) {
-                inputDir = fc.getSelectedFile();
-                String nm = inputDir.getName();
-
-                // list all databases
-                ArrayList dbList = storage.getDBAvailableList(false);
-                for (int i = 0; i < dbList.size(); i++) {
-                    if (((String[])dbList.get(i))[1].equals(nm)) {
-                        if (JOptionPane.showConfirmDialog(this,
-                                "Database " + nm + " already exists\n" +
-                                "Do you wish to replace it?",
-                                "Replace Database?",
-                                JOptionPane.YES_NO_OPTION) == JOptionPane.NO_OPTION) {
-                            return;
+        checkAndSave(new Runnable() {
+            public void run() {
+                JFileChooser fc = new JFileChooser();
+
+                fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                fc.setDialogTitle("Select database directory for import.");
+
+                // Get users 'My Documents' path
+                File inputDir = new File(FileSystemView.getFileSystemView().getDefaultDirectory(), ".");
+                fc.setSelectedFile(inputDir);
+
+                int returnVal = fc.showOpenDialog(EPOCBuilderUI.this);
+                if (returnVal == JFileChooser.APPROVE_OPTION) {
+                    inputDir = fc.getSelectedFile();
+                    String nm = inputDir.getName();
+
+                    // list all databases
+                    ArrayList dbList = storage.getDBAvailableList(false);
+                    for (int i = 0; i < dbList.size(); i++) {
+                        if (((String[])dbList.get(i))[1].equals(nm)) {
+                            if (JOptionPane.showConfirmDialog(EPOCBuilderUI.this,
+                                    "Database " + nm + " already exists\n" +
+                                    "Do you wish to replace it?",
+                                    "Replace Database?",
+                                    JOptionPane.YES_NO_OPTION) == JOptionPane.NO_OPTION) {
+                                return;
+                            }
                         }
                     }
+                    Storage oldStorage = storage;
+                    try {
+                        storage = DerbyStorage.getInstance(inputDir.getPath());
+                    } catch (Exception e) {
+                        JOptionPane.showMessageDialog(EPOCBuilderUI.this, e.getMessage());
+                        storage = oldStorage;
+                    }
+
+                    universe = storage.getLastVisited();
+
+                    loadForm(true);
                 }
-                Storage oldStorage = storage;
+            }
+        });
+}//GEN-LAST:event_jMenuItemImportDBActionPerformed
+
+    private void jMenuItemBackupDBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemBackupDBActionPerformed
+        final BackupManager backups = storage.getBackupManager();
+        final StorageWriter writer = storage.getWriter();
+
+        // backup runs on its own connection so work can carry on meanwhile
+        jMenuItemBackupDB.setEnabled(false);
+        jLabelProgress.setText(" Backing up database...");
+        new SwingWorker<BackupManager.RestorePoint, Void>() {
+            protected BackupManager.RestorePoint doInBackground() throws Exception {
+                writer.flush();
+                return backups.backup(false);
+            }
+
+            protected void done() {
+                BackupManager.RestorePoint rp = null;
                 try {
-                    storage = DerbyStorage.getInstance(inputDir.getPath());
-                } catch (Exception e) {
-                    JOptionPane.showMessageDialog(this, e.getMessage());
-                    storage = oldStorage;
+                    rp = get();
+                } catch(Exception e) {
+                    e.printStackTrace();
                 }
+                jLabelProgress.setText("");
+                jMenuItemBackupDB.setEnabled(true);
 
-                universe = storage.getLastVisited();
+                if (rp == null) {
+                    JOptionPane.showMessageDialog(EPOCBuilderUI.this, Messages.getUnreadErrMsgs(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
 
-                loadForm(true);
+                JOptionPane.showMessageDialog(EPOCBuilderUI.this, "Database backed up " + rp + " to\n" + backups.getBackupDir());
             }
+        }.execute();
+}//GEN-LAST:event_jMenuItemBackupDBActionPerformed
+
+    private void jMenuItemRestoreDBActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemRestoreDBActionPerformed
+        final BackupManager backups = storage.getBackupManager();
+        final ArrayList<BackupManager.RestorePoint> rps = backups.getRestorePoints();
+
+        if (rps.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No backups of this database were found in\n" + backups.getBackupDir());
+            return;
         }
-}//GEN-LAST:event_jMenuItemImportDBActionPerformed
 
-    private void jMenuItemExitActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemExitActionPerformed
-        if (checkAndSave()) {
-            DerbyStorage.shutdownDB();
-            System.exit(1);
+        // list newest first
+        Collections.reverse(rps);
+        ArrayList rpList = new ArrayList();
+        for (int i = 0 ; i < rps.size() ; i++) {
+            rpList.add(new String[] {String.valueOf(i), rps.get(i).toString()});
         }
+
+        ListSelectorUI selUI = new ListSelectorUI("Select a backup to restore to a new database:", rpList);
+        final JOptionPane pane = new JOptionPane(selUI, JOptionPane.QUESTION_MESSAGE,
+                JOptionPane.OK_CANCEL_OPTION);
+        JDialog dialog = pane.createDialog(this, "Restore Database");
+        dialog.setLocationRelativeTo(this);
+        dialog.pack();
+        dialog.setVisible(true);
+
+        if (pane.getValue() == null || (Integer)pane.getValue() != JOptionPane.OK_OPTION
+                || selUI.getSelectionIndex() < 0) return;
+        final BackupManager.RestorePoint rp = rps.get(selUI.getSelectionIndex());
+
+        final String nm = JOptionPane.showInputDialog(this, "Enter name of database to restore to.",
+                storage.getDBName() + "_" + new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(rp.getTime()));
+        if (nm == null) return;
+        if (nm.equals("")) {
+            JOptionPane.showMessageDialog(this, "A new database name must be entered!");
+            return;
+        }
+
+        checkAndSave(new Runnable() {
+            public void run() {
+                setProgress("Restoring database...");
+                new SwingWorker<Boolean, Void>() {
+                    protected Boolean doInBackground() throws Exception {
+                        return backups.restore(rp, nm);
+                    }
+
+                    protected void done() {
+                        boolean restored = false;
+                        try {
+                            restored = get();
+                        } catch(Exception e) {
+                            e.printStackTrace();
+                        }
+                        endProgress();
+
+                        if (!restored) {
+                            JOptionPane.showMessageDialog(EPOCBuilderUI.this, Messages.getUnreadErrMsgs(), "Error", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+
+                        // restored database is brought up to the backup as it opens
+                        Storage oldStorage = storage;
+                        try {
+                            storage = DerbyStorage.getInstance(nm);
+                        } catch (Exception e) {
+                            JOptionPane.showMessageDialog(EPOCBuilderUI.this, e.getMessage());
+                            storage = oldStorage;
+                        }
+                        universe = storage.getLastVisited();
+
+                        loadForm(true);
+                    }
+                }.execute();
+            }
+        });
+}//GEN-LAST:event_jMenuItemRestoreDBActionPerformed
+
+    private void jMenuItemExitActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemExitActionPerformed
+        checkAndSave(new Runnable() {
+            public void run() {
+                DerbyStorage.shutdownDB();
+                System.exit(1);
+            }
+        });
 }//GEN-LAST:event_jMenuItemExitActionPerformed
 
     private void jMenuItemGenerateRActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemGenerateRActionPerformed
@@ -787,13 +978,13 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
         }
 
         // Validate
-        boolean passed = true;
+        ValidationEngine.Result result = null;
         setProgress("Validating object...");
-        if (obj instanceof Universe) passed = ((Universe)obj).validate(true);
-        if (obj instanceof Element) passed = ((Element)obj).validate(universe, true);
-        if (!passed) {
+        if (obj instanceof Universe) result = new ValidationEngine(universe).validate();
+        if (obj instanceof Element) result = new ValidationEngine(universe).validate((Element)obj);
+        if (!result.isAllPassed()) {
             if (JOptionPane.showConfirmDialog(this, "Object failed to pass validation!\n"
-                        + Messages.getUnreadErrMsgs() + "\n"
+                        + result.getAllMessages() + "\n"
                         + "Do you wish to continue?", "Failed validation", JOptionPane.YES_NO_OPTION) == JOptionPane.NO_OPTION) {
                 endProgress();
                 return;
@@ -873,10 +1064,12 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
 }//GEN-LAST:event_jMenuItemAboutActionPerformed
 
     private void formWindowClosing(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_formWindowClosing
-        if (checkAndSave()) {
-            DerbyStorage.shutdownDB();
-            System.exit(1);
-        }
+        checkAndSave(new Runnable() {
+            public void run() {
+                DerbyStorage.shutdownDB();
+                System.exit(1);
+            }
+        });
     }//GEN-LAST:event_formWindowClosing
 
     private void jMenuItemRefreshActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemRefreshActionPerformed
@@ -987,11 +1180,12 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
         // Validate
         setProgress("Validating Universe...");
         
-        if (!universe.validate(true)) {
+        ValidationEngine.Result result = new ValidationEngine(universe).validate();
+        if (!result.isAllPassed()) {
         //if (!validateUniverse()) {
             setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
             if (JOptionPane.showConfirmDialog(this, "Universe failed to pass validation!\n"
-                        + Messages.getUnreadErrMsgs() + "\n"
+                        + result.getAllMessages() + "\n"
                         + "Do you wish to continue?", "Failed validation", JOptionPane.YES_NO_OPTION) == JOptionPane.NO_OPTION) {
                 return;
             }
@@ -1068,36 +1262,36 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
      * @param evt
      */
     private void jMenuItemOrphansActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jMenuItemOrphansActionPerformed
-        ArrayList orphList;
-        String txt;
-
-        txt = "Orphaned EPOC Builder database objects:";
-        orphList = storage.getOrphanedList(OBJ_ALL);
-
-        ListSelectorUI selUI = new ListSelectorUI(txt, orphList);
+        // problems are listed as the checks find them, and checking stops
+        // if the dialog is closed first
+        ListSelectorUI selUI = new ListSelectorUI("Checking EPOC Builder database...", new ArrayList());
+        IntegrityWorker iw = new IntegrityWorker(storage, selUI);
         final JOptionPane pane = new JOptionPane(selUI, JOptionPane.QUESTION_MESSAGE,
                 JOptionPane.OK_CANCEL_OPTION);
         JDialog dialog = pane.createDialog(this, "Orphaned Objects");
         dialog.setLocationRelativeTo(this);
         dialog.pack();
+        iw.execute();
         dialog.setVisible(true);
+        iw.stop();
     }//GEN-LAST:event_jMenuItemOrphansActionPerformed
 
     /**
      * Check if there have been any modifications to the Universe or templates.
-     * If so, prompt to save back to storage.
-     * @return success
+     * If so, prompt to save back to storage.  Any save is written in the
+     * background with the frame disabled.  Unless cancelled or the save fails,
+     * then is carried on with on the event thread once it is written.
+     * @param then
      */
-    private boolean checkAndSave() {
+    private void checkAndSave(final Runnable then) {
         String txt;
-        boolean retVal = true;
         boolean uniMod = false, templMod = false;
 
-        if (!saveOpposingForm()) return false;
+        if (!saveOpposingForm()) return;
 
         setProgress("Checking for changes...");
-        if (!universe.isEmpty()) uniMod = (!universe.compare(storedUni, false));
-        templMod = (!universe.getTemplates().compare(storedUni.getTemplates()));
+        uniMod = universe.isModified();
+        templMod = universe.getTemplates().isModified();
         endProgress();
 
         if (uniMod) {
@@ -1120,30 +1314,57 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
                                 + "These will not have their context saved.\n"
                                 + "Use the Validation tool to find all broken links!\n\n"
                                 + "Do you wish to continue with save?", "Broken Links", JOptionPane.YES_NO_OPTION) == JOptionPane.NO_OPTION) {
-                        return false;
+                        return;
                     }
                 }
 
                 setProgress("Saving to database...");
+                setEnabled(false);
+
+                final StorageWriter writer = storage.getWriter();
 
                 // Save the universe to storage
-                if (uniMod && !universe.saveToStorage()) retVal = false;
+                if (uniMod) writer.save(universe, true);
 
                 // finally save any unused templates in case they were templated and then unlinked
                 // in the same session (eg will be in template list with a uid but not in an object list
-                if (!universe.saveUnusedTemplateObjects()) retVal = false;
-                
-                endProgress();
-                if (!retVal) JOptionPane.showMessageDialog(this, Messages.getUnreadErrMsgs(), "Error", JOptionPane.ERROR_MESSAGE);
+                writer.saveUnusedTemplates(universe);
+
+                // wait for both in background, as the universe may be replaced once they are written
+                new SwingWorker<Boolean, Void>() {
+                    protected Boolean doInBackground() throws Exception {
+                        return writer.flush();
+                    }
+
+                    protected void done() {
+                        boolean saved = false;
+                        try {
+                            saved = get();
+                        } catch(Exception e) {
+                            e.printStackTrace();
+                        }
+                        endProgress();
+
+                        if (!saved) {
+                            JOptionPane.showMessageDialog(EPOCBuilderUI.this, Messages.getUnreadErrMsgs(), "Error", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        saveSettings();
+
+                        then.run();
+                    }
+                }.execute();
+
+                return;
             } else if (choice == JOptionPane.CANCEL_OPTION) {
                 endProgress();
-                return false;
+                return;
             }
         }
 
         saveSettings();
 
-        return retVal;
+        then.run();
     }
 
     /**
@@ -1231,11 +1452,9 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
         // Create a module title node
         DefaultMutableTreeNode moduleNode = new DefaultMutableTreeNode(EPOCObject.getObjectTypeName(eleType).toUpperCase());
 
-        ArrayList eleList = universe.getElements(eleType);
-
         // create all element nodes for the module
-        for (Object ele : eleList) {
-            moduleNode.add(loadElement((Element)ele));
+        for (Element ele : universe.getElements(eleType)) {
+            moduleNode.add(loadElement(ele));
         }
 
         return moduleNode;
@@ -2281,6 +2500,8 @@ public class EPOCBuilderUI extends javax.swing.JFrame implements TreeSelectionLi
     private javax.swing.JMenuItem jMenuItemGenerateCalendar;
     private javax.swing.JMenuItem jMenuItemGenerateR;
     private javax.swing.JMenuItem jMenuItemImportDB;
+    private javax.swing.JMenuItem jMenuItemBackupDB;
+    private javax.swing.JMenuItem jMenuItemRestoreDB;
     private javax.swing.JMenuItem jMenuItemImportXML;
     private javax.swing.JMenuItem jMenuItemNewDB;
     private javax.swing.JMenuItem jMenuItemNewUni;
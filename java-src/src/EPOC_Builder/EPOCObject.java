@@ -48,13 +48,25 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
     String morph = "";
     String epocID = "";
     String revision = "";
+    // Parsed revision, worked out again whenever revision is no longer its text
+    private transient Revision parsedRevision = Revision.BLANK;
     Date created = new Date();
     Date modified = new Date();
     String description = "";
     String author = "";
     boolean objectModified = false;
+    // Copies made by clone() are kept out of the change journal until storage
+    // next loads or saves them, changes before then being recorded by the
+    // parent they are added to
+    private transient boolean journaled = true;
+    // Parent uid as last loaded or saved, so storage can tell the parent a
+    // relinked object has left
+    private transient int storedParentUID = 0;
     int position = -1;
     boolean locked = false;
+    // Fingerprints of own data members looked at by compare(), 0 until worked out
+    private transient long superficialPrint = Fingerprint.NONE;
+    private transient long fullPrint = Fingerprint.NONE;
 
     Storage storage = DerbyStorage.getInstance();
     JRIExchanger rex = JRIExchanger.getInstance();
@@ -62,11 +74,33 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
 
     public void setUIVersion(String uiver) { uiversion = uiver; }
 
-    public void setUID(int uniUID) { uid = uniUID; }
+    public void setUID(int uniUID) {
+        int oldUID = uid;
+        uid = uniUID;
+        if (templates != null && oldUID != uniUID) templates.uidChanged(this, oldUID);
+        rebindText();
+        fingerprintChanged();
+    }
 
-    public void setParentUID(int parUID) { parentuid = parUID; }
+    /**
+     * Needs to be overloaded by classes holding text bodies as LazyText, to
+     * rebind them to the uid just set
+     */
+    protected void rebindText() { }
 
-    public void setTemplates(Templates templ) { templates = templ; }
+    public void setParentUID(int parUID) {
+        if (parentuid != parUID) markModified();
+        parentuid = parUID;
+    }
+
+    public void setTemplates(Templates templ) {
+        // carry any outstanding changes over to the new journal
+        if (objectModified && journaled && templ != templates) {
+            if (templates != null) templates.getJournal().remove(this);
+            if (templ != null) templ.getJournal().record(this);
+        }
+        templates = templ;
+    }
 
     /**
      * Needs to be overloaded by classes with children
@@ -86,16 +120,21 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
         templates.addOnceTemplateList(this);
     }
 
-    public void setTemplate(boolean state) { template = state; }
+    public void setTemplate(boolean state) {
+        template = state;
+        fingerprintChanged();
+    }
 
     public void setAsTemplate() {
         template = true;
         parentuid = 0;
+        markModified();
     }
 
     public void unsetAsTemplate(int puid) {
         template = false;
         parentuid = puid;
+        markModified();
     }
 
     /**
@@ -117,9 +156,13 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
 
     public void setBroken(boolean broken) {
         if (broken) uid = -1; else uid = 0;
+        fingerprintChanged();
     }
 
-    public void setBroken() { uid = -1; }
+    public void setBroken() {
+        uid = -1;
+        fingerprintChanged();
+    }
 
     /**
      * Needs to be overloaded by classes with children
@@ -128,26 +171,36 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
         return false;
     }
 
-    public void setName(String nm) { name = (nm == null ? "" : nm); }
+    public void setName(String nm) {
+        name = (nm == null ? "" : nm);
+        markModified();
+    }
 
     public void setShortName(String nm) {
         shortname = (nm == null ? "" : nm);
+        markModified();
     }
 
     public void setEPOCClassName(String nm) {
         epocClassname = (nm == null ? "" : nm);
+        markModified();
     }
 
     public void setMorph(String nm) {
         morph = (nm == null ? "" : nm);
+        markModified();
     }
 
     public void setEPOCID(String num) {
         epocID = (num == null ? "" : num);
+        markModified();
     }
 
     public void setRevision(String ver) {
-        revision = (ver == null ? "" : ver);
+        // share the interned text so getParsedRevision() recognises it
+        parsedRevision = Revision.of(ver);
+        revision = parsedRevision.toString();
+        markModified();
     }
 
     /**
@@ -155,6 +208,7 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      */
     public void setCreated(Date cr) {
         created = cr;
+        markModified();
     }
 
     /**
@@ -162,6 +216,7 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      */
     public void setModifiedNow() {
         modified = new Date();
+        markModified();
     }
 
     /**
@@ -169,14 +224,17 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      */
     public void setModified(Date md) {
         modified = md;
+        markModified();
     }
 
     public void setDescription(String desc) {
         description = (desc == null ? "" : desc);
+        markModified();
     }
 
     public void setAuthor(String aut) {
         author = (aut == null ? "" : aut);
+        markModified();
     }
 
     /*
@@ -184,16 +242,135 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      */
     public void setNextRevision() {
         revision = storage.getNextVersion(getObjType(), revision);
+        fingerprintChanged();
     }
 
     public void setLocked(boolean lck) {
         locked = lck;
+        markModified();
     }
 
     public void setPosition(int pos) {
+        if (position != pos) markModified();
         position = pos;
     }
 
+    /**
+     * Set whether this object has changes not yet written to storage.
+     * Cleared by storage once the object has been loaded or saved.
+     * @param mod
+     */
+    public void setObjectModified(boolean mod) {
+        objectModified = mod;
+        if (!mod) {
+            journaled = true;
+            storedParentUID = parentuid;
+        }
+        if (templates != null) {
+            if (!mod) {
+                templates.getJournal().remove(this);
+            } else if (journaled) {
+                templates.getJournal().record(this);
+            }
+        }
+    }
+
+    /**
+     * Needs to be overloaded by classes with children
+     * @param mod
+     * @param recurse
+     */
+    public void setObjectModified(boolean mod, boolean recurse) {
+        setObjectModified(mod);
+    }
+
+    /**
+     * Flag this object as changed since it was last loaded or saved and
+     * record the change in the journal of its templates object
+     */
+    protected void markModified() {
+        objectModified = true;
+        fingerprintChanged();
+        if (templates != null && journaled) templates.getJournal().record(this);
+    }
+
+    /**
+     * Remove this object from the journal of its templates object, as it has
+     * been deleted or removed from its parent and so will not be saved.
+     * Needs to be overloaded by classes with children.
+     */
+    protected void unjournal() {
+        if (templates != null) templates.getJournal().remove(this);
+    }
+
+    /**
+     * Forget fingerprints of own data members as one has changed.  Called by
+     * markModified(), and directly where a member changes without it.
+     */
+    protected void fingerprintChanged() {
+        superficialPrint = Fingerprint.NONE;
+        fullPrint = Fingerprint.NONE;
+    }
+
+    /**
+     * Return fingerprint of the data members of this object alone that
+     * compare() looks at, kept until one changes.  Objects which compare as
+     * equal have equal fingerprints.  Large text bodies, which may not be
+     * loaded yet, and members which may be shared and changed in place by
+     * other objects are left out.
+     * @param superficial
+     * @return
+     */
+    final long getOwnFingerprint(boolean superficial) {
+        if (superficialPrint == Fingerprint.NONE) {
+            long fp = Fingerprint.finish(foldOwnMembers(Fingerprint.start(getObjType())));
+            superficialPrint = (fp != Fingerprint.NONE ? fp : 1);
+        }
+        if (superficial) return superficialPrint;
+
+        if (fullPrint == Fingerprint.NONE) {
+            long fp = Fingerprint.fold(superficialPrint, template);
+            fp = Fingerprint.fold(fp, uid);
+            fp = Fingerprint.fold(fp, locked);
+            fp = Fingerprint.finish(Fingerprint.fold(fp, revision));
+            fullPrint = (fp != Fingerprint.NONE ? fp : 1);
+        }
+
+        return fullPrint;
+    }
+
+    /**
+     * Fold into fp the data members compared superficially by compare().
+     * Needs to be overloaded by classes comparing further members, with
+     * super called first.
+     * @param fp
+     * @return
+     */
+    protected long foldOwnMembers(long fp) {
+        fp = Fingerprint.fold(fp, name);
+        fp = Fingerprint.fold(fp, shortname);
+        fp = Fingerprint.fold(fp, epocClassname);
+        fp = Fingerprint.fold(fp, morph);
+        fp = Fingerprint.fold(fp, epocID);
+
+        return Fingerprint.fold(fp, description);
+    }
+
+    /**
+     * Return fingerprint of this object and of the child and linked objects
+     * compare() looks at, their fingerprints being folded into this object's
+     * own in the order compared.  Only own fingerprints are kept, as child
+     * lists are changed in place, so the fold is repeated each time.
+     * Returns Fingerprint.NONE if a broken object is met, as compare() skips
+     * the children of broken objects.
+     * Needs to be overloaded by classes with children or linked objects.
+     * @param superficial
+     * @return
+     */
+    public long getFingerprint(boolean superficial) {
+        return getOwnFingerprint(superficial);
+    }
+
     public String getUIVersion() {
         return uiversion;
     }
@@ -206,6 +383,10 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
         return parentuid;
     }
 
+    public int getStoredParentUID() {
+        return storedParentUID;
+    }
+
     public boolean isTemplate() {
         return template;
     }
@@ -242,6 +423,21 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
         return revision;
     }
 
+    /**
+     * Return revision parsed for ordering and relating to other revisions
+     * @return
+     */
+    Revision getParsedRevision() {
+        Revision rev = parsedRevision;
+        if (rev == null || rev.toString() != revision) {
+            rev = Revision.of(revision);
+            parsedRevision = rev;
+            revision = rev.toString();
+        }
+
+        return rev;
+    }
+
     public Date getCreated() {
         return created;
     }
@@ -280,6 +476,12 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      */
     public boolean isLocked() { return locked; }
 
+    /**
+     * Does this object have changes not yet written to storage?
+     * @return
+     */
+    public boolean isObjectModified() { return objectModified; }
+
     /**
      * Return the tree display position
      * @return
@@ -432,6 +634,7 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
             //errMsg = storage.getErrMsg();
             return false;
         }
+        unjournal();
 
         return true;
     }
@@ -451,24 +654,13 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      * @param obj
      */
     public void setHigherVersion(EPOCObject obj) {
-        if (obj.getRevision().equals("") || revision.equals("")) return;
-
-        String[] thisBits = revision.split("\\.");
-        String[] thatBits = obj.getRevision().split("\\.");
-
-        if (thisBits.length > thatBits.length) return;
-
-        String newVer = "";
-        for (int i = 0; i < thisBits.length - 1; i++) {
-            if (!thisBits[i].equals(thatBits[i])) return;
-            if (i > 0) newVer += ".";
-            newVer += thisBits[i];
-        }
+        Revision rev = getParsedRevision();
+        Revision higher = rev.above(obj.getParsedRevision());
 
-        if (Integer.parseInt(thisBits[thisBits.length-1])
-                                    <= Integer.parseInt(thatBits[thisBits.length-1])) {
-            if (!newVer.equals("")) newVer += ".";
-            revision = newVer + (Integer.parseInt(thatBits[thisBits.length-1]) + 1);
+        if (higher != rev) {
+            revision = higher.toString();
+            parsedRevision = higher;
+            fingerprintChanged();
         }
     }
 
@@ -480,22 +672,7 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      * @return
      */
     public boolean isDescendentOf(EPOCObject obj, int generationGap) {
-        //if (obj.getRevision().equals("") || revision.equals("")) return false;
-
-        String[] thisBits = revision.split("\\.");
-        String[] thatBits = obj.getRevision().split("\\.");
-
-        // Watch out for parent with no revision
-        if (thatBits.length == 1 && thatBits[0].equals("") && thisBits.length == generationGap && !thisBits[0].equals("")) return true;
-        // Should only have generationGap extra part to revision
-        if (thisBits.length != thatBits.length + generationGap) return false;
-        
-        // Check that all revision parts are same for length of obj.revision
-        for (int i = 0; i < thatBits.length; i++) {
-            if (!thisBits[i].equals(thatBits[i])) return false;
-        }
-
-        return true;
+        return getParsedRevision().isDescendantOf(obj.getParsedRevision(), generationGap);
     }
 
     /**
@@ -549,6 +726,7 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
         description = eo.getDescription();
         locked = eo.isLocked();
         position = eo.getPosition();
+        markModified();
     }
 
     /**
@@ -571,6 +749,9 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      */
     public boolean compare(T obj, boolean superficial) {
         // T allows overriding by methods with a parameter overriding T (eg Element)
+        // differing fingerprints mean a member compared here or by the overriding class differs
+        if (obj.getOwnFingerprint(superficial) != getOwnFingerprint(superficial)) return false;
+
         if (!superficial) {
             if (obj.isTemplate() != template) return false;
             if (obj.getUID() != uid) return false;
@@ -607,30 +788,61 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
     }
 
     /**
-     * Write out signature only to output file handle passed
+     * Check syntax of R code.  Checked in Java first, only using the R engine
+     * when that check can't decide or finds an error, as R then gives the
+     * authoritative error message.
+     * @param code
+     * @return true if code parses
+     */
+    protected boolean parseR(String code) {
+        RSyntaxChecker syntax = new RSyntaxChecker(code);
+
+        return parseR(code, syntax, syntax.check());
+    }
+
+    /**
+     * Check syntax of R code which syntax has already checked in Java,
+     * returning status
+     * @param code
+     * @param syntax
+     * @param status
+     * @return true if code parses
+     */
+    protected boolean parseR(String code, RSyntaxChecker syntax, int status) {
+        if (status == RSyntaxChecker.R_SYNTAX_VALID) return true;
+
+        if (rex.hasEngine()) return rex.parse(code);
+
+        if (status == RSyntaxChecker.R_SYNTAX_INVALID) {
+            Messages.addErrMsg(syntax.getMessage());
+        } else {
+            Messages.addErrMsg("No JRI Engine found!\nUnable to parse R code!");
+        }
+
+        return false;
+    }
+
+    /**
+     * Append signature only to output builder passed
      * @param out
      * @param varName
      */
-    public void writeSignatureAsR(FileWriter out, String varName) {
+    public void writeSignatureAsR(StringBuilder out, String varName) {
         // Signature
-        try {
-            out.write(varName + "$signature <- list(\n");
-            if (this instanceof Element && ((Element)this).getEClass() != null) {
-                out.write("\tClassName    = \"" + ((Element)this).getEClass().getDisplayName() + "\",\n");
-            } else {
-                out.write("\tClassName    = \"" + epocClassname + "\",\n");
-            }
-            out.write("\tID           = " + epocID + ",\n");
-            out.write("\tName.full    = \"" + name + "\",\n");
-            out.write("\tName.short   = \"" + shortname + "\",\n");
-            out.write("\tMorph        = \"" + morph + "\",\n");
-            out.write("\tRevision     = \"" + revision + "\",\n");
-            out.write("\tAuthors      = \"" + author + "\",\n");
-            out.write("\tLast.edit    = \"" + getFormattedModified() + "\"\n");
-            out.write(")\n\n");
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        out.append(varName + "$signature <- list(\n");
+        if (this instanceof Element && ((Element)this).getEClass() != null) {
+            out.append("\tClassName    = \"" + ((Element)this).getEClass().getDisplayName() + "\",\n");
+        } else {
+            out.append("\tClassName    = \"" + epocClassname + "\",\n");
         }
+        out.append("\tID           = " + epocID + ",\n");
+        out.append("\tName.full    = \"" + name + "\",\n");
+        out.append("\tName.short   = \"" + shortname + "\",\n");
+        out.append("\tMorph        = \"" + morph + "\",\n");
+        out.append("\tRevision     = \"" + revision + "\",\n");
+        out.append("\tAuthors      = \"" + author + "\",\n");
+        out.append("\tLast.edit    = \"" + getFormattedModified() + "\"\n");
+        out.append(")\n\n");
     }
 
     /**
@@ -652,9 +864,19 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
     public void breakLinks(EPOCObject root, Element parentEle) {}
 
     /**
-     * Dummy method to be overridden by inheriting objects if needed
+     * Substitute any child objects with a comparable template if one can be
+     * found
+     */
+    public void substituteMembersWithTemplates() {
+        if (templates != null) substituteMembersWithTemplates(templates.getMatcher());
+    }
+
+    /**
+     * Dummy method to be overridden by inheriting objects if needed, finding
+     * comparable templates through matcher
+     * @param matcher
      */
-    public void substituteMembersWithTemplates() {}
+    void substituteMembersWithTemplates(Templates.Matcher matcher) {}
 
     /**
      * Replace any linked objects equal to linkObj with the replacement object
@@ -663,6 +885,26 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      */
     public void replaceLinkWith(EPOCObject linkObj, EPOCObject replObj) {}
 
+    /**
+     * Remove the objects now in delete list from it once the current storage
+     * transaction has been committed.  If the transaction is rolled back they
+     * stay in the list to be deleted by the next save.
+     * @param storage
+     * @param list
+     */
+    static void clearAfterCommit(Storage storage, final List list) {
+        final Set<Object> done = Collections.newSetFromMap(new IdentityHashMap());
+        done.addAll(list);
+
+        storage.afterCommit(new Runnable() {
+            public void run() {
+                for (Iterator it = list.iterator() ; it.hasNext() ; ) {
+                    if (done.contains(it.next())) it.remove();
+                }
+            }
+        });
+    }
+
     /**
      * Repair any BROKEN linked objects (dataset, transform, related) with a
      * comparable local object if one can be found, or if this object is a template,
@@ -712,7 +954,7 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
      * @param recurse
      */
     public void freshen(Universe uni, boolean recurse) {
-        uid = 0;
+        setUID(0);
         uni.setNextAvailableVersion(this, false);
         uni.registerNewReplica(this);
     }
@@ -802,6 +1044,11 @@ public abstract class EPOCObject <T extends EPOCObject> extends Object implement
              throw new InternalError("But we are Cloneable!!!");
         }
 
+        // Only a plain copy carries unsaved changes with it, replicas and
+        // revisions being saved as new objects and broken copies never
+        eo.objectModified = (method == EPOC_CLN && objectModified);
+        eo.journaled = false;
+
         if (uni != null) {
             eo.setTemplates(uni.getTemplates());
         } else {
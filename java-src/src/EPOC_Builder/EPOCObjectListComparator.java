@@ -53,40 +53,24 @@ public class EPOCObjectListComparator implements Comparator<EPOCObject> {
 
         if (displayMethod == DSPL_LST_NM_ASC || displayMethod == DSPL_TRE_NM_ASC) {
             // then by shortname,
-            if (o1.getShortName().compareToIgnoreCase(o2.getShortName()) == 0) {
-                return compareRevision(o1.getRevision(), o2.getRevision());
+            int cmp = o1.getShortName().compareToIgnoreCase(o2.getShortName());
+            if (cmp == 0) {
+                return o1.getParsedRevision().compareTo(o2.getParsedRevision());
             }
             // and then by revision number
-            return o1.getShortName().compareToIgnoreCase(o2.getShortName());
+            return cmp;
         } else {
-            // then by shortname,
-            if (o1.getRevision().compareToIgnoreCase(o2.getRevision()) == 0) {
+            // then by revision number,
+            int cmp = o1.getParsedRevision().compareTo(o2.getParsedRevision());
+            if (cmp == 0) {
                 return o1.getShortName().compareToIgnoreCase(o2.getShortName());
             }
 
-            return compareRevision(o1.getRevision(), o2.getRevision());
+            return cmp;
         }
     }
 
     public static int compareRevision(String rev1, String rev2) {
-        final int BEFORE = -1;
-        final int EQUAL = 0;
-        final int AFTER = 1;
-
-        if (rev1.equals(rev2)) return EQUAL;
-        if (rev1.equals("")) return BEFORE;
-        if (rev2.equals("")) return AFTER;
-
-        String[] rev1Bits = rev1.split("\\.");
-        String[] rev2Bits = rev2.split("\\.");
-        int parts = (rev1Bits.length < rev2Bits.length ? rev1Bits.length : rev2Bits.length);
-
-        for (int i = 0 ; i < parts ; i++) {
-            if (Integer.parseInt(rev1Bits[i]) < Integer.parseInt(rev2Bits[i])) return BEFORE;
-            if (Integer.parseInt(rev1Bits[i]) > Integer.parseInt(rev2Bits[i])) return AFTER;
-        }
-
-        if (rev1Bits.length == rev2Bits.length) return EQUAL;
-        return (rev1Bits.length < rev2Bits.length ? BEFORE : AFTER);
+        return Revision.of(rev1).compareTo(Revision.of(rev2));
     }
 }
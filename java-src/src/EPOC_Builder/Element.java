@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.io.File;
 import java.io.FileWriter;
 
@@ -46,6 +47,10 @@ public class Element extends EPOCObject<Element> {
     private ArrayList<Action> actions = new ArrayList();
     private ArrayList<Integer> polygons = new ArrayList();
     private ArrayList<Timestep> timesteps = new ArrayList();
+    // Index of timesteps for the birthday last asked for
+    private transient TimestepIndex timestepIndex = null;
+    // Timestep slices of all actions for the birthday last asked for
+    private transient TimestepCalendar timestepCalendar = null;
 
     // lists to hold elements requiring storage deletion on save
     private ArrayList<Action> deleteActionList = new ArrayList();
@@ -81,6 +86,7 @@ public class Element extends EPOCObject<Element> {
 
         setEClassObject();
         setActionLinkedObjects();
+        setObjectModified(false, true);
     }
 
     public void setEClassObject() {
@@ -100,7 +106,7 @@ public class Element extends EPOCObject<Element> {
      * Has to be done after all actions/attributes are loaded for element so
      * that same object can be used rather than loading another copy
      */
-    private void setActionLinkedObjects() {
+    void setActionLinkedObjects() {
         // For active elements
         for (Action act : actions) {
             act.setTransformFromList(actions);
@@ -117,7 +123,7 @@ public class Element extends EPOCObject<Element> {
      *
      * @param eleList
      */
-    public void setActionRelatedObjectsFromList(ArrayList eleList) {
+    public void setActionRelatedObjectsFromList(List<Element> eleList) {
         for (Action act : actions) act.setRelatedElementsFromList(eleList);
     }
 
@@ -137,13 +143,19 @@ public class Element extends EPOCObject<Element> {
      * Set the element module type of this element object
      * @param mType
      */
-    public void setModType(int mType) { modType = mType; }
+    public void setModType(int mType) {
+        modType = mType;
+        markModified();
+    }
 
     /**
      * Set the EPOC Class uid for this element object
      * @param mType
      */
-    public void setEClassUID(int ecUID) { eclassUID = ecUID; }
+    public void setEClassUID(int ecUID) {
+        eclassUID = ecUID;
+        markModified();
+    }
 
     /**
      * Set eClass object
@@ -152,6 +164,7 @@ public class Element extends EPOCObject<Element> {
     public void setEClass(EClass ec) {
         eclass = ec;
         eclassUID = 0;
+        markModified();
     }
 
     /**
@@ -174,6 +187,23 @@ public class Element extends EPOCObject<Element> {
         }
     }
 
+    /**
+     * Set modified state of element and, if recurse, its actions, attributes
+     * and timesteps
+     * @param mod
+     * @param recurse
+     */
+    @Override
+    public void setObjectModified(boolean mod, boolean recurse) {
+        setObjectModified(mod);
+        if (recurse) {
+            if (eclass != null) eclass.setObjectModified(mod);
+            for (Action act : actions) act.setObjectModified(mod, recurse);
+            for (Attribute att : attributes) att.setObjectModified(mod);
+            for (Timestep ts : timesteps) ts.setObjectModified(mod);
+        }
+    }
+
     /**
      * Recursively add self to templates object listings
      * @param recurse
@@ -215,13 +245,19 @@ public class Element extends EPOCObject<Element> {
      * Set day of birth
      * @param bday
      */
-    public void setBirthDay(int bday) { birthDay = bday; }
+    public void setBirthDay(int bday) {
+        birthDay = bday;
+        markModified();
+    }
 
     /**
      * Set month of birth
      * @param bmth
      */
-    public void setBirthMonth(int bmth) { birthMonth = bmth; }
+    public void setBirthMonth(int bmth) {
+        birthMonth = bmth;
+        markModified();
+    }
 
     /**
      * Set the birth day and month
@@ -232,11 +268,27 @@ public class Element extends EPOCObject<Element> {
     public void setBirthDate(int bDay, int bMonth) {
         birthDay = bDay;
         birthMonth = bMonth;
+        markModified();
+    }
+
+    public void addPolygon(int i) {
+        polygons.add(i);
+        markModified();
+    }
+
+    public void addTimestep(Timestep ts) {
+        timesteps.add(ts);
+        timestepIndex = null;
+        markModified();
     }
 
-    public void addPolygon(int i) { polygons.add(i); }
+    public boolean removeTimestep(Timestep ts) {
+        timestepIndex = null;
+        markModified();
+        ts.unjournal();
 
-    public void addTimestep(Timestep ts) { timesteps.add(ts); }
+        return timesteps.remove(ts);
+    }
 
     public void setPolygonsString(String polys) {
         polygons.clear();
@@ -245,17 +297,28 @@ public class Element extends EPOCObject<Element> {
                 polygons.add(Integer.parseInt(pStr));
             }
         }
+        markModified();
     }
 
-    public void setPolygons(ArrayList<Integer> pList) { polygons = pList; }
+    public void setPolygons(ArrayList<Integer> pList) {
+        polygons = pList;
+        markModified();
+    }
 
-    public void setTimesteps(ArrayList<Timestep> tsteps) { timesteps = tsteps; }
+    public void setTimesteps(ArrayList<Timestep> tsteps) {
+        timesteps = tsteps;
+        markModified();
+    }
 
     public void setAttributes(ArrayList<Attribute> attrList) {
         attributes = attrList;
+        markModified();
     }
 
-    public void setActions(ArrayList<Action> actList) { actions = actList; }
+    public void setActions(ArrayList<Action> actList) {
+        actions = actList;
+        markModified();
+    }
 
     public void addDeleteList(EPOCObject actAtt) {
         if (actAtt instanceof Action) addDeleteList((Action)actAtt);
@@ -449,6 +512,7 @@ public class Element extends EPOCObject<Element> {
         if (eobj instanceof Action || eobj instanceof Attribute) {
             // Remove it from the template listing
             getTemplates().removeTemplateList(eobj);
+            eobj.unjournal();
 
             // If has been in storage then it will need deleting
             if (eobj.getUID() > 0) addTemplateDeleteList(eobj.clone());
@@ -464,71 +528,39 @@ public class Element extends EPOCObject<Element> {
      */
     public Timestep getOverlappingTimestep(int stDay, int stMth, int enDay, int enMth,
                                                                     int bDay, int bMth) {
-        //Timestep[] tsps = getTimestepArray(false);
-
-        for (Timestep tsp : timesteps) {
-
-            int stDay2 = tsp.getStartDay();
-            int stMth2 = tsp.getStartMonth();
-            int enDay2 = tsp.getEndDay();
-            int enMth2 = tsp.getEndMonth();
-
-            // replace birth days
-            if (stDay == 99) stDay = bDay;
-            if (stMth == 99) stMth = bMth;
-            if (enDay == 99) enDay = bDay;
-            if (enMth == 99) enMth = bMth;
-            if (stDay2 == 99) stDay2 = bDay;
-            if (stMth2 == 99) stMth2 = bMth;
-            if (enDay2 == 99) enDay2 = bDay;
-            if (enMth2 == 99) enMth2 = bMth;
-
-            // check if dates cross Dec 31
-            if (enMth < stMth || (enMth == stMth && enDay < stDay)) enMth += 12;
-            if (enMth2 < stMth2 || (enMth2 == stMth2 && enDay2 < stDay2)) enMth2 += 12;
-
-            // if start date falls on or between next timestep dates
-            //           |--
-            //         |------|
-            if (dateCompare(stDay, stMth, stDay2, stMth2) >= 0
-                    && dateCompare(stDay, stMth, enDay2, enMth2) <= 0) {
-                return tsp;
-            }
-            // if end date falls on or between next timestep dates
-            //          --|
-            //         |------|
-            if (dateCompare(enDay, enMth, stDay2, stMth2) >= 0
-                    && dateCompare(enDay, enMth, enDay2, enMth2) <= 0) {
-                return tsp;
-            }
-            // if start and end of date span next timestep dates
-            //       |---------|
-            //         |------|
-            if (dateCompare(stDay, stMth, stDay2, stMth2) <= 0
-                    && dateCompare(enDay, enMth, enDay2, enMth2) >= 0) {
-                return tsp;
-            }
-            // if ONE of the end dates crosses Dec 31 (>12) then check if it is greater
-            // than other start date
-            // J-----------D----------D
-            //  |---| |------|
-            if (enMth > 12 ^ enMth2 > 12) {
-                if (enMth > 12 && dateCompare(stDay2, stMth2, enDay, enMth-12) <= 0) return tsp;
-                if (enMth2 > 12 && dateCompare(stDay, stMth, enDay2, enMth2-12) <= 0) return tsp;
-            }
-        }
-
-        return null;
+        return getOverlappingTimestep(stDay, stMth, enDay, enMth, bDay, bMth, null);
     }
 
     /*
-     * return <0 if date1 < date2
-     * return >0 if date1 > date2
-     * return 0 if equal
+     * As above but ignoring timestep exclude, such as the one being edited
+     */
+    public Timestep getOverlappingTimestep(int stDay, int stMth, int enDay, int enMth,
+                                                    int bDay, int bMth, Timestep exclude) {
+        return getTimestepIndex(bDay, bMth).getOverlapping(stDay, stMth, enDay, enMth, exclude);
+    }
+
+    /**
+     * Return index of timesteps with birthday placeholders replaced by the
+     * birthday passed, building it only if timesteps have changed
+     * @param bDay
+     * @param bMth
+     * @return
+     */
+    public TimestepIndex getTimestepIndex(int bDay, int bMth) {
+        timestepIndex = TimestepIndex.of(timestepIndex, timesteps, bDay, bMth);
+
+        return timestepIndex;
+    }
+
+    /**
+     * Return calendar of timestep slices for all timestep actions, building
+     * it only if actions or their timesteps have changed
+     * @return
      */
-    private int dateCompare(int day1, int mth1, int day2, int mth2) {
-        if (mth1 == mth2) return day1 - day2;
-        return mth1 - mth2;
+    TimestepCalendar getTimestepCalendar() {
+        timestepCalendar = TimestepCalendar.of(timestepCalendar, actions, birthDay, birthMonth);
+
+        return timestepCalendar;
     }
 
 
@@ -566,26 +598,7 @@ public class Element extends EPOCObject<Element> {
      * and have birthday/month placeholders(99) replaced with actual figures passed
      */
     public Timestep[] getTimestepArrayClone(int bDay, int bMth) {
-        Timestep[] tList = new Timestep[timesteps.size()];
-        int i = 0;
-
-        for (Timestep ts : timesteps) {
-            Timestep newTS = ts.clone(EPOC_CLN, null);
-
-            int sd = (newTS.getStartDay() == 99) ? bDay : newTS.getStartDay();
-            int sm = (newTS.getStartMonth() == 99) ? bMth : newTS.getStartMonth();
-            int ed = (newTS.getEndDay() == 99) ? bDay : newTS.getEndDay();
-            int em = (newTS.getEndMonth() == 99) ? bMth : newTS.getEndMonth();
-            newTS.setSteps(sd, sm, ed, em);
-
-            tList[i] = newTS;
-            i++;
-        }
-
-        // Sort list
-        Arrays.sort(tList);
-
-        return tList;
+        return getTimestepIndex(bDay, bMth).getTimestepClones();
     }
 
     /**
@@ -602,6 +615,8 @@ public class Element extends EPOCObject<Element> {
         Action brokenAct = (Action)act.clone();
         brokenAct.setBroken();
         replaceLinkWith(act, brokenAct);
+        markModified();
+        if (!act.isTemplate()) act.unjournal();
 
         return actions.remove(act);
     }
@@ -620,6 +635,8 @@ public class Element extends EPOCObject<Element> {
         Attribute brokenAtt = (Attribute)att.clone();
         brokenAtt.setBroken();
         replaceLinkWith(att, brokenAtt);
+        markModified();
+        if (!att.isTemplate()) att.unjournal();
 
         return attributes.remove(att);
     }
@@ -634,6 +651,7 @@ public class Element extends EPOCObject<Element> {
         if (actions.indexOf(act) < 0) {
             actions.add(act);
             setNextHighestPosition(act);
+            markModified();
             return true;
         }
 
@@ -650,6 +668,7 @@ public class Element extends EPOCObject<Element> {
         if (attributes.indexOf(att) < 0) {
             attributes.add(att);
             setNextHighestPosition(att);
+            markModified();
             return true;
         }
 
@@ -898,10 +917,13 @@ public class Element extends EPOCObject<Element> {
             return false;
         }
 
+        // deletes and save are written in a single transaction
+        storage.beginTransaction();
+
         // check delete list for any non-universe elements needing deletion
-        if (!doDeletes()) return false;
+        boolean retVal = (doDeletes() && super.saveToStorage());
 
-        if (!super.saveToStorage()) return false;
+        if (!storage.endTransaction(retVal)) return false;
 
         return true;
     }
@@ -911,21 +933,26 @@ public class Element extends EPOCObject<Element> {
      */
     public boolean doDeletes() {
         boolean retVal = true;
+        ArrayList<EPOCObject> unlinks = new ArrayList(), deletes = new ArrayList();
 
          // for each delete list
         for (ArrayList list : new ArrayList[]{deleteActionList, deleteAttributeList, deleteTemplateList}) {
             for (Object obj : list) {
                 if (!list.equals(deleteTemplateList) && ((EPOCObject)obj).isTemplate()) {
                     // its a template
-                    if (!storage.unlinkTemplate(uid, ((EPOCObject)obj).getUID(), ((EPOCObject)obj).getObjType())) {
-                        retVal = false;
-                    }
-                } else if (!storage.delete((EPOCObject)obj)) retVal = false;
+                    unlinks.add((EPOCObject)obj);
+                } else {
+                    deletes.add((EPOCObject)obj);
+                }
             }
-            // reset list to empty
-            list.clear();
+            // reset list to empty once the deletes are committed
+            clearAfterCommit(storage, list);
         }
 
+        // unlink and delete them all together, a few statements per table
+        if (storage.unlinkTemplates(uid, unlinks) < 0) retVal = false;
+        if (storage.delete(deletes, true) < 0) retVal = false;
+
         return retVal;
     }
 
@@ -968,16 +995,56 @@ public class Element extends EPOCObject<Element> {
     }
 
     public boolean validate(Universe uni, boolean recurse) {
-        boolean passed = true;
-
         rex.clear();
 
+        boolean passed = validateStructure(uni);
+        if (!validateClass()) passed = false;
+
+        // recurse down children?
+        if (recurse) {
+            // Attributes
+            for (Attribute att : getAttributes()) {
+                if (!att.validate(this)) passed = false;
+            }
+
+            // Validate Actions
+            for (Action act : getActions()) {
+                if (!act.validate(this, uni)) passed = false;
+            }
+
+            if (!validateTimesteps()) passed = false;
+        }
+
+        return passed;
+    }
+
+    /**
+     * Java side checks of element against universe.  Does not use the R engine
+     * so may be called from any thread.
+     * @param uni
+     * @return
+     */
+    public boolean validateStructure(Universe uni) {
+        boolean passed = true;
+
         // Is EPOC ID unique
         if (!uni.isEPOCIDUnique(this)) {
             Messages.addErrMsg("EPOC ID '" + epocID + "' is non-unique");
             passed = false;
         }
 
+        return passed;
+    }
+
+    /**
+     * Check EPOC class exists either in the EPOC R library or as a valid
+     * EClass template.  Uses the R engine so should only be called from the
+     * thread which owns it.
+     * @return
+     */
+    public boolean validateClass() {
+        boolean passed = true;
+
         // Check EPOC Class name
         if (rex.hasEngine()) {
             if (!rex.library("EPOC")) {
@@ -997,351 +1064,206 @@ public class Element extends EPOCObject<Element> {
             passed = false;
         }
 
-        // recurse down children?
-        if (recurse) {
-            // Attributes
-            for (Attribute att : getAttributes()) {
-                if (!att.validate(this)) passed = false;
-            }
+        return passed;
+    }
 
-            // Validate Actions
-            for (Action act : getActions()) {
-                if (!act.validate(this, uni)) passed = false;
-            }
+    /**
+     * Check that element has timesteps, that the action and dataset of each
+     * are present in this element and that none overlap.  Does not use the R
+     * engine so may be called from any thread.
+     * @return
+     */
+    public boolean validateTimesteps() {
+        boolean passed = true;
 
-            // Check that it has timesteps if it is a timestep action and that each
-            // ts dataset is present
-            boolean found = false, hasTS = false;
-            for (Timestep ts : timesteps) {
-                // Check that ts action is available in element
-                hasTS = true; found = false;
-                if (ts.getDataset() != null) {
-                    if (ts.getDataset().getUID() >= 0) {
-                        for (Action act : actions) {
-                            if (act == ts.getAction()) {
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (!found) {
-                            Messages.addErrMsg("Timestep is for an action which is not present in this element!");
-                            passed = false;
+        // Check that it has timesteps if it is a timestep action and that each
+        // ts dataset is present
+        boolean found = false, hasTS = false;
+        for (Timestep ts : timesteps) {
+            // Check that ts action is available in element
+            hasTS = true; found = false;
+            if (ts.getDataset() != null) {
+                if (ts.getDataset().getUID() >= 0) {
+                    for (Action act : actions) {
+                        if (act == ts.getAction()) {
+                            found = true;
+                            break;
                         }
-                    } else {
-                        Messages.addErrMsg("Contains broken link to missing timestep action!");
+                    }
+                    if (!found) {
+                        Messages.addErrMsg("Timestep is for an action which is not present in this element!");
                         passed = false;
                     }
+                } else {
+                    Messages.addErrMsg("Contains broken link to missing timestep action!");
+                    passed = false;
                 }
-                // Check that ts dataset is available in element
-                found = false;
-                if (ts.getDataset() != null) {
-                    if (ts.getDataset().getUID() >= 0) {
-                        for (Attribute att : attributes) {
-                            if (att == ts.getDataset()) {
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (!found) {
-                            Messages.addErrMsg("Timestep contains dataset which is not present as an attribute of element!");
-                            passed = false;
+            }
+            // Check that ts dataset is available in element
+            found = false;
+            if (ts.getDataset() != null) {
+                if (ts.getDataset().getUID() >= 0) {
+                    for (Attribute att : attributes) {
+                        if (att == ts.getDataset()) {
+                            found = true;
+                            break;
                         }
-                    } else {
-                        Messages.addErrMsg("Contains broken link to missing timestep dataset!");
+                    }
+                    if (!found) {
+                        Messages.addErrMsg("Timestep contains dataset which is not present as an attribute of element!");
                         passed = false;
                     }
+                } else {
+                    Messages.addErrMsg("Contains broken link to missing timestep dataset!");
+                    passed = false;
                 }
             }
-            if (!hasTS) {
-                Messages.addErrMsg("Timestep action contains no timesteps!");
+        }
+        if (!hasTS) {
+            Messages.addErrMsg("Timestep action contains no timesteps!");
+            passed = false;
+        }
+
+        // Check that no timesteps overlap
+        TimestepIndex tsIndex = getTimestepIndex(birthDay, birthMonth);
+        for (int i = 0 ; i < tsIndex.size() ; i++) {
+            if (tsIndex.getOverlapping(tsIndex.getSpan(i).getTimestep()) != null) {
+                Messages.addErrMsg("Element contains overlapping timesteps!");
                 passed = false;
+                break;
             }
-
         }
 
         return passed;
     }
 
     /*
-     * Write self as text, in the form of an R assignment, to FileWriter
+     * Write self as text, in the form of an R assignment, to file under dirPath
      */
     public void writeAsR(String dirPath) {
-        File outputFile = new File(dirPath + File.separator + "data" + File.separator + getDisplayName() + ".data.R");
-        Date dt = new Date();
-
-        try {
-            outputFile.createNewFile();
-            FileWriter out = new FileWriter(outputFile);
-
-            out.write("########################################################\n");
-            out.write("# ELEMENT - " + name + " (" + revision + ")\n");
-            out.write("# Description: " + super.prependEachLine(description, "#              ") + "\n");
-            out.write("#\n");
-            out.write("# Generated by EPOC Builder\n");
-            out.write("# Date: " + dt.toString() + "\n");
-            out.write("########################################################\n\n");
-
-            // List assignment
-            out.write(shortname + " <- list()\n\n");
-
-            // Signature
-            super.writeSignatureAsR(out, shortname);
-
-            out.write("################## POLYGONS ##################\n");
-            out.write(shortname + "$polygonsN          <- " + getPolygons().size() + "\n\n");
-            out.write(shortname + "$polygons           <- list(RefNumbers = c(" +  getPolygonsString() + "))\n\n");
-
-            out.write("### BIRTHDAY\n");
-            out.write("# Point of origin for updating age and for growth parameters etc.\n");
-            out.write(shortname + "$birthdate          <- list(Day = " + birthDay + ", Month = " + birthMonth + ")\n\n");
-
-            out.write("################## ATTRIBUTES ##################\n");
-            for (Object obj : attributes) {
-                ((Attribute)obj).writeAsR(out, shortname);
-            }
-
-            out.write("################## FUNCTIONS ##################\n");
-            out.write(shortname + "$Functions           <- list(\n");
-            String fnStr = "";
-            for (Action sAct : getActions()) {
-                String dset = "";
-
-                if (sAct.isSupport()) {
-                    Attribute dsAtt = sAct.getDataset();
-                    dset = (dsAtt == null ? "NULL" : shortname + "$" + dsAtt.getShortName());
-
-                    fnStr += (!fnStr.equals("") ? ",\n" : "");
-                    fnStr += "\t" + sAct.getShortName() + " = list(actionMethod = \"" + sAct.getShortName() + "\",\n";
-                    fnStr += "\t\t\t\t\tactionFile        = file.path(RootPath, \"code\", \""
-                            + sAct.getDisplayName() + ".R\"),\n";
-                    fnStr += "\t\t\t\t\tdset              = " + dset + ")";
-                }
-            }
-            out.write((fnStr.equals("") ? "\tNULL" : fnStr));
-            out.write("\n)\n\n");
-
-            out.write("################### TIMESTEPS ####################\n");
-            //  gather up all action timesteps, order them, slice and dice
-            out.write(shortname + "$timesteps <- list(\n" + getRFromAllTimesteps() + ")\n\n");
-
-            // declare data
-            out.write(shortname);
-
-            out.close();
-
-            // Write out actions to their own files
-            for (int i=0; i < actions.size(); i++) {
-                Action act = (Action)actions.get(i);
-                act.writeAsR(dirPath, (getEClass() != null ? getEClass().getDisplayName() : getDisplayName()));
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+        REmitter emitter = new REmitter();
+        writeAsR(dirPath, emitter);
+        emitter.finish();
     }
 
-        /**
-     * Return a string representing all timestep slices for all actions for this element
+    /*
+     * Write self and actions as text, in the form of an R assignment, through
+     * emitter.  Files current in the emitter's manifest are not written.
      */
-    private String getRFromAllTimesteps() {
-        ArrayList tsList = new ArrayList();
-        String tsStr = "";
-        int cnt = 0, actCnt = 0, currDay = 0, currMth = 0;
-        boolean currKnifeEdge = false;
-
-        // get all action timesteps, replacing birthday flags with birthdates
-        for (int i = 0; i < actions.size(); i++) {
-            Action act = (Action)actions.get(i);
-            if (act.isAction()) {
-                Timestep[] aTsps = ((Action)actions.get(i)).getTimestepArrayClone(birthDay, birthMonth);
-                for (int j = 0; j < aTsps.length; j++) {
-                    tsList.add(aTsps[j]);
-                }
-            }
-        }
-
-        // order by start date
-        Collections.sort(tsList);
-
-        for (Object tsObj : tsList) {
-            // build timestep string
-            if (((Timestep)tsObj).getStartDay() != currDay
-                    || ((Timestep)tsObj).getStartMonth() != currMth
-                    || ((Timestep)tsObj).isKnifeEdge()) {
-                currDay = ((Timestep)tsObj).getStartDay();
-                currMth = ((Timestep)tsObj).getStartMonth();
-                actCnt = 0;
-                if (cnt > 0) tsStr += "\n\t\t)\n\t),\n";
-                tsStr += "\tTimestep_" + (cnt + 1) + " = list(calday = dayFromDate(" +
-                            currDay + ", " + currMth + "),\n";
-                tsStr += "\t\tactionsN=NULL,\n";
-                tsStr += "\t\tactions=list(\n";
-                cnt++;
-            }
-            // build dataset string
-            Action act = getAction(((EPOCObject)tsObj).getParentUID());
-            String dset = "", stp = "";
-            Attribute dsAtt = (act.isSetup() ? act.getDataset() : ((Timestep)tsObj).getDataset());
-            dset = (dsAtt == null ? "NULL" : shortname + "$" + dsAtt.getShortName());
-
-            // build transform string
-            Action stpAct = act.getTransform();
-            if (stpAct == null) {
-                stp = "NULL";
-            } else {
-                stp =  "list(actionMethod = \"" + stpAct.getDisplayName() + "\",\n";
-                stp += "\t\t\t\t\t\t\t\t\t\t\t actionFile = file.path(RootPath, \"code\", \"" + stpAct.getDisplayName() + ".R\"),\n";
-                stp += "\t\t\t\t\t\t\t\t\t\t\t dset       = NULL)";
-            }
-            //build related elements string
-            String relStr = "";
-            for (Object oEle : act.getRelatedElements()) {
-                if (!relStr.equals("")) relStr += ", ";
-                relStr += "\"" + EPOCObject.getObjectTypeName(((Element)oEle).getModType()) + "\", \"" + ((Element)oEle).getShortName() + "\"";
-            }
+    public void writeAsR(String dirPath, REmitter emitter) {
+        // Write out actions to their own files
+        String eleEPOCClass = getActionEPOCClass();
+        for (Action act : getActions()) act.writeAsR(dirPath, eleEPOCClass, emitter);
 
-            // prepare R string
-            if (actCnt > 0) tsStr += ",\n";
-            tsStr += "\t\t\t" + act.getShortName() + " = list(\n";
-            tsStr += "\t\t\t\t\tactionMethod      = \"" + act.getDisplayName() + "\",\n";
-            tsStr += "\t\t\t\t\tactionFile        = file.path(RootPath, \"code\", \"" + act.getDisplayName() + ".R\"),\n";
-            tsStr += "\t\t\t\t\tTS_type           = \"" + EPOCObject.getTSTypeName(((Timestep)tsObj).getStepType()) + "\",\n";
-            tsStr += "\t\t\t\t\tTS_timing         = \"" + EPOCObject.getTSTypeName(((Timestep)tsObj).getStepTiming()) + "\",\n";
-            tsStr += "\t\t\t\t\tTransformToPeriod = " + stp + ",\n";
-            tsStr += "\t\t\t\t\trelated.elements  = " + (relStr.equals("") ? "NULL,\n" : "matrix(c(" + relStr + "), ncol=2, byrow=TRUE),\n");
-            tsStr += "\t\t\t\t\tdset              = " + dset + "\n";
-            tsStr += "\t\t\t)";
-
-            actCnt++;
-        }
-        if (actCnt > 0) tsStr += "\n\t\t)\n";   // end actions list
-        if (cnt > 0) tsStr += "\t)\n";        // end timestep
-
-        return tsStr;
+        writeDataAsR(dirPath, emitter);
     }
 
     /*
-     * Return R string for all timesteps in list, removing earliest enders and splitting
-     * all others at this point (change start dates to day after earliest enders end date)
-     * Assuming all ts in list start at same date!
-     * If day > 0 or mth > 0 then split at this date
+     * Return the EPOC class name actions are written out against
      */
-    private String getRFromNextEndingTS(ArrayList aList, int day, int mth) {
-        String tsStr = "";
-
-        if (aList.size() == 0) return "";
-        int index = getNextEndingIndex(aList);
-
-        if (day == 0 || mth == 0) {
-            day = ((Timestep)aList.get(index)).getEndDay();
-            mth = ((Timestep)aList.get(index)).getEndMonth();
-        }
-        Timestep activeTS = (Timestep)aList.get(index);
-        // split all active ts and write out first part
-        int actCnt = 0;
-        for (int i = 0; i < aList.size(); i++) {
-            Timestep t = (Timestep)aList.get(i);
-            Action act = getAction(t.getParentUID());
-
-            // prepare R string
-            if (actCnt > 0) tsStr += ",\n";
-            tsStr += "\t\t\t" + act.getShortName() + " = list(actionMethod = \"" + act.getShortName() + "\",\n";
-            tsStr += "\t\t\t\t\t\t\tactionFile        = file.path(RootPath, \"code\", \"" + act.getShortName() + "." + act.getRevision() + ".R\"),\n";
-            tsStr += "\t\t\t\t\t\t\tTS_type           = \"" + EPOCObject.getTSTypeName(t.getStepType()) + "\",\n";
-            tsStr += "\t\t\t\t\t\t\tTS_timing         = \"" + EPOCObject.getTSTypeName(t.getStepTiming()) + "\",\n";
-            tsStr += "\t\t\t\t\t\t\tTransformToPeriod = NULL, # ?????\n";
-            tsStr += "\t\t\t\t\t\t\trelated.elements  = NULL, # ?????\n";
-            tsStr += "\t\t\t\t\t\t\tdset              = getParam(.Object, \"" + act.getShortName() + "\")\n";
-            tsStr += "\t\t\t\t\t\t)";
-            // remove any which end on same end date
-            if (t.getEndDay() == day && t.getEndMonth() == mth) {
-                aList.remove(i);
-                i--;
-            // split others
-            } else {
-                int[] dt = incrementDate(new int[]{day, mth});
-                t.setSteps(dt[0], dt[1], 0, 0);
-            }
-            actCnt++;
-        }
-
-        return tsStr;
+    public String getActionEPOCClass() {
+        return (getEClass() != null ? getEClass().getDisplayName() : getDisplayName());
     }
 
     /*
-     * Return list index of ts with earliest end date
-     * If empty list return -1
+     * Write self, but not actions, as text, in the form of an R assignment,
+     * through emitter.  Nothing is written if the file is current in the
+     * emitter's manifest.
      */
-    private int getNextEndingIndex(ArrayList aList) {
-        int index = 0;
+    public void writeDataAsR(String dirPath, REmitter emitter) {
+        File outputFile = new File(dirPath + File.separator + "data" + File.separator + getDisplayName() + ".data.R");
+        long stamp = getGenerationStamp();
+        if (emitter.isCurrent(outputFile, this, stamp)) return;
+        Date dt = new Date();
 
-        if (aList.size() == 0) return -1;
+        StringBuilder out = emitter.getBuilder();
 
-        int minDay = ((Timestep)aList.get(index)).getEndDay();
-        int minMth = ((Timestep)aList.get(index)).getEndMonth();
+        out.append("########################################################\n");
+        out.append("# ELEMENT - " + name + " (" + revision + ")\n");
+        out.append("# Description: " + super.prependEachLine(description, "#              ") + "\n");
+        out.append("#\n");
+        out.append("# Generated by EPOC Builder\n");
+        out.append("# Date: " + dt.toString() + "\n");
+        out.append("########################################################\n\n");
 
-        for (int i = 1; i < aList.size(); i++) {
-            Timestep aTS = (Timestep)aList.get(i);
-            if (aTS.getEndMonth() < minMth
-                || (aTS.getEndMonth() == minMth && aTS.getEndDay() < minDay)) {
-                        index = i;
-                        minDay = ((Timestep)aList.get(i)).getEndDay();
-                        minMth = ((Timestep)aList.get(i)).getEndMonth();
-            }
-        }
+        // List assignment
+        out.append(shortname + " <- list()\n\n");
 
-        return index;
-    }
+        // Signature
+        super.writeSignatureAsR(out, shortname);
 
-    /*
-     * return number of days from start date until date passed
-     */
-    private int daysFromDate(int stDay, int stMth, int day, int mth) {
-        int days = 0;
+        out.append("################## POLYGONS ##################\n");
+        out.append(shortname + "$polygonsN          <- " + getPolygons().size() + "\n\n");
+        out.append(shortname + "$polygons           <- list(RefNumbers = c(" +  getPolygonsString() + "))\n\n");
 
-        if (stMth == mth) return (day - stDay) + 1;
-        int[] daysPerMth = {31,28,31,30,31,30,31,31,30,31,30,31};
+        out.append("### BIRTHDAY\n");
+        out.append("# Point of origin for updating age and for growth parameters etc.\n");
+        out.append(shortname + "$birthdate          <- list(Day = " + birthDay + ", Month = " + birthMonth + ")\n\n");
 
-        days = (daysPerMth[stMth-1] - stDay) + 1;
-        for (int i = stMth; i < mth; i++) {
-            days += daysPerMth[i-1];
+        out.append("################## ATTRIBUTES ##################\n");
+        for (Object obj : attributes) {
+            ((Attribute)obj).writeAsR(out, shortname);
         }
-        days += day;
 
-        return days;
-    }
+        out.append("################## FUNCTIONS ##################\n");
+        out.append(shortname + "$Functions           <- list(\n");
+        boolean hasFn = false;
+        for (Action sAct : getActions()) {
+            String dset = "";
+
+            if (sAct.isSupport()) {
+                Attribute dsAtt = sAct.getDataset();
+                dset = (dsAtt == null ? "NULL" : shortname + "$" + dsAtt.getShortName());
+
+                if (hasFn) out.append(",\n");
+                out.append("\t" + sAct.getShortName() + " = list(actionMethod = \"" + sAct.getShortName() + "\",\n");
+                out.append("\t\t\t\t\tactionFile        = file.path(RootPath, \"code\", \""
+                        + sAct.getDisplayName() + ".R\"),\n");
+                out.append("\t\t\t\t\tdset              = " + dset + ")");
+                hasFn = true;
+            }
+        }
+        if (!hasFn) out.append("\tNULL");
+        out.append("\n)\n\n");
 
-    /*
-     * Increment date passed by one day
-     * Date passed and returned in the form dt[0] = day, dt[1] = mth
-     */
-    private int[] incrementDate(int[] dt) {
-        int[] daysPerMth = {31,28,31,30,31,30,31,31,30,31,30,31};
+        out.append("################### TIMESTEPS ####################\n");
+        //  gather up all action timesteps, order them, slice and dice
+        out.append(shortname + "$timesteps <- list(\n");
+        getTimestepCalendar().writeAsR(out, shortname);
+        out.append(")\n\n");
 
-        if (dt[0] < daysPerMth[dt[1]-1]) {
-            dt[0]++;
-        } else {
-            dt[1] = (dt[1] == 12) ? 1 : dt[1]++;
-            dt[0] = 1;
-        }
+        // declare data
+        out.append(shortname);
 
-        return dt;
+        emitter.emit(outputFile, out, this, stamp);
     }
 
     /*
-     * Decrement date passed by one day
-     * Date passed and returned in the form dt[0] = day, dt[1] = mth
+     * Stamp over self and every object the element's data file is generated
+     * from: its EPOC class, attributes, actions, their timesteps, datasets,
+     * transforms and related elements
      */
-    private int[] decrementDate(int[] dt) {
-        int[] daysPerMth = {31,28,31,30,31,30,31,31,30,31,30,31};
+    private long getGenerationStamp() {
+        long stamp = GenerationManifest.stamp(0, this);
+        stamp = GenerationManifest.stamp(stamp, String.valueOf(modType));
+        stamp = GenerationManifest.stamp(stamp, getEClass());
 
-        if (dt[0] > 1) {
-            dt[0]--;
-        } else {
-            dt[1] = (dt[1] == 1) ? 12 : dt[1]--;
-            dt[0] = daysPerMth[dt[1]-1];
+        for (Attribute att : getAttributes()) stamp = GenerationManifest.stamp(stamp, att);
+        for (Action act : getActions()) {
+            stamp = GenerationManifest.stamp(stamp, act);
+            stamp = GenerationManifest.stamp(stamp, act.getDataset());
+            stamp = GenerationManifest.stamp(stamp, act.getTransform());
+            for (Timestep ts : act.getTimesteps()) {
+                stamp = GenerationManifest.stamp(stamp, ts);
+                stamp = GenerationManifest.stamp(stamp, ts.getDataset());
+            }
+            for (Element rEle : act.getRelatedElements()) {
+                stamp = GenerationManifest.stamp(stamp, rEle);
+                stamp = GenerationManifest.stamp(stamp, String.valueOf(rEle.getModType()));
+            }
         }
 
-        return dt;
+        return stamp;
     }
 
     /**
@@ -1372,23 +1294,21 @@ public class Element extends EPOCObject<Element> {
     /**
      * Substitute any child objects (actions and attributes) with a
      * comparable template if one can be found
+     * @param matcher
      */
     @Override
-    public void substituteMembersWithTemplates() {
-        boolean replaced = false;
+    void substituteMembersWithTemplates(Templates.Matcher matcher) {
+        if (matcher.getTemplates() != templates) matcher = templates.getMatcher();
 
         // Attributes
         ArrayList<Attribute> newAttributes = new ArrayList();
         for (Attribute att : getAttributes()) {
-            replaced = false;
-            for (EPOCObject eo : templates.getTemplateList(OBJ_ATT)) {
-                if (att.compare((Attribute)eo, true)) {
-                    att = (Attribute)eo;
-                    replaced = true;
-                    break;
-                }
+            Attribute at = (Attribute)matcher.find(att);
+            if (at != null) {
+                att = at;
+            } else {
+                att.substituteMembersWithTemplates(matcher);
             }
-            if (!replaced) att.substituteMembersWithTemplates();
             newAttributes.add(att);
         }
         setAttributes(newAttributes);
@@ -1396,15 +1316,12 @@ public class Element extends EPOCObject<Element> {
         // Actions
         ArrayList<Action> newActions = new ArrayList();
         for (Action act : getActions()) {
-            replaced = false;
-            for (EPOCObject eo : templates.getTemplateList(OBJ_ACT)) {
-                if (act.compare((Action)eo, true)) {
-                    act = (Action)eo;
-                    replaced = true;
-                    break;
-                }
+            Action at = (Action)matcher.find(act);
+            if (at != null) {
+                act = at;
+            } else {
+                act.substituteMembersWithTemplates(matcher);
             }
-            if (!replaced) act.substituteMembersWithTemplates();
             newActions.add(act);
         }
         setActions(newActions);
@@ -1499,6 +1416,53 @@ public class Element extends EPOCObject<Element> {
         return true;
     }
 
+    @Override
+    protected long foldOwnMembers(long fp) {
+        fp = super.foldOwnMembers(fp);
+        fp = Fingerprint.fold(fp, author);
+        fp = Fingerprint.fold(fp, birthDay);
+
+        return Fingerprint.fold(fp, birthMonth);
+    }
+
+    @Override
+    public long getFingerprint(boolean superficial) {
+        return getFingerprint(superficial, true);
+    }
+
+    /*
+     * Fold in eclass, and actions and attributes if andChildren, in the order
+     * compare() looks at them.  Timesteps are left out as compare() does not
+     * look at them.
+     */
+    public long getFingerprint(boolean superficial, boolean andChildren) {
+        if (isBroken()) return Fingerprint.NONE;
+
+        // polygon list may be changed in place so isn't kept in own fingerprint
+        long fp = Fingerprint.fold(getOwnFingerprint(superficial), getPolygonsString());
+        fp = Fingerprint.fold(fp, getEClass(), superficial);
+        if (andChildren) {
+            fp = Fingerprint.fold(fp, getActions().size());
+            for (Action act : getActions()) fp = Fingerprint.fold(fp, act, superficial);
+            fp = Fingerprint.fold(fp, getAttributes().size());
+            for (Attribute att : getAttributes()) fp = Fingerprint.fold(fp, att, superficial);
+        }
+
+        return Fingerprint.finish(fp);
+    }
+
+    /**
+     * Remove self and member objects from the change journal, leaving any
+     * templates which may still be used elsewhere
+     */
+    @Override
+    protected void unjournal() {
+        super.unjournal();
+        for (Action act : getActions()) if (!act.isTemplate()) act.unjournal();
+        for (Attribute att : getAttributes()) if (!att.isTemplate()) att.unjournal();
+        for (Timestep ts : timesteps) ts.unjournal();
+    }
+
     /**
      * Replace any linked objects equal to linkObj with the replacement object
      * @param linkObj
@@ -1508,6 +1472,7 @@ public class Element extends EPOCObject<Element> {
         if (linkObj.getClass() == replObj.getClass()) {
             if (linkObj instanceof EClass && eclass != null && linkObj.equals(eclass)) {
                 eclass = (EClass)replObj;
+                markModified();
             }
         }
 
@@ -1622,6 +1587,8 @@ public class Element extends EPOCObject<Element> {
         ele.actions = new ArrayList();
         ele.attributes = new ArrayList();
         ele.timesteps = new ArrayList();
+        ele.timestepIndex = null;
+        ele.timestepCalendar = null;
 
         // Do we just break it?
         if (method == EPOC_BRK) {
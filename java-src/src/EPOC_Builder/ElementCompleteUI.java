@@ -219,16 +219,11 @@ public class ElementCompleteUI extends OpposingPanelUI implements TreeSelectionL
     }
 
     private void loadPolygons() {
-        Vector psVector = new Vector();
-        if (universe.getSpatial() != null) psVector = universe.getSpatial().getPolygonsVector();
-        String[] pArr = new String[psVector.size()];
+        // Extract a list of polygon names
+        String[] pArr = new String[0];
+        if (universe.getSpatial() != null) pArr = universe.getSpatial().getPolygonNames();
         int i = 0;
 
-        // Extract a list of polygon names
-        for (Object pObj : psVector) {
-            pArr[i] = (String)((Vector)pObj).get(0);
-            i++;
-        }
         if (pArr.length == 0 || (pArr.length < element.getPolygons().get(element.getPolygons().size() - 1))) {
             // Universe has no polys or not enough anyway
             // Have to add some extras as dummys
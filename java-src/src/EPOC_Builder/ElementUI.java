@@ -448,7 +448,7 @@ public class ElementUI extends OpposingPanelUI {
             element.addDeleteList(ts);
         }
 
-        element.getTimesteps().remove((Timestep)jListTimesteps.getSelectedValue());
+        element.removeTimestep((Timestep)jListTimesteps.getSelectedValue());
 
         loadTimesteps();
         setModified(true);
@@ -587,8 +587,8 @@ public class ElementUI extends OpposingPanelUI {
         // Check that selected dates do not overlap with existing dates
         Timestep overlap = element.getOverlappingTimestep(stDay, stMth, enDay, enMth,
                 (element != null ? element.getBirthDay() : 0),
-                (element != null ? element.getBirthMonth() : 0));
-        if (overlap != null && overlap != selTS) {
+                (element != null ? element.getBirthMonth() : 0), selTS);
+        if (overlap != null) {
             JOptionPane.showMessageDialog(this, "Timestep overlaps with an existing Timestep!");
             return;
         }
@@ -731,18 +731,13 @@ public class ElementUI extends OpposingPanelUI {
     }
     
     private void loadPolygons() {
-        if (universe.getSpatial() == null || universe.getSpatial().getPolygonsVector() == null) return;
+        if (universe.getSpatial() == null) return;
         
-        Vector psVector = universe.getSpatial().getPolygonsVector();
-        if (psVector.size() <= 0) return;
-        String[] pArr = new String[psVector.size()];
+        // Extract a list of polygon names
+        String[] pArr = universe.getSpatial().getPolygonNames();
+        if (pArr.length <= 0) return;
         int i = 0;
 
-        // Extract a list of polygon names
-        for (Object pObj : psVector) {
-            pArr[i] = (String)((Vector)pObj).get(0);
-            i++;
-        }
         if (pArr.length == 0 || (pArr.length < element.getPolygons().get(element.getPolygons().size() - 1))) {
             // Universe has no polys or not enough anyway
             // Have to add some extras as dummys
@@ -770,7 +765,7 @@ public class ElementUI extends OpposingPanelUI {
 
         jListTimesteps.setListData(list);
         //create Renderer and display
-        jListTimesteps.setCellRenderer(new TimestepCellRenderer());
+        jListTimesteps.setCellRenderer(new TimestepCellRenderer(element.getTimestepIndex(element.getBirthDay(), element.getBirthMonth())));
     }
     /*
      * Set editability of form
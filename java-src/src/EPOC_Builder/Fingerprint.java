@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Fingerprint.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+/*******************************************************************************
+ * 64 bit FNV-1a folding of EPOC object data members into content
+ * fingerprints.  A finished fingerprint is never NONE, which stands for a
+ * fingerprint that could not be worked out.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+final class Fingerprint {
+
+    static final long NONE = 0;
+
+    private static final long OFFSET = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private Fingerprint() {}
+
+    /**
+     * Return a fingerprint begun with kind, such as an object type
+     * @param kind
+     * @return
+     */
+    static long start(int kind) {
+        return fold(OFFSET, kind);
+    }
+
+    static long fold(long fp, long value) {
+        fp ^= value;
+        fp *= PRIME;
+        fp ^= (value >>> 32);
+        fp *= PRIME;
+
+        return fp;
+    }
+
+    static long fold(long fp, boolean value) {
+        return fold(fp, value ? 1 : 2);
+    }
+
+    static long fold(long fp, String str) {
+        if (str == null) return fold(fp, -1);
+        for (int i = 0 ; i < str.length() ; i++) {
+            fp ^= str.charAt(i);
+            fp *= PRIME;
+        }
+
+        return fold(fp, str.length());
+    }
+
+    /**
+     * Fold in the fingerprint of child or linked object obj, which may be
+     * null.  Returns NONE if either fp or obj's fingerprint is NONE.
+     * @param fp
+     * @param obj
+     * @param superficial
+     * @return
+     */
+    static long fold(long fp, EPOCObject obj, boolean superficial) {
+        if (obj == null) return (fp != NONE ? fold(fp, -2) : NONE);
+
+        return foldChild(fp, obj.getFingerprint(superficial));
+    }
+
+    /**
+     * Fold in a child fingerprint, returning NONE if either is NONE
+     * @param fp
+     * @param child
+     * @return
+     */
+    static long foldChild(long fp, long child) {
+        if (fp == NONE || child == NONE) return NONE;
+
+        return fold(fp, child);
+    }
+
+    /**
+     * Return fp as a finished fingerprint, which is only NONE if fp is
+     * @param fp
+     * @return
+     */
+    static long finish(long fp) {
+        if (fp == NONE) return NONE;
+        fp ^= fp >>> 29;
+        fp *= 0xbf58476d1ce4e5b9L;
+        fp ^= fp >>> 32;
+
+        return (fp != NONE ? fp : 1);
+    }
+}
@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * GenerationManifest.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*******************************************************************************
+ * Record of the R files generated into an output directory, kept in a file
+ * alongside them.  Each generated file is listed against the uid, revision and
+ * modified timestamp of the object it was written from, a stamp covering any
+ * other objects its content depends on, and the checksum and length of the
+ * content written.
+ *
+ * On regeneration an object whose stamp still matches the manifest, and whose
+ * file is still present and the same length, need not be written again.  Any
+ * file listed from a previous generation that is not produced or kept by the
+ * current one is an orphan (object deleted or renamed) and can be removed.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public class GenerationManifest {
+
+    public static final String MANIFEST_FILE = "EPOC_Builder.manifest";
+    private static final String HEADER = "# EPOC Builder generation manifest 1";
+
+    // seeded per session so values are not repeated by a later session
+    private static final AtomicLong unsaved = new AtomicLong(System.nanoTime() ^ System.currentTimeMillis());
+
+    private File dir;
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap();
+    private int kept = 0;
+
+    private GenerationManifest(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Load manifest from output directory dirPath.  If there is no manifest,
+     * or it can't be read, an empty one is returned so everything will be
+     * regenerated.
+     * @param dirPath
+     * @return
+     */
+    public static GenerationManifest load(String dirPath) {
+        GenerationManifest manifest = new GenerationManifest(new File(dirPath));
+        File file = new File(dirPath, MANIFEST_FILE);
+        if (!file.exists()) return manifest;
+
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line = in.readLine();
+            if (line == null || !line.equals(HEADER)) return manifest;
+
+            while ((line = in.readLine()) != null) {
+                if (line.equals("") || line.startsWith("#")) continue;
+                String[] fields = line.split("\t");
+                if (fields.length != 8) throw new IOException("Bad manifest line: " + line);
+
+                Entry entry = new Entry();
+                entry.objType = Integer.parseInt(fields[1]);
+                entry.uid = Integer.parseInt(fields[2]);
+                entry.revision = fields[3];
+                entry.modified = Long.parseLong(fields[4]);
+                entry.stamp = Long.parseLong(fields[5]);
+                entry.checksum = Long.parseLong(fields[6]);
+                entry.length = Long.parseLong(fields[7]);
+                manifest.entries.put(fields[0], entry);
+            }
+        } catch (Exception ex) {
+            // treat as no manifest
+            if (EPOC_DBG) ex.printStackTrace();
+            manifest.entries.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ioe) {
+                    if (EPOC_DBG) ioe.printStackTrace();
+                }
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Write manifest to its output directory
+     * @return false if it could not be written
+     */
+    public synchronized boolean save() {
+        File file = new File(dir, MANIFEST_FILE);
+        Writer out = null;
+
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            out.write(HEADER + "\n");
+            out.write("# Date: " + new Date().toString() + "\n");
+            out.write("# path\ttype\tuid\trevision\tmodified\tstamp\tchecksum\tlength\n");
+            for (Map.Entry<String, Entry> me : entries.entrySet()) {
+                Entry entry = me.getValue();
+                out.write(me.getKey() + "\t" + entry.objType + "\t" + entry.uid + "\t" + entry.revision
+                        + "\t" + entry.modified + "\t" + entry.stamp
+                        + "\t" + entry.checksum + "\t" + entry.length + "\n");
+            }
+
+            return true;
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ioe) {
+                    if (EPOC_DBG) ioe.printStackTrace();
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Is file, as generated from source, still current.  That is, it is listed
+     * against the same uid, revision, modified time and stamp, is present and
+     * has the length written.  A current file is kept by this generation.
+     * @param file
+     * @param source
+     * @param stamp from stamp() over source and everything the file depends on
+     * @return
+     */
+    public synchronized boolean isCurrent(File file, EPOCObject source, long stamp) {
+        Entry entry = entries.get(relativePath(file));
+        if (entry == null || source == null) return false;
+        if (entry.objType != source.getObjType() || entry.uid != source.getUID()
+                || !entry.revision.equals(source.getRevision())
+                || entry.modified != modifiedTime(source) || entry.stamp != stamp) return false;
+        if (!file.isFile() || file.length() != entry.length) return false;
+
+        entry.touched = true;
+        kept++;
+
+        return true;
+    }
+
+    /**
+     * Record file as written, with its checksum and length, from source
+     * @param file
+     * @param source may be null for files not written from a single object
+     * @param stamp
+     * @param checksum
+     * @param length
+     */
+    synchronized void record(File file, EPOCObject source, long stamp, long checksum, long length) {
+        Entry entry = new Entry();
+        if (source != null) {
+            entry.objType = source.getObjType();
+            entry.uid = source.getUID();
+            entry.revision = source.getRevision();
+            entry.modified = modifiedTime(source);
+        }
+        entry.stamp = stamp;
+        entry.checksum = checksum;
+        entry.length = length;
+        entry.touched = true;
+        entries.put(relativePath(file), entry);
+    }
+
+    /**
+     * Forget file, as its write failed
+     * @param file
+     */
+    synchronized void forget(File file) {
+        entries.remove(relativePath(file));
+    }
+
+    /**
+     * Return {checksum, length} of file as last recorded, or null if not listed
+     * @param file
+     * @return
+     */
+    synchronized long[] getWritten(File file) {
+        Entry entry = entries.get(relativePath(file));
+        if (entry == null) return null;
+
+        return new long[]{entry.checksum, entry.length};
+    }
+
+    /**
+     * Delete every listed file that has been neither written nor kept since
+     * the manifest was loaded, and drop it from the manifest.  Only files the
+     * manifest lists are ever deleted.
+     * @return number of files deleted
+     */
+    public synchronized int removeOrphans() {
+        int deleted = 0;
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> me = it.next();
+            if (me.getValue().touched) continue;
+
+            File orphan = new File(dir, me.getKey().replace('/', File.separatorChar));
+            if (orphan.isFile()) {
+                if (orphan.delete()) {
+                    deleted++;
+                } else {
+                    Messages.addErrMsg("Unable to delete old generated file: " + orphan.getPath());
+                    continue;
+                }
+            }
+            it.remove();
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Number of files found current, and so kept, since loading
+     * @return
+     */
+    public synchronized int getKept() { return kept; }
+
+    /**
+     * Fold the identity and modification details of obj into stamp.  A null
+     * obj is folded too, so that adding or removing a dependency changes the
+     * stamp.  An object with unsaved changes, whose modified time may not yet
+     * reflect them, folds in a value never repeated so its stamp never matches.
+     * @param stamp
+     * @param obj
+     * @return
+     */
+    public static long stamp(long stamp, EPOCObject obj) {
+        if (obj == null) return fold(stamp, 0);
+
+        stamp = fold(stamp, obj.getObjType());
+        stamp = fold(stamp, obj.getUID());
+        stamp = fold(stamp, modifiedTime(obj));
+        if (obj.isObjectModified()) stamp = fold(stamp, unsaved.incrementAndGet());
+
+        return stamp(stamp, obj.getDisplayName());
+    }
+
+    /**
+     * Fold the persisted fields of timestep ts into stamp.  Timesteps are not
+     * stored with a modified time, so the time they were constructed must not
+     * be folded in or their stamp would change with every load.
+     * @param stamp
+     * @param ts
+     * @return
+     */
+    public static long stamp(long stamp, Timestep ts) {
+        if (ts == null) return fold(stamp, 0);
+
+        stamp = fold(stamp, OBJ_TS);
+        stamp = fold(stamp, ts.getUID());
+        stamp = fold(stamp, ts.getStartDay());
+        stamp = fold(stamp, ts.getStartMonth());
+        stamp = fold(stamp, ts.getEndDay());
+        stamp = fold(stamp, ts.getEndMonth());
+        stamp = fold(stamp, ts.getStepType());
+        stamp = fold(stamp, ts.getStepTiming());
+        stamp = fold(stamp, ts.getDatasetUID());
+        if (ts.isObjectModified()) stamp = fold(stamp, unsaved.incrementAndGet());
+
+        return stamp;
+    }
+
+    /**
+     * Fold str into stamp
+     * @param stamp
+     * @param str
+     * @return
+     */
+    public static long stamp(long stamp, String str) {
+        if (str == null) return fold(stamp, 0);
+        for (int i = 0 ; i < str.length() ; i++) {
+            stamp ^= str.charAt(i);
+            stamp *= 0x100000001b3L;
+        }
+
+        return fold(stamp, str.length());
+    }
+
+    private static long fold(long stamp, long value) {
+        stamp ^= value;
+        stamp *= 0x100000001b3L;
+        stamp ^= (value >>> 32);
+        stamp *= 0x100000001b3L;
+
+        return stamp;
+    }
+
+    private static long modifiedTime(EPOCObject obj) {
+        return (obj.getModified() != null ? obj.getModified().getTime() : 0);
+    }
+
+    /*
+     * Path of file relative to manifest directory, always with '/' separators
+     * so the manifest stays valid if the directory is moved
+     */
+    private String relativePath(File file) {
+        String base = dir.getAbsolutePath();
+        String path = file.getAbsolutePath();
+        if (path.startsWith(base + File.separator)) path = path.substring(base.length() + 1);
+
+        return path.replace(File.separatorChar, '/');
+    }
+
+    private static class Entry {
+        int objType = 0;
+        int uid = 0;
+        String revision = "";
+        long modified = 0;
+        long stamp = 0;
+        long checksum = 0;
+        long length = 0;
+        boolean touched = false;
+    }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * IntegrityChecker.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+/*******************************************************************************
+ * Checks storage for broken references between objects: orphaned objects,
+ * template links to or from missing objects, and action, timestep and element
+ * references to missing datasets, transforms and EPOC classes, or saved as
+ * already broken.
+ *
+ * Checks are run one at a time, each a single read on its own pooled read
+ * connection, so a check in progress never holds up saves for long.  Each
+ * problem is passed to the listener as soon as it is read rather than being
+ * collected, and the run may be cancelled from another thread between any
+ * two problems.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public class IntegrityChecker {
+
+    /**
+     * Receives progress and problems as checks are run
+     */
+    public interface Listener {
+        /**
+         * Called before check number check of count, named name, is run
+         */
+        void checking(int check, int count, String name);
+
+        /**
+         * Called with each problem found
+         * @return false to stop checking
+         */
+        boolean found(Issue issue);
+    }
+
+    /**
+     * A problem found by a check
+     */
+    public static class Issue {
+        private String check;
+        private int uid;
+        private String name;
+        private String detail;
+
+        public Issue(String check, int uid, String name, String detail) {
+            this.check = check;
+            this.uid = uid;
+            this.name = name;
+            this.detail = detail;
+        }
+
+        public String getCheck() {
+            return check;
+        }
+
+        public int getUID() {
+            return uid;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return check + ": " + name + " [" + uid + "] " + detail;
+        }
+    }
+
+    private Storage storage;
+    private volatile boolean cancelled = false;
+    private int failed = 0;
+
+    public IntegrityChecker(Storage st) {
+        storage = st;
+    }
+
+    /**
+     * Run every check in turn, passing problems found to listener
+     * @param listener
+     * @return number of problems found
+     */
+    public int run(final Listener listener) {
+        String[] checks = storage.getIntegrityChecks();
+        int total = 0;
+
+        Listener relay = new Listener() {
+            public void checking(int check, int count, String name) {
+                listener.checking(check, count, name);
+            }
+
+            public boolean found(Issue issue) {
+                return !cancelled && listener.found(issue);
+            }
+        };
+
+        failed = 0;
+        for (int i = 0 ; i < checks.length && !cancelled ; i++) {
+            listener.checking(i, checks.length, checks[i]);
+            int found = storage.checkIntegrity(i, relay);
+            if (found < 0) {
+                failed++;
+            } else {
+                total += found;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Stop the current run after the problem or check in progress
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Return number of checks which could not be run in the last run
+     */
+    public int getFailedCount() {
+        return failed;
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * IntegrityWorker.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import java.util.List;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+/*******************************************************************************
+ * SwingWorker running storage integrity checks in the background, adding
+ * each problem to a list selector as it is found.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ ******************************************************************************/
+public class IntegrityWorker extends SwingWorker<Integer, IntegrityChecker.Issue> {
+
+    private IntegrityChecker checker;
+    private ListSelectorUI selUI;
+
+    public IntegrityWorker(Storage st, ListSelectorUI ui) {
+        checker = new IntegrityChecker(st);
+        selUI = ui;
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        return checker.run(new IntegrityChecker.Listener() {
+            public void checking(int check, int count, final String name) {
+                final String txt = "Checking " + name.toLowerCase() + " (" + (check + 1) + " of " + count + ")...";
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    public void run()
+                    {
+                        if (!isDone()) selUI.setText(txt);
+                    }
+                });
+            }
+
+            public boolean found(IntegrityChecker.Issue issue) {
+                publish(issue);
+                return !isCancelled();
+            }
+        });
+    }
+
+    @Override
+    protected void process(List<IntegrityChecker.Issue> issues) {
+        for (IntegrityChecker.Issue issue : issues) {
+            selUI.addItem(issue);
+        }
+    }
+
+    @Override
+    protected void done() {
+        String txt;
+
+        if (isCancelled()) return;
+
+        try {
+            int found = get();
+            txt = (found == 0 ? "No" : String.valueOf(found)) + " integrity problem" + (found == 1 ? "" : "s")
+                    + " found in EPOC Builder database";
+            if (checker.getFailedCount() > 0) txt += " (" + checker.getFailedCount() + " checks failed to run)";
+            selUI.setText(txt + ":");
+        } catch (Exception e) {
+            System.out.println(e.toString());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stop checking, leaving problems found so far listed
+     */
+    public void stop() {
+        checker.cancel();
+        cancel(false);
+    }
+}
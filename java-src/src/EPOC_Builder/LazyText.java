@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * LazyText.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.*;
+
+/*******************************************************************************
+ * Handle on a large text body (action code, attribute value, EPOC class
+ * method) which is either held directly or left in storage until first asked
+ * for.
+ *
+ * Handles are immutable so may be shared by cloned objects of the same uid;
+ * setting a new body means replacing the handle, and an object given a new
+ * uid rebinds its handles with boundTo().  Bodies fetched from storage are
+ * not held by the handle but by a shared LRU cache limited to
+ * EPOC_TEXT_CACHE_CHARS characters.  If EPOC_TEXT_CACHE_SOFT is set, bodies evicted from the cache
+ * stay softly reachable, to be reused unless the garbage collector needs the
+ * memory.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+final class LazyText {
+
+    // Stored text bodies
+    static final int ACT_CODE = 1;
+    static final int ATT_VALUE = 2;
+    static final int CLS_INITCLASS = 3;
+    static final int CLS_INITTRIAL = 4;
+    static final int CLS_INITTRANSITION = 5;
+    static final int CLS_UPDATESTATE = 6;
+    static final int CLS_PRINTSTATE = 7;
+
+    static final LazyText EMPTY = new LazyText("");
+
+    private static LinkedHashMap<Long, String> cache = new LinkedHashMap(256, 0.75f, true);
+    private static long cachedChars = 0;
+    private static HashMap<Long, SoftBody> evicted = new HashMap();
+    private static ReferenceQueue<String> cleared = new ReferenceQueue();
+    private static long hits = 0, softHits = 0, loads = 0;
+
+    private final String text;
+    private final Storage storage;
+    private final int body;
+    private final int uid;
+
+    private LazyText(String text) {
+        this.text = (text != null ? text : "");
+        storage = null;
+        body = 0;
+        uid = 0;
+    }
+
+    private LazyText(Storage storage, int body, int uid) {
+        text = null;
+        this.storage = storage;
+        this.body = body;
+        this.uid = uid;
+    }
+
+    /**
+     * Return handle holding text
+     * @param text
+     * @return
+     */
+    static LazyText of(String text) {
+        if (text == null || text.equals("")) return EMPTY;
+
+        return new LazyText(text);
+    }
+
+    /**
+     * Return handle on text body of object uid, to be loaded from storage when
+     * first asked for
+     * @param storage
+     * @param body one of ACT_CODE, ATT_VALUE, CLS_...
+     * @param uid
+     * @return
+     */
+    static LazyText stored(Storage storage, int body, int uid) {
+        if (storage == null || uid <= 0) return EMPTY;
+
+        return new LazyText(storage, body, uid);
+    }
+
+    /**
+     * Return text, loading it from storage if not already cached.  If it
+     * could not be loaded an error message is added and "" returned, so only
+     * use for display; use load() where the text is to be written or copied.
+     * @return
+     */
+    String get() {
+        String str = load();
+        if (str != null) return str;
+
+        Messages.addErrMsg("Unable to read " + bodyName() + " of object (uid: " + uid + ") from storage");
+        return "";
+    }
+
+    /**
+     * Return text, loading it from storage if not already cached
+     * @return text, or null if its row is missing or could not be read
+     */
+    String load() {
+        if (text != null) return text;
+
+        Long key = key(body, uid);
+        String str = cached(key);
+        if (str != null) return str;
+
+        str = storage.loadText(body, uid);
+        if (str == null) return null; // failed, try again next time
+
+        synchronized (LazyText.class) {
+            loads++;
+            cache(key, str);
+        }
+
+        return str;
+    }
+
+    /**
+     * Return a handle whose text belongs to object uid.  That is this handle if
+     * it holds its text or is stored under uid, otherwise a handle holding a
+     * copy of the text, so that a copied object saved under a new uid does not
+     * follow the text of the object it was copied from.  If the text can not
+     * be loaded this handle is returned and left to fail when saved.
+     * @param uid
+     * @return
+     */
+    LazyText boundTo(int uid) {
+        if (text != null || this.uid == uid) return this;
+
+        String str = load();
+        if (str == null) return this;
+
+        return of(str);
+    }
+
+    /**
+     * Is text held by the handle rather than in storage
+     * @return
+     */
+    boolean isHeld() { return (text != null); }
+
+    /**
+     * Is text left in storage as body of object uid, so unchanged there
+     * @param body
+     * @param uid
+     * @return
+     */
+    boolean isStoredAs(int body, int uid) {
+        return (text == null && this.body == body && this.uid == uid);
+    }
+
+    /**
+     * Forget any cached text for body of object uid, as it has been written
+     * @param body
+     * @param uid
+     */
+    static synchronized void invalidate(int body, int uid) {
+        Long key = key(body, uid);
+        String str = cache.remove(key);
+        if (str != null) cachedChars -= str.length();
+        evicted.remove(key);
+    }
+
+    /**
+     * Forget any cached text of body for all objects, as rows have been
+     * deleted without knowing their uids
+     * @param body
+     */
+    static synchronized void invalidateAll(int body) {
+        Iterator<Map.Entry<Long, String>> it = cache.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, String> me = it.next();
+            if ((int)(me.getKey() >>> 32) == body) {
+                cachedChars -= me.getValue().length();
+                it.remove();
+            }
+        }
+        Iterator<Long> kit = evicted.keySet().iterator();
+        while (kit.hasNext()) {
+            if ((int)(kit.next() >>> 32) == body) kit.remove();
+        }
+    }
+
+    /**
+     * Forget all cached text, as storage is being closed or replaced
+     */
+    static synchronized void clearCache() {
+        cache.clear();
+        cachedChars = 0;
+        evicted.clear();
+        while (cleared.poll() != null) { }
+    }
+
+    /**
+     * Return cache statistics
+     * @return
+     */
+    static synchronized String getCacheStats() {
+        return "Text cache: " + cache.size() + " bodies (" + cachedChars + " chars), "
+                + evicted.size() + " soft, " + hits + " hits, " + softHits + " soft hits, " + loads + " loads";
+    }
+
+    private String bodyName() {
+        switch (body) {
+            case ACT_CODE:              return "action code";
+            case ATT_VALUE:             return "attribute value";
+            case CLS_INITCLASS:         return "EPOC class initClass method";
+            case CLS_INITTRIAL:         return "EPOC class initTrial method";
+            case CLS_INITTRANSITION:    return "EPOC class initTransition method";
+            case CLS_UPDATESTATE:       return "EPOC class updateState method";
+            case CLS_PRINTSTATE:        return "EPOC class printState method";
+        }
+        return "text";
+    }
+
+    private static Long key(int body, int uid) {
+        return Long.valueOf(((long)body << 32) | (uid & 0xffffffffL));
+    }
+
+    private static synchronized String cached(Long key) {
+        String str = cache.get(key);
+        if (str != null) {
+            hits++;
+            return str;
+        }
+
+        SoftBody soft = evicted.remove(key);
+        if (soft != null && (str = soft.get()) != null) {
+            softHits++;
+            cache(key, str);
+        }
+
+        return str;
+    }
+
+    /*
+     * Add str to cache, evicting least recently used bodies beyond limit.
+     * Must hold class lock.
+     */
+    private static void cache(Long key, String str) {
+        String old = cache.put(key, str);
+        if (old != null) cachedChars -= old.length();
+        cachedChars += str.length();
+
+        Iterator<Map.Entry<Long, String>> it = cache.entrySet().iterator();
+        while (cachedChars > EPOC_TEXT_CACHE_CHARS && cache.size() > 1 && it.hasNext()) {
+            Map.Entry<Long, String> me = it.next();
+            cachedChars -= me.getValue().length();
+            if (EPOC_TEXT_CACHE_SOFT) evicted.put(me.getKey(), new SoftBody(me.getKey(), me.getValue(), cleared));
+            it.remove();
+        }
+
+        // drop entries whose text has been collected
+        SoftBody soft;
+        while ((soft = (SoftBody)cleared.poll()) != null) {
+            if (evicted.get(soft.key) == soft) evicted.remove(soft.key);
+        }
+    }
+
+    private static class SoftBody extends SoftReference<String> {
+        final Long key;
+
+        SoftBody(Long key, String str, ReferenceQueue<String> queue) {
+            super(str, queue);
+            this.key = key;
+        }
+    }
+}
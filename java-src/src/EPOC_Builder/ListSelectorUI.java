@@ -64,6 +64,18 @@ public class ListSelectorUI extends javax.swing.JPanel {
         jListSelection.ensureIndexIsVisible(selIdx);
     }
     
+    public void setText(String txt) {
+        jLabelText.setText(txt);
+    }
+
+    /**
+     * Append item to list, for lists filled after being shown
+     * @param item
+     */
+    public void addItem(Object item) {
+        selectionList.addElement(item);
+    }
+
     public int getSelectionIndex() {
         return jListSelection.getSelectedIndex();
     }
@@ -19,6 +19,7 @@ package au.gov.aad.erm.EPOC_Builder;
 import static au.gov.aad.erm.EPOC_Builder.Constants.*;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 
 /*******************************************************************************
  * Message storage class providing static access methods.
@@ -36,8 +37,45 @@ public class Messages {
     private static ArrayList notificationMsgs = new ArrayList();
     private static ArrayList readNotificationMsgs = new ArrayList();
 
+    // per thread error buffers, allowing objects to be validated concurrently
+    // with messages kept against the object which raised them
+    private static ThreadLocal<LinkedList<ArrayList<String>>> errBuffers =
+            new ThreadLocal<LinkedList<ArrayList<String>>>() {
+        @Override
+        protected LinkedList<ArrayList<String>> initialValue() {
+            return new LinkedList();
+        }
+    };
+
     public static void addErrMsg(String msg) {
-        errorMsgs.add(msg);
+        ArrayList<String> buffer = errBuffers.get().peek();
+
+        if (buffer != null) {
+            buffer.add(msg);
+        } else {
+            synchronized (Messages.class) {
+                errorMsgs.add(msg);
+            }
+        }
+    }
+
+    /**
+     * Redirect error messages added by the current thread into a new buffer
+     * until endErrBuffer() is called.  Buffers may be nested.
+     */
+    public static void beginErrBuffer() {
+        errBuffers.get().push(new ArrayList());
+    }
+
+    /**
+     * Stop buffering error messages for the current thread and return those
+     * collected since the matching beginErrBuffer()
+     * @return
+     */
+    public static ArrayList<String> endErrBuffer() {
+        ArrayList<String> buffer = errBuffers.get().poll();
+
+        return (buffer != null ? buffer : new ArrayList());
     }
 
     /**
@@ -50,7 +88,7 @@ public class Messages {
         return getUnreadErrMsgs(true);
     }
 
-    public static void clearUnreadErrMsgs() {
+    public static synchronized void clearUnreadErrMsgs() {
         errorMsgs.addAll(readErrorMsgs);
         errorMsgs.clear();
     }
@@ -62,7 +100,7 @@ public class Messages {
      * @param clearRead
      * @return
      */
-    public static String getUnreadErrMsgs(boolean clearRead) {
+    public static synchronized String getUnreadErrMsgs(boolean clearRead) {
         String msgText = "";
 
         for (Object obj : errorMsgs) {
@@ -74,7 +112,7 @@ public class Messages {
         return msgText;
     }
 
-    public static String getAllErrMsgs(boolean clearRead) {
+    public static synchronized String getAllErrMsgs(boolean clearRead) {
         String msgText = "";
 
         if (clearRead) {
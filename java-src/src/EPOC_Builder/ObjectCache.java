@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * ObjectCache.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+
+/*******************************************************************************
+ * Session wide map, keyed by object type and uid, of the query results an
+ * object was last loaded from (its row and any lists of its children), so
+ * that loading the same object again, into another universe or template
+ * list, can be done without going back to storage.
+ *
+ * Objects themselves are not shared as each belongs to a single universe's
+ * templates; instead their results are replayed to build a fresh object.
+ * Each entry carries a version stamp, the object's modified time when it was
+ * read, which can be checked against storage before the entry is used.  The
+ * map holds a limited number of objects, evicting the least recently used.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+class ObjectCache {
+
+    static final long NO_STAMP = Long.MIN_VALUE;
+
+    private int capacity;
+    private LinkedHashMap<Long, Entry> entries;
+    private long hits = 0, misses = 0, stale = 0, evictions = 0;
+
+    ObjectCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        entries = new LinkedHashMap<Long, Entry>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() <= ObjectCache.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Return a result set replaying the result cached under key for object
+     * uid of objType, or null if none is cached
+     * @param objType
+     * @param uid
+     * @param key
+     * @return
+     */
+    synchronized ResultSet getResult(int objType, int uid, String key) {
+        Entry entry = entries.get(key(objType, uid));
+        CachedResult res = (entry != null ? entry.results.get(key) : null);
+        if (res == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+
+        return res.open();
+    }
+
+    /**
+     * Cache the rows of rs under key for object uid of objType, returning a
+     * result set replaying them in its place.  rs is read to its end but not
+     * closed.  If a stamp column is named and rs has a row, the entry is
+     * stamped with its value.
+     * @param objType
+     * @param uid
+     * @param key
+     * @param rs
+     * @param stampColumn column holding the object's modified time, or null
+     * @return
+     * @throws SQLException
+     */
+    ResultSet putResult(int objType, int uid, String key, ResultSet rs, String stampColumn) throws SQLException {
+        CachedResult res = new CachedResult(rs);
+        long stamp = (stampColumn != null ? res.getStamp(stampColumn) : NO_STAMP);
+
+        synchronized (this) {
+            Long k = key(objType, uid);
+            Entry entry = entries.get(k);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(k, entry);
+            }
+            if (stamp != NO_STAMP) entry.stamp = stamp;
+            entry.results.put(key, res);
+        }
+
+        return res.open();
+    }
+
+    /**
+     * Is anything cached for object uid of objType
+     * @param objType
+     * @param uid
+     * @return
+     */
+    synchronized boolean contains(int objType, int uid) {
+        return entries.containsKey(key(objType, uid));
+    }
+
+    /**
+     * Check the entry for object uid of objType against its current stamp in
+     * storage, dropping it if they differ
+     * @param objType
+     * @param uid
+     * @param stamp
+     * @return true if entry is current
+     */
+    synchronized boolean validate(int objType, int uid, long stamp) {
+        Long k = key(objType, uid);
+        Entry entry = entries.get(k);
+        if (entry == null) return false;
+        if (entry.stamp == stamp) return true;
+
+        stale++;
+        entries.remove(k);
+
+        return false;
+    }
+
+    /**
+     * Drop the entry for object uid of objType
+     * @param objType
+     * @param uid
+     */
+    synchronized void invalidate(int objType, int uid) {
+        entries.remove(key(objType, uid));
+    }
+
+    /**
+     * Drop all entries of objType
+     * @param objType
+     */
+    synchronized void invalidateAll(int objType) {
+        Iterator<Long> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if ((int)(it.next() >>> 32) == objType) it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized void setCapacity(int cap) {
+        capacity = Math.max(1, cap);
+        Iterator<Long> it = entries.keySet().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    synchronized int size() { return entries.size(); }
+
+    synchronized long getHits() { return hits; }
+
+    synchronized long getMisses() { return misses; }
+
+    /**
+     * Return proportion of result lookups found in cache
+     * @return
+     */
+    synchronized double getHitRatio() {
+        return (hits + misses > 0 ? (double)hits / (hits + misses) : 0);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Object cache: " + entries.size() + "/" + capacity + " objects, " + hits + " hits, "
+                + misses + " misses (" + Math.round(getHitRatio() * 100) + "% hit), "
+                + stale + " stale, " + evictions + " evicted";
+    }
+
+    private static Long key(int objType, int uid) {
+        return Long.valueOf(((long)objType << 32) | (uid & 0xffffffffL));
+    }
+
+    private static class Entry {
+        long stamp = NO_STAMP;
+        HashMap<String, CachedResult> results = new HashMap(4);
+    }
+
+    /***************************************************************************
+     * Disconnected copy of a query result, which can be replayed through a
+     * read only, forward only result set supporting the getters used when
+     * loading objects.
+     ***************************************************************************/
+    private static class CachedResult {
+        private String[] labels;
+        private ArrayList<Object[]> rows = new ArrayList();
+
+        CachedResult(ResultSet rs) throws SQLException {
+            ResultSetMetaData md = rs.getMetaData();
+            labels = new String[md.getColumnCount()];
+            for (int i = 0 ; i < labels.length ; i++) labels[i] = md.getColumnLabel(i + 1);
+
+            while (rs.next()) {
+                Object[] row = new Object[labels.length];
+                for (int i = 0 ; i < labels.length ; i++) {
+                    row[i] = rs.getObject(i + 1);
+                    // a Blob is only readable until its transaction ends
+                    if (row[i] instanceof Blob) row[i] = ((Blob)row[i]).getBytes(1, (int)((Blob)row[i]).length());
+                }
+                rows.add(row);
+            }
+        }
+
+        long getStamp(String column) {
+            if (rows.isEmpty()) return NO_STAMP;
+            int idx = findColumn(column);
+            Object val = (idx >= 0 ? rows.get(0)[idx] : null);
+
+            return (val instanceof java.util.Date ? ((java.util.Date)val).getTime() : NO_STAMP);
+        }
+
+        int findColumn(String label) {
+            for (int i = 0 ; i < labels.length ; i++) {
+                if (labels[i].equalsIgnoreCase(label)) return i;
+            }
+
+            return -1;
+        }
+
+        ResultSet open() {
+            return (ResultSet)Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class[]{ResultSet.class}, new Cursor(this));
+        }
+    }
+
+    /*
+     * Cursor over a cached result, answering ResultSet calls
+     */
+    private static class Cursor implements InvocationHandler {
+        private CachedResult res;
+        private int pos = -1;
+        private boolean wasNull = false;
+        private boolean closed = false;
+
+        Cursor(CachedResult res) {
+            this.res = res;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.equals("next")) {
+                checkOpen();
+                if (pos < res.rows.size()) pos++;
+                return (pos < res.rows.size());
+            }
+            if (name.equals("close")) {
+                closed = true;
+                return null;
+            }
+            if (name.equals("isClosed")) return closed;
+            if (name.equals("wasNull")) return wasNull;
+            if (name.equals("findColumn")) return column(args[0]) + 1;
+            if (name.equals("hashCode")) return System.identityHashCode(proxy);
+            if (name.equals("equals")) return (proxy == args[0]);
+            if (name.equals("toString")) return "CachedResult" + Arrays.asList(res.labels);
+
+            if (name.startsWith("get") && args != null && args.length == 1) {
+                checkOpen();
+                if (pos < 0 || pos >= res.rows.size()) throw new SQLException("No current row");
+                Object val = res.rows.get(pos)[column(args[0])];
+                wasNull = (val == null);
+                return convert(val, method.getReturnType());
+            }
+
+            throw new SQLFeatureNotSupportedException("Cached result does not support " + name);
+        }
+
+        private void checkOpen() throws SQLException {
+            if (closed) throw new SQLException("Result set closed");
+        }
+
+        private int column(Object arg) throws SQLException {
+            int idx = (arg instanceof Integer ? (Integer)arg - 1 : res.findColumn(arg.toString()));
+            if (idx < 0 || idx >= res.labels.length) throw new SQLException("Unknown column " + arg);
+
+            return idx;
+        }
+
+        private static Object convert(Object val, Class<?> type) throws SQLException {
+            if (type == Object.class) return val;
+            if (type == String.class) return (val != null ? val.toString() : null);
+            if (type == boolean.class) {
+                if (val instanceof Boolean) return val;
+                if (val instanceof Number) return (((Number)val).intValue() != 0);
+                return (val != null && (val.toString().equals("1") || val.toString().equalsIgnoreCase("true")));
+            }
+            if (type == int.class || type == short.class || type == long.class
+                    || type == double.class || type == float.class || type == byte.class) {
+                Number num;
+                if (val == null) {
+                    num = 0;
+                } else if (val instanceof Number) {
+                    num = (Number)val;
+                } else {
+                    try {
+                        num = Double.valueOf(val.toString().trim());
+                    } catch (NumberFormatException nfe) {
+                        throw new SQLException("Not a number: " + val);
+                    }
+                }
+                if (type == int.class) return num.intValue();
+                if (type == short.class) return num.shortValue();
+                if (type == long.class) return num.longValue();
+                if (type == double.class) return num.doubleValue();
+                if (type == float.class) return num.floatValue();
+                return num.byteValue();
+            }
+            if (val == null || type.isInstance(val)) return val;
+            if (type == Timestamp.class && val instanceof java.util.Date) return new Timestamp(((java.util.Date)val).getTime());
+
+            throw new SQLException("Cannot convert " + val.getClass().getName() + " to " + type.getName());
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * OverlapMatrix.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+/*******************************************************************************
+ * Square matrix of which polygons of a Spatial overlap each other, packed
+ * one bit per cell in row order.  Immutable, so may be shared between clones.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public final class OverlapMatrix {
+
+    public static final OverlapMatrix EMPTY = new OverlapMatrix(0);
+
+    private final int size;
+    private final long[] bits;
+
+    private OverlapMatrix(int size) {
+        this.size = size;
+        bits = new long[(int)(((long)size * size + 63) / 64)];
+    }
+
+    /**
+     * Build from rows of cells, as held by the overlaps table model, cells
+     * beyond the number of rows being ignored
+     * @param rows list of List
+     * @return
+     */
+    public static OverlapMatrix fromRows(List rows) {
+        if (rows == null || rows.isEmpty()) return EMPTY;
+
+        OverlapMatrix om = new OverlapMatrix(rows.size());
+        for (int i = 0 ; i < om.size ; i++) {
+            List row = (List)rows.get(i);
+            if (row == null) continue;
+            for (int j = 0 ; j < Math.min(om.size, row.size()) ; j++) {
+                if (isSet(row.get(j))) om.set(i, j);
+            }
+        }
+
+        return om;
+    }
+
+    /**
+     * Build from comma separated text with a line for each row, as stored by
+     * earlier versions
+     * @param overs
+     * @return
+     */
+    public static OverlapMatrix fromCSV(String overs) {
+        if (overs == null || overs.equals("")) return EMPTY;
+
+        String[] lines = overs.split("\n");
+        OverlapMatrix om = new OverlapMatrix(lines.length);
+        for (int i = 0 ; i < om.size ; i++) {
+            String[] cells = lines[i].split(",");
+            for (int j = 0 ; j < Math.min(om.size, cells.length) ; j++) {
+                if (isSet(cells[j])) om.set(i, j);
+            }
+        }
+
+        return om;
+    }
+
+    /*
+     * Anything other than null, blank, 0 or false marks an overlap
+     */
+    private static boolean isSet(Object cell) {
+        if (cell == null) return false;
+        if (cell instanceof Boolean) return (Boolean)cell;
+        String str = cell.toString().trim();
+
+        return !(str.equals("") || str.equals("0") || str.equalsIgnoreCase("FALSE"));
+    }
+
+    private void set(int i, int j) {
+        long bit = (long)i * size + j;
+        bits[(int)(bit >>> 6)] |= 1L << (bit & 63);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return whether polygon i overlaps polygon j
+     * @param i
+     * @param j
+     * @return
+     */
+    public boolean get(int i, int j) {
+        long bit = (long)i * size + j;
+
+        return (bits[(int)(bit >>> 6)] & (1L << (bit & 63))) != 0;
+    }
+
+    /**
+     * Return a new Vector of Vector rows of Boolean cells, for table models
+     * @return
+     */
+    public Vector<Vector> toRows() {
+        Vector<Vector> rows = new Vector(size);
+        for (int i = 0 ; i < size ; i++) {
+            Vector row = new Vector(size);
+            for (int j = 0 ; j < size ; j++) row.add(Boolean.valueOf(get(i, j)));
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    public Object[][] to2D() {
+        Object[][] arr = new Object[size][size];
+        for (int i = 0 ; i < size ; i++) {
+            for (int j = 0 ; j < size ; j++) arr[i][j] = Boolean.valueOf(get(i, j));
+        }
+
+        return arr;
+    }
+
+    /**
+     * Return as rows of comma separated 0s and 1s, each but the last row
+     * ending with a comma, as written to R
+     * @return
+     */
+    public String toCSV() {
+        StringBuilder str = new StringBuilder(size * size * 2);
+        for (int i = 0 ; i < size ; i++) {
+            if (i > 0) str.append(",\n");
+            for (int j = 0 ; j < size ; j++) {
+                if (j > 0) str.append(',');
+                str.append(get(i, j) ? '1' : '0');
+            }
+        }
+
+        return str.toString();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (long word : bits) out.writeLong(word);
+    }
+
+    static OverlapMatrix read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new IOException("Bad overlap matrix size " + size);
+        if (size == 0) return EMPTY;
+
+        OverlapMatrix om = new OverlapMatrix(size);
+        for (int i = 0 ; i < om.bits.length ; i++) om.bits[i] = in.readLong();
+
+        return om;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof OverlapMatrix)) return false;
+
+        return size == ((OverlapMatrix)obj).size && Arrays.equals(bits, ((OverlapMatrix)obj).bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(bits);
+    }
+}
@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * PolygonSet.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/*******************************************************************************
+ * Polygons of a Spatial, held by column: names, areas, coordinates, coordinate
+ * areas and coordinate proportions.  Numeric columns are held as primitive
+ * doubles, NaN or an empty coordinate list standing for a blank cell.  Any
+ * cell whose text is not numeric is kept as entered instead.  Immutable, so
+ * may be shared between clones.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public final class PolygonSet {
+
+    // Columns, in table order
+    public static final int NAME = 0;
+    public static final int AREA = 1;
+    public static final int COORDS = 2;
+    public static final int COORD_AREA = 3;
+    public static final int COORD_PROP = 4;
+    public static final int COLUMNS = 5;
+
+    public static final PolygonSet EMPTY = new PolygonSet(0);
+
+    private static final Pattern NUMBER = Pattern.compile("[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+    private static final Pattern NUMBER_SEPARATOR = Pattern.compile("[\\s,;]+");
+    private static final double[] NO_COORDS = new double[0];
+
+    private final int size;
+    private final String[] names;
+    private final double[] areas;
+    private final double[][] coords;
+    private final double[] coordAreas;
+    private final double[] coordProps;
+    // Text of cells which are not numeric, keyed by row * COLUMNS + column
+    private HashMap<Integer, String> text = null;
+    private int hash = 0;
+
+    private PolygonSet(int size) {
+        this.size = size;
+        names = new String[size];
+        areas = new double[size];
+        coords = new double[size][];
+        coordAreas = new double[size];
+        coordProps = new double[size];
+    }
+
+    /**
+     * Build from rows of cells, as held by the polygons table model
+     * @param rows list of List
+     * @return
+     */
+    public static PolygonSet fromRows(List rows) {
+        if (rows == null || rows.isEmpty()) return EMPTY;
+
+        PolygonSet ps = new PolygonSet(rows.size());
+        Object[] cells = new Object[COLUMNS];
+        for (int i = 0 ; i < ps.size ; i++) {
+            List row = (List)rows.get(i);
+            for (int c = 0 ; c < COLUMNS ; c++) {
+                cells[c] = (row != null && c < row.size() ? row.get(c) : null);
+            }
+            ps.setRow(i, cells);
+        }
+
+        return ps;
+    }
+
+    /**
+     * Build from comma separated text with a line for each polygon, as stored
+     * by earlier versions.  A line with more than COLUMNS cells is taken to
+     * have commas within its coordinates.
+     * @param polys
+     * @return
+     */
+    public static PolygonSet fromCSV(String polys) {
+        if (polys == null || polys.equals("")) return EMPTY;
+
+        String[] lines = polys.split("\n");
+        PolygonSet ps = new PolygonSet(lines.length);
+        Object[] cells = new Object[COLUMNS];
+        for (int i = 0 ; i < ps.size ; i++) {
+            String[] items = lines[i].split(",");
+            Arrays.fill(cells, null);
+            if (items.length > COLUMNS) {
+                StringBuilder crds = new StringBuilder();
+                for (int k = COORDS ; k < items.length - 2 ; k++) {
+                    if (k > COORDS) crds.append(',');
+                    crds.append(items[k]);
+                }
+                cells[NAME] = items[NAME];
+                cells[AREA] = items[AREA];
+                cells[COORDS] = crds.toString();
+                cells[COORD_AREA] = items[items.length - 2];
+                cells[COORD_PROP] = items[items.length - 1];
+            } else {
+                System.arraycopy(items, 0, cells, 0, items.length);
+            }
+            ps.setRow(i, cells);
+        }
+
+        return ps;
+    }
+
+    private void setRow(int row, Object[] cells) {
+        names[row] = (cells[NAME] != null ? cells[NAME].toString() : "");
+        areas[row] = parseValue(row, AREA, cells[AREA]);
+        coordAreas[row] = parseValue(row, COORD_AREA, cells[COORD_AREA]);
+        coordProps[row] = parseValue(row, COORD_PROP, cells[COORD_PROP]);
+
+        double[] values = parse(cells[COORDS]);
+        if (values == null) {
+            keepText(row, COORDS, cells[COORDS]);
+            values = NO_COORDS;
+        }
+        coords[row] = values;
+    }
+
+    /*
+     * Return single value of cell, or NaN keeping its text if it isn't one
+     */
+    private double parseValue(int row, int col, Object cell) {
+        if (cell instanceof Number) return ((Number)cell).doubleValue();
+
+        double[] values = parse(cell);
+        if (values != null && values.length <= 1) return (values.length == 1 ? values[0] : Double.NaN);
+        keepText(row, col, cell);
+
+        return Double.NaN;
+    }
+
+    /*
+     * Return numbers in cell, none if blank, or null if it holds anything else
+     */
+    private static double[] parse(Object cell) {
+        String str = (cell != null ? cell.toString().trim() : "");
+        if (str.equals("")) return NO_COORDS;
+
+        String[] items = NUMBER_SEPARATOR.split(str);
+        double[] values = new double[items.length];
+        for (int i = 0 ; i < items.length ; i++) {
+            if (!NUMBER.matcher(items[i]).matches()) return null;
+            values[i] = Double.parseDouble(items[i]);
+        }
+
+        return values;
+    }
+
+    private void keepText(int row, int col, Object cell) {
+        if (text == null) text = new HashMap();
+        text.put(row * COLUMNS + col, cell.toString());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getName(int row) {
+        return names[row];
+    }
+
+    /**
+     * Return value of numeric column col of row, NaN if blank or not numeric
+     * @param row
+     * @param col AREA, COORD_AREA or COORD_PROP
+     * @return
+     */
+    public double getValue(int row, int col) {
+        switch (col) {
+            case AREA:          return areas[row];
+            case COORD_AREA:    return coordAreas[row];
+            case COORD_PROP:    return coordProps[row];
+        }
+
+        throw new IllegalArgumentException("Not a single valued column: " + col);
+    }
+
+    /**
+     * Return number of coordinates of row
+     * @param row
+     * @return
+     */
+    public int getCoordCount(int row) {
+        return coords[row].length;
+    }
+
+    public double getCoord(int row, int index) {
+        return coords[row][index];
+    }
+
+    /**
+     * Return cell text as shown in the polygons table and written to R
+     * @param row
+     * @param col
+     * @return
+     */
+    public String getCell(int row, int col) {
+        if (col == NAME) return names[row];
+        if (text != null) {
+            String str = text.get(row * COLUMNS + col);
+            if (str != null) return str;
+        }
+        if (col != COORDS) return format(getValue(row, col));
+
+        StringBuilder str = new StringBuilder(coords[row].length * 8);
+        for (int i = 0 ; i < coords[row].length ; i++) {
+            if (i > 0) str.append(", ");
+            str.append(format(coords[row][i]));
+        }
+
+        return str.toString();
+    }
+
+    /*
+     * Return value as text, without a fraction if it is whole
+     */
+    private static String format(double value) {
+        if (Double.isNaN(value)) return "";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long)value);
+
+        return Double.toString(value);
+    }
+
+    /**
+     * Return a new Vector of Vector rows of String cells, for table models
+     * @return
+     */
+    public Vector<Vector> toRows() {
+        Vector<Vector> rows = new Vector(size);
+        for (int i = 0 ; i < size ; i++) {
+            Vector row = new Vector(COLUMNS);
+            for (int c = 0 ; c < COLUMNS ; c++) row.add(getCell(i, c));
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    public Object[][] to2D() {
+        Object[][] arr = new Object[size][COLUMNS];
+        for (int i = 0 ; i < size ; i++) {
+            for (int c = 0 ; c < COLUMNS ; c++) arr[i][c] = getCell(i, c);
+        }
+
+        return arr;
+    }
+
+    /**
+     * Return as lines of comma separated cells, each but the last line ending
+     * with a comma
+     * @return
+     */
+    public String toCSV() {
+        StringBuilder str = new StringBuilder(size * 64);
+        for (int i = 0 ; i < size ; i++) {
+            if (i > 0) str.append(",\n");
+            for (int c = 0 ; c < COLUMNS ; c++) {
+                if (c > 0) str.append(',');
+                str.append(getCell(i, c));
+            }
+        }
+
+        return str.toString();
+    }
+
+    /*
+     * Write by column so each primitive column is written in a single run
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (String name : names) writeString(out, name);
+        for (double value : areas) out.writeDouble(value);
+        for (double[] values : coords) {
+            out.writeInt(values.length);
+            for (double value : values) out.writeDouble(value);
+        }
+        for (double value : coordAreas) out.writeDouble(value);
+        for (double value : coordProps) out.writeDouble(value);
+
+        out.writeInt(text != null ? text.size() : 0);
+        if (text != null) {
+            for (Map.Entry<Integer, String> cell : text.entrySet()) {
+                out.writeInt(cell.getKey());
+                writeString(out, cell.getValue());
+            }
+        }
+    }
+
+    static PolygonSet read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new IOException("Bad polygon count " + size);
+
+        PolygonSet ps = new PolygonSet(size);
+        for (int i = 0 ; i < size ; i++) ps.names[i] = readString(in);
+        for (int i = 0 ; i < size ; i++) ps.areas[i] = in.readDouble();
+        for (int i = 0 ; i < size ; i++) {
+            int len = in.readInt();
+            if (len < 0) throw new IOException("Bad coordinate count " + len);
+            double[] values = (len == 0 ? NO_COORDS : new double[len]);
+            for (int j = 0 ; j < len ; j++) values[j] = in.readDouble();
+            ps.coords[i] = values;
+        }
+        for (int i = 0 ; i < size ; i++) ps.coordAreas[i] = in.readDouble();
+        for (int i = 0 ; i < size ; i++) ps.coordProps[i] = in.readDouble();
+
+        int cells = in.readInt();
+        for (int i = 0 ; i < cells ; i++) {
+            if (ps.text == null) ps.text = new HashMap();
+            int key = in.readInt();
+            ps.text.put(key, readString(in));
+        }
+
+        return (size == 0 && ps.text == null ? EMPTY : ps);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) throw new IOException("Bad string length " + len);
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+
+        return new String(bytes, "UTF-8");
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (!(obj instanceof PolygonSet)) return false;
+        PolygonSet ps = (PolygonSet)obj;
+
+        return size == ps.size && Arrays.equals(names, ps.names) && Arrays.equals(areas, ps.areas)
+                && Arrays.deepEquals(coords, ps.coords) && Arrays.equals(coordAreas, ps.coordAreas)
+                && Arrays.equals(coordProps, ps.coordProps)
+                && (text == null || text.isEmpty() ? ps.text == null || ps.text.isEmpty() : text.equals(ps.text));
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash == 0) {
+            int h = Arrays.hashCode(names);
+            h = 31 * h + Arrays.hashCode(areas);
+            h = 31 * h + Arrays.deepHashCode(coords);
+            h = 31 * h + Arrays.hashCode(coordAreas);
+            h = 31 * h + Arrays.hashCode(coordProps);
+            h = 31 * h + (text != null ? text.hashCode() : 0);
+            hash = h;
+        }
+
+        return hash;
+    }
+}
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * REmitter.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************************************
+ * Writes generated R files.  File text is built in a StringBuilder reused by
+ * each thread, then written out in one go through a FileChannel.
+ *
+ * Files whose content is unchanged since they were last written (ignoring the
+ * '# Date:' line of the header) are left untouched.  Independent files can be
+ * written in parallel by submitting tasks, which run on a small thread pool
+ * with a limited number of tasks outstanding.  Call finish() to wait for all
+ * submitted tasks.
+ *
+ * If given a GenerationManifest the emitter records each file written in it,
+ * and uses it to recognise unchanged files written by earlier sessions.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public class REmitter {
+
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int MAX_OUTSTANDING = THREADS * 4;
+    private static final String DATE_LINE = "\n# Date: ";
+
+    // hash and length of files as last written, keyed by path
+    private static HashMap<String, long[]> written = new HashMap();
+
+    private static ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(16384);
+        }
+    };
+
+    private GenerationManifest manifest = null;
+    private ExecutorService executor = null;
+    private Semaphore outstanding = new Semaphore(MAX_OUTSTANDING);
+    private ArrayList<Future<?>> futures = new ArrayList();
+    private AtomicInteger filesWritten = new AtomicInteger();
+    private AtomicInteger filesSkipped = new AtomicInteger();
+    private AtomicInteger tasksFailed = new AtomicInteger();
+
+    public REmitter() {
+    }
+
+    public REmitter(GenerationManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    public GenerationManifest getManifest() { return manifest; }
+
+    /**
+     * Is file, as generated from source and its dependencies, current in the
+     * manifest, so that it need not be built again.  Always false without a
+     * manifest.
+     * @param file
+     * @param source
+     * @param stamp
+     * @return
+     */
+    public boolean isCurrent(File file, EPOCObject source, long stamp) {
+        if (manifest == null || !manifest.isCurrent(file, source, stamp)) return false;
+        filesSkipped.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Return this thread's builder, emptied.  Its content is only valid until
+     * the next call to getBuilder() on the same thread, so finish with (emit)
+     * one file before starting another.
+     * @return
+     */
+    public StringBuilder getBuilder() {
+        StringBuilder sb = builders.get();
+        sb.setLength(0);
+
+        return sb;
+    }
+
+    /**
+     * Write content to file unless file already holds it
+     * @param file
+     * @param content
+     * @return false if file could not be written
+     */
+    public boolean emit(File file, CharSequence content) {
+        return emit(file, content, null, 0);
+    }
+
+    /**
+     * Write content, generated from source, to file unless file already holds
+     * it, recording it in the manifest against source and stamp
+     * @param file
+     * @param content
+     * @param source object file is written from, or null
+     * @param stamp from GenerationManifest.stamp() over source and dependencies
+     * @return false if file could not be written
+     */
+    public boolean emit(File file, CharSequence content, EPOCObject source, long stamp) {
+        String path = file.getAbsolutePath();
+        long hash = hash(content);
+
+        long[] last;
+        synchronized (written) {
+            last = written.get(path);
+        }
+        if (last == null && manifest != null) last = manifest.getWritten(file);
+        if (last != null && last[0] == hash && file.length() == last[1]) {
+            if (manifest != null) manifest.record(file, source, stamp, hash, last[1]);
+            filesSkipped.incrementAndGet();
+            return true;
+        }
+
+        FileChannel channel = null;
+        try {
+            ByteBuffer bytes = Charset.defaultCharset().encode(CharBuffer.wrap(content));
+            long length = bytes.remaining();
+
+            channel = new FileOutputStream(file).getChannel();
+            while (bytes.hasRemaining()) channel.write(bytes);
+
+            synchronized (written) {
+                written.put(path, new long[]{hash, length});
+            }
+            if (manifest != null) manifest.record(file, source, stamp, hash, length);
+            filesWritten.incrementAndGet();
+
+            return true;
+        } catch (IOException ioe) {
+            synchronized (written) {
+                written.remove(path);
+            }
+            if (manifest != null) manifest.forget(file);
+            ioe.printStackTrace();
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ioe) {
+                    if (EPOC_DBG) ioe.printStackTrace();
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Queue task to run on the emitter's threads, waiting first if too many
+     * tasks are already outstanding.  Tasks should not themselves submit.
+     * @param task
+     */
+    public void submit(final Runnable task) {
+        try {
+            outstanding.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        Runnable wrapped = new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    outstanding.release();
+                }
+            }
+        };
+
+        try {
+            Future<?> future = getExecutor().submit(wrapped);
+            synchronized (futures) {
+                futures.add(future);
+            }
+        } catch (RejectedExecutionException ree) {
+            outstanding.release();
+            throw ree;
+        }
+    }
+
+    /**
+     * Wait for all submitted tasks to complete and release threads
+     */
+    public void finish() {
+        ArrayList<Future<?>> waitFor;
+        synchronized (futures) {
+            waitFor = new ArrayList(futures);
+            futures.clear();
+        }
+
+        for (Future<?> future : waitFor) {
+            try {
+                future.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ee) {
+                tasksFailed.incrementAndGet();
+                ee.getCause().printStackTrace();
+            }
+        }
+
+        synchronized (this) {
+            if (executor != null) executor.shutdown();
+            executor = null;
+        }
+
+        if (EPOC_DBG) System.out.println(toString());
+    }
+
+    public int getFilesWritten() { return filesWritten.get(); }
+
+    public int getFilesSkipped() { return filesSkipped.get(); }
+
+    public int getTasksFailed() { return tasksFailed.get(); }
+
+    @Override
+    public String toString() {
+        return "R emitter: " + filesWritten.get() + " files written, " + filesSkipped.get() + " unchanged"
+                + (manifest != null ? " (" + manifest.getKept() + " not regenerated)" : "");
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "EPOC R writer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    /*
+     * 64 bit FNV-1a hash of content, skipping the header date line so that
+     * regenerating otherwise identical content is recognised
+     */
+    private static long hash(CharSequence content) {
+        int len = content.length();
+        int skipStart = indexOf(content, DATE_LINE, 0);
+        int skipEnd = -1;
+
+        // only a date line within the header block counts
+        int headerEnd = indexOf(content, "\n\n", 0);
+        if (skipStart >= 0 && (headerEnd < 0 || skipStart < headerEnd)) {
+            skipEnd = indexOf(content, "\n", skipStart + 1);
+            if (skipEnd < 0) skipEnd = len;
+        } else {
+            skipStart = -1;
+        }
+
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0 ; i < len ; i++) {
+            if (i == skipStart) {
+                i = skipEnd - 1;
+                continue;
+            }
+            h ^= content.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        return h;
+    }
+
+    private static int indexOf(CharSequence content, String str, int from) {
+        int last = content.length() - str.length();
+        char first = str.charAt(0);
+
+        for (int i = from ; i <= last ; i++) {
+            if (content.charAt(i) != first) continue;
+            int j = 1;
+            while (j < str.length() && content.charAt(i + j) == str.charAt(j)) j++;
+            if (j == str.length()) return i;
+        }
+
+        return -1;
+    }
+}
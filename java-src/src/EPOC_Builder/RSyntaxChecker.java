@@ -0,0 +1,795 @@
+/*******************************************************************************
+ * RSyntaxChecker.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+/*******************************************************************************
+ * Java syntax checker for the subset of R used in attribute values and action
+ * code, allowing most code to be checked without a round trip through JRI.
+ *
+ * Scans the code in place, holding only the current token, so checking does
+ * not create token objects or substrings.  Returns R_SYNTAX_UNDECIDED for
+ * anything outside the subset it understands (raw strings, pipes, lambdas,
+ * non-ASCII symbols, '=' used inside arguments or conditions, etc.) so that
+ * code can be passed on to R's own parser.  An R_SYNTAX_INVALID result should
+ * also be confirmed by R when it is available, as R's error message is more
+ * familiar to users.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public class RSyntaxChecker {
+
+    public static final int R_SYNTAX_VALID = 0;
+    public static final int R_SYNTAX_INVALID = 1;
+    public static final int R_SYNTAX_UNDECIDED = 2;
+
+    // token types
+    private static final int T_EOF = 0;
+    private static final int T_NEWLINE = 1;
+    private static final int T_SEMI = 2;
+    private static final int T_COMMA = 3;
+    private static final int T_LPAREN = 4;
+    private static final int T_RPAREN = 5;
+    private static final int T_LBRACE = 6;
+    private static final int T_RBRACE = 7;
+    private static final int T_LBRACKET = 8;
+    private static final int T_LBB = 9;
+    private static final int T_RBRACKET = 10;
+    private static final int T_NUM = 11;
+    private static final int T_STR = 12;
+    private static final int T_SYMBOL = 13;
+    private static final int T_CONST = 14;
+    private static final int T_NULL = 15;
+    private static final int T_IF = 16;
+    private static final int T_ELSE = 17;
+    private static final int T_FOR = 18;
+    private static final int T_IN = 19;
+    private static final int T_WHILE = 20;
+    private static final int T_REPEAT = 21;
+    private static final int T_FUNCTION = 22;
+    private static final int T_NEXT = 23;
+    private static final int T_BREAK = 24;
+    private static final int T_OP = 25;
+    private static final int T_DOLLAR = 26;
+    private static final int T_NS = 27;
+
+    // operator precedences, higher binds tighter
+    private static final int P_QUESTION = 1;
+    private static final int P_EQ_ASSIGN = 2;
+    private static final int P_LEFT_ASSIGN = 3;
+    private static final int P_RIGHT_ASSIGN = 4;
+    private static final int P_TILDE = 5;
+    private static final int P_OR = 6;
+    private static final int P_AND = 7;
+    private static final int P_NOT = 8;
+    private static final int P_COMPARE = 9;
+    private static final int P_PLUS = 10;
+    private static final int P_MULT = 11;
+    private static final int P_SPECIAL = 12;
+    private static final int P_COLON = 13;
+    private static final int P_UNARY = 14;
+    private static final int P_POW = 15;
+
+    private static final int MAX_DEPTH = 256;
+
+    private String code;
+    private int len;
+
+    // current token
+    private int pos = 0;
+    private int tok = T_EOF;
+    private int tokStart = 0;
+    private int tokEnd = 0;
+    private int opPrec = 0;
+    private boolean opUnary = false;
+    private boolean opBinary = false;
+
+    // bracket context, newlines are not significant within '(' or '['
+    private char[] context = new char[32];
+    private int depth = 0;
+
+    // expression recursion depth, kept well below stack limits
+    private int level = 0;
+
+    private String message = "";
+
+    public RSyntaxChecker(String code) {
+        this.code = (code != null ? code : "");
+        len = this.code.length();
+    }
+
+    /**
+     * Check syntax of code
+     * @param code
+     * @return R_SYNTAX_VALID, R_SYNTAX_INVALID or R_SYNTAX_UNDECIDED
+     */
+    public static int check(String code) {
+        return new RSyntaxChecker(code).check();
+    }
+
+    /**
+     * Check syntax of code passed to constructor
+     * @return R_SYNTAX_VALID, R_SYNTAX_INVALID or R_SYNTAX_UNDECIDED
+     */
+    public int check() {
+        try {
+            pos = 0;
+            depth = 0;
+            level = 0;
+            advance();
+            parseProgram();
+        } catch (Abort ab) {
+            message = ab.getMessage();
+            if (EPOC_DBG && ab.status == R_SYNTAX_UNDECIDED) System.out.println("R syntax undecided: " + message);
+            return ab.status;
+        }
+
+        return R_SYNTAX_VALID;
+    }
+
+    /**
+     * Return description of why code was invalid or undecided
+     * @return
+     */
+    public String getMessage() { return message; }
+
+    /***************************************************************************
+     * Parser
+     ***************************************************************************/
+
+    private void parseProgram() {
+        while (true) {
+            while (tok == T_NEWLINE) advance();
+            if (tok == T_EOF) return;
+            if (tok == T_SEMI) invalid();
+
+            parseExpr(0, true);
+
+            if (tok == T_SEMI || tok == T_NEWLINE) {
+                advance();
+            } else if (tok != T_EOF) {
+                invalid();
+            }
+        }
+    }
+
+    private void parseBlock() {
+        push('{');
+        advance();
+        while (true) {
+            while (tok == T_NEWLINE || tok == T_SEMI) advance();
+            if (tok == T_RBRACE) {
+                pop();
+                advance();
+                return;
+            }
+
+            parseExpr(0, true);
+
+            if (tok != T_NEWLINE && tok != T_SEMI && tok != T_RBRACE) invalid();
+        }
+    }
+
+    /*
+     * Parse an expression containing only operators binding at least as tightly
+     * as minPrec.  allowEq indicates whether '=' assignment is known to be
+     * legal here.
+     */
+    private void parseExpr(int minPrec, boolean allowEq) {
+        if (++level > MAX_DEPTH) undecided("expression nested too deeply");
+
+        parseUnary(allowEq);
+
+        boolean lastCompare = false;
+        while (tok == T_OP && opBinary) {
+            int prec = opPrec;
+            if (prec < minPrec) break;
+            if (prec == P_EQ_ASSIGN && !allowEq) undecided("'=' used within expression");
+            if (prec == P_COMPARE && lastCompare) invalid();
+            lastCompare = (prec == P_COMPARE);
+
+            boolean right = (prec == P_EQ_ASSIGN || prec == P_LEFT_ASSIGN || prec == P_POW);
+            advance();
+            skipNewlines();
+            parseExpr(right ? prec : prec + 1, allowEq && prec == P_EQ_ASSIGN);
+        }
+
+        level--;
+    }
+
+    private void parseUnary(boolean allowEq) {
+        if (tok == T_OP && opUnary) {
+            int prec = opPrec;
+            advance();
+            parseExpr(prec, false);
+        } else {
+            parsePrimary(allowEq);
+            parsePostfix();
+        }
+    }
+
+    private void parsePrimary(boolean allowEq) {
+        switch (tok) {
+            case T_SYMBOL:
+            case T_STR:
+                advance();
+                if (tok == T_NS) {
+                    advance();
+                    if (tok != T_SYMBOL && tok != T_STR) invalid();
+                    advance();
+                }
+                break;
+            case T_NUM:
+            case T_CONST:
+            case T_NULL:
+            case T_NEXT:
+            case T_BREAK:
+                advance();
+                break;
+            case T_LPAREN:
+                push('(');
+                advance();
+                parseExpr(0, true);
+                expectClose(T_RPAREN);
+                break;
+            case T_LBRACE:
+                parseBlock();
+                break;
+            case T_IF:
+                advance();
+                parseCondition();
+                parseBody(allowEq);
+                if (tok == T_NEWLINE && depth > 0 && context[depth - 1] == '{') {
+                    // within braces an else may start on the following line
+                    int savePos = pos, saveStart = tokStart, saveEnd = tokEnd;
+                    skipNewlines();
+                    if (tok != T_ELSE) {
+                        pos = savePos;
+                        tok = T_NEWLINE;
+                        tokStart = saveStart;
+                        tokEnd = saveEnd;
+                        setOp(0, false, false);
+                    }
+                }
+                if (tok == T_ELSE) {
+                    advance();
+                    parseBody(allowEq);
+                }
+                break;
+            case T_FOR:
+                advance();
+                expect(T_LPAREN);
+                push('(');
+                advance();
+                expect(T_SYMBOL);
+                advance();
+                expect(T_IN);
+                advance();
+                parseExpr(0, false);
+                expectClose(T_RPAREN);
+                parseBody(allowEq);
+                break;
+            case T_WHILE:
+                advance();
+                parseCondition();
+                parseBody(allowEq);
+                break;
+            case T_REPEAT:
+                advance();
+                parseBody(allowEq);
+                break;
+            case T_FUNCTION:
+                advance();
+                parseFormals();
+                parseBody(allowEq);
+                break;
+            default:
+                invalid();
+        }
+    }
+
+    private void parsePostfix() {
+        while (true) {
+            switch (tok) {
+                case T_LPAREN:
+                    push('(');
+                    advance();
+                    parseArgs(T_RPAREN);
+                    expectClose(T_RPAREN);
+                    break;
+                case T_LBRACKET:
+                    push('[');
+                    advance();
+                    parseArgs(T_RBRACKET);
+                    expectClose(T_RBRACKET);
+                    break;
+                case T_LBB:
+                    push('[');
+                    advance();
+                    parseArgs(T_RBRACKET);
+                    expect(T_RBRACKET);
+                    int first = tokEnd;
+                    advance();
+                    // closing ']]' must be adjacent
+                    if (tok != T_RBRACKET || tokStart != first) invalid();
+                    pop();
+                    advance();
+                    break;
+                case T_DOLLAR:
+                    advance();
+                    if (tok == T_CONST || tok == T_NULL) undecided("keyword used as list member");
+                    if (tok != T_SYMBOL && tok != T_STR) invalid();
+                    advance();
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    /*
+     * Arguments of a call or index, up to but not including close token
+     */
+    private void parseArgs(int close) {
+        while (true) {
+            if (tok == close) return;
+
+            if (tok != T_COMMA) {
+                if ((tok == T_SYMBOL || tok == T_STR || tok == T_NULL) && nextIsEqAssign()) {
+                    // named argument, value may be empty
+                    advance();
+                    advance();
+                    if (tok != T_COMMA && tok != close) parseExpr(0, false);
+                } else {
+                    parseExpr(0, false);
+                }
+            }
+
+            if (tok == T_COMMA) {
+                advance();
+            } else if (tok != close) {
+                invalid();
+            }
+        }
+    }
+
+    private void parseFormals() {
+        expect(T_LPAREN);
+        push('(');
+        advance();
+
+        int[] names = new int[8];
+        int count = 0;
+        while (tok != T_RPAREN) {
+            expect(T_SYMBOL);
+
+            // formal names must be unique
+            int start = tokStart, length = tokEnd - tokStart;
+            for (int i = 0 ; i < count ; i += 2) {
+                if (names[i + 1] == length && code.regionMatches(names[i], code, start, length)) {
+                    message = "repeated formal argument";
+                    invalid();
+                }
+            }
+            if (count == names.length) {
+                int[] grown = new int[count * 2];
+                System.arraycopy(names, 0, grown, 0, count);
+                names = grown;
+            }
+            names[count++] = start;
+            names[count++] = length;
+
+            advance();
+            if (tok == T_OP && opPrec == P_EQ_ASSIGN) {
+                advance();
+                parseExpr(0, false);
+            }
+            if (tok == T_COMMA) {
+                advance();
+                if (tok == T_RPAREN) invalid();
+            } else if (tok != T_RPAREN) {
+                invalid();
+            }
+        }
+        pop();
+        advance();
+    }
+
+    private void parseCondition() {
+        expect(T_LPAREN);
+        push('(');
+        advance();
+        parseExpr(0, false);
+        expectClose(T_RPAREN);
+    }
+
+    private void parseBody(boolean allowEq) {
+        skipNewlines();
+        parseExpr(0, allowEq);
+    }
+
+    private boolean nextIsEqAssign() {
+        int savePos = pos, saveTok = tok, saveStart = tokStart, saveEnd = tokEnd;
+
+        advance();
+        boolean isEq = (tok == T_OP && opPrec == P_EQ_ASSIGN);
+
+        pos = savePos;
+        tok = saveTok;
+        tokStart = saveStart;
+        tokEnd = saveEnd;
+        setOp(0, false, false);
+
+        return isEq;
+    }
+
+    private void skipNewlines() {
+        while (tok == T_NEWLINE) advance();
+    }
+
+    private void expect(int type) {
+        if (tok != type) invalid();
+    }
+
+    private void expectClose(int type) {
+        expect(type);
+        pop();
+        advance();
+    }
+
+    private void push(char c) {
+        if (depth == context.length) {
+            char[] grown = new char[depth * 2];
+            System.arraycopy(context, 0, grown, 0, depth);
+            context = grown;
+        }
+        context[depth++] = c;
+    }
+
+    private void pop() {
+        if (depth > 0) depth--;
+    }
+
+    /***************************************************************************
+     * Lexer
+     ***************************************************************************/
+
+    private void advance() {
+        setOp(0, false, false);
+
+        while (pos < len) {
+            char c = code.charAt(pos);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+                pos++;
+            } else if (c == '#') {
+                while (pos < len && code.charAt(pos) != '\n') pos++;
+            } else if (c == '\n' && depth > 0 && context[depth - 1] != '{') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        tokStart = pos;
+        if (pos >= len) {
+            tok = T_EOF;
+            tokEnd = pos;
+            return;
+        }
+
+        char c = code.charAt(pos);
+        char n = (pos + 1 < len ? code.charAt(pos + 1) : '\0');
+
+        if (c >= 128) undecided("non-ASCII character");
+
+        if (isDigit(c) || (c == '.' && isDigit(n))) {
+            lexNumber();
+        } else if (isLetter(c) || c == '.') {
+            pos++;
+            while (pos < len && isSymbolChar(code.charAt(pos))) pos++;
+            if ((c == 'r' || c == 'R') && pos == tokStart + 1 && pos < len
+                    && (code.charAt(pos) == '"' || code.charAt(pos) == '\'')) {
+                undecided("raw string");
+            }
+            tok = keyword(tokStart, pos);
+        } else if (c == '"' || c == '\'') {
+            lexString(c);
+            tok = T_STR;
+        } else if (c == '`') {
+            lexString(c);
+            if (pos - tokStart <= 2) undecided("empty backquoted symbol");
+            tok = T_SYMBOL;
+        } else {
+            lexOperator(c, n);
+        }
+
+        tokEnd = pos;
+    }
+
+    private void lexNumber() {
+        char c = code.charAt(pos);
+
+        if (c == '0' && pos + 1 < len && (code.charAt(pos + 1) == 'x' || code.charAt(pos + 1) == 'X')) {
+            pos += 2;
+            int start = pos;
+            while (pos < len && isHexDigit(code.charAt(pos))) pos++;
+            if (pos == start) undecided("hexadecimal constant");
+            if (pos < len && (code.charAt(pos) == '.' || code.charAt(pos) == 'p' || code.charAt(pos) == 'P')) {
+                undecided("hexadecimal constant");
+            }
+        } else {
+            while (pos < len && isDigit(code.charAt(pos))) pos++;
+            if (pos < len && code.charAt(pos) == '.') {
+                pos++;
+                while (pos < len && isDigit(code.charAt(pos))) pos++;
+            }
+            if (pos < len && (code.charAt(pos) == 'e' || code.charAt(pos) == 'E')) {
+                pos++;
+                if (pos < len && (code.charAt(pos) == '+' || code.charAt(pos) == '-')) pos++;
+                int start = pos;
+                while (pos < len && isDigit(code.charAt(pos))) pos++;
+                if (pos == start) undecided("numeric exponent");
+            }
+        }
+        if (pos < len && (code.charAt(pos) == 'L' || code.charAt(pos) == 'i')) pos++;
+
+        tok = T_NUM;
+    }
+
+    private void lexString(char quote) {
+        pos++;
+        while (pos < len) {
+            char c = code.charAt(pos);
+            if (c == quote) {
+                pos++;
+                return;
+            }
+            if (c == '\\') {
+                pos++;
+                if (pos >= len) break;
+                char e = code.charAt(pos);
+                if (e == 'x') {
+                    if (pos + 1 >= len || !isHexDigit(code.charAt(pos + 1))) undecided("string escape");
+                } else if ("nrtbafv\\'\"`01234567".indexOf(e) < 0) {
+                    undecided("string escape");
+                }
+            }
+            pos++;
+        }
+        tokEnd = pos;
+        message = "unterminated string";
+        invalid();
+    }
+
+    private void lexOperator(char c, char n) {
+        pos++;
+        tok = T_OP;
+
+        switch (c) {
+            case '\n': tok = T_NEWLINE; break;
+            case ';': tok = T_SEMI; break;
+            case ',': tok = T_COMMA; break;
+            case '(': tok = T_LPAREN; break;
+            case ')': tok = T_RPAREN; break;
+            case '{': tok = T_LBRACE; break;
+            case '}': tok = T_RBRACE; break;
+            case ']': tok = T_RBRACKET; break;
+            case '[':
+                if (n == '[') {
+                    pos++;
+                    tok = T_LBB;
+                } else {
+                    tok = T_LBRACKET;
+                }
+                break;
+            case '$':
+            case '@':
+                tok = T_DOLLAR;
+                break;
+            case '?': setOp(P_QUESTION, true, true); break;
+            case '~': setOp(P_TILDE, true, true); break;
+            case '^': setOp(P_POW, false, true); break;
+            case '/': setOp(P_MULT, false, true); break;
+            case '+': setOp(P_PLUS, true, true); break;
+            case '*':
+                if (n == '*') pos++;
+                setOp(n == '*' ? P_POW : P_MULT, false, true);
+                break;
+            case '-':
+                if (n == '>') {
+                    pos++;
+                    if (pos < len && code.charAt(pos) == '>') pos++;
+                    setOp(P_RIGHT_ASSIGN, false, true);
+                } else {
+                    setOp(P_PLUS, true, true);
+                }
+                break;
+            case '<':
+                if (n == '-') {
+                    pos++;
+                    setOp(P_LEFT_ASSIGN, false, true);
+                } else if (n == '<' && pos + 1 < len && code.charAt(pos + 1) == '-') {
+                    pos += 2;
+                    setOp(P_LEFT_ASSIGN, false, true);
+                } else {
+                    if (n == '=') pos++;
+                    setOp(P_COMPARE, false, true);
+                }
+                break;
+            case '>':
+                if (n == '=') pos++;
+                setOp(P_COMPARE, false, true);
+                break;
+            case '=':
+                if (n == '=') {
+                    pos++;
+                    setOp(P_COMPARE, false, true);
+                } else if (n == '>') {
+                    undecided("pipe bind operator");
+                } else {
+                    setOp(P_EQ_ASSIGN, false, true);
+                }
+                break;
+            case '!':
+                if (n == '=') {
+                    pos++;
+                    setOp(P_COMPARE, false, true);
+                } else {
+                    setOp(P_NOT, true, false);
+                }
+                break;
+            case '&':
+                if (n == '&') pos++;
+                setOp(P_AND, false, true);
+                break;
+            case '|':
+                if (n == '>') undecided("pipe operator");
+                if (n == '|') pos++;
+                setOp(P_OR, false, true);
+                break;
+            case ':':
+                if (n == ':') {
+                    pos++;
+                    if (pos < len && code.charAt(pos) == ':') pos++;
+                    tok = T_NS;
+                } else if (n == '=') {
+                    pos++;
+                    setOp(P_LEFT_ASSIGN, false, true);
+                } else {
+                    setOp(P_COLON, false, true);
+                }
+                break;
+            case '%':
+                while (pos < len && code.charAt(pos) != '%' && code.charAt(pos) != '\n') pos++;
+                if (pos >= len || code.charAt(pos) != '%') invalid();
+                pos++;
+                setOp(P_SPECIAL, false, true);
+                break;
+            default:
+                undecided("unexpected input '" + c + "'");
+        }
+    }
+
+    private void setOp(int prec, boolean unary, boolean binary) {
+        opPrec = prec;
+        opUnary = unary;
+        opBinary = binary;
+    }
+
+    private int keyword(int start, int end) {
+        switch (end - start) {
+            case 2:
+                if (word(start, "if")) return T_IF;
+                if (word(start, "in")) return T_IN;
+                if (word(start, "NA")) return T_CONST;
+                break;
+            case 3:
+                if (word(start, "for")) return T_FOR;
+                if (word(start, "Inf") || word(start, "NaN")) return T_CONST;
+                break;
+            case 4:
+                if (word(start, "else")) return T_ELSE;
+                if (word(start, "next")) return T_NEXT;
+                if (word(start, "TRUE")) return T_CONST;
+                if (word(start, "NULL")) return T_NULL;
+                break;
+            case 5:
+                if (word(start, "while")) return T_WHILE;
+                if (word(start, "break")) return T_BREAK;
+                if (word(start, "FALSE")) return T_CONST;
+                break;
+            case 6:
+                if (word(start, "repeat")) return T_REPEAT;
+                break;
+            case 8:
+                if (word(start, "function")) return T_FUNCTION;
+                if (word(start, "NA_real_")) return T_CONST;
+                break;
+            case 11:
+                if (word(start, "NA_integer_") || word(start, "NA_complex_")) return T_CONST;
+                break;
+            case 13:
+                if (word(start, "NA_character_")) return T_CONST;
+                break;
+        }
+
+        return T_SYMBOL;
+    }
+
+    private boolean word(int start, String w) {
+        return code.regionMatches(start, w, 0, w.length());
+    }
+
+    private static boolean isDigit(char c) { return (c >= '0' && c <= '9'); }
+
+    private static boolean isLetter(char c) { return ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')); }
+
+    private static boolean isHexDigit(char c) {
+        return (isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'));
+    }
+
+    private static boolean isSymbolChar(char c) {
+        return (isLetter(c) || isDigit(c) || c == '.' || c == '_');
+    }
+
+    /***************************************************************************
+     * Errors
+     ***************************************************************************/
+
+    private void invalid() {
+        if (message.equals("")) {
+            // token end is stale if raised while lexing
+            int end = Math.min(Math.max(tokEnd, pos), tokStart + 20);
+            message = "unexpected " + (tok == T_EOF ? "end of input"
+                    : tok == T_NEWLINE ? "end of line"
+                    : "'" + code.substring(tokStart, Math.min(end, len)) + "'");
+        }
+        throw new Abort(R_SYNTAX_INVALID, "Syntax error at line " + lineOf(tokStart) + ": " + message);
+    }
+
+    private void undecided(String reason) {
+        throw new Abort(R_SYNTAX_UNDECIDED, reason + " at line " + lineOf(tokStart));
+    }
+
+    private int lineOf(int offset) {
+        int line = 1;
+        for (int i = 0 ; i < offset && i < len ; i++) {
+            if (code.charAt(i) == '\n') line++;
+        }
+
+        return line;
+    }
+
+    private static class Abort extends RuntimeException {
+        int status;
+
+        Abort(int status, String msg) {
+            super(msg);
+            this.status = status;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            // used for flow control only
+            return this;
+        }
+    }
+}
@@ -48,17 +48,35 @@ public class Report extends EPOCObject<Report> {
         storage.load(this);
     }
 
-    public void setLogPrint(boolean state) { logPrint = state; }
+    public void setLogPrint(boolean state) {
+        logPrint = state;
+        markModified();
+    }
 
-    public void setLogFilename(String fname) { logFilename = fname; }
+    public void setLogFilename(String fname) {
+        logFilename = fname;
+        markModified();
+    }
 
-    public void setCalendarPrint(boolean state) { calendarPrint = state; }
+    public void setCalendarPrint(boolean state) {
+        calendarPrint = state;
+        markModified();
+    }
 
-    public void setCalendarFilename(String fname) { calendarFilename = fname; }
+    public void setCalendarFilename(String fname) {
+        calendarFilename = fname;
+        markModified();
+    }
 
-    public void setDebug(boolean state) { debug = state; }
+    public void setDebug(boolean state) {
+        debug = state;
+        markModified();
+    }
 
-    public void setHeadline(int line, String lineText) { headlines[line-1] = lineText; }
+    public void setHeadline(int line, String lineText) {
+        headlines[line-1] = lineText;
+        markModified();
+    }
 
     public boolean getLogPrint() { return logPrint; }
 
@@ -139,31 +157,49 @@ public class Report extends EPOCObject<Report> {
         return true;
     }
 
+    @Override
+    protected long foldOwnMembers(long fp) {
+        fp = super.foldOwnMembers(fp);
+        fp = Fingerprint.fold(fp, logPrint);
+        fp = Fingerprint.fold(fp, logFilename);
+        fp = Fingerprint.fold(fp, calendarPrint);
+        fp = Fingerprint.fold(fp, calendarFilename);
+
+        return Fingerprint.fold(fp, debug);
+    }
+
     /*
-     * Write self as text, in the form of an R assignment, to FileWriter
+     * Headlines may be shared with a clone and changed in place so aren't
+     * kept in own fingerprint
      */
-    public void writeAsR(FileWriter out, String varName) {
-        try {
-            out.write("# Reporting parameters\n");
-            out.write(varName + "$report <- list(\n");
-            out.write("\tDiagnostics  = list(\n");
-            out.write("\t\t\t\t\tGeneral.output = list(Print = " + (logPrint ? "TRUE" : "FALSE") +
-                      ", Filename = " + (logFilename.equals("") ? "NULL" : "\"" + logFilename) + "\"),\n");
-            out.write("\t\t\t\t\tCalendar = list(Print = " + (calendarPrint ? "TRUE" : "FALSE") +
-                      ", Filename = " + (calendarFilename.equals("") ? "NULL" : "\"" + calendarFilename) + "\")\n");
-            out.write("\t\t\t\t\t),\n");
-            out.write("\tDebug        = " + (debug ? "TRUE" : "FALSE") + ",\n");
-            out.write("\tHeadingLines = list(\n");
-            out.write("\t\t\t\t\tHeading1 = " + (getHeadline(1).equals("") ? "NULL" : "\"" + getHeadline(1) + "\"") + ",\n");
-            out.write("\t\t\t\t\tHeading2 = " + (getHeadline(2).equals("") ? "NULL" : "\"" + getHeadline(2) + "\"") + ",\n");
-            out.write("\t\t\t\t\tHeading3 = " + (getHeadline(3).equals("") ? "NULL" : "\"" + getHeadline(3) + "\"") + ",\n");
-            out.write("\t\t\t\t\tHeading4 = " + (getHeadline(4).equals("") ? "NULL" : "\"" + getHeadline(4) + "\"") + "\n");
-            out.write("\t\t\t\t\t)\n");
-            out.write(")\n");
-        }
-        catch (Exception ex) {
-            ex.printStackTrace();
-        }
+    @Override
+    public long getFingerprint(boolean superficial) {
+        long fp = getOwnFingerprint(superficial);
+        for (int line = 1 ; line <= 4 ; line++) fp = Fingerprint.fold(fp, getHeadline(line));
+
+        return Fingerprint.finish(fp);
+    }
+
+    /*
+     * Write self as text, in the form of an R assignment, to StringBuilder
+     */
+    public void writeAsR(StringBuilder out, String varName) {
+        out.append("# Reporting parameters\n");
+        out.append(varName + "$report <- list(\n");
+        out.append("\tDiagnostics  = list(\n");
+        out.append("\t\t\t\t\tGeneral.output = list(Print = " + (logPrint ? "TRUE" : "FALSE") +
+                  ", Filename = " + (logFilename.equals("") ? "NULL" : "\"" + logFilename) + "\"),\n");
+        out.append("\t\t\t\t\tCalendar = list(Print = " + (calendarPrint ? "TRUE" : "FALSE") +
+                  ", Filename = " + (calendarFilename.equals("") ? "NULL" : "\"" + calendarFilename) + "\")\n");
+        out.append("\t\t\t\t\t),\n");
+        out.append("\tDebug        = " + (debug ? "TRUE" : "FALSE") + ",\n");
+        out.append("\tHeadingLines = list(\n");
+        out.append("\t\t\t\t\tHeading1 = " + (getHeadline(1).equals("") ? "NULL" : "\"" + getHeadline(1) + "\"") + ",\n");
+        out.append("\t\t\t\t\tHeading2 = " + (getHeadline(2).equals("") ? "NULL" : "\"" + getHeadline(2) + "\"") + ",\n");
+        out.append("\t\t\t\t\tHeading3 = " + (getHeadline(3).equals("") ? "NULL" : "\"" + getHeadline(3) + "\"") + ",\n");
+        out.append("\t\t\t\t\tHeading4 = " + (getHeadline(4).equals("") ? "NULL" : "\"" + getHeadline(4) + "\"") + "\n");
+        out.append("\t\t\t\t\t)\n");
+        out.append(")\n");
     }
 
     /**
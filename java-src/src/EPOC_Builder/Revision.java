@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Revision.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import java.util.HashMap;
+
+/*******************************************************************************
+ * Parsed revision such as "2.10.3", held as its numeric components so that
+ * revisions may be ordered and related without splitting or parsing text.
+ * Instances are immutable and interned by text, so each revision in use is
+ * parsed once and may be shared by every object having it.
+ *
+ * Revisions are ordered component by component, a blank revision first and a
+ * revision before its descendants.  A component which is not a number sorts
+ * after all numeric components, as in RevisionKey.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+final class Revision implements Comparable<Revision> {
+
+    static final Revision BLANK = new Revision("");
+
+    // Component value standing for a component which is not a number
+    private static final int NON_NUMERIC = -1;
+    // Revisions interned before the table is cleared, to bound its size
+    private static final int INTERN_LIMIT = 50000;
+
+    private static HashMap<String, Revision> interned = new HashMap();
+
+    private final String text;
+    private final int[] parts;
+    private String key = null;
+
+    private Revision(String text) {
+        this.text = text;
+
+        // as text.split("\\.") would, dropping trailing empty components
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '.') end--;
+        int count = (end > 0 ? 1 : 0);
+        for (int i = 0 ; i < end ; i++) {
+            if (text.charAt(i) == '.') count++;
+        }
+
+        parts = new int[count];
+        int start = 0;
+        for (int p = 0 ; p < count ; p++) {
+            int stop = text.indexOf('.', start);
+            if (stop < 0 || stop > end) stop = end;
+            parts[p] = parse(text, start, stop);
+            start = stop + 1;
+        }
+    }
+
+    /**
+     * Return the revision with text, parsing it only if not already in use
+     * @param text
+     * @return
+     */
+    static Revision of(String text) {
+        if (text == null || text.equals("")) return BLANK;
+
+        synchronized (Revision.class) {
+            Revision rev = interned.get(text);
+            if (rev == null) {
+                if (interned.size() >= INTERN_LIMIT) interned.clear();
+                rev = new Revision(text);
+                interned.put(text, rev);
+            }
+
+            return rev;
+        }
+    }
+
+    /*
+     * Return value of digits in text between start and stop, or NON_NUMERIC
+     */
+    private static int parse(String text, int start, int stop) {
+        if (start >= stop || stop - start > 9) return NON_NUMERIC;
+
+        int value = 0;
+        for (int i = start ; i < stop ; i++) {
+            char ch = text.charAt(i);
+            if (ch < '0' || ch > '9') return NON_NUMERIC;
+            value = value * 10 + (ch - '0');
+        }
+
+        return value;
+    }
+
+    boolean isBlank() {
+        return parts.length == 0;
+    }
+
+    /**
+     * Return number of components
+     * @return
+     */
+    int size() {
+        return parts.length;
+    }
+
+    /**
+     * Return value of component i, or -1 if it is not a number
+     * @param i
+     * @return
+     */
+    int getPart(int i) {
+        return parts[i];
+    }
+
+    /**
+     * Return component i as a key equal to that of any component comparing
+     * equal to it, being its value if a number else its text
+     * @param i
+     * @return
+     */
+    Object getPartKey(int i) {
+        if (parts[i] != NON_NUMERIC) return Integer.valueOf(parts[i]);
+        int st = start(i);
+
+        return text.substring(st, end(st));
+    }
+
+    /**
+     * Return sortable key of this revision as stored in revkey columns
+     * @return
+     */
+    String getKey() {
+        if (key == null) key = RevisionKey.encode(text);
+
+        return key;
+    }
+
+    public int compareTo(Revision rev) {
+        if (rev == this) return 0;
+        if (isBlank() || rev.isBlank()) return (isBlank() ? (rev.isBlank() ? 0 : -1) : 1);
+
+        int len = Math.min(parts.length, rev.parts.length);
+        for (int i = 0 ; i < len ; i++) {
+            int cmp = compareParts(rev, i);
+            if (cmp != 0) return cmp;
+        }
+
+        return (parts.length < rev.parts.length ? -1 : (parts.length > rev.parts.length ? 1 : 0));
+    }
+
+    /*
+     * Compare component i of this with that of rev, non numeric components
+     * by text
+     */
+    private int compareParts(Revision rev, int i) {
+        int p1 = parts[i], p2 = rev.parts[i];
+        if (p1 != NON_NUMERIC && p2 != NON_NUMERIC) return (p1 < p2 ? -1 : (p1 > p2 ? 1 : 0));
+        if (p1 != NON_NUMERIC) return -1;
+        if (p2 != NON_NUMERIC) return 1;
+
+        int s1 = start(i), e1 = end(s1);
+        int s2 = rev.start(i), e2 = rev.end(s2);
+        for (int k = 0 ; k < Math.min(e1 - s1, e2 - s2) ; k++) {
+            char c1 = text.charAt(s1 + k), c2 = rev.text.charAt(s2 + k);
+            if (c1 != c2) return c1 - c2;
+        }
+
+        return (e1 - s1) - (e2 - s2);
+    }
+
+    private int start(int i) {
+        int pos = 0;
+        for (int p = 0 ; p < i ; p++) pos = text.indexOf('.', pos) + 1;
+
+        return pos;
+    }
+
+    private int end(int start) {
+        int stop = text.indexOf('.', start);
+
+        return (stop < 0 ? text.length() : stop);
+    }
+
+    /**
+     * Return true if this is exactly generationGap generations below rev.
+     * Every revision of generationGap components descends from a blank one.
+     * @param rev
+     * @param generationGap
+     * @return
+     */
+    boolean isDescendantOf(Revision rev, int generationGap) {
+        if (rev.isBlank()) return (parts.length == generationGap && !isBlank());
+        if (parts.length != rev.parts.length + generationGap) return false;
+
+        for (int i = 0 ; i < rev.parts.length ; i++) {
+            if (compareParts(rev, i) != 0) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Return this revision raised above rev if both share all but the last
+     * component of this and the last of this is not already above rev's
+     * component there, else this revision.  For example 2.3 above 2.3.4 gives
+     * 2.4, while 2.3 above 3.1 or 2.5 above 2.3 give 2.3 and 2.5.
+     * @param rev
+     * @return
+     */
+    Revision above(Revision rev) {
+        if (isBlank() || rev.isBlank() || parts.length > rev.parts.length) return this;
+
+        int last = parts.length - 1;
+        for (int i = 0 ; i < last ; i++) {
+            if (compareParts(rev, i) != 0) return this;
+        }
+        if (parts[last] == NON_NUMERIC || rev.parts[last] == NON_NUMERIC
+                || parts[last] > rev.parts[last]) return this;
+
+        StringBuilder str = new StringBuilder(text.length() + 2);
+        str.append(text, 0, (last > 0 ? start(last) : 0));
+        str.append(rev.parts[last] + 1);
+
+        return of(str.toString());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || (obj instanceof Revision && ((Revision)obj).text.equals(text));
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * RevisionKey.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+/*******************************************************************************
+ * Sortable encoding of a revision string such as "2.10.3", stored in the
+ * indexed revkey column of each object table.
+ *
+ * Each numeric component is written as its digit count followed by its digits
+ * ("10" becomes "210"), so that components compare numerically as strings,
+ * and components are joined by '.', which sorts below any digit.  Keys then
+ * sort in revision order with every revision directly followed by its
+ * descendants, so the descendants of a revision are the range of keys
+ * beginning with its key and a '.'.  Non numeric components are written
+ * after a '~', sorting above all numeric ones.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+final class RevisionKey {
+
+    static final char SEPARATOR = '.';
+    // Sorts above every numeric component
+    static final String NON_NUMERIC = "~";
+
+    private RevisionKey() { }
+
+    /**
+     * Return sortable key of revision
+     * @param revision
+     * @return
+     */
+    static String encode(String revision) {
+        StringBuilder key = new StringBuilder();
+        String[] bits = (revision != null ? revision : "").split("\\.", -1);
+
+        for (int i = 0 ; i < bits.length ; i++) {
+            if (i > 0) key.append(SEPARATOR);
+            String bit = bits[i].trim();
+            if (isNumeric(bit)) {
+                int start = 0;
+                while (start < bit.length() - 1 && bit.charAt(start) == '0') start++;
+                String digits = bit.substring(start);
+                key.append((char)('0' + digits.length())).append(digits);
+            } else {
+                key.append(NON_NUMERIC).append(bit);
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Return key prefix shared by all descendants of revision, or "" for all
+     * revisions if revision is blank
+     * @param revision
+     * @return
+     */
+    static String descendantPrefix(String revision) {
+        if (revision == null || revision.equals("")) return "";
+
+        return encode(revision) + SEPARATOR;
+    }
+
+    /**
+     * Return exclusive upper bound of keys beginning with prefix whose next
+     * component is numeric
+     * @param prefix
+     * @return
+     */
+    static String numericUpperBound(String prefix) {
+        return prefix + NON_NUMERIC;
+    }
+
+    /**
+     * Return value of numeric component of key starting at offset, or -1 if
+     * it isn't numeric
+     * @param key
+     * @param offset
+     * @return
+     */
+    static int component(String key, int offset) {
+        if (key == null || offset >= key.length()) return -1;
+
+        int len = key.charAt(offset) - '0';
+        if (len < 1 || offset + 1 + len > key.length()) return -1;
+        try {
+            return Integer.parseInt(key.substring(offset + 1, offset + 1 + len));
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    private static boolean isNumeric(String bit) {
+        if (bit.equals("")) return false;
+        for (int i = 0 ; i < bit.length() ; i++) {
+            if (!Character.isDigit(bit.charAt(i)) || bit.charAt(i) > '9') return false;
+        }
+
+        return true;
+    }
+}
@@ -22,10 +22,20 @@ import java.util.ArrayList;
 import javax.swing.tree.*;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 /*******************************************************************************
  * EPOC TreeModel for organising objects into a revision tree.
  *
+ * Objects are filed in a trie keyed on their revision components, so that the
+ * parent of a revision is found by walking its components rather than by
+ * testing it against every other object.  An object is placed under the first,
+ * in comparator order, of the objects having its revision less its last
+ * component, or at the root if there is none.  Objects may be inserted and
+ * removed after the model is built, the tree being kept as a rebuild would
+ * leave it.
+ *
  * @author Troy Robertson
  * @company Australian Antarctic Division
  * @created 14/04/2010
@@ -34,6 +44,11 @@ import java.util.Comparator;
 public class RevisionTreeModel extends DefaultTreeModel {
 
     private Comparator comparator = null;
+    // Trie of revision components, its root standing for a blank revision
+    private RevisionNode revisions = new RevisionNode(null, null);
+    // Tree node and trie node of each object in the model
+    private IdentityHashMap<EPOCObject, DefaultMutableTreeNode> treeNodes = new IdentityHashMap();
+    private IdentityHashMap<EPOCObject, RevisionNode> revisionNodes = new IdentityHashMap();
 
     public RevisionTreeModel(TreeNode rootNode, int compMethod) {
         super(rootNode);
@@ -51,29 +66,137 @@ public class RevisionTreeModel extends DefaultTreeModel {
      * @return universe tree model
      */
     public void buildModel(ArrayList<EPOCObject> list) {
-        Collections.sort(list, comparator);
-        // Repeat while there any orphaned objects left in list
-        int i = 1;
-        while (list.size() > 0) addChildTreeNodes((DefaultMutableTreeNode)super.getRoot(), list, i++);
+        ArrayList<EPOCObject> sorted = (ArrayList<EPOCObject>)list.clone();
+        Collections.sort(sorted, comparator);
+
+        // File every object by revision first, so that each is then placed
+        // under the first object of its parent revision in a single pass
+        ArrayList<DefaultMutableTreeNode> nodes = new ArrayList(sorted.size());
+        for (EPOCObject eo : sorted) {
+            DefaultMutableTreeNode childNode = new DefaultMutableTreeNode(eo);
+            RevisionNode revNode = file(eo, childNode);
+            if (revNode != null) revNode.nodes.add(childNode);
+            nodes.add(childNode);
+        }
+
+        for (DefaultMutableTreeNode childNode : nodes) {
+            DefaultMutableTreeNode parentNode = findParentFor((EPOCObject)childNode.getUserObject());
+            parentNode.insert(childNode, findIndexFor(childNode, parentNode));
+        }
+
+        super.nodeStructureChanged((TreeNode)super.getRoot());
     }
 
     /**
-     * Add any objects from list which are revisions of parent user object (which are generationGap generations from parent),
-     * as child nodes of parent.
-     * @param parent tree node
-     * @param list of all EPOC objects
+     * Insert obj into the tree under the first object of its parent revision.
+     * If obj is now the first of its own revision then the revisions below it
+     * are moved under it.
+     * @param obj
+     * @return tree node of obj
      */
-    private void addChildTreeNodes(DefaultMutableTreeNode parentNode, ArrayList<EPOCObject> list, int generationGap) {
-        DefaultMutableTreeNode childNode;
-        for (EPOCObject eo : (ArrayList<EPOCObject>)list.clone()) {
-            // First work from
-            if (eo.isDescendentOf((EPOCObject)parentNode.getUserObject(), generationGap)) {
-                childNode = new DefaultMutableTreeNode(eo);
-                list.remove(eo);
-                addChildTreeNodes(childNode, list, 1);
-                super.insertNodeInto(childNode, parentNode, findIndexFor(childNode, parentNode));
+    public DefaultMutableTreeNode insert(EPOCObject obj) {
+        DefaultMutableTreeNode childNode = new DefaultMutableTreeNode(obj);
+        RevisionNode revNode = file(obj, childNode);
+
+        DefaultMutableTreeNode parentNode = findParentFor(obj);
+        super.insertNodeInto(childNode, parentNode, findIndexFor(childNode, parentNode));
+        if (revNode == null) return childNode;
+
+        // Position amongst objects of the same revision, after any equal to it
+        int idx = 0;
+        while (idx < revNode.nodes.size() && comparator.compare(obj,
+                (EPOCObject)revNode.nodes.get(idx).getUserObject()) >= 0) idx++;
+
+        if (idx == 0) {
+            if (revNode.nodes.size() > 0) {
+                // Take over the revisions below the previous first object
+                moveChildren(revNode.nodes.get(0), childNode);
+            } else {
+                // Adopt revisions below this one which were orphans
+                for (RevisionNode below : revNode.children.values()) {
+                    for (DefaultMutableTreeNode node : below.nodes) moveNode(node, childNode);
+                }
             }
         }
+        revNode.nodes.add(idx, childNode);
+
+        return childNode;
+    }
+
+    /**
+     * Remove obj from the tree.  Revisions below obj are moved under the next
+     * object of the same revision, or to the root if there is none.
+     * @param obj
+     * @return true if obj was in the tree
+     */
+    public boolean remove(EPOCObject obj) {
+        DefaultMutableTreeNode node = treeNodes.remove(obj);
+        if (node == null) return false;
+
+        RevisionNode revNode = revisionNodes.remove(obj);
+        if (revNode != null) {
+            boolean first = (revNode.nodes.get(0) == node);
+            revNode.nodes.remove(node);
+            if (first) moveChildren(node, (revNode.nodes.size() > 0 ? revNode.nodes.get(0)
+                                                                    : (DefaultMutableTreeNode)super.getRoot()));
+            revNode.prune();
+        }
+        super.removeNodeFromParent(node);
+
+        return true;
+    }
+
+    /**
+     * Return tree node holding obj, or null if obj is not in the tree
+     * @param obj
+     * @return
+     */
+    public DefaultMutableTreeNode getNodeFor(EPOCObject obj) {
+        return treeNodes.get(obj);
+    }
+
+    /*
+     * Record node as the tree node of obj and return the trie node for obj's
+     * revision, creating it as necessary, or null if obj has no revision
+     */
+    private RevisionNode file(EPOCObject obj, DefaultMutableTreeNode node) {
+        treeNodes.put(obj, node);
+
+        Revision rev = obj.getParsedRevision();
+        if (rev.isBlank()) return null;
+
+        RevisionNode revNode = revisions;
+        for (int i = 0 ; i < rev.size() ; i++) revNode = revNode.getChild(rev.getPartKey(i), true);
+        revisionNodes.put(obj, revNode);
+
+        return revNode;
+    }
+
+    /*
+     * Return tree node of the first object having obj's revision less its last
+     * component, or the root node if there is no such object
+     */
+    private DefaultMutableTreeNode findParentFor(EPOCObject obj) {
+        Revision rev = obj.getParsedRevision();
+
+        RevisionNode revNode = revisions;
+        for (int i = 0 ; i < rev.size() - 1 && revNode != null ; i++) revNode = revNode.getChild(rev.getPartKey(i), false);
+        if (revNode == null || revNode.nodes.isEmpty()) return (DefaultMutableTreeNode)super.getRoot();
+
+        return revNode.nodes.get(0);
+    }
+
+    /*
+     * Move all children of fromNode to toNode, last first so that children
+     * comparing equal keep their order
+     */
+    private void moveChildren(DefaultMutableTreeNode fromNode, DefaultMutableTreeNode toNode) {
+        while (fromNode.getChildCount() > 0) moveNode((DefaultMutableTreeNode)fromNode.getLastChild(), toNode);
+    }
+
+    private void moveNode(DefaultMutableTreeNode node, DefaultMutableTreeNode parentNode) {
+        super.removeNodeFromParent(node);
+        super.insertNodeInto(node, parentNode, findIndexFor(node, parentNode));
     }
 
     /**
@@ -101,4 +224,40 @@ public class RevisionTreeModel extends DefaultTreeModel {
         return findIndexFor(childNode, parentNode, half + 1, endIdx);
     }
 
+    /*
+     * Trie node for a revision, holding tree nodes of the objects having that
+     * revision in comparator order
+     */
+    private static class RevisionNode {
+        private RevisionNode parent;
+        private Object key;
+        private HashMap<Object, RevisionNode> children = new HashMap();
+        private ArrayList<DefaultMutableTreeNode> nodes = new ArrayList();
+
+        private RevisionNode(RevisionNode parent, Object key) {
+            this.parent = parent;
+            this.key = key;
+        }
+
+        private RevisionNode getChild(Object key, boolean create) {
+            RevisionNode child = children.get(key);
+            if (child == null && create) {
+                child = new RevisionNode(this, key);
+                children.put(key, child);
+            }
+
+            return child;
+        }
+
+        /*
+         * Remove this and any ancestors left holding nothing from the trie
+         */
+        private void prune() {
+            RevisionNode revNode = this;
+            while (revNode.parent != null && revNode.nodes.isEmpty() && revNode.children.isEmpty()) {
+                revNode.parent.children.remove(revNode.key);
+                revNode = revNode.parent;
+            }
+        }
+    }
 }
@@ -16,6 +16,8 @@
  */
 package au.gov.aad.erm.EPOC_Builder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Vector;
 import java.io.*;
@@ -31,9 +33,11 @@ import static au.gov.aad.erm.EPOC_Builder.Constants.*;
  ******************************************************************************/
 public class Spatial extends EPOCObject<Spatial> {
 
-    //private String polygons = "";
-    private Vector<Vector> polygonsVector = new Vector();
-    private Vector<Vector> overlapsVector = new Vector();
+    // Version of the polygon data written by getPolygonData()
+    private static final int POLYGON_DATA_VERSION = 1;
+
+    private PolygonSet polygons = PolygonSet.EMPTY;
+    private OverlapMatrix overlaps = OverlapMatrix.EMPTY;
 
     /** Creates a new instance of Attribute */
     public Spatial() {
@@ -47,199 +51,140 @@ public class Spatial extends EPOCObject<Spatial> {
         storage.load(this);
     }
 
+    public void setPolygons(PolygonSet polys) {
+        polygons = (polys != null ? polys : PolygonSet.EMPTY);
+        markModified();
+    }
+
+    public void setOverlaps(OverlapMatrix overs) {
+        overlaps = (overs != null ? overs : OverlapMatrix.EMPTY);
+        markModified();
+    }
+
     public void setPolygonsString(String polys) {
-        polygonsVector = stringToVector(polys);
+        setPolygons(PolygonSet.fromCSV(polys));
     }
 
     public void setOverlapsString(String overs) {
-        Vector<Vector> oversVec = new Vector();
-
-        if (overs != null && !overs.equals("")) {
-            for (Object obj : overs.split("\n")) {
-                Vector row = new Vector();
-                // need to remove excess "," at end of each line (except last line)
-                for (Object rObj : ((String)obj).split(",")) {
-                    if (rObj == null || rObj.toString().equals("0") || rObj.toString().equals("")
-                            || rObj.toString().equalsIgnoreCase("FALSE")) {
-                        row.add(Boolean.FALSE);
-                    } else {
-                        row.add(Boolean.TRUE);
-                    }
-                }
-             
-                oversVec.add(row);
-            }
-        }
-
-        overlapsVector = oversVec;
-        //overlapsVector = stringToVector(overs);
+        setOverlaps(OverlapMatrix.fromCSV(overs));
     }
 
     public void setPolygons2D(Object[][] polys2D) {
-        //return polygons;
-        polygonsVector.clear();
-        for (int i = 0 ; i < polys2D.length ; i++) {
-            Vector rVec = new Vector();
-            for (int j = 0 ; j < polys2D[i].length ; j++) {
-                rVec.add(polys2D[i][j]);
-            }
-            polygonsVector.add(rVec);
-        }
+        ArrayList rows = new ArrayList(polys2D.length);
+        for (Object[] row : polys2D) rows.add(Arrays.asList(row));
+        setPolygons(PolygonSet.fromRows(rows));
     }
 
     public void setOverlaps2D(Boolean[][] overs2D) {
-        //return polygons;
-        overlapsVector.clear();
-        for (int i = 0 ; i < overs2D.length ; i++) {
-            Vector rVec = new Vector();
-            for (int j = 0 ; j < overs2D[i].length ; j++) {
-                rVec.add(overs2D[i][j]);
-            }
-            overlapsVector.add(rVec);
-        }
+        ArrayList rows = new ArrayList(overs2D.length);
+        for (Boolean[] row : overs2D) rows.add(Arrays.asList(row));
+        setOverlaps(OverlapMatrix.fromRows(rows));
     }
 
     public void setPolygonsVector(Vector<Vector> polysV) {
-        polygonsVector = polysV;
+        setPolygons(PolygonSet.fromRows(polysV));
     }
 
     public void setOverlapsVector(Vector<Vector> oversV) {
-        overlapsVector = oversV;
+        setOverlaps(OverlapMatrix.fromRows(oversV));
     }
 
-    public String getPolygonsString() {
-        return vectorToString(polygonsVector);
-    }
-
-    public String getOverlapsString() {
-        String pStr = null;
-
-        for (Vector row : overlapsVector) {
-            pStr = (pStr == null ? "" : pStr + ",\n");
-            String rowStr = null;
-            for (Object rObj : row) {
-                rowStr = (rowStr == null ? "" : rowStr + ",");
-                if (rObj == null || rObj.toString().equals("0") || rObj.toString().equals("")
-                            || rObj.toString().equalsIgnoreCase("FALSE")) {
-                    rowStr += "0";
-                } else {
-                     rowStr += "1";
-                }
-               
-                //rowStr += (rObj == null || rObj.toString().equals("") ? replaceChar : rObj.toString());
+    /**
+     * Set polygons and overlaps from data written by getPolygonData()
+     * @param data
+     * @return false if data could not be read
+     */
+    public boolean setPolygonData(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            int version = in.readUnsignedByte();
+            if (version > POLYGON_DATA_VERSION) {
+                throw new IOException("polygon data version " + version + " is newer than this EPOC Builder");
             }
-            pStr += rowStr;
+            PolygonSet polys = PolygonSet.read(in);
+            OverlapMatrix overs = OverlapMatrix.read(in);
+            setPolygons(polys);
+            setOverlaps(overs);
+        } catch (IOException ioe) {
+            Messages.addErrMsg("Spatial (" + shortname + ") polygon data could not be read: " + ioe.getMessage());
+            return false;
         }
 
-        return (pStr == null ? "" : pStr);
-        //return vectorToString(overlapsVector, "0");
+        return true;
     }
 
-    public Object[][] getPolygons2D() {
-        int i = 0;
-        Object[][]arrPolys = new Object[polygonsVector.size()][5];
-        for (Object rObj : polygonsVector) {
-            arrPolys[i] = ((Vector)rObj).toArray(new Object[0]);
-            i++;
+    /**
+     * Return polygons and overlaps in a versioned binary form for storage
+     * @return
+     */
+    public byte[] getPolygonData() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(polygons.size() * 64 + overlaps.size() * overlaps.size() / 8 + 16);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(POLYGON_DATA_VERSION);
+            polygons.write(out);
+            overlaps.write(out);
+            out.flush();
+        } catch (IOException ioe) {
+            // not thrown writing to memory
         }
-        return arrPolys;
+
+        return bytes.toByteArray();
     }
 
-    public Object[][] getOverlaps2D() {
-        return vectorTo2D(overlapsVector);
+    public PolygonSet getPolygons() {
+        return polygons;
     }
 
-    public Vector<Vector> getPolygonsVector() {
-        return polygonsVector;
+    public OverlapMatrix getOverlaps() {
+        return overlaps;
     }
 
-    public Vector<Vector> getPolygonsVectorClone() {
-        Vector<Vector> polygonsCopy = new Vector();
-        for (Vector row : polygonsVector) {
-            Vector rowCopy = new Vector();
-            for (Object rObj : row) rowCopy.add((String)rObj);
-            polygonsCopy.add(rowCopy);
-        }
+    public String[] getPolygonNames() {
+        String[] names = new String[polygons.size()];
+        for (int i = 0 ; i < names.length ; i++) names[i] = polygons.getName(i);
 
-        return polygonsCopy;
+        return names;
     }
 
-    public Vector<Vector> getOverlapsVector() {
-        return overlapsVector;
+    public String getPolygonsString() {
+        return polygons.toCSV();
     }
 
-    public Vector<Vector> getOverlapsVectorClone() {
-        Vector<Vector> overlapsCopy = new Vector();
-        for (Vector row : overlapsVector) {
-            Vector rowCopy = new Vector();
-            for (Object rObj : row) rowCopy.add((Boolean)rObj);
-            overlapsCopy.add(rowCopy);
-        }
-
-        return overlapsCopy;
+    public String getOverlapsString() {
+        return overlaps.toCSV();
     }
 
-    public static Object[][] vectorTo2D(Vector vec) {
-        int i = 0;
-        int j = 0;
-
-        Object[][]arrOvers = new Object[vec.size()][((Vector)vec.get(0)).size()];
-        for (Object rObj : vec) {
-            j = 0;
-            for (Object cObj : (Vector)rObj) {
-                arrOvers[i][j] = cObj;
-                j++;
-            }
-            i++;
-        }
-        
-        return arrOvers;
-    }
-
-    public static Vector stringToVector(String pStr) {
-        Vector polyVec = new Vector();
-
-        if (pStr != null && !pStr.equals("")) {
-            for (Object obj : pStr.split("\n")) {
-                Vector row = new Vector();
-                // need to remove excess "," at end of each line (except last line)
-                for (Object rObj : ((String)obj).split(",")) {
-                    row.add((String)rObj);
-                }
-                /*
-                String[] items = ((String)obj).split(",");
-                int lastIndx = items.length;
-                if (((String)obj).endsWith(",")) lastIndx = lastIndx - 1;
-                for (int i = 0 ; i < items.length ; i++) {
-                    row.add(items[i]);
-                }
-                 * */
-                polyVec.add(row);
-            }
-        }
+    public Object[][] getPolygons2D() {
+        return polygons.to2D();
+    }
 
-        return polyVec;
+    public Object[][] getOverlaps2D() {
+        return overlaps.to2D();
     }
 
-    public static String vectorToString(Vector pVec, String replaceChar) {
-        String pStr = null;
+    /**
+     * Return a new Vector of polygon rows, for table models
+     * @return
+     */
+    public Vector<Vector> getPolygonsVector() {
+        return polygons.toRows();
+    }
 
-        for (Object obj : pVec) {
-            pStr = (pStr == null ? "" : pStr + ",\n");
-            String rowStr = null;
-            for (Object rObj : (Vector)obj) {
-                rowStr = (rowStr == null ? "" : rowStr + ",");
-                rowStr += (rObj == null || rObj.toString().equals("") ? replaceChar : rObj.toString());
-            }
-            pStr += rowStr;
-        }
+    public Vector<Vector> getPolygonsVectorClone() {
+        return polygons.toRows();
+    }
 
-        return(pStr == null ? "" : pStr);
+    /**
+     * Return a new Vector of overlap rows, for table models
+     * @return
+     */
+    public Vector<Vector> getOverlapsVector() {
+        return overlaps.toRows();
     }
 
-    public static String vectorToString(Vector pVec) {
-        
-        return vectorToString(pVec, "");
+    public Vector<Vector> getOverlapsVectorClone() {
+        return overlaps.toRows();
     }
 
     /*
@@ -263,67 +208,85 @@ public class Spatial extends EPOCObject<Spatial> {
     }
 
     /*
-     * Write self as text, in the form of an R assignment, to FileWriter
+     * Write self as text, in the form of an R assignment, to file under dirPath
      */
     public void writeAsR(String dirPath) {
+        REmitter emitter = new REmitter();
+        writeAsR(dirPath, emitter);
+        emitter.finish();
+    }
+
+    /*
+     * Write self as text, in the form of an R assignment, through emitter.
+     * Nothing is written if the file is current in the emitter's manifest.
+     */
+    public void writeAsR(String dirPath, REmitter emitter) {
         File outputFile = new File(dirPath + File.separator + "data" + File.separator + getDisplayName() + ".data.R");
+        // polygon data is not held as EPOC objects so stamp its content too
+        long stamp = GenerationManifest.stamp(0, this);
+        stamp = GenerationManifest.stamp(stamp, polygons.hashCode() + ":" + overlaps.hashCode());
+        if (emitter.isCurrent(outputFile, this, stamp)) return;
         Date dt = new Date();
 
-        try {
-            outputFile.createNewFile();
-            FileWriter out = new FileWriter(outputFile);
-
-            out.write("########################################################\n");
-            out.write("# SPATIAL - " + name + " (" + revision + ")\n");
-            out.write("# Description: " + super.prependEachLine(description, "#              ") + "\n");
-            out.write("#\n");
-            out.write("# Generated by EPOC Builder\n");
-            out.write("# Date: " + dt.toString() + "\n");
-            out.write("########################################################\n\n");
-
-            out.write("# Polygons / Spatial distribution data file\n");
-            out.write("Polygons <- list()\n\n");
-
-            // Signature
-            super.writeSignatureAsR(out, "Polygons");
-
-            // Polygons output stuff
-            String nameStr = "", areaStr = "", coordStr = "", cAreaStr = "", cPropStr = "";
-            int i = 1;
-            for (Object obj : getPolygonsVector()) {
-                nameStr += (nameStr.equals("") ? "" : ",\n") + "\"" + (String)((Vector)obj).get(0) + "\"";
-                areaStr += (areaStr.equals("") ? "" : ",\n") + (String)((Vector)obj).get(1);
-                coordStr += (coordStr.equals("") ? "" : ",\n") + "A" + i + " = c(" + (String)((Vector)obj).get(2) + ")";
-                cAreaStr += (cAreaStr.equals("") ? "" : ",\n") + "A" + i + " = " + (String)((Vector)obj).get(3);
-                cPropStr += (cPropStr.equals("") ? "" : ",\n") + "A" + i + " = " + (String)((Vector)obj).get(4);
-                i++;
-            }
-            out.write("Polygons$polygonNames <- c(\n");
-            out.write("\t" + super.prependEachLine(nameStr, "\t")+"\n");
-            out.write(")\n\n");
-            out.write("Polygons$polygonAreas <- c(\n");
-            out.write("\t" + super.prependEachLine(areaStr, "\t")+"\n");
-            out.write(")\n\n");
-            out.write("Polygons$coords <- list(\n");
-            out.write("\t" + super.prependEachLine(coordStr, "\t")+"\n");
-            out.write(")\n\n");
-            out.write("Polygons$coordAreas <- list(\n");
-            out.write("\t" + super.prependEachLine(cAreaStr, "\t")+"\n");
-            out.write(")\n\n");
-            out.write("Polygons$coordProportions <- list(\n");
-            out.write("\t" + super.prependEachLine(cPropStr, "\t")+"\n");
-            out.write(")\n\n");
-            out.write("Polygons$overlap <- matrix(c(\n");
-            out.write("\t" + super.prependEachLine(getOverlapsString(), "\t")+"\n");
-            out.write("\t), nrow=" + getOverlapsVector().size() + ", byrow=TRUE)\n\n");
-
-            // declare data
-            out.write("Polygons");
-
-            out.close();
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        StringBuilder out = emitter.getBuilder();
+
+        out.append("########################################################\n");
+        out.append("# SPATIAL - " + name + " (" + revision + ")\n");
+        out.append("# Description: " + super.prependEachLine(description, "#              ") + "\n");
+        out.append("#\n");
+        out.append("# Generated by EPOC Builder\n");
+        out.append("# Date: " + dt.toString() + "\n");
+        out.append("########################################################\n\n");
+
+        out.append("# Polygons / Spatial distribution data file\n");
+        out.append("Polygons <- list()\n\n");
+
+        // Signature
+        super.writeSignatureAsR(out, "Polygons");
+
+        // Polygons output stuff
+        int cap = polygons.size() * 16;
+        StringBuilder nameStr = new StringBuilder(cap), areaStr = new StringBuilder(cap), coordStr = new StringBuilder(cap * 8),
+                      cAreaStr = new StringBuilder(cap), cPropStr = new StringBuilder(cap);
+        for (int i = 0 ; i < polygons.size() ; i++) {
+            appendItem(nameStr, "\"" + polygons.getName(i) + "\"");
+            appendItem(areaStr, polygons.getCell(i, PolygonSet.AREA));
+            appendItem(coordStr, "A" + (i + 1) + " = c(" + polygons.getCell(i, PolygonSet.COORDS) + ")");
+            appendItem(cAreaStr, "A" + (i + 1) + " = " + polygons.getCell(i, PolygonSet.COORD_AREA));
+            appendItem(cPropStr, "A" + (i + 1) + " = " + polygons.getCell(i, PolygonSet.COORD_PROP));
         }
+        out.append("Polygons$polygonNames <- c(\n");
+        out.append("\t").append(nameStr).append("\n");
+        out.append(")\n\n");
+        out.append("Polygons$polygonAreas <- c(\n");
+        out.append("\t").append(areaStr).append("\n");
+        out.append(")\n\n");
+        out.append("Polygons$coords <- list(\n");
+        out.append("\t").append(coordStr).append("\n");
+        out.append(")\n\n");
+        out.append("Polygons$coordAreas <- list(\n");
+        out.append("\t").append(cAreaStr).append("\n");
+        out.append(")\n\n");
+        out.append("Polygons$coordProportions <- list(\n");
+        out.append("\t").append(cPropStr).append("\n");
+        out.append(")\n\n");
+        out.append("Polygons$overlap <- matrix(c(\n");
+        out.append("\t" + super.prependEachLine(getOverlapsString(), "\t")+"\n");
+        out.append("\t), nrow=" + overlaps.size() + ", byrow=TRUE)\n\n");
+
+        // declare data
+        out.append("Polygons");
+
+        emitter.emit(outputFile, out, this, stamp);
+    }
+
+    /*
+     * Append item to comma separated list, indenting as each item starts a
+     * new line
+     */
+    private void appendItem(StringBuilder list, String item) {
+        if (list.length() > 0) list.append(",\n\t");
+        list.append(prependEachLine(item, "\t"));
     }
 
     /*
@@ -349,8 +312,8 @@ public class Spatial extends EPOCObject<Spatial> {
     public void updateDataMembersFrom(Spatial spa) {
         super.updateDataMembersFrom(spa);
 
-        polygonsVector = spa.getPolygonsVector();
-        overlapsVector = spa.getOverlapsVector();
+        polygons = spa.getPolygons();
+        overlaps = spa.getOverlaps();
     }
 
     /**
@@ -368,12 +331,20 @@ public class Spatial extends EPOCObject<Spatial> {
         }
 
         // Do any data member comparisons
-        if(!spa.getPolygonsString().equals(getPolygonsString())) return false;
-        if(!spa.getOverlapsString().equals(getOverlapsString())) return false;
+        if(!spa.getPolygons().equals(polygons)) return false;
+        if(!spa.getOverlaps().equals(overlaps)) return false;
 
         return true;
     }
 
+    @Override
+    protected long foldOwnMembers(long fp) {
+        fp = super.foldOwnMembers(fp);
+        fp = Fingerprint.fold(fp, polygons.hashCode());
+
+        return Fingerprint.fold(fp, overlaps.hashCode());
+    }
+
     /**
      * Dummy for EPOCObject to call with recurse default to false
      * @param method
@@ -398,8 +369,8 @@ public class Spatial extends EPOCObject<Spatial> {
         Spatial spa = (Spatial)super.clone(method, uni);
 
         // Hollow out clone
-        spa.polygonsVector = new Vector();
-        spa.overlapsVector = new Vector();
+        spa.polygons = PolygonSet.EMPTY;
+        spa.overlaps = OverlapMatrix.EMPTY;
 
         // Do we just break it?
         if (method == EPOC_BRK) {
@@ -407,10 +378,9 @@ public class Spatial extends EPOCObject<Spatial> {
             return spa;
         }
 
-        // Polygons
-        spa.setPolygonsVector(getPolygonsVectorClone());
-        // Overlaps
-        spa.setOverlapsVector(getOverlapsVectorClone());
+        // Polygons and overlaps are immutable so can be shared
+        spa.setPolygons(polygons);
+        spa.setOverlaps(overlaps);
 
         return spa;
     }
@@ -159,8 +159,8 @@ public class SpatialUI extends OpposingPanelUI {
         if (!spatial.getEPOCID().equals(jTextID.getText())) return true;
         if (!spatial.getDescription().equals(jTextAreaDesc.getText())) return true;
         if (jTablePolygons.getCellEditor() != null) jTablePolygons.getCellEditor().stopCellEditing();
-        if (!spatial.getPolygonsString().equals(Spatial.vectorToString(((DefaultTableModel)jTablePolygons.getModel()).getDataVector()))) return true;
-        if (!Spatial.vectorToString(spatial.getOverlapsVector()).equals(Spatial.vectorToString(modifiedOverlapsVector))) return true;
+        if (!spatial.getPolygons().equals(PolygonSet.fromRows(((DefaultTableModel)jTablePolygons.getModel()).getDataVector()))) return true;
+        if (!spatial.getOverlaps().equals(OverlapMatrix.fromRows(modifiedOverlapsVector))) return true;
 
         return false;
     }
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * StatementCache.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+/*******************************************************************************
+ * Cache of pre-compiled PreparedStatements held against a single connection.
+ * Statements are keyed by the storage operation which uses them so that each
+ * SQL string is only compiled by Derby once per connection.
+ *
+ * Statements handed out remain owned by the cache and must not be closed by
+ * the caller.  Call close() before closing the underlying connection.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+class StatementCache {
+
+    private Connection conn;
+    private HashMap<String, PreparedStatement> statements = new HashMap();
+    private long hits = 0;
+    private long misses = 0;
+
+    StatementCache(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * Return the PreparedStatement cached against key, compiling sql and
+     * caching it first if not yet present.
+     *
+     * @param key storage operation name
+     * @param sql parameterised sql for operation
+     * @return
+     * @throws SQLException
+     */
+    synchronized PreparedStatement prepare(String key, String sql) throws SQLException {
+        PreparedStatement ps = statements.get(key);
+
+        if (ps != null) {
+            hits++;
+            ps.clearParameters();
+        } else {
+            misses++;
+            if (EPOC_DBG) System.out.println("Preparing [" + key + "]: " + sql);
+            ps = conn.prepareStatement(sql);
+            statements.put(key, ps);
+        }
+
+        return ps;
+    }
+
+    Connection getConnection() { return conn; }
+
+    synchronized long getHits() { return hits; }
+
+    synchronized long getMisses() { return misses; }
+
+    synchronized int size() { return statements.size(); }
+
+    /**
+     * Close all cached statements and empty cache.  Hit/miss counters are retained.
+     */
+    synchronized void close() {
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException se) {
+                // connection probably already gone
+            }
+        }
+        statements.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Statement cache: " + statements.size() + " statements, "
+                + hits + " hits, " + misses + " misses";
+    }
+}
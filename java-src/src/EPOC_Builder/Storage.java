@@ -17,6 +17,7 @@
 package au.gov.aad.erm.EPOC_Builder;
 
 import java.util.ArrayList;
+import java.util.Collection;
 
 /*******************************************************************************
  * EPOC Builder Storage interface.  Currently implemented by DerbyStorage only.
@@ -27,6 +28,12 @@ import java.util.ArrayList;
  * @version 0.4.0, 01-09-2010
  ******************************************************************************/
 public interface Storage {
+    /**
+     * Begin a transaction grouping all following saves and deletes until the
+     * matching endTransaction().  May be nested.
+     */
+    void beginTransaction();
+
     /**
      * Attempt to delete EPOC object data members from storage given object's uid
      * Delete all child objects
@@ -43,14 +50,59 @@ public interface Storage {
      */
     boolean delete(EPOCObject obj, boolean delChildren);
 
+    /**
+     * Delete all objs, and their child objects if delChildren, from storage
+     * in a single transaction
+     *
+     * @return number of rows deleted, or -1 on failure
+     */
+    int delete(Collection<? extends EPOCObject> objs, boolean delChildren);
+
+    /**
+     * Remove template links between parent and each of objs in a single
+     * transaction
+     *
+     * @return number of links removed, or -1 on failure
+     */
+    int unlinkTemplates(int parentUID, Collection<? extends EPOCObject> objs);
+
     boolean deleteDB(String dbName);
 
     boolean exportDB(String path);
 
+    /**
+     * Return incremental backups of the open database
+     */
+    BackupManager getBackupManager();
+
     ArrayList getDBAvailableList(boolean excludeCurrent);
 
+    /**
+     * Return size, schema version and last modified time of databases available,
+     * found without opening them
+     */
+    ArrayList<DatabaseCatalogue.DatabaseInfo> getDBCatalogue(boolean excludeCurrent);
+
     String getDBName();
 
+    /**
+     * End transaction begun with beginTransaction(), committing all work when
+     * the outermost transaction ends if it and all nested transactions succeeded,
+     * else rolling it back.
+     *
+     * @return boolean true on success
+     */
+    boolean endTransaction(boolean success);
+
+    /**
+     * Run task once the current outermost transaction has been committed, or
+     * drop it if the transaction is rolled back.  If no transaction is open
+     * task is run at once.
+     *
+     * @param task
+     */
+    void afterCommit(Runnable task);
+
     /**
      * Return any outstanding error message from previous operation
      * null if none exists.
@@ -88,6 +140,26 @@ public interface Storage {
      */
     ArrayList getOrphanedList(int objType);
 
+    /**
+     * Return names of the integrity checks run by checkIntegrity(), in the
+     * order they are numbered
+     */
+    String[] getIntegrityChecks();
+
+    /**
+     * Run integrity check number check, passing each problem found to listener
+     * as it is read, and stopping early if the listener returns false
+     * @param check
+     * @param listener
+     * @return number of problems found, or -1 on failure
+     */
+    int checkIntegrity(int check, IntegrityChecker.Listener listener);
+
+    /**
+     * Return the number of rows written by the current or last completed transaction
+     */
+    int getRowsWritten();
+
     /**
      * If parameter currVer == ""
      * Check storage for EPOC object with highest left-most component and return
@@ -108,6 +180,25 @@ public interface Storage {
 
     boolean loadTemplates(Templates templates, int objType, int excludeUID);
 
+    /**
+     * Return a large text body of object uid, left unloaded when the object
+     * itself was loaded.  Null on failure.
+     * @param body LazyText.ACT_CODE, LazyText.ATT_VALUE or LazyText.CLS_...
+     * @param uid
+     */
+    String loadText(int body, int uid);
+
+    /**
+     * Return statistics of any caching of loaded objects
+     */
+    String getCacheStats();
+
+    /**
+     * Return queue through which writes may be left to a storage thread, to
+     * be grouped into transactions and carried out in the background
+     */
+    StorageWriter getWriter();
+
     /**
      * Attempt to save EPOC object data members from storage given object's uid
      * Save all child objects
@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * StorageWriter.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/*******************************************************************************
+ * Write-behind queue for storage.  Writes are queued by the caller and carried
+ * out later by a single storage thread, so the caller (usually the Swing event
+ * thread) does not wait on the database.
+ *
+ * Writes queued under the same key are coalesced, only the latest being
+ * carried out, so repeated saves of an object or setting write it once.  The
+ * storage thread gathers queued writes for a short time then carries them
+ * all out in one transaction.  Should that transaction fail each write is
+ * retried in a transaction of its own, so one failure does not lose the rest.
+ *
+ * flush() is a barrier, waiting for everything queued before it to be
+ * written, and reporting whether it all succeeded.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public class StorageWriter {
+
+    // Time to gather further writes before writing a group
+    private static final long GATHER_MS = 200;
+
+    private Storage storage;
+    private Thread thread = null;
+
+    // guarded by this
+    private LinkedHashMap<Object, Callable<Boolean>> pending = new LinkedHashMap();
+    private long queuedSeq = 0, writtenSeq = 0;
+    private int flushing = 0;
+    private boolean stopping = false;
+    private boolean failed = false;
+    private int rowsWritten = 0, rowsFlushed = 0;
+
+    StorageWriter(Storage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Queue a save of obj, and of its children if withChildren.  Replaces any
+     * save of obj already queued, keeping withChildren if either asked for it.
+     * A save with children is made through the object's own saveToStorage(),
+     * so that a universe checks its name and carries out its deletes with it.
+     * @param obj
+     * @param withChildren
+     */
+    public synchronized void save(final EPOCObject obj, boolean withChildren) {
+        Object key = new ObjectKey(obj);
+        Callable<Boolean> queued = pending.get(key);
+        final boolean children = withChildren || (queued instanceof SaveWrite && ((SaveWrite)queued).children);
+
+        enqueue(key, new SaveWrite(obj, children));
+    }
+
+    /**
+     * Queue a save of any template objects not used by uni, replacing any
+     * such save for uni already queued
+     * @param uni
+     */
+    public void saveUnusedTemplates(final Universe uni) {
+        write(Arrays.asList("unusedtemplates", new ObjectKey(uni)), new Callable<Boolean>() {
+            public Boolean call() {
+                return uni.saveUnusedTemplateObjects();
+            }
+        });
+    }
+
+    /**
+     * Queue a write of setting, replacing any write of it already queued
+     * @param setting
+     * @param value
+     * @param description
+     */
+    public void setSetting(final String setting, final String value, final String description) {
+        write("setting:" + setting, new Callable<Boolean>() {
+            public Boolean call() {
+                storage.setSetting(setting, value, description);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Queue a write of the last visited universe, replacing any already queued.
+     * Its uid is taken when written, so may be assigned by a save queued before.
+     * @param uni
+     */
+    public void setLastVisited(final Universe uni) {
+        write("lastvisited", new Callable<Boolean>() {
+            public Boolean call() {
+                storage.setLastVisited(uni.getUID());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Queue task, which may make any number of storage writes, to be carried
+     * out in order with other queued writes.  Tasks are never coalesced.
+     * @param task returns false on failure
+     */
+    public void submit(Callable<Boolean> task) {
+        write(new Object(), task);
+    }
+
+    /**
+     * Queue task under key, replacing any task already queued under key
+     * @param key
+     * @param task returns false on failure
+     */
+    public synchronized void write(Object key, Callable<Boolean> task) {
+        enqueue(key, task);
+    }
+
+    private void enqueue(Object key, Callable<Boolean> task) {
+        if (stopping) {
+            // too late to queue so write now
+            runGroup(Collections.singletonList(task));
+            return;
+        }
+        pending.put(key, task);
+        queuedSeq++;
+        if (thread == null) start();
+        notifyAll();
+    }
+
+    /**
+     * Wait until everything queued before this call has been written
+     * @return false if any write since the last flush failed
+     */
+    public synchronized boolean flush() {
+        if (Thread.currentThread() == thread) return !failed;    // can't wait on self
+
+        long target = queuedSeq;
+        flushing++;
+        notifyAll();
+        try {
+            while (writtenSeq < target && thread != null) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        } finally {
+            flushing--;
+        }
+
+        boolean retVal = !failed;
+        failed = false;
+        rowsFlushed = rowsWritten;
+        rowsWritten = 0;
+
+        return retVal;
+    }
+
+    /**
+     * Return the number of rows written by the writes covered by the last flush
+     * @return
+     */
+    public synchronized int getRowsWritten() {
+        return rowsFlushed;
+    }
+
+    /**
+     * Write everything queued then stop the storage thread.  Writes queued
+     * after this are carried out immediately on the calling thread.
+     * @return false if any write since the last flush failed
+     */
+    public boolean shutdown() {
+        boolean retVal = flush();
+
+        Thread t;
+        synchronized (this) {
+            stopping = true;
+            t = thread;
+            notifyAll();
+        }
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return retVal;
+    }
+
+    private void start() {
+        thread = new Thread(new Runnable() {
+            public void run() { writeLoop(); }
+        }, "EPOC storage writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void writeLoop() {
+        while (true) {
+            ArrayList<Callable<Boolean>> group;
+            long groupSeq;
+
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && !stopping) wait();
+                    if (pending.isEmpty()) {
+                        thread = null;
+                        notifyAll();
+                        return;
+                    }
+
+                    // gather more writes unless someone is waiting
+                    long until = System.currentTimeMillis() + GATHER_MS;
+                    long remaining;
+                    while (flushing == 0 && !stopping && (remaining = until - System.currentTimeMillis()) > 0) {
+                        wait(remaining);
+                    }
+                } catch (InterruptedException ie) {
+                    // write what there is
+                }
+
+                group = new ArrayList(pending.values());
+                pending.clear();
+                groupSeq = queuedSeq;
+            }
+
+            boolean ok = runGroup(group);
+
+            synchronized (this) {
+                if (!ok) failed = true;
+                writtenSeq = groupSeq;
+                notifyAll();
+            }
+        }
+    }
+
+    /*
+     * Carry out writes in a single transaction, retrying each in its own
+     * transaction if that fails
+     */
+    private boolean runGroup(List<Callable<Boolean>> group) {
+        if (EPOC_DBG) System.out.println("Storage writer: writing group of " + group.size());
+
+        storage.beginTransaction();
+        boolean ok = true;
+        for (Callable<Boolean> write : group) {
+            if (!run(write)) ok = false;
+        }
+        if (storage.endTransaction(ok)) {
+            addRows(storage.getRowsWritten());
+            return true;
+        }
+        if (group.size() == 1) return false;
+
+        boolean allOk = true;
+        for (Callable<Boolean> write : group) {
+            storage.beginTransaction();
+            if (storage.endTransaction(run(write))) {
+                addRows(storage.getRowsWritten());
+            } else {
+                allOk = false;
+            }
+        }
+
+        return allOk;
+    }
+
+    private boolean run(Callable<Boolean> write) {
+        try {
+            Boolean ok = write.call();
+            return (ok != null && ok);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
+    private synchronized void addRows(int rows) {
+        rowsWritten += rows;
+    }
+
+    /*
+     * Save of a single object
+     */
+    private class SaveWrite implements Callable<Boolean> {
+        EPOCObject obj;
+        boolean children;
+
+        SaveWrite(EPOCObject obj, boolean children) {
+            this.obj = obj;
+            this.children = children;
+        }
+
+        public Boolean call() {
+            if (children) return obj.saveToStorage();
+
+            return storage.save(obj, false);
+        }
+    }
+
+    /*
+     * Key matching an object by identity, as compare() based equality would
+     * coalesce distinct objects
+     */
+    private static class ObjectKey {
+        private EPOCObject obj;
+
+        ObjectKey(EPOCObject obj) { this.obj = obj; }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof ObjectKey && ((ObjectKey)o).obj == obj);
+        }
+
+        @Override
+        public int hashCode() { return System.identityHashCode(obj); }
+    }
+}
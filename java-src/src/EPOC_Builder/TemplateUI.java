@@ -510,8 +510,12 @@ public class TemplateUI extends OpposingPanelUI implements TreeSelectionListener
             element.deleteTemplate(eObj);
         }
 
-        // and reload list
-        loadTemplates();
+        // and remove from list
+        if (EPOC_LIST_ORDERING == DSPL_LST_NM_ASC || EPOC_LIST_ORDERING == DSPL_LST_RV_ASC) {
+            ((DefaultListModel)jListTemplates.getModel()).removeElement(eObj);
+        } else {
+            ((RevisionTreeModel)jTreeTemplates.getModel()).remove(eObj);
+        }
 }//GEN-LAST:event_jButtonDeleteTemplateActionPerformed
 
     /**
@@ -648,9 +652,8 @@ public class TemplateUI extends OpposingPanelUI implements TreeSelectionListener
             if (EPOC_LIST_ORDERING == DSPL_LST_NM_ASC || EPOC_LIST_ORDERING == DSPL_LST_RV_ASC) {
                 ((DefaultListModel)jListTemplates.getModel()).addElement(eObj);
             } else {
-                int childCnt = ((DefaultTreeModel)jTreeTemplates.getModel()).getChildCount(((DefaultTreeModel)jTreeTemplates.getModel()).getRoot());
-                ((DefaultTreeModel)jTreeTemplates.getModel()).insertNodeInto(new DefaultMutableTreeNode(eObj),
-                        (DefaultMutableTreeNode)((DefaultTreeModel)jTreeTemplates.getModel()).getRoot(), childCnt);
+                DefaultMutableTreeNode node = ((RevisionTreeModel)jTreeTemplates.getModel()).insert(eObj);
+                jTreeTemplates.scrollPathToVisible(new TreePath(node.getPath()));
             }
         }
     }
@@ -724,10 +727,8 @@ public class TemplateUI extends OpposingPanelUI implements TreeSelectionListener
             if (EPOC_LIST_ORDERING == DSPL_LST_NM_ASC || EPOC_LIST_ORDERING == DSPL_LST_RV_ASC) {
                 ((DefaultListModel)jListTemplates.getModel()).addElement(newObj);
             } else {
-                int childCnt = ((DefaultTreeModel)jTreeTemplates.getModel()).getChildCount((DefaultMutableTreeNode)jTreeTemplates.getLastSelectedPathComponent());
-                ((DefaultTreeModel)jTreeTemplates.getModel()).insertNodeInto(new DefaultMutableTreeNode(newObj),
-                    (DefaultMutableTreeNode)jTreeTemplates.getLastSelectedPathComponent(), childCnt);
-                jTreeTemplates.expandPath(jTreeTemplates.getSelectionPath());
+                DefaultMutableTreeNode node = ((RevisionTreeModel)jTreeTemplates.getModel()).insert(newObj);
+                jTreeTemplates.scrollPathToVisible(new TreePath(node.getPath()));
             }
         }
     }//GEN-LAST:event_jButtonReviseTemplateActionPerformed
@@ -42,6 +42,14 @@ public class Templates {
     // template delete lists - Not used
     private ArrayList<EPOCObject> deleteTemplateList = new ArrayList();
 
+    // objects sharing these templates which have changes not yet in storage
+    private ChangeJournal journal = new ChangeJournal();
+
+    // object types which have their own template list
+    private static final int[] LIST_TYPES = {OBJ_CLS, OBJ_SPA, OBJ_REP, OBJ_TRI, OBJ_ELE, OBJ_ACT, OBJ_ATT};
+    // uid index of each template list, keyed by list object type
+    private HashMap<Integer, ListIndex> indexes = new HashMap();
+
     Storage storage = DerbyStorage.getInstance();
 
     public Templates() {
@@ -61,9 +69,19 @@ public class Templates {
             storage.loadTemplates(this, OBJ_ELE, 0);
 
             setActionLinkedObjects();
+
+            // resolving links above is not a modification
+            for (EPOCObject eo : getTemplateList(OBJ_ALL)) eo.setObjectModified(false, true);
         }
     }
 
+    /**
+     * Return the journal of objects using these templates which have changes
+     * not yet saved to storage
+     * @return
+     */
+    public ChangeJournal getJournal() { return journal; }
+
     /**
      * Called by constructor to set up action linked objects
      */
@@ -82,12 +100,18 @@ public class Templates {
      * @return
      */
     public boolean isModified() {
-        // retrieve a copy of this universe from storage
-        Templates storedTemplates = new Templates();
+        boolean modified = journal.hasTemplateChanges();
+
+        if (EPOC_DBG_JOURNAL) {
+            // retrieve a copy of these templates from storage and compare them
+            boolean stored = !this.compare(new Templates());
+            if (stored != modified) {
+                System.out.println("Templates change journal (" + modified + ") disagrees with storage ("
+                                   + stored + "): " + journal);
+            }
+        }
 
-        // Compare them
-        if (!this.compare(storedTemplates)) return true;
-        return false;
+        return modified;
     }
 
     /**
@@ -138,8 +162,6 @@ public class Templates {
                 tempList = (ArrayList)elementTemplateList;
         }
 
-        Collections.sort(tempList);
-
         return tempList;
     }
 
@@ -151,22 +173,93 @@ public class Templates {
      * @return
      */
     public EPOCObject getFromTemplateList(int objType, int uid) {
-        for (Object eObj : getTemplateList(objType)) {
-            if (((EPOCObject)eObj).getUID() == uid) return (EPOCObject)eObj;
+        if (objType == OBJ_ALL) {
+            for (int oType : LIST_TYPES) {
+                EPOCObject eObj = getFromTemplateList(oType, uid);
+                if (eObj != null) return eObj;
+            }
+            return null;
+        }
+
+        ListIndex li = getListIndex(objType);
+        if (li == null || uid <= 0) {
+            // not an indexed type or uid, search the long way
+            for (Object eObj : getTemplateList(objType)) {
+                if (((EPOCObject)eObj).getUID() == uid) return (EPOCObject)eObj;
+            }
+            return null;
         }
 
-        return null;
+        EPOCObject eObj = li.get(uid);
+        // Element sub types share the element list
+        if (eObj != null && objType != OBJ_ELE && eObj instanceof Element
+                && ((Element)eObj).getModType() != objType) return null;
+
+        return eObj;
     }
 
     /**
-     * Get a complete ordered listing of all templates of Element class.
+     * Get a complete listing of all templates of Element class, in the order
+     * they were added.  Lists are ordered for display with EPOCObjectListComparator.
      * @return
      */
     public ArrayList<Element> getElementTemplateList() {
-        Collections.sort(elementTemplateList);
         return elementTemplateList;
     }
 
+    /**
+     * Return the index over the template list holding objects of objType,
+     * building it if not yet built.  Returns null if objType has no list.
+     * @param objType
+     * @return
+     */
+    private ListIndex getListIndex(int objType) {
+        ArrayList list;
+        int listType = objType;
+
+        switch (objType) {
+            case OBJ_CLS:
+                list = eclassTemplateList;
+                break;
+            case OBJ_SPA:
+                list = spatialTemplateList;
+                break;
+            case OBJ_REP:
+                list = reportTemplateList;
+                break;
+            case OBJ_TRI:
+                list = trialTemplateList;
+                break;
+            case OBJ_ATT:
+                list = attributeTemplateList;
+                break;
+            case OBJ_ACT:
+                list = actionTemplateList;
+                break;
+            case OBJ_BIO:
+            case OBJ_ENV:
+            case OBJ_ATY:
+            case OBJ_MAN:
+            case OBJ_OUT:
+            case OBJ_PRE:
+            case OBJ_ELE:
+                list = elementTemplateList;
+                listType = OBJ_ELE;
+                break;
+            default:
+                return null;
+        }
+
+        ListIndex li = indexes.get(listType);
+        if (li == null || li.list != list) {
+            // first use or list has been replaced
+            li = new ListIndex(list);
+            indexes.put(listType, li);
+        }
+
+        return li;
+    }
+
     /**
      * This DOES NOT return the list stored by this object.  A new list is made up
      * containing elements of the type requested.
@@ -186,7 +279,6 @@ public class Templates {
                 }
             }
         }
-        Collections.sort(tempList);
 
         return tempList;
     }
@@ -197,6 +289,7 @@ public class Templates {
      * @param objType
      */
     public void setTemplateList(ArrayList templList, int objType) {
+        // indexes are rebuilt on next use as list objects will differ
 
         switch (objType) {
             case OBJ_SPA:
@@ -223,8 +316,12 @@ public class Templates {
      */
     public void addTemplateList(ArrayList templList, int objType) {
         ArrayList lst = getTemplateList(objType);
+        ListIndex li = getListIndex(objType);
 
-        for (Object obj : templList) { lst.add(obj); }
+        for (Object obj : templList) {
+            lst.add(obj);
+            if (li != null) li.add((EPOCObject)obj);
+        }
     }
 
      /**
@@ -234,6 +331,8 @@ public class Templates {
     public void addTemplateList(EPOCObject obj) {
         // get appropriate template list and add object
         getTemplateList(obj.getObjType()).add(obj);
+        ListIndex li = getListIndex(obj.getObjType());
+        if (li != null) li.add(obj);
     }
 
     /**
@@ -268,6 +367,19 @@ public class Templates {
     public void removeTemplateList(EPOCObject obj) {
         // get appropriate template list and remove object
         getTemplateList(obj.getObjType()).remove(obj);
+        ListIndex li = getListIndex(obj.getObjType());
+        if (li != null) li.remove(obj);
+    }
+
+    /**
+     * Re-key obj in the uid index of its template list, its uid having
+     * changed from oldUID.  Does nothing if obj is not indexed there.
+     * @param obj
+     * @param oldUID
+     */
+    void uidChanged(EPOCObject obj, int oldUID) {
+        ListIndex li = indexes.get(obj.getObjType());
+        if (li != null) li.rekey(obj, oldUID);
     }
 
     /**
@@ -292,12 +404,9 @@ public class Templates {
     public boolean doTemplateDeletes() {
                 
         // Action Templates deletes
-        for (EPOCObject eObj : deleteTemplateList) {
-
-            if (!storage.delete(eObj)) return false;
-        }
-        // reset list to empty
-        deleteTemplateList.clear();
+        if (storage.delete(deleteTemplateList, true) < 0) return false;
+        // reset list to empty once the deletes are committed
+        EPOCObject.clearAfterCommit(storage, deleteTemplateList);
 
         return true;
     }
@@ -357,4 +466,174 @@ public class Templates {
 
         return tclone;
     }
+
+    /**
+     * Return a new matcher finding templates comparable with objects by their
+     * fingerprints.  Only valid while the templates are left unchanged.
+     * @return
+     */
+    public Matcher getMatcher() {
+        return new Matcher();
+    }
+
+    /**
+     * Finds the first template in a template list which superficially compares
+     * with an object, by looking up the object's fingerprint among those of
+     * the templates.  Each list is fingerprinted when first searched, so a
+     * matcher should only be used while the templates are left unchanged, such
+     * as over all members of an object being substituted with templates.
+     */
+    public class Matcher {
+        // template lists searched, keyed by object type or element module type
+        private HashMap<Integer, ArrayList<EPOCObject>> lists = new HashMap();
+        // positions in each list of templates having each fingerprint
+        private HashMap<Integer, HashMap<Long, ArrayList<Integer>>> prints = new HashMap();
+        // positions in each list of templates without a fingerprint (broken links)
+        private HashMap<Integer, ArrayList<Integer>> unprinted = new HashMap();
+
+        private Matcher() {}
+
+        public Templates getTemplates() {
+            return Templates.this;
+        }
+
+        /**
+         * Return first template comparable with obj, else null
+         * @param obj
+         * @return
+         */
+        public EPOCObject find(EPOCObject obj) {
+            int listType = (obj instanceof Element ? ((Element)obj).getModType() : obj.getObjType());
+            ArrayList<EPOCObject> list = lists.get(listType);
+            if (list == null) list = index(listType);
+
+            long fp = obj.getFingerprint(true);
+            if (fp == Fingerprint.NONE) {
+                // obj has broken links so may compare with any template
+                for (EPOCObject eo : list) {
+                    if (obj.compare(eo, true)) return eo;
+                }
+
+                return null;
+            }
+
+            // candidates in list order, from those sharing fp and those without one
+            ArrayList<Integer> same = prints.get(listType).get(fp);
+            ArrayList<Integer> none = unprinted.get(listType);
+            int i = 0, j = 0;
+            int sameCnt = (same != null ? same.size() : 0);
+            while (i < sameCnt || j < none.size()) {
+                int pos;
+                if (j >= none.size() || (i < sameCnt && same.get(i) < none.get(j))) {
+                    pos = same.get(i++);
+                } else {
+                    pos = none.get(j++);
+                }
+                if (obj.compare(list.get(pos), true)) return list.get(pos);
+            }
+
+            return null;
+        }
+
+        private ArrayList<EPOCObject> index(int listType) {
+            ArrayList<EPOCObject> list = new ArrayList();
+            if (listType == OBJ_BIO || listType == OBJ_ENV || listType == OBJ_ATY
+                    || listType == OBJ_MAN || listType == OBJ_OUT || listType == OBJ_PRE) {
+                list.addAll(getElementTemplateList(listType));
+            } else {
+                list.addAll(getTemplateList(listType));
+            }
+
+            HashMap<Long, ArrayList<Integer>> fps = new HashMap();
+            ArrayList<Integer> none = new ArrayList();
+            for (int i = 0 ; i < list.size() ; i++) {
+                long fp = list.get(i).getFingerprint(true);
+                if (fp == Fingerprint.NONE) {
+                    none.add(i);
+                } else {
+                    ArrayList<Integer> same = fps.get(fp);
+                    if (same == null) {
+                        same = new ArrayList(1);
+                        fps.put(fp, same);
+                    }
+                    same.add(i);
+                }
+            }
+            lists.put(listType, list);
+            prints.put(listType, fps);
+            unprinted.put(listType, none);
+
+            return list;
+        }
+    }
+
+    /**
+     * Index of a template list by uid.  Templates without a uid yet (not
+     * stored) are held as pending and indexed once they have one.  Templates
+     * are re-keyed as their uids change, so a uid given up by one template
+     * and a new uid given to it are both found.
+     */
+    private static class ListIndex {
+        ArrayList list;
+        UIDIndex<EPOCObject> uids;
+        ArrayList<EPOCObject> pending = new ArrayList();
+
+        ListIndex(ArrayList list) {
+            this.list = list;
+            uids = new UIDIndex(list.size());
+            for (Object obj : list) add((EPOCObject)obj);
+        }
+
+        void add(EPOCObject obj) {
+            if (obj.getUID() > 0) {
+                uids.putIfAbsent(obj.getUID(), obj);
+            } else {
+                pending.add(obj);
+            }
+        }
+
+        void remove(EPOCObject obj) {
+            if (uids.get(obj.getUID()) == obj) uids.remove(obj.getUID());
+            pending.remove(obj);
+        }
+
+        void rekey(EPOCObject obj, int oldUID) {
+            if (oldUID > 0 && uids.get(oldUID) == obj) {
+                uids.remove(oldUID);
+            } else if (!pending.remove(obj)) {
+                return;     // not indexed here
+            }
+            EPOCObject held = uids.get(obj.getUID());
+            if (held != null && held.getUID() != obj.getUID()) {
+                // the new uid is still held by a template whose uid changed unseen
+                uids.remove(obj.getUID());
+                pending.add(held);
+            }
+            add(obj);
+        }
+
+        EPOCObject get(int uid) {
+            EPOCObject obj = uids.get(uid);
+
+            if (obj != null && obj.getUID() != uid) {
+                // uid changed since indexed (eg broken or save rolled back)
+                uids.remove(uid);
+                pending.add(obj);
+                obj = null;
+            }
+            if (obj == null && !pending.isEmpty()) {
+                // index any new templates which have since been saved
+                for (int i = pending.size() - 1 ; i >= 0 ; i--) {
+                    EPOCObject pObj = pending.get(i);
+                    if (pObj.getUID() > 0) {
+                        uids.putIfAbsent(pObj.getUID(), pObj);
+                        pending.remove(i);
+                    }
+                }
+                obj = uids.get(uid);
+            }
+
+            return obj;
+        }
+    }
 }
@@ -115,33 +115,32 @@ public class TimelineUI extends javax.swing.JFrame {
             for (Action act : ele.getActions()) {
                 String nm = ele.getDisplayName() + " - " + act.getDisplayName();
                 
-                Timestep[] steps = (Timestep[])act.getTimestepArrayClone(ele.getBirthDay(), 
-                                                                         ele.getBirthMonth());
-                if (steps.length > 0) {
-                    int stDay = steps[0].getStartDay();
-                    int stMth = steps[0].getStartMonth();
-                    int enDay = steps[steps.length-1].getEndDay();
-                    int enMth = steps[steps.length-1].getEndMonth();
+                TimestepIndex steps = act.getTimestepIndex(ele.getBirthDay(), ele.getBirthMonth());
+                if (steps.size() > 0) {
+                    TimestepIndex.Span first = steps.getSpan(0);
+                    TimestepIndex.Span last = steps.getSpan(steps.size() - 1);
+                    int stDay = first.getStartDay();
+                    int stMth = first.getStartMonth();
+                    int enDay = last.getEndDay();
+                    int enMth = last.getEndMonth();
                     
                     // Need to check if timesteps rollover past Dec31
-                    //if (steps[steps.length-1].getEndMonth() < steps[steps.length-1].getStartMonth()) {
-                    if (enMth < stMth || (enMth == stMth && enDay < stDay)) {
+                    if (last.getEnd() < first.getStart()) {
                         stDay = 1; stMth = 1;           // earliest will be beginning year
                         enDay = 31; enMth = 12;         // latest will be end year
                     }
                     
                     Task tsk = new Task(nm, toStartDate(stDay, stMth), toEndDate(enDay, enMth));
 
-                    for (int k = 0; k < steps.length; k++) {
-                        stDay = steps[k].getStartDay();
-                        stMth = steps[k].getStartMonth();
-                        enDay = steps[k].getEndDay();
-                        enMth = steps[k].getEndMonth();
+                    for (int k = 0; k < steps.size(); k++) {
+                        TimestepIndex.Span step = steps.getSpan(k);
+                        stDay = step.getStartDay();
+                        stMth = step.getStartMonth();
+                        enDay = step.getEndDay();
+                        enMth = step.getEndMonth();
                         
                         // split timestep if timestep rollsover past Dec31
-                        if (steps[k].getEndMonth() < steps[k].getStartMonth()
-                                || (steps[k].getEndMonth() == steps[k].getStartMonth()
-                                && steps[k].getEndDay() < steps[k].getStartDay())) {
+                        if (step.isWrapped()) {
                             tsk.addSubtask(new Task(nm + String.valueOf(k) + "-1", 
                                     toStartDate(stDay, stMth), toEndDate(31, 12))); // till end of year
                             stDay = 1; stMth = 1;   // 2nd part will start back at beginning of year
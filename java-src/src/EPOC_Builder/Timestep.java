@@ -41,6 +41,9 @@ public class Timestep extends EPOCObject<Timestep> {
     private Action action = null;
     private Attribute dataset = null;
 
+    // Count of changes to the dates of any timestep, for TimestepIndex
+    private static volatile int stepChanges = 0;
+
     /** Creates a new instance of Timestep */
     public Timestep() {
     }
@@ -54,49 +57,70 @@ public class Timestep extends EPOCObject<Timestep> {
     public void setAction(Action act) {
         action = act;
         actionUID = 0;
+        markModified();
     }
 
     /*
      * Update timestep start and end date values if passed value != 0
      */
     public void setSteps(int sd, int sm, int ed, int em) {
-        if (sd != 0) startday = sd;
-        if (sm != 0) startmonth = sm;
-        if (ed != 0) endday = ed;
-        if (em != 0) endmonth = em;
+        if (sd != 0) setStartDay(sd);
+        if (sm != 0) setStartMonth(sm);
+        if (ed != 0) setEndDay(ed);
+        if (em != 0) setEndMonth(em);
+        markModified();
     }
 
     public void setStartDay(int sd) {
+        if (sd != startday) stepChanges++;
         startday = sd;
+        markModified();
     }
 
     public void setStartMonth(int sm) {
+        if (sm != startmonth) stepChanges++;
         startmonth = sm;
+        markModified();
     }
 
     public void setEndDay(int ed) {
+        if (ed != endday) stepChanges++;
         endday = ed;
+        markModified();
     }
 
     public void setEndMonth(int em) {
+        if (em != endmonth) stepChanges++;
         endmonth = em;
+        markModified();
+    }
+
+    /*
+     * Return count of changes to the dates of any timestep
+     */
+    static int getStepChanges() {
+        return stepChanges;
     }
 
     public void setStepType(int stType) {
         steptype = stType;
+        markModified();
     }
 
     public void setStepTiming(int stTime) {
         steptiming = stTime;
+        markModified();
     }
 
     public void setDatasetUID(int ds) {
         datasetUID = ds;
+        markModified();
     }
 
     public void setDataset(Attribute ds) {
         dataset = ds;
         datasetUID = 0;
+        markModified();
     }
 
     public Action getAction() {
@@ -184,6 +208,29 @@ public class Timestep extends EPOCObject<Timestep> {
         return true;
     }
 
+    @Override
+    protected long foldOwnMembers(long fp) {
+        fp = super.foldOwnMembers(fp);
+        fp = Fingerprint.fold(fp, startday);
+        fp = Fingerprint.fold(fp, startmonth);
+        fp = Fingerprint.fold(fp, endday);
+        fp = Fingerprint.fold(fp, endmonth);
+        fp = Fingerprint.fold(fp, steptype);
+
+        return Fingerprint.fold(fp, steptiming);
+    }
+
+    @Override
+    public long getFingerprint(boolean superficial) {
+        if (isBroken()) return Fingerprint.NONE;
+
+        long fp = getOwnFingerprint(superficial);
+        fp = Fingerprint.fold(fp, getAction(), superficial);
+        fp = Fingerprint.fold(fp, getDataset(), superficial);
+
+        return Fingerprint.finish(fp);
+    }
+
     /**
      * Turn this object into a fresh new object which will be saved as
      * such.
@@ -200,8 +247,8 @@ public class Timestep extends EPOCObject<Timestep> {
         }
     }
 
-    // Write self as text, in the form of an R assignment, to FileWriter
-    public void writeAsR(FileWriter out) {
+    // Write self as text, in the form of an R assignment, to StringBuilder
+    public void writeAsR(StringBuilder out) {
         
         try {
             /*
@@ -267,6 +314,26 @@ public class Timestep extends EPOCObject<Timestep> {
         }
     }
 
+    /**
+     * Return a clone of this timestep having the dates passed.  The clone is
+     * not counted as a change of dates as it belongs to no list.
+     * @param sd
+     * @param sm
+     * @param ed
+     * @param em
+     * @return
+     */
+    Timestep cloneWithSteps(int sd, int sm, int ed, int em) {
+        Timestep ts = clone(EPOC_CLN, null);
+        ts.startday = sd;
+        ts.startmonth = sm;
+        ts.endday = ed;
+        ts.endmonth = em;
+        ts.markModified();
+
+        return ts;
+    }
+
     /**
      * Check if object passed is linked to this Timestep
      * @param obj
@@ -303,9 +370,11 @@ public class Timestep extends EPOCObject<Timestep> {
         if (linkObj.getClass() == replObj.getClass()) {
             if (linkObj instanceof Action && action != null && linkObj.equals(action)) {
                 action = (Action)replObj;
+                markModified();
             }
             if (linkObj instanceof Attribute && dataset != null && linkObj.equals(dataset)) {
                 dataset = (Attribute)replObj;
+                markModified();
             }
         }
     }
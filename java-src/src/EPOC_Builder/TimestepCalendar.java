@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * TimestepCalendar.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+/*******************************************************************************
+ * Calendar of an element's timestep slices: the timesteps of all its
+ * timestep actions ordered by start date and grouped into periods, a new
+ * period beginning at each new start date and at each knife edge timestep.
+ *
+ * Only the structure is held, as arrays of period start dates and of the
+ * action and timestep of each entry.  Names, step types and timings,
+ * datasets, transforms and related elements are read as the calendar is
+ * written out, so a calendar stays valid until the element's timestep
+ * actions or their timesteps' dates change.  Element holds on to the last one
+ * built and replaces it through of().
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+final class TimestepCalendar {
+
+    /*
+     * Order of timesteps by start date, knife edge timesteps first, as given
+     * by Timestep.compareTo once birthdays have been replaced
+     */
+    private static final Comparator<Entry> START_ORDER = new Comparator<Entry>() {
+        public int compare(Entry e1, Entry e2) {
+            if (e1.span.getStartMonth() == e2.span.getStartMonth()) {
+                if (e1.span.getStartDay() == e2.span.getStartDay()) {
+                    if (e1.span.isKnifeEdge()) return -1;
+                    if (e2.span.isKnifeEdge()) return 1;
+                }
+                return e1.span.getStartDay() - e2.span.getStartDay();
+            }
+            return e1.span.getStartMonth() - e2.span.getStartMonth();
+        }
+    };
+
+    private final int birthDay, birthMonth;
+    // Element actions when built, with the timestep index of each timestep action
+    private final Action[] actions;
+    private final TimestepIndex[] indexes;
+
+    // Start date of each period and index of the entry following its last
+    private final int[] periodDay, periodMonth, periodEnd;
+    // Action (index into actions) and timestep of each entry, in order
+    private final int[] entryAction;
+    private final Timestep[] entryTimestep;
+
+    private TimestepCalendar(ArrayList<Action> actList, int bDay, int bMth) {
+        birthDay = bDay;
+        birthMonth = bMth;
+        actions = actList.toArray(new Action[actList.size()]);
+        indexes = new TimestepIndex[actions.length];
+
+        // gather each action's timesteps in start order, then all of them
+        ArrayList<Entry> entries = new ArrayList();
+        for (int a = 0 ; a < actions.length ; a++) {
+            if (!actions[a].isAction()) continue;
+            indexes[a] = actions[a].getTimestepIndex(bDay, bMth);
+
+            ArrayList<Timestep> tsList = actions[a].getTimesteps();
+            Entry[] actEntries = new Entry[tsList.size()];
+            for (int i = 0 ; i < actEntries.length ; i++) {
+                actEntries[i] = new Entry(a, indexes[a].getSpan(tsList.get(i)));
+            }
+            Arrays.sort(actEntries, START_ORDER);
+            entries.addAll(Arrays.asList(actEntries));
+        }
+        Collections.sort(entries, START_ORDER);
+
+        entryAction = new int[entries.size()];
+        entryTimestep = new Timestep[entries.size()];
+        int[] day = new int[entries.size()], mth = new int[entries.size()], end = new int[entries.size()];
+        int periods = 0, currDay = 0, currMth = 0;
+        for (int i = 0 ; i < entryAction.length ; i++) {
+            TimestepIndex.Span span = entries.get(i).span;
+            entryAction[i] = entries.get(i).action;
+            entryTimestep[i] = span.getTimestep();
+
+            if (span.getStartDay() != currDay || span.getStartMonth() != currMth || span.isKnifeEdge()) {
+                currDay = span.getStartDay();
+                currMth = span.getStartMonth();
+                if (periods > 0) end[periods - 1] = i;
+                day[periods] = currDay;
+                mth[periods] = currMth;
+                periods++;
+            }
+        }
+        if (periods > 0) end[periods - 1] = entryAction.length;
+
+        periodDay = Arrays.copyOf(day, periods);
+        periodMonth = Arrays.copyOf(mth, periods);
+        periodEnd = Arrays.copyOf(end, periods);
+    }
+
+    /**
+     * Return calendar for actList and the birthday passed, reusing cached if
+     * it was built for them and none of their timesteps have changed since
+     * @param cached calendar last returned for the element, or null
+     * @param actList element actions
+     * @param bDay
+     * @param bMth
+     * @return
+     */
+    static TimestepCalendar of(TimestepCalendar cached, ArrayList<Action> actList, int bDay, int bMth) {
+        if (cached != null && cached.isCurrent(actList, bDay, bMth)) return cached;
+
+        return new TimestepCalendar(actList, bDay, bMth);
+    }
+
+    private boolean isCurrent(ArrayList<Action> actList, int bDay, int bMth) {
+        if (bDay != birthDay || bMth != birthMonth || actList.size() != actions.length) return false;
+
+        for (int a = 0 ; a < actions.length ; a++) {
+            Action act = actList.get(a);
+            if (act != actions[a] || act.isAction() != (indexes[a] != null)) return false;
+            if (indexes[a] != null && act.getTimestepIndex(bDay, bMth) != indexes[a]) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Return number of periods
+     * @return
+     */
+    int getPeriodCount() {
+        return periodDay.length;
+    }
+
+    /**
+     * Append R list items, one for each period, listing the actions
+     * executed in it for element shortname
+     * @param out
+     * @param shortname
+     */
+    void writeAsR(StringBuilder out, String shortname) {
+        int first = 0;
+        for (int p = 0 ; p < periodDay.length ; p++) {
+            if (p > 0) out.append("\n\t\t)\n\t),\n");
+            out.append("\tTimestep_").append(p + 1).append(" = list(calday = dayFromDate(")
+               .append(periodDay[p]).append(", ").append(periodMonth[p]).append("),\n");
+            out.append("\t\tactionsN=NULL,\n");
+            out.append("\t\tactions=list(\n");
+
+            for (int i = first ; i < periodEnd[p] ; i++) {
+                if (i > first) out.append(",\n");
+                writeEntryAsR(out, shortname, actions[entryAction[i]], entryTimestep[i]);
+            }
+            first = periodEnd[p];
+        }
+        if (periodDay.length > 0) out.append("\n\t\t)\n\t)\n");   // end actions list and timestep
+    }
+
+    /*
+     * Append R list item for act executed at timestep ts
+     */
+    private static void writeEntryAsR(StringBuilder out, String shortname, Action act, Timestep ts) {
+        Attribute dsAtt = (act.isSetup() ? act.getDataset() : ts.getDataset());
+        Action stpAct = act.getTransform();
+
+        out.append("\t\t\t").append(act.getShortName()).append(" = list(\n");
+        out.append("\t\t\t\t\tactionMethod      = \"").append(act.getDisplayName()).append("\",\n");
+        out.append("\t\t\t\t\tactionFile        = file.path(RootPath, \"code\", \"").append(act.getDisplayName()).append(".R\"),\n");
+        out.append("\t\t\t\t\tTS_type           = \"").append(EPOCObject.getTSTypeName(ts.getStepType())).append("\",\n");
+        out.append("\t\t\t\t\tTS_timing         = \"").append(EPOCObject.getTSTypeName(ts.getStepTiming())).append("\",\n");
+        out.append("\t\t\t\t\tTransformToPeriod = ");
+        if (stpAct == null) {
+            out.append("NULL");
+        } else {
+            out.append("list(actionMethod = \"").append(stpAct.getDisplayName()).append("\",\n");
+            out.append("\t\t\t\t\t\t\t\t\t\t\t actionFile = file.path(RootPath, \"code\", \"").append(stpAct.getDisplayName()).append(".R\"),\n");
+            out.append("\t\t\t\t\t\t\t\t\t\t\t dset       = NULL)");
+        }
+        out.append(",\n");
+
+        // related elements
+        out.append("\t\t\t\t\trelated.elements  = ");
+        if (act.getRelatedElements().isEmpty()) {
+            out.append("NULL,\n");
+        } else {
+            out.append("matrix(c(");
+            boolean firstRel = true;
+            for (Element rEle : act.getRelatedElements()) {
+                if (!firstRel) out.append(", ");
+                firstRel = false;
+                out.append("\"").append(EPOCObject.getObjectTypeName(rEle.getModType()))
+                   .append("\", \"").append(rEle.getShortName()).append("\"");
+            }
+            out.append("), ncol=2, byrow=TRUE),\n");
+        }
+        out.append("\t\t\t\t\tdset              = ");
+        if (dsAtt == null) {
+            out.append("NULL");
+        } else {
+            out.append(shortname).append("$").append(dsAtt.getShortName());
+        }
+        out.append("\n\t\t\t)");
+    }
+
+    /*
+     * Timestep of a timestep action while the calendar is built
+     */
+    private static final class Entry {
+        private final int action;
+        private final TimestepIndex.Span span;
+
+        private Entry(int action, TimestepIndex.Span span) {
+            this.action = action;
+            this.span = span;
+        }
+    }
+}
@@ -32,6 +32,8 @@ import java.awt.*;
 public class TimestepCellRenderer extends JPanel implements ListCellRenderer{
     JLabel act, start, end, type, time, dset;
     JButton pick;
+    // Index of the listed timesteps, used to show birthdays and overlaps
+    TimestepIndex tsIndex = null;
     
     TimestepCellRenderer() {
         setLayout(new GridLayout(0,5));
@@ -61,6 +63,11 @@ public class TimestepCellRenderer extends JPanel implements ListCellRenderer{
         this.add(dset);
     }
 
+    TimestepCellRenderer(TimestepIndex index) {
+        this();
+        tsIndex = index;
+    }
+
     public Component getListCellRendererComponent(JList list, Object value, int index,
                                                 boolean isSelected, boolean cellHasFocus){
         Color fcol = list.getForeground();
@@ -87,6 +94,13 @@ public class TimestepCellRenderer extends JPanel implements ListCellRenderer{
                 (step.getStartDay() > 0 && step.getStartDay() < 99 ? step.getStartDay() : ""));
         end.setText(intToMonth(step.getEndMonth()) + " " + 
                 (step.getEndDay() > 0 && step.getEndDay() < 99 ? step.getEndDay() : ""));
+        // Show actual birthday and mark timesteps overlapping another
+        TimestepIndex.Span span = (tsIndex != null ? tsIndex.getSpan(step) : null);
+        boolean overlaps = (span != null && tsIndex.getOverlapping(step) != null);
+        start.setToolTipText(span != null && step.getStartMonth() == 99
+                ? intToMonth(span.getStartMonth()) + " " + span.getStartDay() : null);
+        end.setToolTipText(span != null && step.getEndMonth() == 99
+                ? intToMonth(span.getEndMonth()) + " " + span.getEndDay() : null);
         type.setText(intToType(step.getStepType()));
         time.setText(intToTime(step.getStepTiming()));
         // Dataset
@@ -116,9 +130,9 @@ public class TimestepCellRenderer extends JPanel implements ListCellRenderer{
         }
         
         if (isSelected){
-            start.setBackground(list.getSelectionBackground());
+            start.setBackground(overlaps ? Color.RED : list.getSelectionBackground());
             start.setForeground(list.getSelectionForeground());
-            end.setBackground(list.getSelectionBackground());
+            end.setBackground(overlaps ? Color.RED : list.getSelectionBackground());
             end.setForeground(list.getSelectionForeground());
             type.setBackground(list.getSelectionBackground());
             type.setForeground(list.getSelectionForeground());
@@ -137,9 +151,9 @@ public class TimestepCellRenderer extends JPanel implements ListCellRenderer{
             act.setBackground(list.getBackground());
             act.setForeground(fcol);
             start.setBackground(list.getBackground());
-            start.setForeground(list.getForeground());
+            start.setForeground(overlaps ? Color.RED : list.getForeground());
             end.setBackground(list.getBackground());
-            end.setForeground(list.getForeground());
+            end.setForeground(overlaps ? Color.RED : list.getForeground());
             type.setBackground(list.getBackground());
             type.setForeground(list.getForeground());
             time.setBackground(list.getBackground());
@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * TimestepIndex.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/*******************************************************************************
+ * Index of a list of timesteps for a given birthday.  Each timestep is held as
+ * a span of days of a (non leap) year with its birthday placeholders (99)
+ * replaced, a span crossing Dec 31 being split into two intervals.  The
+ * intervals are kept in an interval tree, laid out as a sorted array, so that
+ * overlaps are found without comparing against every timestep.
+ *
+ * An index is immutable.  Owners hold on to the last one built and replace it,
+ * through of(), once their list or any timestep's dates have changed.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public final class TimestepIndex {
+
+    // Days in the year, Dec 31 being the last
+    public static final int DAYS_IN_YEAR = 365;
+    // Placeholder for the birth day or month in timestep dates
+    public static final int BIRTHDAY = 99;
+
+    // Days before the first of each month, indexed by month
+    private static final int[] DAYS_BEFORE = {0, 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+
+    private final ArrayList<Timestep> timesteps;
+    private final int size;
+    private final int birthDay, birthMonth;
+    private final int stepChanges;
+
+    private final Span[] spans;
+    private final IdentityHashMap<Timestep, Span> spanOf;
+
+    // Interval tree: intervals sorted by start day, each holding the latest
+    // end day of the subtree rooted at it
+    private final int[] lo, hi, maxHi;
+    private final Span[] owner;
+
+    private TimestepIndex(ArrayList<Timestep> tsList, int bDay, int bMth) {
+        timesteps = tsList;
+        size = tsList.size();
+        birthDay = bDay;
+        birthMonth = bMth;
+        stepChanges = Timestep.getStepChanges();
+
+        spans = new Span[size];
+        spanOf = new IdentityHashMap(size * 2);
+        int intervals = 0;
+        for (int i = 0 ; i < size ; i++) {
+            spans[i] = new Span(tsList.get(i), i, bDay, bMth);
+            spanOf.put(spans[i].timestep, spans[i]);
+            intervals += (spans[i].isWrapped() ? 2 : 1);
+        }
+
+        // order by start date, knife edge timesteps first, then by list order
+        Arrays.sort(spans, new Comparator<Span>() {
+            public int compare(Span s1, Span s2) {
+                if (s1.start != s2.start) return s1.start - s2.start;
+                if (s1.isKnifeEdge() != s2.isKnifeEdge()) return (s1.isKnifeEdge() ? -1 : 1);
+                return s1.position - s2.position;
+            }
+        });
+
+        // split wrapping spans at Dec 31 and sort their intervals by start
+        Interval[] ivs = new Interval[intervals];
+        int n = 0;
+        for (Span sp : spans) {
+            if (sp.isWrapped()) {
+                ivs[n++] = new Interval(sp.start, DAYS_IN_YEAR, sp);
+                ivs[n++] = new Interval(1, sp.end, sp);
+            } else {
+                ivs[n++] = new Interval(sp.start, sp.end, sp);
+            }
+        }
+        Arrays.sort(ivs);
+
+        lo = new int[n];
+        hi = new int[n];
+        maxHi = new int[n];
+        owner = new Span[n];
+        for (int i = 0 ; i < n ; i++) {
+            lo[i] = ivs[i].lo;
+            hi[i] = ivs[i].hi;
+            owner[i] = ivs[i].span;
+        }
+        setMaxHi(0, n);
+    }
+
+    /**
+     * Return index for tsList and the birthday passed, reusing cached if it
+     * was built for them and no timestep dates have changed since
+     * @param cached index last returned for tsList, or null
+     * @param tsList
+     * @param bDay
+     * @param bMth
+     * @return
+     */
+    static TimestepIndex of(TimestepIndex cached, ArrayList<Timestep> tsList, int bDay, int bMth) {
+        if (cached != null && cached.timesteps == tsList && cached.size == tsList.size()
+                && cached.birthDay == bDay && cached.birthMonth == bMth
+                && cached.stepChanges == Timestep.getStepChanges()) return cached;
+
+        return new TimestepIndex(tsList, bDay, bMth);
+    }
+
+    /**
+     * Return day of the year for day and month, Jan 1 being 1
+     * @param day
+     * @param month
+     * @return
+     */
+    public static int dayOfYear(int day, int month) {
+        if (month < 0 || month > 12) month = 12;
+
+        return DAYS_BEFORE[month] + day;
+    }
+
+    /*
+     * Work out maxHi for the subtree held between from and to, returning it
+     */
+    private int setMaxHi(int from, int to) {
+        if (from >= to) return Integer.MIN_VALUE;
+        int mid = (from + to) >>> 1;
+        maxHi[mid] = Math.max(hi[mid], Math.max(setMaxHi(from, mid), setMaxHi(mid + 1, to)));
+
+        return maxHi[mid];
+    }
+
+    public int getBirthDay() {
+        return birthDay;
+    }
+
+    public int getBirthMonth() {
+        return birthMonth;
+    }
+
+    /**
+     * Return number of timesteps indexed
+     * @return
+     */
+    public int size() {
+        return spans.length;
+    }
+
+    /**
+     * Return span i in order of start date
+     * @param i
+     * @return
+     */
+    public Span getSpan(int i) {
+        return spans[i];
+    }
+
+    /**
+     * Return span of timestep ts, or null if ts is not indexed
+     * @param ts
+     * @return
+     */
+    public Span getSpan(Timestep ts) {
+        return spanOf.get(ts);
+    }
+
+    /**
+     * Return timesteps ordered by start date with birthday placeholders
+     * replaced, as clones of the originals
+     * @return
+     */
+    public Timestep[] getTimestepClones() {
+        Timestep[] tList = new Timestep[spans.length];
+        for (int i = 0 ; i < spans.length ; i++) {
+            Span sp = spans[i];
+            tList[i] = sp.timestep.cloneWithSteps(sp.startDay, sp.startMonth, sp.endDay, sp.endMonth);
+        }
+
+        return tList;
+    }
+
+    /**
+     * Return a timestep, other than exclude, overlapping the dates
+     * passed, which may cross Dec 31 and may have birthday placeholders.
+     * Returns null if there is none.
+     * @param stDay
+     * @param stMth
+     * @param enDay
+     * @param enMth
+     * @param exclude timestep to ignore, or null
+     * @return
+     */
+    public Timestep getOverlapping(int stDay, int stMth, int enDay, int enMth, Timestep exclude) {
+        int start = dayOfYear((stDay == BIRTHDAY ? birthDay : stDay), (stMth == BIRTHDAY ? birthMonth : stMth));
+        int end = dayOfYear((enDay == BIRTHDAY ? birthDay : enDay), (enMth == BIRTHDAY ? birthMonth : enMth));
+
+        Span found;
+        if (end < start) {
+            found = earliest(find(0, lo.length, start, DAYS_IN_YEAR, exclude), find(0, lo.length, 1, end, exclude));
+        } else {
+            found = find(0, lo.length, start, end, exclude);
+        }
+
+        return (found != null ? found.timestep : null);
+    }
+
+    /**
+     * Return another indexed timestep overlapping ts, or null
+     * @param ts
+     * @return
+     */
+    public Timestep getOverlapping(Timestep ts) {
+        Span sp = spanOf.get(ts);
+        if (sp == null) return getOverlapping(ts.getStartDay(), ts.getStartMonth(), ts.getEndDay(), ts.getEndMonth(), ts);
+
+        Span found;
+        if (sp.isWrapped()) {
+            found = earliest(find(0, lo.length, sp.start, DAYS_IN_YEAR, ts), find(0, lo.length, 1, sp.end, ts));
+        } else {
+            found = find(0, lo.length, sp.start, sp.end, ts);
+        }
+
+        return (found != null ? found.timestep : null);
+    }
+
+    /*
+     * Return owner of the earliest starting interval between from and to
+     * overlapping days first to last, skipping those of exclude
+     */
+    private Span find(int from, int to, int first, int last, Timestep exclude) {
+        if (from >= to) return null;
+        int mid = (from + to) >>> 1;
+        if (maxHi[mid] < first) return null;
+
+        Span found = find(from, mid, first, last, exclude);
+        if (found != null) return found;
+        if (lo[mid] > last) return null;
+        if (hi[mid] >= first && owner[mid].timestep != exclude) return owner[mid];
+
+        return find(mid + 1, to, first, last, exclude);
+    }
+
+    private static Span earliest(Span s1, Span s2) {
+        if (s1 == null || s2 == null) return (s1 != null ? s1 : s2);
+
+        return (s1.start <= s2.start ? s1 : s2);
+    }
+
+    /**
+     * A timestep with birthday placeholders replaced and its dates as days of
+     * the year
+     */
+    public static final class Span {
+        private final Timestep timestep;
+        private final int position;
+        private final int startDay, startMonth, endDay, endMonth;
+        private final int start, end;
+
+        private Span(Timestep ts, int pos, int bDay, int bMth) {
+            timestep = ts;
+            position = pos;
+            startDay = (ts.getStartDay() == BIRTHDAY ? bDay : ts.getStartDay());
+            startMonth = (ts.getStartMonth() == BIRTHDAY ? bMth : ts.getStartMonth());
+            endDay = (ts.getEndDay() == BIRTHDAY ? bDay : ts.getEndDay());
+            endMonth = (ts.getEndMonth() == BIRTHDAY ? bMth : ts.getEndMonth());
+            start = dayOfYear(startDay, startMonth);
+            end = dayOfYear(endDay, endMonth);
+        }
+
+        public Timestep getTimestep() { return timestep; }
+
+        public int getStartDay() { return startDay; }
+
+        public int getStartMonth() { return startMonth; }
+
+        public int getEndDay() { return endDay; }
+
+        public int getEndMonth() { return endMonth; }
+
+        /**
+         * Return first day of the year covered
+         * @return
+         */
+        public int getStart() { return start; }
+
+        /**
+         * Return last day of the year covered, which is before the first if
+         * the span crosses Dec 31
+         * @return
+         */
+        public int getEnd() { return end; }
+
+        public boolean isWrapped() {
+            return end < start;
+        }
+
+        public boolean isKnifeEdge() {
+            return startDay == endDay && startMonth == endMonth;
+        }
+    }
+
+    /*
+     * Interval of days within the year, first to last inclusive
+     */
+    private static final class Interval implements Comparable<Interval> {
+        private final int lo, hi;
+        private final Span span;
+
+        private Interval(int lo, int hi, Span span) {
+            this.lo = lo;
+            this.hi = hi;
+            this.span = span;
+        }
+
+        public int compareTo(Interval iv) {
+            return (lo != iv.lo ? lo - iv.lo : hi - iv.hi);
+        }
+    }
+}
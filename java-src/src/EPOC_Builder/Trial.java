@@ -71,22 +71,27 @@ public class Trial extends EPOCObject<Trial> {
 
     public void setYearStart(String ys) {
         yearStart = ys;
+        markModified();
     }
 
     public void setYearEnd(String ye) {
         yearEnd = ye;
+        markModified();
     }
 
     public void setFishingStart(String ffy) {
         fishingStart = ffy;
+        markModified();
     }
 
     public void setFishingEnd(String lfy) {
         fishingEnd = lfy;
+        markModified();
     }
 
     public void setTrialDir(String tDir) {
         trialDir = tDir;
+        markModified();
     }
 
     /**
@@ -188,80 +193,68 @@ public class Trial extends EPOCObject<Trial> {
         return true;
     }
 
-    public static FileWriter writeHeaderAsR(String dirPath, String universeName) {
-        File outputFile = new File(dirPath + File.separator + "data" + File.separator + universeName + ".trials.data.R");
+    @Override
+    protected long foldOwnMembers(long fp) {
+        fp = super.foldOwnMembers(fp);
+        fp = Fingerprint.fold(fp, yearStart);
+        fp = Fingerprint.fold(fp, yearEnd);
+        fp = Fingerprint.fold(fp, fishingStart);
+        fp = Fingerprint.fold(fp, fishingEnd);
+
+        return Fingerprint.fold(fp, trialDir);
+    }
+
+    public static void writeHeaderAsR(StringBuilder out, String universeName) {
         Date dt = new Date();
 
-        try {
-            outputFile.createNewFile();
-            FileWriter out = new FileWriter(outputFile);
-
-            out.write("########################################################\n");
-            out.write("# TRIALS of - " + universeName + "\n");
-            out.write("#\n");
-            out.write("# Generated by EPOC Builder\n");
-            out.write("# Date: " + dt.toString() + "\n");
-            out.write("########################################################\n\n");
-
-            
-            out.write("Trials <- list()\n\n");
-            out.write("# specific details for each unique trial\n\n");
-            return out;
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+        out.append("########################################################\n");
+        out.append("# TRIALS of - " + universeName + "\n");
+        out.append("#\n");
+        out.append("# Generated by EPOC Builder\n");
+        out.append("# Date: " + dt.toString() + "\n");
+        out.append("########################################################\n\n");
 
-        return null;
+        out.append("Trials <- list()\n\n");
+        out.append("# specific details for each unique trial\n\n");
     }
 
     /*
-     * Write self as text, in the form of an R assignment, to FileWriter
+     * Write self as text, in the form of an R assignment, to StringBuilder
      */
-    public void writeAsR(FileWriter out) {
-       
-        try {
-            out.write("########################################################\n");
-            out.write("# TRIAL - " + name + " (" + revision + ")\n");
-            out.write("# Description: " + super.prependEachLine(description, "#              ") + "\n");
-            out.write("########################################################\n\n");
-
-            // TODO Only one trial currently
-            out.write("Trials$" + getDisplayName() + " <- list()\n");
-
-            // Signature
-            super.writeSignatureAsR(out, "Trials$" + getDisplayName());
-
-            int ts = 0, te = 0;
-            try {
-                ts = Integer.parseInt(yearStart);
-                te = Integer.parseInt(yearEnd);
-            } catch (NumberFormatException e) {
-                e.printStackTrace();
-                return;
-            }
+    public void writeAsR(StringBuilder out) {
+        out.append("########################################################\n");
+        out.append("# TRIAL - " + name + " (" + revision + ")\n");
+        out.append("# Description: " + super.prependEachLine(description, "#              ") + "\n");
+        out.append("########################################################\n\n");
 
-            // Details
-            out.write("Trials$" + getDisplayName() + "$yearStart        <- " + yearStart + "\n");
-            out.write("Trials$" + getDisplayName() + "$yearEnd          <- " + yearEnd + "\n");
-            out.write("Trials$" + getDisplayName() + "$yearsN           <- " + (te - ts + 1) + "\n");
-            out.write("Trials$" + getDisplayName() + "$firstFishingYear <- " + fishingStart + "\n");
-            out.write("Trials$" + getDisplayName() + "$lastFishingYear  <- " + fishingEnd + "\n");
-            out.write("Trials$" + getDisplayName() + "$trialDir         <- file.path(RootPath, \"" + (trialDir.equals("") ? "runtime" : trialDir) + "\")\n");
-            out.write("\n");
-
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        // TODO Only one trial currently
+        out.append("Trials$" + getDisplayName() + " <- list()\n");
+
+        // Signature
+        super.writeSignatureAsR(out, "Trials$" + getDisplayName());
+
+        int ts = 0, te = 0;
+        try {
+            ts = Integer.parseInt(yearStart);
+            te = Integer.parseInt(yearEnd);
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+            return;
         }
+
+        // Details
+        out.append("Trials$" + getDisplayName() + "$yearStart        <- " + yearStart + "\n");
+        out.append("Trials$" + getDisplayName() + "$yearEnd          <- " + yearEnd + "\n");
+        out.append("Trials$" + getDisplayName() + "$yearsN           <- " + (te - ts + 1) + "\n");
+        out.append("Trials$" + getDisplayName() + "$firstFishingYear <- " + fishingStart + "\n");
+        out.append("Trials$" + getDisplayName() + "$lastFishingYear  <- " + fishingEnd + "\n");
+        out.append("Trials$" + getDisplayName() + "$trialDir         <- file.path(RootPath, \"" + (trialDir.equals("") ? "runtime" : trialDir) + "\")\n");
+        out.append("\n");
     }
 
-    public static void writeFooterAsR(FileWriter out) {
+    public static void writeFooterAsR(StringBuilder out) {
         // declare data
-        try {
-            out.write("Trials");
-            out.close();
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+        out.append("Trials");
     }
 
     /*
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * UIDIndex.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import java.util.Arrays;
+
+/*******************************************************************************
+ * Hash index of objects keyed by their positive integer storage uid.
+ * Uses open addressing on primitive arrays so that get() does not allocate
+ * (no Integer boxing or entry objects).
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+class UIDIndex<T> {
+
+    private static final int EMPTY = 0;
+
+    private int[] keys;
+    private Object[] vals;
+    private int size = 0;
+
+    UIDIndex() {
+        this(16);
+    }
+
+    UIDIndex(int capacity) {
+        int cap = 16;
+        while (cap < capacity * 2) cap <<= 1;
+        keys = new int[cap];
+        vals = new Object[cap];
+    }
+
+    private int slot(int uid) {
+        // spread bits as sequential uids are the common case
+        int h = uid * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (keys.length - 1);
+    }
+
+    /**
+     * Return object indexed against uid, or null if none
+     * @param uid
+     * @return
+     */
+    T get(int uid) {
+        if (uid <= 0) return null;
+        int i = slot(uid);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == uid) return (T)vals[i];
+            i = (i + 1) & (keys.length - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Index obj against uid unless uid is already present.  Only positive uids
+     * can be indexed.
+     * @param uid
+     * @param obj
+     * @return true if added
+     */
+    boolean putIfAbsent(int uid, T obj) {
+        if (uid <= 0) return false;
+        if ((size + 1) * 2 > keys.length) resize(keys.length * 2);
+
+        int i = slot(uid);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == uid) return false;
+            i = (i + 1) & (keys.length - 1);
+        }
+        keys[i] = uid;
+        vals[i] = obj;
+        size++;
+
+        return true;
+    }
+
+    /**
+     * Remove whatever is indexed against uid
+     * @param uid
+     * @return object removed or null
+     */
+    T remove(int uid) {
+        if (uid <= 0) return null;
+        int mask = keys.length - 1;
+        int i = slot(uid);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == uid) {
+                T old = (T)vals[i];
+                // shift following entries of the probe run back into the gap
+                int gap = i;
+                int j = (i + 1) & mask;
+                while (keys[j] != EMPTY) {
+                    int home = slot(keys[j]);
+                    if (((j - home) & mask) >= ((j - gap) & mask)) {
+                        keys[gap] = keys[j];
+                        vals[gap] = vals[j];
+                        gap = j;
+                    }
+                    j = (j + 1) & mask;
+                }
+                keys[gap] = EMPTY;
+                vals[gap] = null;
+                size--;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(vals, null);
+        size = 0;
+    }
+
+    int size() { return size; }
+
+    private void resize(int cap) {
+        int[] oldKeys = keys;
+        Object[] oldVals = vals;
+        keys = new int[cap];
+        vals = new Object[cap];
+        size = 0;
+        for (int i = 0 ; i < oldKeys.length ; i++) {
+            if (oldKeys[i] != EMPTY) putIfAbsent(oldKeys[i], (T)oldVals[i]);
+        }
+    }
+}
@@ -43,6 +43,10 @@ public class Universe extends EPOCObject<Universe> {
     private ArrayList<Element> outputList = new ArrayList();
     private ArrayList<Element> presentationList = new ArrayList();
 
+    // cached read-only view of all module lists combined, rebuilt after any change
+    private List<Element> elementView = null;
+    private int elementViewRebuilds = 0;
+
     // lists to hold eclass requiring storage deletions on save
     private ArrayList<EClass> deleteEClassList = new ArrayList();
 
@@ -82,7 +86,7 @@ public class Universe extends EPOCObject<Universe> {
 
     private void setElementActionRelatedObjects() {
         // For active elements
-        ArrayList<Element> eList = getElements(OBJ_ELE);
+        List<Element> eList = getElements(OBJ_ELE);
         for (Element ele : eList) {
             ele.setActionRelatedObjectsFromList(eList);
         }
@@ -94,6 +98,23 @@ public class Universe extends EPOCObject<Universe> {
      */
     public void setController(String contr) {
         controller = contr;
+        markModified();
+    }
+
+    /**
+     * Set modified state of universe and, if recurse, its config objects and elements
+     * @param mod
+     * @param recurse
+     */
+    @Override
+    public void setObjectModified(boolean mod, boolean recurse) {
+        setObjectModified(mod);
+        if (recurse) {
+            if (spatial != null) spatial.setObjectModified(mod, recurse);
+            if (report != null) report.setObjectModified(mod, recurse);
+            for (Trial tri : trials) tri.setObjectModified(mod, recurse);
+            for (Element ele : getElements()) ele.setObjectModified(mod, recurse);
+        }
     }
 
     /**
@@ -122,6 +143,7 @@ public class Universe extends EPOCObject<Universe> {
                 presentationList = elist;
                 break;
         }
+        elementsChanged();
     }
 
     /**
@@ -166,6 +188,7 @@ public class Universe extends EPOCObject<Universe> {
             trials.add((Trial)obj);
             setNextHighestPosition((Trial)obj);
         }
+        markModified();
     }
 
     /**
@@ -310,9 +333,11 @@ public class Universe extends EPOCObject<Universe> {
         
         // check that element is not already in list
         if (elementIndex(ele) < 0) {
-            // add it to the list
-            getElements(ele.getModType()).add(ele);
+            // add it to the end of the list, lists being kept in the order added
+            getModuleList(ele.getModType()).add(ele);
+            elementsChanged();
             setNextHighestPosition(ele);
+            markModified();
             return true;
         } 
         
@@ -329,6 +354,7 @@ public class Universe extends EPOCObject<Universe> {
         managementList = new ArrayList();
         outputList = new ArrayList();
         presentationList = new ArrayList();
+        elementsChanged();
     }
 
     /**
@@ -344,6 +370,7 @@ public class Universe extends EPOCObject<Universe> {
                 || eobj instanceof Report || eobj instanceof Trial) {
             // Remove it from the template listing
             getTemplates().removeTemplateList(eobj);
+            eobj.unjournal();
 
             // If has been in storage then it will need deleting
             if (eobj.getUID() > 0) addTemplateDeleteList(eobj.clone());
@@ -375,8 +402,11 @@ public class Universe extends EPOCObject<Universe> {
         Element brokenEle = (Element)ele.clone();
         brokenEle.setBroken();
         replaceLinkWith(ele, brokenEle);
+        markModified();
+        elementsChanged();
+        if (!ele.isTemplate()) ele.unjournal();
 
-        return getElements(ele.getModType()).remove(ele);
+        return getModuleList(ele.getModType()).remove(ele);
     }
 
     /**
@@ -387,7 +417,9 @@ public class Universe extends EPOCObject<Universe> {
     public boolean removeSpatial() {
         boolean present = (spatial != null);
         if (present && spatial.getUID() > 0) addDeleteList(spatial);
+        if (present && !spatial.isTemplate()) spatial.unjournal();
         spatial = null;
+        markModified();
         return present;
     }
 
@@ -399,7 +431,9 @@ public class Universe extends EPOCObject<Universe> {
     public boolean removeReport() {
         boolean present = (report != null);
         if (present && report.getUID() > 0) addDeleteList(report);
+        if (present && !report.isTemplate()) report.unjournal();
         report = null;
+        markModified();
         return present;
     }
 
@@ -425,6 +459,8 @@ public class Universe extends EPOCObject<Universe> {
 
         // get object and put it in delete list to be deleted (or unlinked) on universe save
         if (present && obj.getUID() > 0) addDeleteList(obj);
+        if (present && !obj.isTemplate()) obj.unjournal();
+        markModified();
 
         return present;
     }
@@ -523,6 +559,7 @@ public class Universe extends EPOCObject<Universe> {
                         } else {
                             act.getRelatedElements().set(i, (Element)origEle.hollow());
                         }
+                        act.markModified();
                         break;      // as there will only be one occurance per Action
                     }
                     i++;
@@ -536,13 +573,13 @@ public class Universe extends EPOCObject<Universe> {
      * @return boolean true if success
      */
     private boolean replaceElement(Element origEle, Element modEle) {
-        ArrayList list = getElements(origEle.getModType());
+        ArrayList<Element> list = getModuleList(origEle.getModType());
 
         int index = list.indexOf(origEle);
         if (index >= 0) {
             // then replace old element
-            list.remove(index);
-            list.add(index, modEle);
+            list.set(index, modEle);
+            elementsChanged();
             return true;
         }
         
@@ -600,6 +637,18 @@ public class Universe extends EPOCObject<Universe> {
             fstPos = fstObj.getPosition();
             fstObj.setPosition(secObj.getPosition());
             secObj.setPosition(fstPos);
+
+            // keep module list in position order by swapping list slots too
+            if (fstObj instanceof Element && secObj instanceof Element
+                    && ((Element)fstObj).getModType() == ((Element)secObj).getModType()) {
+                ArrayList<Element> list = getModuleList(((Element)fstObj).getModType());
+                int fstIdx = list.indexOf(fstObj);
+                int secIdx = list.indexOf(secObj);
+                if (fstIdx > -1 && secIdx > -1) {
+                    Collections.swap(list, fstIdx, secIdx);
+                    elementsChanged();
+                }
+            }
         }
     }
 
@@ -618,7 +667,8 @@ public class Universe extends EPOCObject<Universe> {
             // swap actual list positions
             ArrayList objList = new ArrayList();
             if(fstObj instanceof Element) {
-                objList = getElements(((Element)fstObj).getModType());
+                objList = getModuleList(((Element)fstObj).getModType());
+                elementsChanged();
             } else if (fstObj instanceof Trial) {
                 objList = getTrials();
             } else {
@@ -645,7 +695,7 @@ public class Universe extends EPOCObject<Universe> {
      * @return -1 if not found
      */
     private int elementIndex(Element ele) {
-        ArrayList al = getElements(ele.getModType());
+        List<Element> al = getModuleList(ele.getModType());
         
         return al.indexOf(ele);
     }
@@ -656,7 +706,7 @@ public class Universe extends EPOCObject<Universe> {
      * @return position in list
      */
     public int isElement(int eleUID, int eleType) {
-        ArrayList al = getElements(eleType);
+        List<Element> al = getElements(eleType);
         
         if (eleUID != 0) {
             for (int i=0; i < al.size(); i++) {
@@ -680,59 +730,81 @@ public class Universe extends EPOCObject<Universe> {
         return (Element[])getElements(eleType).toArray(new Element[0]);
     }
 
-    public ArrayList<Element> getElements() {
+    public List<Element> getElements() {
         return getElements(OBJ_ELE);
     }
 
     /**
-     * Return an ordered list of element objects of the type passed
+     * Return an ordered read-only list of element objects of the type passed.
+     * Module lists are kept in the order elements were added or moved to, so
+     * no sorting is needed here.  The combined OBJ_ELE list is cached until
+     * the next change to any module list.
      *
      * @param eleType
      * @return
      */
-    public ArrayList<Element> getElements(int eleType) {
-      
+    public List<Element> getElements(int eleType) {
+
+        if (eleType == OBJ_ELE) {
+            if (elementView == null) {
+                // need to create a combined list
+                ArrayList<Element> combList = new ArrayList(biotaList.size() + environList.size()
+                        + activityList.size() + managementList.size() + outputList.size()
+                        + presentationList.size());
+                combList.addAll(biotaList);
+                combList.addAll(environList);
+                combList.addAll(activityList);
+                combList.addAll(managementList);
+                combList.addAll(outputList);
+                combList.addAll(presentationList);
+                elementView = Collections.unmodifiableList(combList);
+                elementViewRebuilds++;
+            }
+            return elementView;
+        }
+        
+        return Collections.unmodifiableList(getModuleList(eleType));
+    }
+
+    /**
+     * Return the number of times the combined element list has been rebuilt
+     * @return
+     */
+    public int getElementViewRebuildCount() { return elementViewRebuilds; }
+
+    /**
+     * Return the modifiable module list of the element type passed.  Any
+     * change made to it must be followed by a call to elementsChanged().
+     * @param eleType
+     * @return
+     */
+    private ArrayList<Element> getModuleList(int eleType) {
+
         switch (eleType) {
             case OBJ_BIO:
-                Collections.sort(biotaList);
                 return biotaList;
             case OBJ_ENV:
-                Collections.sort(environList);
                 return environList;
             case OBJ_ATY:
-                Collections.sort(activityList);
                 return activityList;
             case OBJ_MAN:
-                Collections.sort(managementList);
                 return managementList;
             case OBJ_OUT:
-                Collections.sort(outputList);
                 return outputList;
             case OBJ_PRE:
-                Collections.sort(presentationList);
-                return outputList;
-            case OBJ_ELE:
-                // need to create a combined list
-                ArrayList combList = new ArrayList();
-                Collections.sort(biotaList);
-                combList.addAll(biotaList);
-                Collections.sort(environList);
-                combList.addAll(environList);
-                Collections.sort(activityList);
-                combList.addAll(activityList);
-                Collections.sort(managementList);
-                combList.addAll(managementList);
-                Collections.sort(outputList);
-                combList.addAll(outputList);
-                Collections.sort(presentationList);
-                combList.addAll(presentationList);
-                //Collections.sort(combList);
-                return combList;
+                return presentationList;
         }
-        
+
         return new ArrayList();
     }
 
+    /**
+     * Discard cached combined element list following a change to a module list
+     */
+    private void elementsChanged() {
+        elementView = null;
+    }
+
     /**
      * Return a list of templates of the type passed which are
      * unused by the Element object passed
@@ -859,11 +931,14 @@ public class Universe extends EPOCObject<Universe> {
             return false;
         }
 
+        // deletes and save are written in a single transaction
+        storage.beginTransaction();
+
         // check delete list for any non-universe elements needing deletion
-        if (!doDeletes()) return false;
+        boolean retVal = (doDeletes() && super.saveToStorage());
+
+        if (!storage.endTransaction(retVal)) return false;
 
-        if (!super.saveToStorage()) return false;
-        
         return true;
     }
     
@@ -872,20 +947,25 @@ public class Universe extends EPOCObject<Universe> {
      */
     private boolean doDeletes() {
         boolean retVal = true;
+        ArrayList<EPOCObject> unlinks = new ArrayList(), deletes = new ArrayList();
 
          // for each delete list
         for (ArrayList list : new ArrayList[]{deleteEClassList, deleteConfigList, deleteElementList, deleteTemplateList}) {
             for (Object obj : list) {
                 if (!list.equals(deleteTemplateList) && ((EPOCObject)obj).isTemplate()) {
                     // its a template
-                    if (!storage.unlinkTemplate(uid, ((EPOCObject)obj).getUID(), ((EPOCObject)obj).getObjType())) {
-                        retVal = false;
-                    }
-                } else if (!storage.delete((EPOCObject)obj)) retVal = false;
+                    unlinks.add((EPOCObject)obj);
+                } else {
+                    deletes.add((EPOCObject)obj);
+                }
             }
-            // reset list to empty
-            list.clear();
+            // reset list to empty once the deletes are committed
+            clearAfterCommit(storage, list);
         }
+
+        // unlink and delete them all together, a few statements per table
+        if (storage.unlinkTemplates(uid, unlinks) < 0) retVal = false;
+        if (storage.delete(deletes, true) < 0) retVal = false;
         
         return retVal;
     }
@@ -904,20 +984,23 @@ public class Universe extends EPOCObject<Universe> {
      * @return boolean true if modified
      */
     public boolean isModified() {
+        boolean modified = false;
 
         // First check if universe is empty
-        if (!isEmpty()) {
-
-            // retrieve a copy of this universe from storage
-            Universe storedUni = new Universe(uid);
-
-            //storedUni.setElementActionRelatedObjects();
-            
-            // Compare them
-            if (!this.compare(storedUni, false)) return true;
+        if (!isEmpty() && templates != null) {
+            modified = (uid == 0 || templates.getJournal().hasMemberChanges());
+
+            if (EPOC_DBG_JOURNAL) {
+                // retrieve a copy of this universe from storage and compare them
+                boolean stored = !this.compare(new Universe(uid), false);
+                if (stored != modified) {
+                    System.out.println("Universe " + uid + " change journal (" + modified + ") disagrees with storage ("
+                                       + stored + "): " + templates.getJournal());
+                }
+            }
         }
 
-        return false;
+        return modified;
     }
 
      /**
@@ -1054,11 +1137,11 @@ public class Universe extends EPOCObject<Universe> {
 
         // Check spatial
         if (spatial != null) {
-            if (spatial.getPolygonsVector() == null || spatial.getPolygonsVector().size() <= 0) {
+            if (spatial.getPolygons().size() <= 0) {
                 Messages.addErrMsg("Spatial object contains no polygons!");
                 passed = false;
             }
-            if (spatial.getOverlapsVector() == null || spatial.getOverlapsVector().size() <= 0) {
+            if (spatial.getOverlaps().size() <= 0) {
                 Messages.addErrMsg("Spatial object contains no polygons overlaps!");
                 passed = false;
             }
@@ -1101,19 +1184,9 @@ public class Universe extends EPOCObject<Universe> {
      * @return EPOCObject comparable template object
      */
     public EPOCObject findComparableTemplateObject(EPOCObject obj) {
-        if (obj instanceof Universe) {
-            return null;
-        } else if (obj instanceof Element) {
-            for (Element ele : getTemplates().getElementTemplateList(((Element)obj).getModType())) {
-                if (obj.compare(ele, true)) return ele;
-            }
-        } else {
-            for (EPOCObject tobj : getTemplates().getTemplateList(obj.getObjType())) {
-                if (obj.compare(tobj, true)) return tobj;
-            }
-        }
+        if (obj instanceof Universe) return null;
 
-        return null;
+        return getTemplates().getMatcher().find(obj);
     }
 
     /**
@@ -1169,8 +1242,8 @@ public class Universe extends EPOCObject<Universe> {
 
             // Compare Elements
             for (int eleType : new int[]{OBJ_BIO, OBJ_ENV, OBJ_ATY, OBJ_MAN, OBJ_OUT, OBJ_PRE}) {
-                ArrayList<Element> thisList = getElements(eleType);
-                ArrayList<Element> thatList = uni.getElements(eleType);
+                List<Element> thisList = getElements(eleType);
+                List<Element> thatList = uni.getElements(eleType);
                 if (thisList.size() != thatList.size()) return false;
                 for (int i = 0; i < thisList.size(); i++) {
                     if (!(thisList.get(i)).compare(thatList.get(i), superficial)) return false;
@@ -1183,171 +1256,246 @@ public class Universe extends EPOCObject<Universe> {
         
         return true;
     }
+
+    @Override
+    protected long foldOwnMembers(long fp) {
+        fp = super.foldOwnMembers(fp);
+        fp = Fingerprint.fold(fp, author);
+
+        return Fingerprint.fold(fp, controller);
+    }
+
+    /*
+     * Fold in config objects and elements in the order compare() looks at them
+     */
+    @Override
+    public long getFingerprint(boolean superficial) {
+        if (isBroken()) return Fingerprint.NONE;
+
+        long fp = getOwnFingerprint(superficial);
+        fp = Fingerprint.fold(fp, spatial, superficial);
+        fp = Fingerprint.fold(fp, report, superficial);
+        fp = Fingerprint.fold(fp, getTrials().size());
+        for (Trial tri : getTrials()) fp = Fingerprint.fold(fp, tri, superficial);
+        for (int eleType : new int[]{OBJ_BIO, OBJ_ENV, OBJ_ATY, OBJ_MAN, OBJ_OUT, OBJ_PRE}) {
+            List<Element> eleList = getElements(eleType);
+            fp = Fingerprint.fold(fp, eleList.size());
+            for (Element ele : eleList) fp = Fingerprint.fold(fp, ele, superficial);
+        }
+
+        return Fingerprint.finish(fp);
+    }
     
     /*
-     * Write self as text, in the form of an R assignment, to FileWriter
+     * Write self as text, in the form of an R assignment, to file under dirPath.
+     * When writing elements too, files recorded in the generation manifest
+     * under dirPath as current are left alone, and files it records which
+     * are no longer generated (deleted or renamed objects) are removed.
      */
     public void writeAsR(String dirPath, boolean writeElements) {
+        // only a full generation knows every file that belongs under dirPath
+        GenerationManifest manifest = (writeElements ? GenerationManifest.load(dirPath) : null);
+        REmitter emitter = new REmitter(manifest);
+        writeAsR(dirPath, writeElements, emitter);
+        emitter.finish();
+
+        if (manifest != null) {
+            // a failed task may have left its files unrecorded, so keep them
+            if (emitter.getTasksFailed() == 0) {
+                int removed = manifest.removeOrphans();
+                if (EPOC_DBG) System.out.println("Removed " + removed + " orphaned R files");
+            }
+            manifest.save();
+        }
+    }
+
+    /*
+     * Write self as text, in the form of an R assignment, through emitter.
+     * Element, action, EClass and spatial files are submitted to be written
+     * in parallel, so call emitter.finish() to wait for them.
+     */
+    public void writeAsR(final String dirPath, boolean writeElements, final REmitter emitter) {
         File outputFile = new File(dirPath + File.separator + "data" + File.separator + getDisplayName() + ".data.R");
-      
-        try {
-            outputFile.createNewFile();
-            FileWriter out = new FileWriter(outputFile);
-       
-            Date dt = new Date();
-            
-            out.write("########################################################\n");
-            out.write("# UNIVERSE - " + name + "." + revision + "\n");
-            out.write("# Controller: " + controller + "\n");
-            out.write("# Description: " + super.prependEachLine(description, "#              ") + "\n");
-            out.write("#\n");
-            out.write("# Generated by EPOC Builder\n");
-            out.write("# Date: " + dt.toString() + "\n");
-            out.write("########################################################\n\n");
-            
-            out.write(shortname + " <- list()\n\n");
-
-            // Signature
-            super.writeSignatureAsR(out, shortname);
-
-            // Config file paths
-            out.write("# Module and Element class and data inclusions/paths\n");
-            out.write(shortname + "$inputPaths <- list(\n");
-            out.write("\tConfig = list(\n");
-            out.write("\t\tSourceFns = list(\n");
-            out.write("\t\t\tPolygons     = file.path(RootPath, \"data\", \"" + spatial.getDisplayName() + ".data.R\"),\n");
-            out.write("\t\t\tTrials       = file.path(RootPath, \"data\", \"" + getDisplayName() + ".trials.data.R\")\n");
-            out.write("\t\t)\n");
-            out.write("\t),\n");
-
-            // For each element type loop through adding elements to list
-            // If required by parameter also call writeAsR for each Element
-            boolean notFirstMod = false;
-            for (int eleType : new int[]{OBJ_BIO, OBJ_ENV, OBJ_ATY, OBJ_MAN, OBJ_OUT, OBJ_PRE}) {
-                if (notFirstMod) out.write(",\n");
-                notFirstMod = true;
-                out.write("\t" + getObjectTypeName(eleType) + " = list(\n");
-                if (getElements(eleType).size() > 0) {
-                    boolean notFirstEle = false;
-                    for (Element ele : getElements(eleType)) {
-                        if (notFirstEle) out.write(",\n");
-                        notFirstEle = true;
-                        out.write("\t\t# ID = " + ele.getEPOCID() + "\n");
-                        out.write("\t\t" + ele.getShortName() + " = list(className = \"" 
-                                + (ele.getEClass() != null ? ele.getEClass().getDisplayName() : "???") + "\",\n");
-                        out.write("\t\t               classFile = file.path(RootPath, \"code\", \"" 
-                                + (ele.getEClass() != null ? ele.getEClass().getDisplayName() : "???") + ".R\"),\n");
-                        out.write("\t\t               classData = file.path(RootPath, \"data\", \"" 
-                                + ele.getDisplayName() + ".data.R\"))");
-                        
-                        if (writeElements) {
-                            // Make call to element to write itself out
-                            ele.writeAsR(dirPath);
-                            // And then to EPOC Class to do the same
-                            if (ele.getEClass() != null) ele.getEClass().writeAsR(dirPath);
+        Date dt = new Date();
+
+        StringBuilder out = emitter.getBuilder();
+
+        out.append("########################################################\n");
+        out.append("# UNIVERSE - " + name + "." + revision + "\n");
+        out.append("# Controller: " + controller + "\n");
+        out.append("# Description: " + super.prependEachLine(description, "#              ") + "\n");
+        out.append("#\n");
+        out.append("# Generated by EPOC Builder\n");
+        out.append("# Date: " + dt.toString() + "\n");
+        out.append("########################################################\n\n");
+
+        out.append(shortname + " <- list()\n\n");
+
+        // Signature
+        super.writeSignatureAsR(out, shortname);
+
+        // Config file paths
+        out.append("# Module and Element class and data inclusions/paths\n");
+        out.append(shortname + "$inputPaths <- list(\n");
+        out.append("\tConfig = list(\n");
+        out.append("\t\tSourceFns = list(\n");
+        out.append("\t\t\tPolygons     = file.path(RootPath, \"data\", \"" + spatial.getDisplayName() + ".data.R\"),\n");
+        out.append("\t\t\tTrials       = file.path(RootPath, \"data\", \"" + getDisplayName() + ".trials.data.R\")\n");
+        out.append("\t\t)\n");
+        out.append("\t),\n");
+
+        // For each element type loop through adding elements to list
+        // If required by parameter also submit each Element to write itself
+        Set<EClass> eclasses = Collections.newSetFromMap(new IdentityHashMap());
+        Set<Action> actions = Collections.newSetFromMap(new IdentityHashMap());
+        boolean notFirstMod = false;
+        for (int eleType : new int[]{OBJ_BIO, OBJ_ENV, OBJ_ATY, OBJ_MAN, OBJ_OUT, OBJ_PRE}) {
+            if (notFirstMod) out.append(",\n");
+            notFirstMod = true;
+            out.append("\t" + getObjectTypeName(eleType) + " = list(\n");
+            if (getElements(eleType).size() > 0) {
+                boolean notFirstEle = false;
+                for (final Element ele : getElements(eleType)) {
+                    if (notFirstEle) out.append(",\n");
+                    notFirstEle = true;
+                    out.append("\t\t# ID = " + ele.getEPOCID() + "\n");
+                    out.append("\t\t" + ele.getShortName() + " = list(className = \""
+                            + (ele.getEClass() != null ? ele.getEClass().getDisplayName() : "???") + "\",\n");
+                    out.append("\t\t               classFile = file.path(RootPath, \"code\", \""
+                            + (ele.getEClass() != null ? ele.getEClass().getDisplayName() : "???") + ".R\"),\n");
+                    out.append("\t\t               classData = file.path(RootPath, \"data\", \""
+                            + ele.getDisplayName() + ".data.R\"))");
+
+                    if (writeElements) {
+                        // Have element write itself out
+                        emitter.submit(new Runnable() {
+                            public void run() { ele.writeDataAsR(dirPath, emitter); }
+                        });
+                        // Then each of its actions, once only if shared
+                        final String actEPOCClass = ele.getActionEPOCClass();
+                        for (final Action act : ele.getActions()) {
+                            if (!actions.add(act)) continue;
+                            emitter.submit(new Runnable() {
+                                public void run() { act.writeAsR(dirPath, actEPOCClass, emitter); }
+                            });
+                        }
+                        // And then EPOC Class to do the same, once only if shared
+                        final EClass ecls = ele.getEClass();
+                        if (ecls != null && eclasses.add(ecls)) {
+                            emitter.submit(new Runnable() {
+                                public void run() { ecls.writeAsR(dirPath, emitter); }
+                            });
                         }
                     }
-                } else {
-                    out.write("\t\tNULL");
                 }
-                out.write("\n\t)");
+            } else {
+                out.append("\t\tNULL");
             }
+            out.append("\n\t)");
+        }
 
-            out.write("\n)\n\n");
-
-            // Reporting details
-            if (report != null) report.writeAsR(out, shortname);
-            
-            // Spatial data file
-            if (spatial != null) spatial.writeAsR(dirPath);
-            
-            // Trial data file
-            FileWriter triOut = Trial.writeHeaderAsR(dirPath, getDisplayName());
-            for (Trial tri : getTrials()) tri.writeAsR(triOut);
-            Trial.writeFooterAsR(triOut);
+        out.append("\n)\n\n");
 
-            out.write("\n");
-            // Global parameters
-            out.write("# Global (Universal) Parameters\n");
-            // TODO Add a for loop to iterate over global universe attributes?
-            out.write(shortname + "$monthDays = c(31,28,31,30,31,30,31,31,30,31,30,31)\n\n");
+        // Reporting details
+        if (report != null) report.writeAsR(out, shortname);
 
-            // declare data
-            out.write(shortname);
+        out.append("\n");
+        // Global parameters
+        out.append("# Global (Universal) Parameters\n");
+        // TODO Add a for loop to iterate over global universe attributes?
+        out.append(shortname + "$monthDays = c(31,28,31,30,31,30,31,31,30,31,30,31)\n\n");
 
-            out.close();
+        // declare data
+        out.append(shortname);
 
-            writeRunScript(dirPath, EPOC_DBG, false);
+        emitter.emit(outputFile, out, this, 0);
 
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        // Spatial data file
+        if (spatial != null) {
+            emitter.submit(new Runnable() {
+                public void run() { spatial.writeAsR(dirPath, emitter); }
+            });
         }
+
+        // Trial data file
+        File triFile = new File(dirPath + File.separator + "data" + File.separator + getDisplayName() + ".trials.data.R");
+        StringBuilder triOut = emitter.getBuilder();
+        Trial.writeHeaderAsR(triOut, getDisplayName());
+        for (Trial tri : getTrials()) tri.writeAsR(triOut);
+        Trial.writeFooterAsR(triOut);
+        emitter.emit(triFile, triOut);
+
+        writeRunScript(dirPath, EPOC_DBG, false, emitter);
     }
 
     public File writeRunScript(String dirPath, boolean debug, boolean justCalendar) {
-        File startFile = new File(dirPath + File.separator + "Run_" + (justCalendar ? "Calendar.R" : "EPOC.R"));
+        return writeRunScript(dirPath, debug, justCalendar, new REmitter());
+    }
 
-        try {
-            // Now write a startup script file
-            startFile.createNewFile();
-            FileWriter out = new FileWriter(startFile);
+    /**
+     * Write a startup script file through emitter
+     * @param dirPath
+     * @param debug
+     * @param justCalendar
+     * @param emitter
+     * @return script file or null if it could not be written
+     */
+    public File writeRunScript(String dirPath, boolean debug, boolean justCalendar, REmitter emitter) {
+        File startFile = new File(dirPath + File.separator + "Run_" + (justCalendar ? "Calendar.R" : "EPOC.R"));
 
-            Date dt = new Date();
+        StringBuilder out = emitter.getBuilder();
 
-            out.write("########################################################\n");
-            out.write("# EPOC Start script for Universe - " + name + "." + revision + "\n");
-            out.write("# Description: " + super.prependEachLine(description, "#              ") + "\n");
-            out.write("#\n");
-            out.write("# Generated by EPOC Builder\n");
-            out.write("# Date: " + dt.toString() + "\n");
-            out.write("########################################################\n\n");
+        Date dt = new Date();
 
-            out.write("# Clear workspace\n");
-            out.write("rm(list=ls(all=TRUE))\n\n");
+        out.append("########################################################\n");
+        out.append("# EPOC Start script for Universe - " + name + "." + revision + "\n");
+        out.append("# Description: " + super.prependEachLine(description, "#              ") + "\n");
+        out.append("#\n");
+        out.append("# Generated by EPOC Builder\n");
+        out.append("# Date: " + dt.toString() + "\n");
+        out.append("########################################################\n\n");
 
-            out.write("# Get zipped commandline arg\n");
-            out.write("zipped <- length(commandArgs(TRUE)) > 0 && commandArgs(TRUE)[[1]] == \"-zipped\"\n\n");
+        out.append("# Clear workspace\n");
+        out.append("rm(list=ls(all=TRUE))\n\n");
 
-            // Debugging?
-            out.write("# Debugging\n");
-            out.write((!debug ? "#" : "") + "options(error=recover)\n\n");
-            out.write("# Load EPOC package\n");
-            out.write((debug ? "#" : "") + "library(EPOC)\n\n");
+        out.append("# Get zipped commandline arg\n");
+        out.append("zipped <- length(commandArgs(TRUE)) > 0 && commandArgs(TRUE)[[1]] == \"-zipped\"\n\n");
 
-            // Set the working directory/RootPath
-            out.write("# Set the RootPath to the working directory which should be where this file is located\n");
-            out.write("if (!zipped) setwd(file.path(\"" + dirPath.replace("\\", "/") + "\"))\n");
-            out.write("RootPath <- file.path(getwd())\n\n");
+        // Debugging?
+        out.append("# Debugging\n");
+        out.append((!debug ? "#" : "") + "options(error=recover)\n\n");
+        out.append("# Load EPOC package\n");
+        out.append((debug ? "#" : "") + "library(EPOC)\n\n");
 
-            out.write("# Unzip directory structure if required\n");
-            out.write("if (zipped) system(\"unzip -qo EPOC.zip\")\n\n");
+        // Set the working directory/RootPath
+        out.append("# Set the RootPath to the working directory which should be where this file is located\n");
+        out.append("if (!zipped) setwd(file.path(\"" + dirPath.replace("\\", "/") + "\"))\n");
+        out.append("RootPath <- file.path(getwd())\n\n");
 
-            out.write("# Perform EPOC setup\n");
-            out.write((!debug ? "#" : "") + "source(file=file.path(RootPath, \"base\", \"EPOC.Setup.R\"))\n\n");
+        out.append("# Unzip directory structure if required\n");
+        out.append("if (zipped) system(\"unzip -qo EPOC.zip\")\n\n");
 
-            out.write("# Specify the universe for the epoc scenario and load input data\n");
-            out.write("universe <- new(\"Universe\", dataPath=file.path(RootPath, \"data\", \"" + getDisplayName() + ".data.R\"))\n\n");
+        out.append("# Perform EPOC setup\n");
+        out.append((!debug ? "#" : "") + "source(file=file.path(RootPath, \"base\", \"EPOC.Setup.R\"))\n\n");
 
-            out.write("# Start controller, this creates/sets up both the universe and calendar\n");
-            out.write("controller <- new(\"Controller\", universe=universe)\n\n");
+        out.append("# Specify the universe for the epoc scenario and load input data\n");
+        out.append("universe <- new(\"Universe\", dataPath=file.path(RootPath, \"data\", \"" + getDisplayName() + ".data.R\"))\n\n");
 
-            out.write("# Display calendar\n");
-            out.write("displayCalendar(controller, toScreen=FALSE)\n\n");
+        out.append("# Start controller, this creates/sets up both the universe and calendar\n");
+        out.append("controller <- new(\"Controller\", universe=universe)\n\n");
 
-            out.write("# Start simulation\n");
-            out.write("runSimulation(controller)\n\n");
+        out.append("# Display calendar\n");
+        out.append("displayCalendar(controller, toScreen=FALSE)\n\n");
 
-            out.write("# Zip it all up again\n");
-            out.write((justCalendar ? "#" : "") + "if (zipped) system(\"zip -qur EPOC.zip runtime\")\n");
+        out.append("# Start simulation\n");
+        out.append("runSimulation(controller)\n\n");
 
-            out.close();
+        out.append("# Zip it all up again\n");
+        out.append((justCalendar ? "#" : "") + "if (zipped) system(\"zip -qur EPOC.zip runtime\")\n");
 
-            return startFile;
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+        if (!emitter.emit(startFile, out)) return null;
 
-        return null;
+        return startFile;
     }
 
     /**
@@ -1366,23 +1514,19 @@ public class Universe extends EPOCObject<Universe> {
     /**
      * Substitute any child objects (elements) with a
      * comparable template if one can be found
+     * @param matcher
      */
     @Override
-    public void substituteMembersWithTemplates() {
-        boolean replaced = false;
-
+    void substituteMembersWithTemplates(Templates.Matcher matcher) {
         for (int eleType : new int[]{OBJ_BIO, OBJ_ENV, OBJ_ATY, OBJ_MAN, OBJ_OUT, OBJ_PRE}) {
             ArrayList<Element> newElements = new ArrayList();
             for (Element ele : getElements(eleType)) {
-                replaced = false;
-                for (Element et : templates.getElementTemplateList(eleType)) {
-                    if (ele.compare(et, true)) {
-                        ele = et;
-                        replaced = true;
-                        break;
-                    }
+                Element et = (Element)matcher.find(ele);
+                if (et != null) {
+                    ele = et;
+                } else {
+                    ele.substituteMembersWithTemplates(matcher);
                 }
-                if (!replaced) ele.substituteMembersWithTemplates();
                 newElements.add(ele);
             }
 
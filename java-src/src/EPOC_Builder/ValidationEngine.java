@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * ValidationEngine.java
+ * =============================================================================
+ * Copyright (c) 2009-2010 Australian Antarctic Division. All rights reserved.
+ * Author can be contacted at troy.robertson@aad.gov.au.
+ *
+ * Every effort has been taken in making sure that the source code is
+ * technically accurate, but I disclaim any and all responsibility for any loss,
+ * damage or destruction of data or any other property which may arise from
+ * relying on it. I will in no case be liable for any monetary damages arising
+ * from such loss, damage or destruction.
+ *
+ * As with any code, ensure this code is tested in a development environment
+ * before attempting to run it in production.
+ * =============================================================================
+ */
+package au.gov.aad.erm.EPOC_Builder;
+
+import static au.gov.aad.erm.EPOC_Builder.Constants.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/*******************************************************************************
+ * Validates a universe, or part of one, splitting each object's checks into
+ * Java side structural checks and R checks.
+ *
+ * Structural checks for every element, attribute and action are run in
+ * parallel on a shared fork-join pool, along with a Java syntax check of any
+ * R code.  R checks (parsing code the Java check could not pass, testing EPOC
+ * classes) are queued to a single engine thread as JRI must only be driven
+ * from one thread at a time.  Messages raised by each object are buffered
+ * against that object's Result rather than the global Messages lists, so
+ * results can be reported in universe order regardless of which thread
+ * produced them.
+ *
+ * @author Troy Robertson
+ * @company Australian Antarctic Division
+ * @created 18/10/2026
+ * @version 0.4.0, 01-09-2010
+ *******************************************************************************/
+public class ValidationEngine {
+
+    private static ForkJoinPool pool = null;
+    private static ExecutorService engineThread = null;
+
+    private Universe universe;
+    private JRIExchanger rex;
+    private ConcurrentLinkedQueue<Future<?>> pending = new ConcurrentLinkedQueue();
+
+    public ValidationEngine(Universe uni) {
+        universe = uni;
+        rex = uni.rex;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) pool = new ForkJoinPool();
+
+        return pool;
+    }
+
+    private static synchronized ExecutorService getEngineThread() {
+        if (engineThread == null) {
+            engineThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "EPOC R validation");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return engineThread;
+    }
+
+    /**
+     * Validate universe and all its elements, attributes and actions
+     * @return result tree with universe at its root
+     */
+    public Result validate() {
+        Result uniRes = new Result(universe);
+
+        // universe level checks are quick and don't use R
+        Messages.beginErrBuffer();
+        uniRes.add(universe.validate(false), Messages.endErrBuffer());
+
+        // build the combined element list before workers read it concurrently
+        List<Element> elements = universe.getElements(OBJ_ELE);
+        ArrayList<CheckTask> tasks = new ArrayList();
+        for (Element ele : elements) {
+            Result eleRes = new Result(ele);
+            uniRes.children.add(eleRes);
+            tasks.add(new CheckTask(ele, null, eleRes));
+        }
+
+        run(tasks);
+
+        return uniRes;
+    }
+
+    /**
+     * Validate element and all its attributes and actions
+     * @param ele
+     * @return result tree with element at its root
+     */
+    public Result validate(Element ele) {
+        // build the combined element list before workers read it concurrently
+        universe.getElements(OBJ_ELE);
+        Result eleRes = new Result(ele);
+        run(Collections.singletonList(new CheckTask(ele, null, eleRes)));
+
+        return eleRes;
+    }
+
+    /**
+     * Validate a single attribute or action of element
+     * @param obj Attribute or Action
+     * @param ele parent element
+     * @return
+     */
+    public Result validate(EPOCObject obj, Element ele) {
+        // build the combined element list before workers read it concurrently
+        universe.getElements(OBJ_ELE);
+        Result res = new Result(obj);
+        run(Collections.singletonList(new CheckTask(obj, ele, res)));
+
+        return res;
+    }
+
+    /*
+     * Run structural checks on pool then wait for queued R checks to finish
+     */
+    private void run(List<CheckTask> tasks) {
+        getPool().invoke(new RootTask(tasks));
+
+        Future<?> future;
+        while ((future = pending.poll()) != null) {
+            try {
+                future.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ee) {
+                if (EPOC_DBG) ee.printStackTrace();
+                Messages.addErrMsg("R validation failed: " + ee.getCause());
+            }
+        }
+    }
+
+    /*
+     * Java side checks for obj, may be run on any pool thread
+     */
+    private boolean checkStructure(EPOCObject obj, Element ele) {
+        boolean passed = true;
+
+        if (obj instanceof Element) {
+            if (!((Element)obj).validateStructure(universe)) passed = false;
+            if (!((Element)obj).validateTimesteps()) passed = false;
+        } else if (obj instanceof Attribute) {
+            if (!((Attribute)obj).validateStructure(ele)) passed = false;
+        } else if (obj instanceof Action) {
+            if (!((Action)obj).validateStructure(ele, universe)) passed = false;
+        }
+
+        return passed;
+    }
+
+    /*
+     * Return R code of obj to be syntax checked, or null if it has none
+     */
+    private String codeOf(EPOCObject obj) {
+        if (obj instanceof Attribute) return ((Attribute)obj).getValue();
+        if (obj instanceof Action) return ((Action)obj).getCode();
+
+        return null;
+    }
+
+    /*
+     * R checks for obj, only run on engine thread.  Any R code has already
+     * been checked by syntax, giving status.
+     */
+    private boolean checkCode(EPOCObject obj, String code, RSyntaxChecker syntax, int status) {
+        if (obj instanceof Element) {
+            if (rex.hasEngine()) rex.clear();
+            return ((Element)obj).validateClass();
+        }
+        if (code != null) return obj.parseR(code, syntax, status);
+
+        return true;
+    }
+
+    private class RootTask extends RecursiveAction {
+        private List<CheckTask> tasks;
+
+        RootTask(List<CheckTask> tasks) { this.tasks = tasks; }
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+    }
+
+    /*
+     * Checks a single object, forking a further task for each attribute and
+     * action when the object is an element.
+     */
+    private class CheckTask extends RecursiveAction {
+        private EPOCObject object;
+        private Element parent;
+        private Result result;
+
+        CheckTask(EPOCObject obj, Element parent, Result res) {
+            object = obj;
+            this.parent = parent;
+            result = res;
+        }
+
+        @Override
+        protected void compute() {
+            Messages.beginErrBuffer();
+            boolean passed = checkStructure(object, parent);
+            result.add(passed, Messages.endErrBuffer());
+
+            // only code the Java syntax check can't pass needs checking by R
+            final String code = codeOf(object);
+            final RSyntaxChecker syntax = (code != null ? new RSyntaxChecker(code) : null);
+            final int status = (syntax != null ? syntax.check() : RSyntaxChecker.R_SYNTAX_UNDECIDED);
+            if (status != RSyntaxChecker.R_SYNTAX_VALID) {
+                pending.add(getEngineThread().submit(new Runnable() {
+                    public void run() {
+                        Messages.beginErrBuffer();
+                        boolean ok = false;
+                        try {
+                            ok = checkCode(object, code, syntax, status);
+                        } catch (RuntimeException re) {
+                            Messages.addErrMsg("Unable to check " + object.getDisplayName() + " using R:\n" + re);
+                        } catch (Error er) {
+                            // eg JRI library missing
+                            Messages.addErrMsg("Unable to check " + object.getDisplayName() + " using R:\n" + er);
+                        } finally {
+                            result.add(ok, Messages.endErrBuffer());
+                        }
+                    }
+                }));
+            }
+
+            if (object instanceof Element) {
+                Element ele = (Element)object;
+                ArrayList<CheckTask> children = new ArrayList();
+                for (Attribute att : ele.getAttributes()) {
+                    Result res = new Result(att);
+                    result.children.add(res);
+                    children.add(new CheckTask(att, ele, res));
+                }
+                for (Action act : ele.getActions()) {
+                    Result res = new Result(act);
+                    result.children.add(res);
+                    children.add(new CheckTask(act, ele, res));
+                }
+                invokeAll(children);
+            }
+        }
+    }
+
+    /***************************************************************************
+     * Validation outcome for a single EPOC object, with outcomes for any child
+     * objects validated along with it.
+     ***************************************************************************/
+    public static class Result {
+        private EPOCObject object;
+        private boolean passed = true;
+        private ArrayList<String> messages = new ArrayList();
+        private ArrayList<Result> children = new ArrayList();
+
+        Result(EPOCObject obj) {
+            object = obj;
+        }
+
+        synchronized void add(boolean ok, ArrayList<String> msgs) {
+            if (!ok) passed = false;
+            messages.addAll(msgs);
+        }
+
+        public EPOCObject getObject() { return object; }
+
+        /**
+         * Did this object, ignoring its children, pass validation
+         * @return
+         */
+        public synchronized boolean isPassed() { return passed; }
+
+        /**
+         * Did this object and all its descendants pass validation
+         * @return
+         */
+        public boolean isAllPassed() {
+            if (!isPassed()) return false;
+            for (Result res : children) {
+                if (!res.isAllPassed()) return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Return error messages as a string with line returns between each message
+         * @return
+         */
+        public synchronized String getMessages() {
+            String msgText = "";
+
+            for (String msg : messages) {
+                msgText = msgText + (!msgText.equals("") ? "\n" : "") + msg;
+            }
+
+            return msgText;
+        }
+
+        /**
+         * Return error messages of this object and all its descendants, in
+         * universe order, with line returns between each message
+         * @return
+         */
+        public String getAllMessages() {
+            String msgText = getMessages();
+
+            for (Result res : children) {
+                String childText = res.getAllMessages();
+                if (!childText.equals("")) msgText = msgText + (!msgText.equals("") ? "\n" : "") + childText;
+            }
+
+            return msgText;
+        }
+
+        public List<Result> getChildren() { return Collections.unmodifiableList(children); }
+    }
+}
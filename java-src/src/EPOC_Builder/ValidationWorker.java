@@ -66,17 +66,27 @@ public class ValidationWorker extends SwingWorker<Boolean, Void> {
     @Override
     protected Boolean doInBackground() throws Exception {
         if (universe != null) {
+            if (universe.rex == null) {
+                outputLn("Failed to create R Engine.", "");
+                return false;
+            }
+
+            ValidationEngine engine = new ValidationEngine(universe);
+            ValidationEngine.Result result = null;
+
             if (element != null) {
                 if (action != null) {
-                    passed = validate(action, element, universe);
+                    result = engine.validate(action, element);
                 } else if (attribute != null) {
-                    passed = validate(attribute, element, universe);
+                    result = engine.validate(attribute, element);
                 } else {
-                    passed = validate(element, universe);
+                    result = engine.validate(element);
                 }
             } else {
-                passed = validate(universe);
+                result = engine.validate();
             }
+
+            passed = report(result);
         }
 
         return passed;
@@ -104,37 +114,17 @@ public class ValidationWorker extends SwingWorker<Boolean, Void> {
         parentUI.endProgress();
     }
 
-    private boolean validate(Universe uni) {
-        boolean passed = true;
-
-        if (!validatePreCheck(uni)) return false;
-
-        if (!uni.validate(false)) {
-            outputLn("              <<< ERROR", "");
-            outputLn(Messages.getUnreadErrMsgs(), "\t");
-            passed = false;
-        } else {
-            outputLn("", "");
-        }
-
-        if (passed) outputLn("Passed validation.", "\t");
-
-        // Elements
-        for (Object obj : uni.getElements(OBJ_ELE)) {
-            if (!validate((Element)obj, uni)) passed = false;
-        }
-
-        return passed;
-    }
-
-    private boolean validate(Element ele, Universe uni) {
+    /*
+     * Output result for each object in result tree, parent before children
+     */
+    private boolean report(ValidationEngine.Result result) {
         boolean passed = true;
 
-        if (!validatePreCheck(ele)) return false;
+        if (!validatePreCheck(result.getObject())) return false;
 
-        if (!ele.validate(uni, false)) {
+        if (!result.isPassed()) {
             outputLn("              <<< ERROR", "");
-            outputLn(Messages.getUnreadErrMsgs(), "\t");
+            outputLn(result.getMessages(), "\t");
             passed = false;
         } else {
             outputLn("", "");
@@ -142,61 +132,16 @@ public class ValidationWorker extends SwingWorker<Boolean, Void> {
 
         if (passed) outputLn("Passed validation.", "\t");
 
-        // Attributes
-        for (Attribute att : ele.getAttributes()) {
-            if (!validate(att, ele, uni)) passed = false;
-        }
-
-        // Validate Actions
-        for (Action act : ele.getActions()) {
-            if (!validate(act, ele, uni)) passed = false;
+        for (ValidationEngine.Result child : result.getChildren()) {
+            if (!report(child)) passed = false;
         }
 
         return passed;
     }
 
-    private boolean validate(Attribute att, Element ele, Universe uni) {
-        boolean passed = true;
-
-        if (!validatePreCheck(att)) return false;
-
-        if (!att.validate(ele)) {
-            outputLn("              <<< ERROR", "");
-            outputLn(Messages.getUnreadErrMsgs(), "\t");
-            passed = false;
-        } else {
-            outputLn("", "");
-        }
-
-        if (passed) outputLn("Passed validation.", "\t");
-        return passed;
-    }
-
-    private boolean validate(Action act, Element ele, Universe uni) {
-        boolean passed = true;
-
-        if (!validatePreCheck(act)) return false;
-
-        if (!act.validate(ele, uni)) {
-            outputLn("              <<< ERROR", "");
-            outputLn(Messages.getUnreadErrMsgs(), "\t");
-            passed = false;
-        } else {
-            outputLn("", "");
-        }
-
-        if (passed) outputLn("Passed validation.", "\t");
-        return passed;
-    }
-
     private boolean validatePreCheck(EPOCObject eo) {
         String nameText = "";
 
-        if (universe.rex == null) {
-            outputLn("Failed to create R Engine.", "");
-            return false;
-        }
-
         if (eo == null) {
             outputLn("No EPOC object submitted for validation.", "");
             return false;